@@ -178,14 +178,14 @@ public class XMLUtils
 	 */
 	public static Element getFirstChildElementByTagName(Element node, String tagName)
 	{
-		NodeList list = node.getElementsByTagName(tagName);
-		int max = list.getLength();
-
-		for (int i = 0; i < max; i++)
+		// Only direct children are visited - getElementsByTagName would scan the whole subtree
+		Node child = node.getFirstChild();
+		while (child != null)
 		{
-			Element subNode = (Element)list.item(i);
-			if (subNode.getParentNode() == node)
-				return subNode;
+			if (child.getNodeType() == Node.ELEMENT_NODE && Strings.areStringsEqual(child.getNodeName(), tagName))
+				return (Element)child;
+
+			child = child.getNextSibling();
 		}
 
 		return null;
@@ -469,8 +469,7 @@ public class XMLUtils
 	{
 		try
 		{
-			DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = fact.newDocumentBuilder();
+			DocumentBuilder builder = newDefaultDocumentBuilder();
 			Document doc = builder.newDocument(); 
 
 			return doc;
@@ -603,7 +602,7 @@ public class XMLUtils
 			String className = props.getProperty(XMLUtils.SYSTEM_PROP_XML_FACTORY);
 			
 			if (className == null)
-				fact = DocumentBuilderFactory.newInstance();
+				fact = null;
 			else
 			{
 				try
@@ -619,10 +618,19 @@ public class XMLUtils
 				}				
 			}			
 			 
-			applyProperties(fact, properties);
-			
-			DocumentBuilder builder = fact.newDocumentBuilder();
-			
+			DocumentBuilder builder;
+			if (fact == null && properties == null)
+			{
+				builder = newDefaultDocumentBuilder();
+			}
+			else
+			{
+				if (fact == null)
+					fact = DocumentBuilderFactory.newInstance();
+				
+				applyProperties(fact, properties);
+				builder = fact.newDocumentBuilder();
+			}
 			
 			try
 			{
@@ -745,11 +753,17 @@ public class XMLUtils
 	{
 		try
 		{
-			DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
-			
-			applyProperties(fact, properties);
-			
-			DocumentBuilder builder = fact.newDocumentBuilder();
+			DocumentBuilder builder;
+			if (properties == null)
+			{
+				builder = newDefaultDocumentBuilder();
+			}
+			else
+			{
+				DocumentBuilderFactory fact = DocumentBuilderFactory.newInstance();
+				applyProperties(fact, properties);
+				builder = fact.newDocumentBuilder();
+			}
 			
 			if (systemRelativePath != null)
 			{
@@ -780,6 +794,25 @@ public class XMLUtils
 		}
 	}
 
+	/**
+	 * Creates a document builder from the shared, default-configured factory.  Looking up the factory implementation
+	 * is costly, so it is only done once.
+	 * @return New document builder
+	 * @throws ParserConfigurationException
+	 */
+	private static synchronized DocumentBuilder newDefaultDocumentBuilder() throws ParserConfigurationException
+	{
+		if (g_defaultFactory == null)
+			g_defaultFactory = DocumentBuilderFactory.newInstance();
+		
+		return g_defaultFactory.newDocumentBuilder();
+	}
+	
+	/**
+	 * Shared factory used when no specific parser properties are requested
+	 */
+	private static DocumentBuilderFactory g_defaultFactory = null;
+
 	private static void applyProperties(DocumentBuilderFactory fact, XMLInputProperties properties)
 			throws ParserConfigurationException
 	{
@@ -18,17 +18,21 @@
 package com.gametable.data;
 
 import java.awt.Image;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.gametable.GametableApp;
 import com.gametable.data.net.NetRequestFile;
 import com.gametable.data.net.NetRequestFile.FileRequestListenerIF;
 import com.gametable.net.NetworkConnectionIF;
+import com.gametable.util.AssetStore;
 import com.gametable.util.ImageCache;
 import com.gametable.util.Images;
+import com.gametable.util.Log;
 import com.gametable.util.UtilityFunctions;
 
 /**
@@ -152,6 +156,46 @@ public class BasicMapElementType implements MapElementTypeIF
 	 * Map element type library we are part of
 	 */
 	private final BasicMapElementTypeLibrary m_library;
+	
+	/**
+	 * Hash identifying the content of the image (see {@link #getContentHash()})
+	 */
+	private String m_contentHash = null;
+	
+	/**
+	 * True if the last attempt to load this type's image from the network failed
+	 */
+	private volatile boolean m_loadFailed = false;
+	
+	/**
+	 * Content being transferred, by content hash
+	 */
+	private static final Map<String, HashRequest> g_requestsByHash = new HashMap<String, HashRequest>();
+	
+	/**
+	 * Transfer of content shared by several types
+	 */
+	private static class HashRequest
+	{
+		/**
+		 * Type whose transfer brings the content
+		 */
+		final BasicMapElementType requester;
+		
+		/**
+		 * Other types waiting for the content
+		 */
+		final List<BasicMapElementType> waiting = new ArrayList<BasicMapElementType>();
+		
+		/**
+		 * Constructor
+		 * @param requester Type whose transfer brings the content
+		 */
+		HashRequest(BasicMapElementType requester)
+		{
+			this.requester = requester;
+		}
+	}
 
 	/**
 	 * @revise this constructor forces the use of an image + file name + loading through local path [...] I would advise a
@@ -368,48 +412,230 @@ public class BasicMapElementType implements MapElementTypeIF
 		return m_loaded;
 	}
 	
+	/**
+	 * Get the hash identifying the content of this type's image (see {@link AssetStore}).  For a type that is not loaded
+	 * yet, this is the hash advertised by the host, if any.
+	 * 
+	 * @return Content hash or null
+	 */
+	public String getContentHash()
+	{
+		if (m_contentHash == null && m_loaded)
+			m_contentHash = AssetStore.getHash(m_imageFile);
+		
+		return m_contentHash;
+	}
+	
+	/**
+	 * Set the content hash advertised by the host for a type that is not loaded yet.  When loading the type from the
+	 * network, a local file with the same content is used instead of transferring the image.
+	 * 
+	 * @param hash Content hash or null
+	 */
+	public void setContentHash(String hash)
+	{
+		if (!m_loaded)
+			m_contentHash = hash;
+	}
+	
 	/*
 	 * @see com.gametable.data.MapElementTypeIF#loadDataFromNetwork(com.gametable.net.NetworkConnectionIF)
 	 */
 	@Override
-	public void loadDataFromNetwork(NetworkConnectionIF conn)
+	public void loadDataFromNetwork(final NetworkConnectionIF conn)
 	{
-		if (!m_loaded)
+		if (m_loaded)
+			return;
+		
+		m_loadFailed = false;
+		
+		final File destination = new File( m_library.getName() + File.separator + m_placeHolderFor);
+		final String hash = m_contentHash;
+		
+		if (hash != null)
 		{
-			FileRequestListenerIF listener = new FileRequestListenerIF() {
-				/*
-				 * @see com.gametable.ui.net.NetRequestImage.FileRequestListenerIF#onFileRequestReceived(java.lang.String, java.io.File)
-				 */
-				@Override
-				public void onFileRequestReceived(String fqn, File file)
+			// We might already hold the content, whatever its name
+			File local = AssetStore.find(hash);
+			if (local != null && copyFile(local, destination))
+			{
+				setImageFile(destination);
+				return;
+			}
+			
+			synchronized (g_requestsByHash)
+			{
+				// The same content is already being transferred (for this type or another one) - wait for it
+				HashRequest request = g_requestsByHash.get(hash);
+				if (request != null)
 				{
-//					BasicMapElementType type = new BasicMapElementType(m_library, file, m_faceSize, m_layerType);
-//					type.load();
-//					m_library.addElementType(type);
-					
-					m_imageFile = file;
+					if (request.requester != this && !request.waiting.contains(this))
+						request.waiting.add(this);
 					
-					try
-					{
-						m_imageFileName = m_imageFile.getCanonicalPath();
-					}
-					catch (IOException e)
-					{
-						throw new IllegalArgumentException("Invalid file " + m_imageFile);
-					}
-					
-					m_placeHolderFor = null;
-					m_fullyQualifiedName = null;
-					load();
+					return;
+				}
+				
+				g_requestsByHash.put(hash, new HashRequest(this));
+			}
+		}
+		
+		FileRequestListenerIF listener = new FileRequestListenerIF() {
+			/*
+			 * @see com.gametable.ui.net.NetRequestImage.FileRequestListenerIF#onFileRequestReceived(java.lang.String, java.io.File)
+			 */
+			@Override
+			public void onFileRequestReceived(String fqn, File file)
+			{
+				// Other types and later lookups rely on the file holding the advertised content
+				if (hash != null && !hash.equals(AssetStore.getHash(file)))
+				{
+					Log.log(Log.SYS, "Received file does not match its content hash: " + file);
+					file.delete();
+					onFileRequestFailed(fqn);
+					return;
+				}
+				
+				AssetStore.register(file);
+				setImageFile(file);
+				
+				if (hash == null)
+					return;
+				
+				// Types waiting for the same content get a copy of the file
+				for (BasicMapElementType type : endHashRequest(hash))
+				{
+					// Might have been loaded in the mean time 
+					if (type.m_placeHolderFor == null)
+						continue;
 					
-					// Trigger a refresh through the library's listeners
-					m_library.addElementType(BasicMapElementType.this);
+					File copy = new File(type.m_library.getName() + File.separator + type.m_placeHolderFor);
+					if (copyFile(file, copy))
+						type.setImageFile(copy);
 				}
-			};
+			}
+			
+			/*
+			 * @see com.gametable.data.net.NetRequestFile.FileRequestListenerIF#onFileRequestFailed(java.lang.String)
+			 */
+			@Override
+			public void onFileRequestFailed(String fqn)
+			{
+				m_loadFailed = true;
+				
+				// Trigger a refresh through the library's listeners (see AssetPrefetch)
+				m_library.addElementType(BasicMapElementType.this);
+				
+				if (hash == null)
+					return;
+				
+				// Types waiting for the same content request it under their own name
+				for (BasicMapElementType type : endHashRequest(hash))
+					type.loadDataFromNetwork(conn);
+			}
 			
-			File destination = new File( m_library.getName() + File.separator + m_placeHolderFor);
-			NetRequestFile.requestFile(conn, BasicMapElementType.class.getName(), getFullyQualifiedName(), destination, listener);
+			/**
+			 * Stop tracking the transfer of this type's content
+			 * @param hash Content hash
+			 * @return Types that were waiting for the content
+			 */
+			private List<BasicMapElementType> endHashRequest(String hash)
+			{
+				synchronized (g_requestsByHash)
+				{
+					HashRequest request = g_requestsByHash.get(hash);
+					if (request == null || request.requester != BasicMapElementType.this)
+						return Collections.emptyList();
+					
+					g_requestsByHash.remove(hash);
+					return request.waiting;
+				}
+			}
+		};
+		
+		NetRequestFile.requestFile(conn, BasicMapElementType.class.getName(), getFullyQualifiedName(), destination, listener);
+	}
+	
+	/**
+	 * @return True if the last attempt to load this type's image from the network failed.  Cleared when the image is
+	 *         requested again.
+	 */
+	public boolean isLoadFailed()
+	{
+		return m_loadFailed;
+	}
+	
+	/**
+	 * Copy a file, unless source and destination are the same file
+	 * 
+	 * @param source File to copy
+	 * @param destination Destination file
+	 * @return True on success
+	 */
+	private static boolean copyFile(File source, File destination)
+	{
+		if (source.getAbsoluteFile().equals(destination.getAbsoluteFile()))
+			return true;
+		
+		File folder = destination.getAbsoluteFile().getParentFile();
+		if (folder != null && !folder.exists())
+			folder.mkdirs();
+		
+		try
+		{
+			InputStream in = new FileInputStream(source);
+			try
+			{
+				OutputStream out = new FileOutputStream(destination);
+				try
+				{
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) > 0)
+						out.write(buffer, 0, read);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			Log.log(Log.SYS, e);
+			return false;
+		}
+		
+		AssetStore.register(destination);
+		return true;
+	}
+	
+	/**
+	 * Replace this type's placeholder with an image file received or found locally, and load it
+	 * 
+	 * @param file Image file
+	 */
+	private void setImageFile(File file)
+	{
+		m_imageFile = file;
+		
+		try
+		{
+			m_imageFileName = m_imageFile.getCanonicalPath();
 		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Invalid file " + m_imageFile);
+		}
+		
+		m_placeHolderFor = null;
+		m_fullyQualifiedName = null;
+		load();
+		
+		// Trigger a refresh through the library's listeners
+		m_library.addElementType(BasicMapElementType.this);
 	}
 
 	/**
@@ -426,6 +652,10 @@ public class BasicMapElementType implements MapElementTypeIF
 			// Load image from file name
 			m_image = ImageCache.getImage(m_imageFile);
 		}
+		
+		// Recomputed from the file on demand
+		if (m_placeHolderFor == null)
+			m_contentHash = null;
 
 		m_listIcon = null;
 
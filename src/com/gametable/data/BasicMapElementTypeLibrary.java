@@ -25,6 +25,7 @@ import com.gametable.GametableApp;
 import com.gametable.data.MapElementTypeIF.Layer;
 import com.gametable.data.net.NetRequestFile;
 import com.gametable.data.net.NetRequestFile.FileSourceIF;
+import com.gametable.util.AssetStore;
 import com.gametable.util.UtilityFunctions;
 
 /**
@@ -244,6 +245,9 @@ public class BasicMapElementTypeLibrary extends MapElementTypeLibrary
 			return null;
 
 		BasicMapElementType type = new BasicMapElementType(this, imageFile, faceSize, defaultLayer);
+		
+		// Local images can stand in for images the host refers to under another name
+		AssetStore.register(imageFile);
 
 		if (!skipUnloaded || type.isLoaded())
 		{
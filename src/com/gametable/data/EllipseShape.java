@@ -0,0 +1,139 @@
+/*
+ * EllipseShape.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+
+/**
+ * Outline of an ellipse (ex: drawn with the circle tool)
+ */
+public class EllipseShape extends MapShape
+{
+	/**
+	 * Maximum distance between the ellipse and the outline used for cropping, in map units
+	 */
+	private static final double	OUTLINE_TOLERANCE	= 1.0;
+
+	/**
+	 * Minimum number of points on the cropping outline
+	 */
+	private static final int		MIN_OUTLINE_POINTS	= 8;
+
+	/**
+	 * Maximum number of points on the cropping outline
+	 */
+	private static final int		MAX_OUTLINE_POINTS	= 1024;
+
+	/**
+	 * Constructor
+	 *
+	 * @param bounds Rectangle within which the ellipse is inscribed, in map coordinates
+	 * @param color Color of the outline
+	 */
+	public EllipseShape(MapRectangle bounds, Color color)
+	{
+		this(new int[] { bounds.topLeft.x, bounds.topLeft.y, bounds.topLeft.x + bounds.width, bounds.topLeft.y + bounds.height }, color);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param coords Two opposite corners of the rectangle within which the ellipse is inscribed (x, y pairs). The array
+	 *          is kept by the shape.
+	 * @param color Color of the outline
+	 */
+	EllipseShape(int[] coords, Color color)
+	{
+		super(coords, color);
+	}
+
+	/**
+	 * Create a circle
+	 *
+	 * @param center Center of the circle, in map coordinates
+	 * @param radius Radius of the circle, in map units
+	 * @param color Color of the outline
+	 * @return New shape
+	 */
+	public static EllipseShape createCircle(MapCoordinates center, int radius, Color color)
+	{
+		return new EllipseShape(new int[] { center.x - radius, center.y - radius, center.x + radius, center.y + radius }, color);
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#getType()
+	 */
+	@Override
+	public Type getType()
+	{
+		return Type.ELLIPSE;
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#toViewShape(int)
+	 */
+	@Override
+	public Shape toViewShape(int tileSize)
+	{
+		final MapRectangle bounds = getBounds();
+
+		final int x = toView(bounds.topLeft.x, tileSize);
+		final int y = toView(bounds.topLeft.y, tileSize);
+
+		// Java2D flattens the curve based on its size on screen
+		return new Ellipse2D.Float(x, y, toView(bounds.topLeft.x + bounds.width, tileSize) - x, toView(bounds.topLeft.y + bounds.height, tileSize) - y);
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#getOutline()
+	 */
+	@Override
+	protected int[] getOutline()
+	{
+		final MapRectangle bounds = getBounds();
+
+		final double radiusX = bounds.width / 2.0;
+		final double radiusY = bounds.height / 2.0;
+		final double centerX = bounds.topLeft.x + radiusX;
+		final double centerY = bounds.topLeft.y + radiusY;
+
+		// Enough points to keep the chords within tolerance of the curve
+		final double radius = Math.max(radiusX, radiusY);
+		int count = MIN_OUTLINE_POINTS;
+		if (radius > OUTLINE_TOLERANCE)
+		{
+			final double step = 2 * Math.acos(1 - OUTLINE_TOLERANCE / radius);
+			count = (int) Math.min(MAX_OUTLINE_POINTS, Math.max(MIN_OUTLINE_POINTS, Math.ceil(2 * Math.PI / step)));
+		}
+
+		final int[] outline = new int[(count + 1) * 2];
+		for (int i = 0; i < count; i++)
+		{
+			final double angle = 2 * Math.PI * i / count;
+			outline[i * 2] = (int) Math.round(centerX + Math.cos(angle) * radiusX);
+			outline[i * 2 + 1] = (int) Math.round(centerY + Math.sin(angle) * radiusY);
+		}
+
+		// Closed outline
+		outline[count * 2] = outline[0];
+		outline[count * 2 + 1] = outline[1];
+
+		return outline;
+	}
+}
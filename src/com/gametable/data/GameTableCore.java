@@ -31,6 +31,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -47,6 +48,7 @@ import com.gametable.data.net.*;
 import com.gametable.data.net.NetGroupAction.Action;
 import com.gametable.module.Module;
 import com.gametable.net.*;
+import com.gametable.net.OutboundQueue.Priority;
 import com.gametable.ui.BackgroundColor;
 import com.gametable.ui.GametableFrame;
 import com.gametable.util.Log;
@@ -93,9 +95,9 @@ public class GameTableCore implements MapElementRepositoryIF
 				if (shouldPropagateChanges(netEvent))
 				{
 					if (pointing)
-						sendBroadcast(NetShowPointingMarker.makePacket(player, location, true));
+						sendBroadcast(NetShowPointingMarker.makePacket(player, location, true), NetShowPointingMarker.getCoalesceKey(player), Priority.INTERACTIVE);
 					else
-						sendBroadcast(NetShowPointingMarker.makePacket(player, MapCoordinates.ORIGIN, false));
+						sendBroadcast(NetShowPointingMarker.makePacket(player, MapCoordinates.ORIGIN, false), NetShowPointingMarker.getCoalesceKey(player), Priority.INTERACTIVE);
 				}
 				
 				for (GameTableCoreListenerIF listener : m_listeners)
@@ -381,6 +383,12 @@ public class GameTableCore implements MapElementRepositoryIF
 		m_networkModule.registerMessageType(NetSetMapElementType.getMessageType());
 		m_networkModule.registerMessageType(NetShowPointingMarker.getMessageType());
 		
+		// Message IDs follow the registration order - new message types are registered last (see NetSendPlayerInfoToHost.VERSION)
+		m_networkModule.registerMessageType(NetJoinSnapshot.getMessageType());
+		m_networkModule.registerMessageType(NetSetMapElementPositions.getMessageType());
+		m_networkModule.registerMessageType(NetAssetManifest.getMessageType(m_networkResponder));
+		m_networkModule.registerMessageType(NetAddShapes.getMessageType());
+		
 		//--------------------------
 		NetworkListenerIF listener = new NetworkAdapter() {
 			/*
@@ -426,6 +434,10 @@ public class GameTableCore implements MapElementRepositoryIF
 	 */
 	private void onNetworkConnectionDropped(final NetworkConnectionIF conn)
 	{
+		// Keep what was received so far - transfers will resume on the next connection
+		NetRequestFile.onConnectionDropped(conn);
+		closeOutboundQueues(conn);
+		
 		if (getNetworkStatus() == NetworkStatus.CONNECTED) // if we were connected before
 		{
 			// we lost our connection to the host
@@ -439,7 +451,9 @@ public class GameTableCore implements MapElementRepositoryIF
 		if (dead != null) // if we found the player
 		{
 			// remove this player
-			removePlayer(dead);			
+			removePlayer(dead);
+			m_networkResponder.m_playersLoadingAssets.remove(dead);
+
 			sendPlayersInformation(); // send updated list of players
 			// notify other users
 			sendMessageBroadcast(MessageType.SYSTEM, dead.getPlayerName() + " " + "has left the session");
@@ -456,6 +470,8 @@ public class GameTableCore implements MapElementRepositoryIF
 	 */
 	private void onNetworkConnectionClosed()
 	{
+		closeOutboundQueues(null);
+		
 		// Make me the only player in the game
 		clearAllPlayers();
 		final Player me = new Player(m_playerName, m_characterName, -1, true);
@@ -502,6 +518,9 @@ public class GameTableCore implements MapElementRepositoryIF
 				// Send player info to the host
 				send(NetSendPlayerInfoToHost.makePacket(me, m_networkModule.getPassword()), conn);
 				
+				// Resume file transfers interrupted by a previous disconnection
+				NetRequestFile.resumeRequests(conn);
+				
 				m_loggingIn = false;
 			}
 			catch (final Exception ex)
@@ -528,7 +547,60 @@ public class GameTableCore implements MapElementRepositoryIF
 	 */
 	public void sendBroadcast(final byte[] packet)
 	{
-		m_networkModule.sendBroadcast(packet);
+		sendBroadcast(packet, null);
+	}
+	
+	/**
+	 * Broadcasts a packet updating a given state (ex: the position of an element).  The packet replaces any packet with the
+	 * same key still waiting to be sent to a player (see {@link OutboundQueue}).
+	 * @param packet
+	 * @param coalesceKey Key identifying the updated state, or null if the packet must always be sent
+	 */
+	public void sendBroadcast(final byte[] packet, Object coalesceKey)
+	{
+		sendBroadcast(packet, coalesceKey, Priority.NORMAL);
+	}
+	
+	/**
+	 * Broadcasts a packet with a given priority (see {@link OutboundQueue.Priority}).  Players who are still loading the
+	 * assets of the map only receive INTERACTIVE packets: the game state changes made meanwhile are part of the snapshot
+	 * they receive once ready (built later on the same thread), and modules send them their own state when notified of
+	 * the join.
+	 * @param packet
+	 * @param coalesceKey Key identifying the updated state, or null if the packet must always be sent
+	 * @param priority Priority lane of the packet
+	 */
+	public void sendBroadcast(final byte[] packet, Object coalesceKey, Priority priority)
+	{
+		switch (getNetworkStatus())
+		{
+		case HOSTING:
+			for (Player player : getPlayers())
+			{
+				if (player.getConnection() == null)
+					continue;
+				
+				if (priority != Priority.INTERACTIVE && m_networkResponder.m_playersLoadingAssets.contains(player))
+					continue;
+				
+				getOutboundQueue(player.getConnection()).enqueue(packet, coalesceKey, priority);
+			}
+			break;
+			
+		case CONNECTED:
+			if (m_hostConnection != null)
+			{
+				getOutboundQueue(m_hostConnection).enqueue(packet, coalesceKey, priority);
+				break;
+			}
+			
+			m_networkModule.sendBroadcast(packet);
+			break;
+			
+		default:
+			m_networkModule.sendBroadcast(packet);
+			break;
+		}
 	}
 	
 	/**
@@ -538,8 +610,65 @@ public class GameTableCore implements MapElementRepositoryIF
 	 */
 	public void send(final byte[] packet, final NetworkConnectionIF conn)
 	{
-		m_networkModule.send(packet, conn);
+		send(packet, conn, Priority.NORMAL);
+	}
+	
+	/**
+	 * Sends a packet through the specified connection with a given priority (see {@link OutboundQueue.Priority}).
+	 * @param packet
+	 * @param conn
+	 * @param priority Priority lane of the packet
+	 */
+	public void send(final byte[] packet, final NetworkConnectionIF conn, Priority priority)
+	{
+		getOutboundQueue(conn).enqueue(packet, null, priority);
 	}
+	
+	/**
+	 * Get the outbound queue of a connection, creating it if needed
+	 * @param conn Network connection
+	 * @return Outbound queue
+	 */
+	private OutboundQueue getOutboundQueue(final NetworkConnectionIF conn)
+	{
+		synchronized (m_outboundQueues)
+		{
+			OutboundQueue queue = m_outboundQueues.get(conn);
+			if (queue == null)
+			{
+				queue = new OutboundQueue(m_networkModule, conn);
+				m_outboundQueues.put(conn, queue);
+			}
+			
+			return queue;
+		}
+	}
+	
+	/**
+	 * Close the outbound queue of a connection, discarding its pending packets
+	 * @param conn Network connection, or null to close all queues
+	 */
+	private void closeOutboundQueues(final NetworkConnectionIF conn)
+	{
+		synchronized (m_outboundQueues)
+		{
+			Iterator<Map.Entry<NetworkConnectionIF, OutboundQueue>> it = m_outboundQueues.entrySet().iterator();
+			while (it.hasNext())
+			{
+				Map.Entry<NetworkConnectionIF, OutboundQueue> entry = it.next();
+				if (conn == null || entry.getKey() == conn)
+				{
+					entry.getValue().close();
+					it.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Outbound packet queues, by connection
+	 */
+	private final Map<NetworkConnectionIF, OutboundQueue> m_outboundQueues = new HashMap<NetworkConnectionIF, OutboundQueue>();
 
 	/**
 	 * Sends a packet through the networking module to the specified player
@@ -547,13 +676,24 @@ public class GameTableCore implements MapElementRepositoryIF
 	 * @param player
 	 */
 	private void send(final byte[] packet, final Player player)
+	{
+		send(packet, player, Priority.NORMAL);
+	}
+	
+	/**
+	 * Sends a packet to a player with a given priority
+	 * @param packet
+	 * @param player
+	 * @param priority Priority lane of the packet
+	 */
+	private void send(final byte[] packet, final Player player, Priority priority)
 	{
 		if (player.getConnection() == null)
 		{
 			throw new IllegalStateException("You do not have direct connection to player " + player.getCharacterName());
 		}
 		
-		send(packet, player.getConnection());		
+		send(packet, player.getConnection(), priority);		
 	}
 	
 	/**
@@ -857,6 +997,20 @@ public class GameTableCore implements MapElementRepositoryIF
 			// NB : send checks network event to prevent rebroadcasts
 			send(Action.ADD_ELEMENT, group, mapElementID, netEvent);
 		}
+		
+		@Override
+		public void onAddMapElementsToGroup(Group group, List<MapElementID> mapElementIDs, NetworkEvent netEvent)
+		{
+			// NB : send checks network event to prevent rebroadcasts
+			sendElements(Action.ADD_ELEMENTS, group, mapElementIDs, netEvent);
+		}
+		
+		@Override
+		public void onRemoveMapElementsFromGroup(Group group, List<MapElementID> mapElementIDs, NetworkEvent netEvent)
+		{
+			// NB : send checks network event to prevent rebroadcasts
+			sendElements(Action.REMOVE_ELEMENTS, group, mapElementIDs, netEvent);
+		}
 
 		/**
 		 * Send a network packet. Checks network event to prevent rebroadcasts
@@ -875,6 +1029,24 @@ public class GameTableCore implements MapElementRepositoryIF
 			if (isActiveMapPublic())
 				GameTableCore.this.sendBroadcast(NetGroupAction.makePacket(action, group == null ? "" : group.getName(), null, elementID, getPlayer()));
 		}
+		
+		/**
+		 * Send a network packet affecting multiple elements. Checks network event to prevent rebroadcasts
+		 * 
+		 * @param action ADD_ELEMENTS or REMOVE_ELEMENTS
+		 * @param group Affected group
+		 * @param elementIDs Unique IDs of the affected elements
+		 * @param netEvent Triggering event
+		 */
+		private void sendElements(NetGroupAction.Action action, final Group group, final List<MapElementID> elementIDs, NetworkEvent netEvent)
+		{
+			if (!shouldPropagateChanges(netEvent))
+				return;
+			
+			// Ignore if editing the private map (publish action will handle networking when needed)
+			if (isActiveMapPublic())
+				GameTableCore.this.sendBroadcast(NetGroupAction.makePacket(action, group.getName(), elementIDs, getPlayer()));
+		}
 
 		/**
 		 * Send a network rename packet. Checks network event to prevent rebroadcasts
@@ -943,7 +1115,7 @@ public class GameTableCore implements MapElementRepositoryIF
 			m_chatEngine.displayMessage(msgType, text);
 		
 		if (getNetworkStatus() != NetworkStatus.DISCONNECTED)
-			sendBroadcast(NetSendChatText.makeBroadcastPacket(msgType, text));
+			sendBroadcast(NetSendChatText.makeBroadcastPacket(msgType, text), null, Priority.INTERACTIVE);
 	}
 	
 	/**
@@ -973,7 +1145,7 @@ public class GameTableCore implements MapElementRepositoryIF
 		}
 		else
 		{
-			sendBroadcast(NetSendChatText.makePacket(msgType, to, text));
+			sendBroadcast(NetSendChatText.makePacket(msgType, to, text), null, Priority.INTERACTIVE);
 		}
 	}
 
@@ -1082,6 +1254,20 @@ public class GameTableCore implements MapElementRepositoryIF
 			listener.onGridModeChanged(gridMode, netEvent);
 	}
 	
+	/**
+	 * Get the registry of the IDs of the elements of both maps
+	 * @return Registry
+	 */
+	public MapElementIDRegistry getMapElementIDRegistry()
+	{
+		return m_mapElementIDRegistry;
+	}
+	
+	/**
+	 * Registry of the IDs of the elements of both maps
+	 */
+	private final MapElementIDRegistry m_mapElementIDRegistry = new MapElementIDRegistry();
+	
 	/**
 	 * @return The currently set grid mode implementation
 	 */
@@ -1298,6 +1484,19 @@ public class GameTableCore implements MapElementRepositoryIF
     	listener.onPlayerNameChanged(getPlayer(), playerName, characterName, null);
 	}
 	
+	/**
+	 * Notify listeners of the progress of a public map snapshot being received (used by network messages)
+	 * 
+	 * @param bytesReceived Number of bytes received so far
+	 * @param bytesTotal Total size of the snapshot, in bytes
+	 * @param netEvent Network event information
+	 */
+	public void notifyMapTransferProgress(int bytesReceived, int bytesTotal, NetworkEvent netEvent)
+	{
+		for (GameTableCoreListenerIF listener : m_listeners)
+			listener.onMapTransferProgress(bytesReceived, bytesTotal, netEvent);
+	}
+	
 	/**
 	 * @return The current user's character name
 	 */
@@ -1356,6 +1555,11 @@ public class GameTableCore implements MapElementRepositoryIF
 	 */
 	private boolean						m_backgroundTypeMapElement	= false;
 	
+	/**
+	 * Elements of both the public and private maps, indexed by ID.  Maintained by the core's map listener.
+	 */
+	private final Map<MapElementID, MapElement>	m_mapElementsByID	= new ConcurrentHashMap<MapElementID, MapElement>();
+	
 	/**
 	 * Core's map listener
 	 */
@@ -1369,6 +1573,16 @@ public class GameTableCore implements MapElementRepositoryIF
 		@Override
 		public void onMapElementRemoved(GameTableMap map, MapElement mapElement, boolean batch, NetworkEvent netEvent)
 		{
+			MapElementID id = mapElement.getID();
+			if (m_mapElementsByID.remove(id, mapElement))
+			{
+				// The element might still be held by the other map (ex: while being moved between maps)
+				GameTableMap other = (map == m_publicMap) ? m_privateMap : m_publicMap;
+				MapElement el = other.getMapElement(id);
+				if (el != null)
+					m_mapElementsByID.put(id, el);
+			}
+			
 			if (!batch)
 			{
 				if (shouldPropagateChanges(netEvent))
@@ -1398,6 +1612,20 @@ public class GameTableCore implements MapElementRepositoryIF
 				sendBroadcast(NetRemoveMapElement.makeRemoveAllPacket());
 		}
 		
+		/*
+		 * @see com.gametable.data.GameTableMapListenerIF#onMapElementsMoved(com.gametable.data.GameTableMap, java.util.Map, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onMapElementsMoved(GameTableMap map, Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+		{
+			if (map.isPublicMap())
+			{
+				// Broadcast only if we're not triggered by a network event
+				if (shouldPropagateChanges(netEvent))
+					sendBroadcast(NetSetMapElementPositions.makePacket(oldPositions.keySet()));
+			}
+		}
+		
 		/*
 		 * @see com.gametable.data.GameTableMapAdapter#onLineSegmentAdded(com.gametable.data.GameTableMap, com.gametable.data.LineSegment, boolean)
 		 */
@@ -1443,6 +1671,20 @@ public class GameTableCore implements MapElementRepositoryIF
 			}
 		}
 		
+		/*
+		 * @see com.gametable.data.GameTableMapListenerIF#onShapesAdded(com.gametable.data.GameTableMap, java.util.List, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onShapesAdded(GameTableMap map, List<MapShape> shapes, NetworkEvent netEvent)
+		{
+			if (map.isPublicMap())
+			{
+				// Broadcast only if we're not triggered by a network event
+				if (shouldPropagateChanges(netEvent))
+					sendBroadcast(NetAddShapes.makePacket(shapes));
+			}
+		}
+		
 		/*
 		 * @see com.gametable.data.GameTableMapAdapter#onClearLineSegments(com.gametable.data.GameTableMap, com.gametable.net.NetworkEvent)
 		 */
@@ -1457,12 +1699,34 @@ public class GameTableCore implements MapElementRepositoryIF
 			}
 		}		
 		
+		/*
+		 * @see com.gametable.data.GameTableMapListenerIF#onMapElementsAdded(com.gametable.data.GameTableMap, java.util.List, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onMapElementsAdded(GameTableMap map, List<MapElement> mapElements, NetworkEvent netEvent)
+		{
+			for (MapElement mapElement : mapElements)
+				m_mapElementsByID.put(mapElement.getID(), mapElement);
+			
+			// Sent as a single message
+			if (map.isPublicMap() && shouldPropagateChanges(netEvent))
+			{
+				for (int i = 0; i < mapElements.size(); i += MAX_ELEMENTS_PER_PACKET)
+				{
+					List<MapElement> chunk = mapElements.subList(i, Math.min(mapElements.size(), i + MAX_ELEMENTS_PER_PACKET));
+					sendBroadcast(NetAddMapElement.makePacket(chunk, true));
+				}
+			}
+		}
+		
 		/*
 		 * @see com.gametable.data.GameTableMapAdapter#onMapElementInstanceAdded(com.gametable.data.GameTableMap, com.gametable.data.MapElement, com.gametable.net.NetworkEvent)
 		 */
 		@Override
 		public void onMapElementAdded(GameTableMap map, MapElement mapElement, NetworkEvent netEvent)
 		{
+			m_mapElementsByID.put(mapElement.getID(), mapElement);
+			
 			if (map.isPublicMap())
 			{
 				// Broadcast only if we're not triggered by a network event
@@ -1470,12 +1734,17 @@ public class GameTableCore implements MapElementRepositoryIF
 					sendBroadcast(NetAddMapElement.makePacket(mapElement));
 			}
 		}
+		
+		/**
+		 * Maximum number of elements sent in a single add message, to keep messages of a reasonable size
+		 */
+		private static final int MAX_ELEMENTS_PER_PACKET = 256;
 	}
 	
 	/**
 	 * Map element listener for use by the core
 	 */
-	private class MapElementListener implements MapElementListenerIF
+	private class MapElementListener extends MapElementAdapter
 	{
 		/**
 		 * Constructor
@@ -1486,6 +1755,15 @@ public class GameTableCore implements MapElementRepositoryIF
 			m_listenToPublicMap = publicMap;
 		}
 		
+		/*
+		 * @see com.gametable.data.MapElementAdapter#onMapElementsMoved(java.util.Map, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onMapElementsMoved(Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+		{
+			// Broadcast as a single message by GameTableMapListener.onMapElementsMoved
+		}
+		
 		/*
 		 * @see com.gametable.data.MapElementAdapter#onPositionChanged(com.gametable.data.MapElement, com.gametable.data.MapCoordinates, com.gametable.data.MapCoordinates, com.gametable.net.NetworkEvent)
 		 */
@@ -1496,7 +1774,7 @@ public class GameTableCore implements MapElementRepositoryIF
 			{
 				// Broadcast only if we're not triggered by a network event
 				if (shouldPropagateChanges(netEvent))
-					sendBroadcast(NetSetMapElementPosition.makePacket(element, newPosition));
+					sendBroadcast(NetSetMapElementPosition.makePacket(element, newPosition), NetSetMapElementPosition.getCoalesceKey(element.getID()));
 			}
 		}
 		
@@ -1742,11 +2020,10 @@ public class GameTableCore implements MapElementRepositoryIF
 	@Override
 	public MapElement getMapElement(MapElementID id)
 	{
-		MapElement el = m_publicMap.getMapElement(id);
-		if (el == null)
-			el = m_privateMap.getMapElement(id);
-
-		return el;
+		if (id == null)
+			return null;
+		
+		return m_mapElementsByID.get(id);
 	}
 
 	/**
@@ -1826,8 +2103,8 @@ public class GameTableCore implements MapElementRepositoryIF
 		{
 			if (!m_networkModule.getPassword().equals(password))
 			{
-				// Reject connection due to invalid password			
-				send(NetLoginRejected.makePacket(NetLoginRejected.RejectReason.INVALID_PASSWORD), sourceConnection);
+				// Reject connection due to invalid password - sent directly, as the connection is closed right away
+				m_networkModule.send(NetLoginRejected.makePacket(NetLoginRejected.RejectReason.INVALID_PASSWORD), sourceConnection);
 				sourceConnection.close();
 				return;
 			}
@@ -1845,24 +2122,32 @@ public class GameTableCore implements MapElementRepositoryIF
 
 			sendPlayersInformation();
 
-			send(NetSetGridMode.makePacket(getGridModeID()), player);
+			// List the assets used by the map first - the map is sent once the player reports them loaded
+			m_playersLoadingAssets.add(player);
+			send(NetAssetManifest.makePacket(GameTableCore.this, true), player);
+		}
+		
+		/**
+		 * A joining player has loaded the assets listed in its manifest.  Used by NetAssetManifest.
+		 * @param sourceConnection Network source connection
+		 */
+		public void onPlayerAssetsReady(final NetworkConnectionIF sourceConnection)
+		{
+			Player player = getPlayerFromConnection(sourceConnection);
+			if (player == null || !m_playersLoadingAssets.remove(player))
+				return;
 			
-			MapElementTypeIF type = getBackgroundMapElementType();
-			if (type != null)
+			// Send grid, background, public map and locks to the new player in a single snapshot.  Game state broadcasts
+			// were held back until now (see sendBroadcast), so nothing sent earlier is overwritten by the snapshot.
+			List<byte[]> packets = NetJoinSnapshot.makePackets(GameTableCore.this);
+			if (packets != null)
 			{
-				send(NetSetBackground.makePacket(type), player);
+				for (byte[] packet : packets)
+					send(packet, player, Priority.SNAPSHOT);
 			}
-			else
-			{
-				send(NetSetBackground.makePacket(getBackgroundColor()), player);
-			}
-
-			// Send all existing line segments to the new player
-			send(NetAddLineSegments.makePacket(m_publicMap.getLines()), player);
-
-			// Send all current map elements to the new player
-			for (MapElement pog : m_publicMap.getMapElements())
-				send(NetAddMapElement.makePacket(pog), player);
+			
+			// Player names may have changed while the broadcasts were held back
+			send(NetSendPlayersList.makePacket(player), player);
 			
 			for (GameTableCoreListenerIF listener : m_listeners)
 				listener.onPlayerJoined(player);
@@ -1870,6 +2155,11 @@ public class GameTableCore implements MapElementRepositoryIF
 			// let them know we're done sending them data from the login
 			send(NetLoginComplete.makePacket(), player);
 		}
+		
+		/**
+		 * Players who joined and are loading the assets listed in their manifest.  Only receive INTERACTIVE broadcasts.
+		 */
+		private final Set<Player> m_playersLoadingAssets = Collections.synchronizedSet(new HashSet<Player>());
 	}
 	
 	private final NetworkResponderCore m_networkResponder = new NetworkResponderCore();
@@ -1980,46 +2270,73 @@ public class GameTableCore implements MapElementRepositoryIF
 	 */
 	public void loadMapFromXML(File file, boolean loadPublic, boolean loadPrivate, NetworkEvent netEvent) throws IOException
 	{
-		Document doc;
-		doc = XMLUtils.parseXMLDocument(file);
-
-		Element root = doc.getDocumentElement();
-		if (!root.getTagName().equals("gt"))
-			throw new MapFormatException(file);
-
-		if (loadPrivate && loadPublic)
-			MapElementID.clear();
-
-		XMLSerializeConverter converter = new XMLSerializeConverter();
-
-		if (loadPublic)
-		{
-			Element publicEl = XMLUtils.getFirstChildElementByTagName(root, "public_map");
-			getMap(GameTableCore.MapType.PUBLIC).deserializeFromXML(publicEl, converter, netEvent);
-		}
-
-		if (loadPrivate)
-		{
-			Element privateEl = XMLUtils.getFirstChildElementByTagName(root, "private_map");
-			getMap(GameTableCore.MapType.PRIVATE).deserializeFromXML(privateEl, converter, netEvent);
-		}
-
-		if (loadPublic && loadPrivate)
+		MapXMLReader reader = new MapXMLReader(file);
+		
+		try
 		{
-			loadGridFromXML(root, converter, netEvent);
-			loadLockedElementsFromXML(root, converter, netEvent);
-
-			// Hook for modules to load data from save file
-			Element modulesEl = XMLUtils.getFirstChildElementByTagName(root, "modules");
-
-			if (modulesEl != null)
+			if (!"gt".equals(reader.nextChild()))
+				throw new MapFormatException(file);
+	
+			// Loading both maps replaces all elements - IDs from the file do not relate to the current ones
+			if (loadPrivate && loadPublic)
+				m_mapElementIDRegistry.clear();
+	
+			XMLSerializeConverter converter = new XMLSerializeConverter();
+			
+			Element gridEl = null;
+			Element lockedEl = null;
+			Map<String, Element> moduleEls = new HashMap<String, Element>();
+			
+			// The file is read in a single pass - maps are loaded as they are found
+			String name;
+			while ((name = reader.nextChild()) != null)
 			{
+				if (loadPublic && name.equals("public_map"))
+				{
+					getMap(GameTableCore.MapType.PUBLIC).deserializeFromXML(reader, converter, netEvent);
+				}
+				else if (loadPrivate && name.equals("private_map"))
+				{
+					getMap(GameTableCore.MapType.PRIVATE).deserializeFromXML(reader, converter, netEvent);
+				}
+				else if (loadPublic && loadPrivate && name.equals("grid") && gridEl == null)
+				{
+					gridEl = reader.readElement();
+				}
+				else if (loadPublic && loadPrivate && name.equals("locked") && lockedEl == null)
+				{
+					lockedEl = reader.readElement();
+				}
+				else if (loadPublic && loadPrivate && name.equals("modules"))
+				{
+					// Each module only receives its own section
+					while ((name = reader.nextChild()) != null)
+					{
+						String moduleName = name.equals("module") ? reader.getAttribute("name") : null;
+						if (moduleName != null && !moduleEls.containsKey(moduleName))
+							moduleEls.put(moduleName, reader.readElement());
+						else
+							reader.skip();
+					}
+				}
+				else
+				{
+					reader.skip();
+				}
+			}
+	
+			if (loadPublic && loadPrivate)
+			{
+				loadGridFromXML(gridEl, converter, netEvent);
+				loadLockedElementsFromXML(lockedEl, converter, netEvent);
+	
+				// Hook for modules to load data from save file
 				for (Module module : getRegisteredModules())
 				{
 					if (module.canSaveToXML())
 					{
-						Element moduleEl = XMLUtils.findFirstChildElement(modulesEl, "module", "name", module.getModuleName());
-
+						Element moduleEl = moduleEls.get(module.getModuleName());
+	
 						if (moduleEl != null)
 						{
 							module.loadFromXML(moduleEl, converter, netEvent);
@@ -2028,19 +2345,21 @@ public class GameTableCore implements MapElementRepositoryIF
 				}
 			}
 		}
-
+		finally
+		{
+			reader.close();
+		}
 	}
 	
 	/**
 	 * Load saved grid information from XML file
-	 * @param root XML root element
+	 * @param gridEl XML grid element (or null)
 	 * @param converter Converter class
 	 * @param netEvent Network event that triggered the load (or null)
 	 */
-	private void loadGridFromXML(Element root, XMLSerializeConverter converter, NetworkEvent netEvent)
+	private void loadGridFromXML(Element gridEl, XMLSerializeConverter converter, NetworkEvent netEvent)
 	{
 		// grid
-		Element gridEl = XMLUtils.getFirstChildElementByTagName(root, "grid");
 		if (gridEl != null)
 		{
 			GridModeID gridMode = GridModeID.SQUARES;
@@ -2090,14 +2409,13 @@ public class GameTableCore implements MapElementRepositoryIF
 	/**
 	 * Restore locked element list
 	 * 
-	 * @param root Root element
+	 * @param listEl XML locked element list (or null)
 	 * @param converter converter helper class
 	 * @parma netEvent Network event that triggered the load (or null)
 	 */
-	private void loadLockedElementsFromXML(Element root, XMLSerializeConverter converter, NetworkEvent netEvent)
+	private void loadLockedElementsFromXML(Element listEl, XMLSerializeConverter converter, NetworkEvent netEvent)
 	{
 		lockAllMapElements(GameTableCore.MapType.ACTIVE, false, netEvent);
-		Element listEl = XMLUtils.getFirstChildElementByTagName(root, "locked");
 		if (listEl == null)
 			return;
 
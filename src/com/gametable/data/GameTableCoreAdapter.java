@@ -96,4 +96,9 @@ public class GameTableCoreAdapter implements GameTableCoreListenerIF
 	@Override
 	public void onPointingLocationChanged(Player player, boolean pointing, MapCoordinates location, NetworkEvent netEvent) {}
 	
+	/*
+	 * @see com.gametable.data.GameTableCoreListenerIF#onMapTransferProgress(int, int, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onMapTransferProgress(int bytesReceived, int bytesTotal, NetworkEvent netEvent) {}
 }
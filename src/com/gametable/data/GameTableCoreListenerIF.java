@@ -114,4 +114,13 @@ public interface GameTableCoreListenerIF
 	 * @param netEvent Network event information or null if the event was not triggered by network
 	 */
 	public void onPointingLocationChanged(Player player, boolean pointing, MapCoordinates location, NetworkEvent netEvent);
+	
+	/**
+	 * Called as chunks of a public map snapshot are being received from the network
+	 * 
+	 * @param bytesReceived Number of bytes received so far
+	 * @param bytesTotal Total size of the snapshot, in bytes
+	 * @param netEvent Network event information
+	 */
+	public void onMapTransferProgress(int bytesReceived, int bytesTotal, NetworkEvent netEvent);
 }
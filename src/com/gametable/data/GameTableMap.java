@@ -17,14 +17,19 @@
  */
 package com.gametable.data;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.gametable.data.MapElementTypeIF.Layer;
 import com.gametable.net.NetworkEvent;
 import com.gametable.util.UtilityFunctions;
 import com.maziade.tools.XMLUtils;
@@ -54,14 +59,14 @@ public class GameTableMap implements MapElementRepositoryIF
 	}
 
 	/**
-	 * Lines drawn on the map
+	 * Lines drawn on the map, bucketed by location
 	 */
-	private final List<LineSegment>	m_lines;
-
+	private final LineSegmentStore	m_lines;
+	
 	/**
-	 * Unmodifiable version of m_lines
+	 * Vector shapes drawn on the map
 	 */
-	private final List<LineSegment>	m_linesUnmodifiable;
+	private final MapShapeStore	m_shapes;
 
 	private List<GameTableMapListenerIF> m_listeners = new CopyOnWriteArrayList<GameTableMapListenerIF>();
 
@@ -76,6 +81,12 @@ public class GameTableMap implements MapElementRepositoryIF
 	 * Unmodifiable list of elements
 	 */
 	private final List<MapElement>					m_mapElementsUnmodifiable;
+	
+	/**
+	 * Map elements indexed by ID.  IDs are unique instances (see {@link MapElementID#fromNumeric(long)}), so lookups are
+	 * resolved by identity.
+	 */
+	private final Map<MapElementID, MapElement>	m_mapElementsByID;
 
 	/**
 	 * Whether this is the public of private version of the map
@@ -96,15 +107,19 @@ public class GameTableMap implements MapElementRepositoryIF
 	{
 		m_publicMap = publicMap;
 
-		m_lines = new CopyOnWriteArrayList<LineSegment>();
-		m_linesUnmodifiable = Collections.unmodifiableList(m_lines);
+		m_lines = new LineSegmentStore();
+		m_shapes = new MapShapeStore();
 
 		m_mapElements = new ArrayList<MapElement>();
 		m_mapElementsUnmodifiable = Collections.unmodifiableList(m_mapElements);
+		m_mapElementsByID = new ConcurrentHashMap<MapElementID, MapElement>();
 		
 		m_groupManager = new GroupManager();
 		
+		m_layers = new MapElementLayers();
+		
 		m_elementListener = new MapElementAdapterOmni();
+		m_elementDispatcher = new ElementDispatcher();
 	}
 
 	/**
@@ -117,6 +132,12 @@ public class GameTableMap implements MapElementRepositoryIF
 	{
 		m_lines.add(ls);
 		
+		if (m_batch != null)
+		{
+			m_batch.addLines(Collections.singletonList(ls), netEvent);
+			return;
+		}
+		
 		for (GameTableMapListenerIF listener : m_listeners)
 			listener.onLineSegmentAdded(this, ls, false, netEvent);
 	}
@@ -141,16 +162,10 @@ public class GameTableMap implements MapElementRepositoryIF
 	{
 		m_lines.addAll(lines);
 		
-		// Batch listener first
-		for (GameTableMapListenerIF listener : m_listeners)
-			listener.onLineSegmentsAdded(this, lines, netEvent);
-		
-		// 'Macro' listeners second
-		for (LineSegment line : lines)
-		{
-			for (GameTableMapListenerIF listener : m_listeners)
-				listener.onLineSegmentAdded(this, line, false, netEvent);
-		}
+		if (m_batch != null)
+			m_batch.addLines(lines, netEvent);
+		else
+			fireLineSegmentsAdded(lines, netEvent);
 	}
 	
 	/**
@@ -163,6 +178,46 @@ public class GameTableMap implements MapElementRepositoryIF
 		addLineSegments(lines, null);
 	}
 	
+	/**
+	 * Adds a vector shape to the map
+	 * 
+	 * @param shape Shape to add
+	 */
+	public void addShape(MapShape shape)
+	{
+		addShapes(Collections.singletonList(shape), null);
+	}
+	
+	/**
+	 * Adds multiple vector shapes to the map
+	 * 
+	 * @param shapes Shapes to add
+	 * @param netEvent network event or null
+	 */
+	public void addShapes(List<MapShape> shapes, NetworkEvent netEvent)
+	{
+		m_shapes.addAll(shapes);
+		
+		if (m_batch != null)
+		{
+			m_batch.addShapes(shapes, netEvent);
+			return;
+		}
+		
+		for (GameTableMapListenerIF listener : m_listeners)
+			listener.onShapesAdded(this, shapes, netEvent);
+	}
+	
+	/**
+	 * Adds multiple vector shapes to the map
+	 * 
+	 * @param shapes Shapes to add
+	 */
+	public void addShapes(List<MapShape> shapes)
+	{
+		addShapes(shapes, null);
+	}
+	
 	/**
 	 * Erase part of the map
 	 * 
@@ -176,68 +231,33 @@ public class GameTableMap implements MapElementRepositoryIF
 	}
 	
 	/**
-	 * Erase part of the map
+	 * Erase part of the map.  Line segments and shapes crossing the region are cropped.
 	 * 
 	 * @param rect Rectangular region of the map to erase
-	 * @param colorSpecific If true, will erase line segments of matching color
-	 * @param color Color of the line segments to erase (if colorSpecific is true)
+	 * @param colorSpecific If true, will erase line segments and shapes of matching color
+	 * @param color Color of the line segments and shapes to erase (if colorSpecific is true)
 	 * @param netEvent Network event.  Null if the change is not caused by responding to a network message.
 	 */
 	public void removeLineSegments(final MapRectangle rect, boolean colorSpecific, final int color, NetworkEvent netEvent)
 	{
-		final MapCoordinates modelStart = rect.topLeft;
-		final MapCoordinates modelEnd = new MapCoordinates(modelStart.x + rect.width, modelStart.y + rect.height);
-
-		boolean modified = false;
-		final ArrayList<LineSegment> survivingLines = new ArrayList<LineSegment>();
-
-		for (LineSegment ls : getLines())
-		{
-			if (!colorSpecific || (ls.getColor().getRGB() == color))
-			{
-				// we are the color being erased, or we're in erase all mode
-				final List<LineSegment> result = ls.crop(modelStart, modelEnd);
-
-				if (result != null)
-				{
-					// No change if result contains only original line
-					if (result.size() ==1 && result.contains(ls))
-					{
-						survivingLines.add(ls);
-						continue;
-					}
-						
-					// this line segment is still alive
-					for(LineSegment line : result)
-						survivingLines.add(line);
-					
-					modified = true;
-				}
-				else
-					modified = true;
-			}
-			else
-			{
-				// we are not affected by this erasing because we aren't the color being erased.
-				survivingLines.add(ls);
-			}
-		}
+		// Only the segments and shapes crossing the erased region are cropped
+		boolean modified = m_lines.erase(rect, colorSpecific, color);
+		modified |= m_shapes.erase(rect, colorSpecific, color);
 		
 		// No modifications are to be applied, let's leave without causing reactions.
 		if (!modified)
 			return;
 		
+		// Erasing cannot be merged with pending additions - report those first
+		flushBatch();
+		
 		// If all lines were removed, go through the more efficient 'clear all lines' way.
-		if (survivingLines.size() == 0)
+		if (m_lines.isEmpty() && m_shapes.isEmpty())
 		{
 			removeLineSegments(netEvent);
 			return;			
 		}
 
-		// Replace all lines with surviving lines
-		m_lines.clear();
-		m_lines.addAll(survivingLines);
-
 		for (GameTableMapListenerIF listener : m_listeners)
 			listener.onEraseLineSegments(this, rect, colorSpecific, color, netEvent);
 	}
@@ -271,13 +291,100 @@ public class GameTableMap implements MapElementRepositoryIF
 	public void addMapElement(MapElement mapElement, NetworkEvent netEvent)
 	{
 		m_mapElements.add(mapElement);
+		m_mapElementsByID.put(mapElement.getID(), mapElement);
+		m_layers.add(mapElement);
 		
-		mapElement.addListener(m_elementListener);
+		mapElement.addListener(m_elementDispatcher);
+		
+		if (m_batch != null)
+		{
+			m_batch.addMapElements(Collections.singletonList(mapElement), netEvent);
+			return;
+		}
 		
 		for (GameTableMapListenerIF listener : m_listeners)
 			listener.onMapElementAdded(this, mapElement, netEvent);
 	}
 	
+	/**
+	 * Adds multiple element instances to the map in a single operation
+	 * 
+	 * @param mapElements Elements to add to the map
+	 */
+	public void addMapElements(List<MapElement> mapElements)
+	{
+		addMapElements(mapElements, null);
+	}
+	
+	/**
+	 * Adds multiple element instances to the map in a single operation.  Listeners are notified once all the elements
+	 * have been added.
+	 * 
+	 * @param mapElements Elements to add to the map
+	 * @param netEvent Network event that triggered the operation or null
+	 */
+	public void addMapElements(List<MapElement> mapElements, NetworkEvent netEvent)
+	{
+		// We'll create a copy of the list to prevent comodifications issues
+		List<MapElement> instances = new ArrayList<MapElement>(mapElements);
+		
+		m_mapElements.addAll(instances);
+		
+		for (MapElement mapElement : instances)
+		{
+			m_mapElementsByID.put(mapElement.getID(), mapElement);
+			m_layers.add(mapElement);
+			
+			mapElement.addListener(m_elementDispatcher);
+		}
+		
+		if (m_batch != null)
+			m_batch.addMapElements(instances, netEvent);
+		else
+			fireMapElementsAdded(instances, netEvent);
+	}
+	
+	/**
+	 * Start grouping changes to the map, its elements and its groups.  Until the matching {@link #commitBatch()}, the
+	 * map's data is updated immediately but listeners are not notified.  On commit, the buffered notifications are merged
+	 * and delivered at once: elements added or removed within the batch are reported through a single
+	 * onMapElementsAdded / onMapElementsRemoved call, positions through a single onMapElementsMoved call and successive
+	 * changes to the same element property through a single notification.
+	 * 
+	 * Operations affecting the whole map (erasing, clearing) deliver the pending notifications before their own.
+	 * 
+	 * Batches can be nested; notifications are delivered when the outermost batch is committed.  Always commit from a
+	 * finally block.
+	 */
+	public void beginBatch()
+	{
+		if (m_batchDepth++ == 0)
+			m_batch = new PendingMapChanges();
+		
+		m_groupManager.beginBatch();
+	}
+	
+	/**
+	 * Close a batch opened by {@link #beginBatch()}, delivering the buffered notifications if it is the outermost batch
+	 * 
+	 * @throws IllegalStateException if no batch is in progress
+	 */
+	public void commitBatch()
+	{
+		if (m_batchDepth == 0)
+			throw new IllegalStateException("No batch in progress");
+		
+		if (--m_batchDepth == 0)
+		{
+			PendingMapChanges batch = m_batch;
+			m_batch = null;
+			deliver(batch);
+		}
+		
+		// Group changes refer to the elements - they are reported last
+		m_groupManager.commitBatch();
+	}
+	
 	/**
 	 * Clear this map of all data
 	 */
@@ -298,7 +405,7 @@ public class GameTableMap implements MapElementRepositoryIF
 	}
 	
 	/**
-	 * Remove all lines from the map
+	 * Remove all lines and shapes from the map
 	 */
 	public void removeLineSegments()
 	{
@@ -306,12 +413,22 @@ public class GameTableMap implements MapElementRepositoryIF
 	}
 
 	/**
-	 * Remove all lines from the map
+	 * Remove all lines and shapes from the map
 	 * @param netEvent Network event that triggered the operation.  Null if non-network related.
 	 */
 	public void removeLineSegments(NetworkEvent netEvent)
 	{
 		m_lines.clear();
+		m_shapes.clear();
+		
+		// Pending additions are dropped along with the lines
+		if (m_batch != null)
+		{
+			m_batch.lines.clear();
+			m_batch.shapes.clear();
+		}
+		
+		flushBatch();
 
 		for (GameTableMapListenerIF listener : m_listeners)
 			listener.onClearLineSegments(this, netEvent);
@@ -334,6 +451,17 @@ public class GameTableMap implements MapElementRepositoryIF
 		ArrayList<MapElement> mapElements = new ArrayList<MapElement>(m_mapElements);
 		
 		m_mapElements.clear();
+		m_mapElementsByID.clear();
+		m_layers.clear();
+		
+		for (MapElement element : mapElements)
+			element.removeListener(m_elementDispatcher);
+		
+		// Pending notifications about the removed elements are dropped
+		if (m_batch != null)
+			m_batch.clearMapElements();
+		
+		flushBatch();
 		
 		for (GameTableMapListenerIF listener : m_listeners)
 			listener.onMapElementsCleared(this, netEvent);
@@ -342,8 +470,6 @@ public class GameTableMap implements MapElementRepositoryIF
 		{
 			for (GameTableMapListenerIF listener : m_listeners)
 				listener.onMapElementRemoved(this, element, true, netEvent);
-
-			element.removeListener(m_elementListener);
 		}
 	}
 
@@ -355,27 +481,141 @@ public class GameTableMap implements MapElementRepositoryIF
 	 */
   public void deserializeFromXML(Element parent, XMLSerializeConverter converter, NetworkEvent netEvent)
   {
-  	Element elements = XMLUtils.getFirstChildElementByTagName(parent, "elements");
-  	
-  	clearMap(netEvent);
-  	
-  	for (Element xmEl : XMLUtils.getChildElementsByTagName(elements, "element"))
+  	// The loaded content is reported as a single change
+  	beginBatch();
+  	try
   	{
-  		MapElement el = new MapElement(xmEl, converter);
-  		addMapElement(el, netEvent);    	
+  		Element elements = XMLUtils.getFirstChildElementByTagName(parent, "elements");
+  		
+  		clearMap(netEvent);
+  		
+  		List<MapElement> mapElements = new ArrayList<MapElement>();
+  		for (Element xmEl : XMLUtils.getChildElementsByTagName(elements, "element"))
+  			mapElements.add(new MapElement(xmEl, converter));
+  		
+  		if (mapElements.size() > 0)
+  			addMapElements(mapElements, netEvent);
+  		
+  		elements = XMLUtils.getFirstChildElementByTagName(parent, "lines");
+  		List<LineSegment> lines = new ArrayList<LineSegment>();
+  		for (Element xmLine : XMLUtils.getChildElementsByTagName(elements, "line"))
+  			lines.add(new LineSegment(xmLine));
+  		
+  		if (lines.size() > 0)
+  			addLineSegments(lines, netEvent);
+  		
+  		elements = XMLUtils.getFirstChildElementByTagName(parent, "shapes");
+  		List<MapShape> shapes = new ArrayList<MapShape>();
+  		for (Element xmShape : XMLUtils.getChildElementsByTagName(elements, "shape"))
+  		{
+  			MapShape shape = MapShape.deserialize(xmShape);
+  			if (shape != null)
+  				shapes.add(shape);
+  		}
+  		
+  		if (shapes.size() > 0)
+  			addShapes(shapes, netEvent);
+  		
+  		Element groupsEl = XMLUtils.getFirstChildElementByTagName(parent, "groups");
+  		m_groupManager.deserializeGroups(groupsEl, converter, this, netEvent);
   	}
-  	
-  	elements = XMLUtils.getFirstChildElementByTagName(parent, "lines");
-  	for (Element xmLine : XMLUtils.getChildElementsByTagName(elements, "line"))
+  	finally
   	{
-  		LineSegment ls = new LineSegment(xmLine);
-  		addLineSegment(ls, netEvent);
+  		commitBatch();
   	}
-  	
-  	Element groupsEl = XMLUtils.getFirstChildElementByTagName(parent, "groups");
-  	m_groupManager.deserializeGroups(groupsEl, converter, this, netEvent);
   }
 
+	/**
+	 * Restore the map from a saved map file, as it is being read.  Elements and lines are built as they are read and
+	 * added to the map in bulk.
+	 * 
+	 * @param reader Map file reader, positioned on the map's XML element.  The element is consumed.
+	 * @param converter Converter interface to convert saved element IDs to loaded element IDs
+	 * @param netEvent Source network event or null
+	 * @throws IOException
+	 */
+	void deserializeFromXML(MapXMLReader reader, XMLSerializeConverter converter, NetworkEvent netEvent) throws IOException
+	{
+		// The loaded content is reported as a single change
+		beginBatch();
+		try
+		{
+			clearMap(netEvent);
+		
+			boolean groupsFound = false;
+		
+			String name;
+			while ((name = reader.nextChild()) != null)
+			{
+				if (name.equals("elements"))
+				{
+					List<MapElement> mapElements = new ArrayList<MapElement>();
+					while ((name = reader.nextChild()) != null)
+					{
+						if (name.equals("element"))
+							mapElements.add(new MapElement(reader.readElement(), converter));
+						else
+							reader.skip();
+					}
+				
+					if (mapElements.size() > 0)
+						addMapElements(mapElements, netEvent);
+				}
+				else if (name.equals("lines"))
+				{
+					List<LineSegment> lines = new ArrayList<LineSegment>();
+					while ((name = reader.nextChild()) != null)
+					{
+						if (name.equals("line"))
+							lines.add(new LineSegment(reader));
+						else
+							reader.skip();
+					}
+				
+					if (lines.size() > 0)
+						addLineSegments(lines, netEvent);
+				}
+				else if (name.equals("shapes"))
+				{
+					List<MapShape> shapes = new ArrayList<MapShape>();
+					while ((name = reader.nextChild()) != null)
+					{
+						if (name.equals("shape"))
+						{
+							MapShape shape = MapShape.deserialize(reader);
+							if (shape != null)
+								shapes.add(shape);
+						}
+						else
+						{
+							reader.skip();
+						}
+					}
+				
+					if (shapes.size() > 0)
+						addShapes(shapes, netEvent);
+				}
+				else if (name.equals("groups") && !groupsFound)
+				{
+					// Groups refer to elements by ID - they are always saved after the elements
+					m_groupManager.deserializeGroups(reader.readElement(), converter, this, netEvent);
+					groupsFound = true;
+				}
+				else
+				{
+					reader.skip();
+				}
+			}
+		
+			if (!groupsFound)
+				m_groupManager.deserializeGroups(null, converter, this, netEvent);
+		}
+		finally
+		{
+			commitBatch();
+		}
+	}
+
 	/**
    * Calculate the bounds used by the specified map
    * @param map map to calculate
@@ -383,19 +623,12 @@ public class GameTableMap implements MapElementRepositoryIF
    */
   public MapRectangle getBounds()
   {
-  	MapRectangle bounds = null;
+  	// lines and shapes - bounds are maintained by the stores
+  	MapRectangle bounds = m_lines.getBounds();
   	
-      // lines
-      for (LineSegment ls : getLines())
-      {
-      	
-          MapRectangle r = ls.getBounds();
-          
-          if (bounds == null)
-              bounds = r;
-          else
-              bounds.add(r);
-      }
+  	MapRectangle shapeBounds = m_shapes.getBounds();
+  	if (shapeBounds != null)
+  		bounds = (bounds == null) ? shapeBounds : bounds.add(shapeBounds);
   
       // Map elements
       for (MapElement mapElement : getMapElements())
@@ -405,7 +638,7 @@ public class GameTableMap implements MapElementRepositoryIF
           if (bounds == null)
               bounds = r;
           else
-              bounds.add(r);
+              bounds = bounds.add(r);
       }
       
       if (bounds == null)
@@ -415,13 +648,66 @@ public class GameTableMap implements MapElementRepositoryIF
   }
 
 	/**
-	 * Get unmodifiable list of lines contained within GameTableMap
+	 * Get a copy of the list of lines contained within GameTableMap
 	 * 
 	 * @return list of LineSegment (never null)
 	 */
 	public List<LineSegment> getLines()
 	{
-		return m_linesUnmodifiable;
+		return m_lines.getAll();
+	}
+	
+	/**
+	 * Get the lines crossing a given region of the map (ex: the visible portion of the map)
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 * @return list of LineSegment (never null)
+	 */
+	public List<LineSegment> getLines(MapRectangle modelRect)
+	{
+		return m_lines.getIntersecting(modelRect);
+	}
+	
+	/**
+	 * Copy the lines crossing a given region of the map to a reusable buffer, without creating LineSegment objects
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 * @param out Buffer receiving the lines (cleared first)
+	 */
+	public void getLines(MapRectangle modelRect, PackedLineSegments out)
+	{
+		m_lines.getIntersecting(modelRect, out);
+	}
+	
+	/**
+	 * Copy all the lines of the map to a reusable buffer, without creating LineSegment objects
+	 * 
+	 * @param out Buffer receiving the lines (cleared first)
+	 */
+	public void getLines(PackedLineSegments out)
+	{
+		m_lines.getAll(out);
+	}
+	
+	/**
+	 * Get a copy of the list of vector shapes drawn on the map
+	 * 
+	 * @return list of shapes, in the order they were added (never null)
+	 */
+	public List<MapShape> getShapes()
+	{
+		return m_shapes.getAll();
+	}
+	
+	/**
+	 * Get the vector shapes crossing a given region of the map
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 * @return list of shapes, in the order they were added (never null)
+	 */
+	public List<MapShape> getShapes(MapRectangle modelRect)
+	{
+		return m_shapes.getIntersecting(modelRect);
 	}
 	
 	/**
@@ -445,13 +731,7 @@ public class GameTableMap implements MapElementRepositoryIF
 		if (id == null)
 			return null;
 		
-		for (MapElement mapElement : m_mapElements)
-		{
-			if (mapElement.getID().equals(id))
-				return mapElement;
-		}
-
-		return null;
+		return m_mapElementsByID.get(id);
 	}
 
 
@@ -470,50 +750,42 @@ public class GameTableMap implements MapElementRepositoryIF
 			return null;
 		}
 
-		MapElement pogHit = null;
-		MapElement envHit = null;
-		MapElement overlayHit = null;
-		MapElement underlayHit = null;
-
-		for (MapElement mapElement : m_mapElements)
-		{
-			if (mapElement.contains(modelPosition))
-			{
-				switch (mapElement.getLayer())
-				{
-				case UNDERLAY:
-					underlayHit = mapElement;
-					break;
-
-				case OVERLAY:
-					overlayHit = mapElement;
-					break;
-
-				case ENVIRONMENT:
-					envHit = mapElement;
-					break;
-
-				case POG:
-					pogHit = mapElement;
-					break;
-				}
-			}
-		}
-
-		// Pogs is top layer
-		if (pogHit != null)
-			return pogHit;
+		// Layers are hit tested from the top (pogs, environment, overlay, then underlay)
+		return m_layers.getTopmostAt(modelPosition);
+	}
 
-		// Environment is 2nd layer
-		if (envHit != null)
-			return envHit;
+	/**
+	 * Get all map elements whose bounds intersect a given region of the map (ex: the visible portion of the map)
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 * @return List of elements, layer by layer in painting order (never null)
+	 */
+	public List<MapElement> getMapElements(MapRectangle modelRect)
+	{
+		return m_layers.getIntersecting(modelRect);
+	}
 
-		// Overlay is 3rd layer
-		if (overlayHit != null)
-			return overlayHit;
+	/**
+	 * Get the map elements of a given layer whose bounds intersect a given region of the map
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 * @param layer Layer
+	 * @return List of elements, in painting order (never null)
+	 */
+	public List<MapElement> getMapElements(MapRectangle modelRect, Layer layer)
+	{
+		return m_layers.getIntersecting(modelRect, layer);
+	}
 
-		// Underlay is fourth layer
-		return underlayHit;
+	/**
+	 * Get all the map elements of a given layer
+	 * 
+	 * @param layer Layer
+	 * @return Read-only list of elements, in painting order
+	 */
+	public List<MapElement> getMapElements(Layer layer)
+	{
+		return m_layers.getElements(layer);
 	}
 
 	/**
@@ -527,6 +799,35 @@ public class GameTableMap implements MapElementRepositoryIF
 		return getMapElementsByName(name, null);
 	}
 
+	/**
+	 * Refresh the elements of a given type after the type's image was replaced (ex: placeholder replaced by the downloaded
+	 * image).  The elements' dimensions are recomputed and their place within the spatial indexes updated.
+	 * 
+	 * @param type Updated type
+	 * @return Bounds of the refreshed elements before the update, by element
+	 */
+	public Map<MapElement, MapRectangle> refreshMapElements(MapElementTypeIF type)
+	{
+		Map<MapElement, MapRectangle> oldBounds = new LinkedHashMap<MapElement, MapRectangle>();
+		
+		for (Layer layer : MapElementLayers.PAINT_ORDER)
+		{
+			for (MapElement mapElement : m_layers.getElements(layer))
+			{
+				if (mapElement.getMapElementType() != type)
+					continue;
+				
+				// Dimensions as indexed, from the previous image
+				oldBounds.put(mapElement, new MapRectangle(mapElement.getPosition(), mapElement.getWidth(), mapElement.getHeight()));
+				
+				mapElement.refreshDimensions();
+				m_layers.update(mapElement);
+			}
+		}
+		
+		return oldBounds;
+	}
+
 	/**
 	 * Get list of map element instances
 	 * 
@@ -559,6 +860,65 @@ public class GameTableMap implements MapElementRepositoryIF
 		return m_publicMap;
 	}
 
+	/**
+	 * Moves multiple elements in a single operation
+	 * 
+	 * @param positions New position of each element
+	 */
+	public void moveMapElements(Map<MapElement, MapCoordinates> positions)
+	{
+		moveMapElements(positions, null);
+	}
+
+	/**
+	 * Moves multiple elements in a single operation. All elements are moved before listeners are notified, through a
+	 * single call to {@link GameTableMapListenerIF#onMapElementsMoved}. Element listeners are notified through
+	 * {@link MapElementAdapter#onMapElementsMoved}.
+	 * 
+	 * @param positions New position of each element. Elements not found on this map are ignored.
+	 * @param netEvent Network event that triggered the operation or null
+	 */
+	public void moveMapElements(Map<MapElement, MapCoordinates> positions, NetworkEvent netEvent)
+	{
+		Map<MapElement, MapCoordinates> oldPositions = new LinkedHashMap<MapElement, MapCoordinates>();
+		
+		for (Map.Entry<MapElement, MapCoordinates> entry : positions.entrySet())
+		{
+			MapElement mapElement = entry.getKey();
+			if (m_mapElementsByID.get(mapElement.getID()) != mapElement || mapElement.getPosition().equals(entry.getValue()))
+				continue;
+			
+			MapCoordinates oldPosition = mapElement.swapPosition(entry.getValue());
+			m_layers.update(mapElement);
+			
+			if (m_batch != null)
+				m_batch.elementChanges.onPositionChanged(mapElement, entry.getValue(), oldPosition, netEvent);
+			else
+				oldPositions.put(mapElement, oldPosition);
+		}
+		
+		if (oldPositions.isEmpty())
+			return;
+		
+		fireMapElementsMoved(oldPositions, netEvent);
+	}
+	
+	/**
+	 * Notify listeners that elements have been moved
+	 * 
+	 * @param oldPositions Previous position of each moved element
+	 * @param netEvent Network event that triggered the operation or null
+	 */
+	private void fireMapElementsMoved(Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+	{
+		oldPositions = Collections.unmodifiableMap(oldPositions);
+		
+		for (GameTableMapListenerIF listener : m_listeners)
+			listener.onMapElementsMoved(this, oldPositions, netEvent);
+		
+		m_elementListener.onMapElementsMoved(oldPositions, netEvent);
+	}
+
 	/**
 	 * Remove line segment from map
 	 * 
@@ -599,8 +959,16 @@ public class GameTableMap implements MapElementRepositoryIF
 	public void removeMapElement(final MapElement mapElement, NetworkEvent netEvent)
 	{
 		m_mapElements.remove(mapElement);
+		m_mapElementsByID.remove(mapElement.getID(), mapElement);
+		m_layers.remove(mapElement);
+		
+		mapElement.removeListener(m_elementDispatcher);
 		
-		mapElement.removeListener(m_elementListener);
+		if (m_batch != null)
+		{
+			m_batch.removeMapElements(Collections.singletonList(mapElement), netEvent);
+			return;
+		}
 		
 		for (GameTableMapListenerIF listener : m_listeners)
 			listener.onMapElementRemoved(this, mapElement, false, netEvent);
@@ -631,19 +999,17 @@ public class GameTableMap implements MapElementRepositoryIF
 		m_mapElements.removeAll(instances);			
 
 		// Clear listeners
-		for (MapElement mapElement : instances)
-			mapElement.removeListener(m_elementListener);		
-		
-		// Call "big" listener
-		for (GameTableMapListenerIF listener : m_listeners)
-			listener.onMapElementsRemoved(this, instances, netEvent);
-		
-		// Call "small" listeners with batch flag
 		for (MapElement mapElement : instances)
 		{
-			for (GameTableMapListenerIF listener : m_listeners)
-				listener.onMapElementRemoved(this, mapElement, true, netEvent);
+			m_mapElementsByID.remove(mapElement.getID(), mapElement);
+			m_layers.remove(mapElement);
+			mapElement.removeListener(m_elementDispatcher);
 		}
+		
+		if (m_batch != null)
+			m_batch.removeMapElements(instances, netEvent);
+		else
+			fireMapElementsRemoved(instances, netEvent);
 	}
   
 	/**
@@ -663,7 +1029,7 @@ public class GameTableMap implements MapElementRepositoryIF
   	parent.appendChild(elements);
   	
   	Element lines = doc.createElement("lines");  	
-  	for (LineSegment line : m_lines)
+  	for (LineSegment line : m_lines.getAll())
   	{
   		Element xmLine = doc.createElement("line");
   		line.serialize(xmLine);
@@ -671,11 +1037,118 @@ public class GameTableMap implements MapElementRepositoryIF
   	}
   	parent.appendChild(lines);
   	
+  	Element shapes = doc.createElement("shapes");
+  	for (MapShape shape : m_shapes.getAll())
+  	{
+  		Element xmShape = doc.createElement("shape");
+  		shape.serialize(xmShape);
+  		shapes.appendChild(xmShape);
+  	}
+  	parent.appendChild(shapes);
+  	
   	Element groupsEl = doc.createElement("groups");
   	parent.appendChild(groupsEl);
   	m_groupManager.serializeGroups(groupsEl);
   }
   
+  /**
+	 * Deliver buffered notifications to the listeners
+	 * 
+	 * @param batch Buffered notifications
+	 */
+	private void deliver(PendingMapChanges batch)
+	{
+		for (Map.Entry<NetworkEvent, List<MapElement>> entry : batch.removed.entrySet())
+			fireMapElementsRemoved(entry.getValue(), entry.getKey());
+		
+		for (Map.Entry<NetworkEvent, List<MapElement>> entry : batch.added.entrySet())
+			fireMapElementsAdded(entry.getValue(), entry.getKey());
+		
+		for (Map.Entry<NetworkEvent, Map<MapElement, MapCoordinates>> entry : batch.elementChanges.takeMoves().entrySet())
+			fireMapElementsMoved(entry.getValue(), entry.getKey());
+		
+		batch.elementChanges.deliver(m_elementListener);
+		
+		for (Map.Entry<NetworkEvent, List<LineSegment>> entry : batch.lines.entrySet())
+			fireLineSegmentsAdded(entry.getValue(), entry.getKey());
+		
+		for (Map.Entry<NetworkEvent, List<MapShape>> entry : batch.shapes.entrySet())
+		{
+			for (GameTableMapListenerIF listener : m_listeners)
+				listener.onShapesAdded(this, entry.getValue(), entry.getKey());
+		}
+	}
+	
+	/**
+	 * Notify listeners that line segments have been added
+	 * 
+	 * @param lines Added line segments
+	 * @param netEvent Source network event or null
+	 */
+	private void fireLineSegmentsAdded(List<LineSegment> lines, NetworkEvent netEvent)
+	{
+		// Batch listener first
+		for (GameTableMapListenerIF listener : m_listeners)
+			listener.onLineSegmentsAdded(this, lines, netEvent);
+		
+		// 'Macro' listeners second
+		for (LineSegment line : lines)
+		{
+			for (GameTableMapListenerIF listener : m_listeners)
+				listener.onLineSegmentAdded(this, line, true, netEvent);
+		}
+	}
+	
+	/**
+	 * Notify listeners that map elements have been added.  A single notification is sent for the whole list (see
+	 * {@link GameTableMapAdapter#onMapElementsAdded(GameTableMap, List, NetworkEvent)}).
+	 * 
+	 * @param mapElements Added elements
+	 * @param netEvent Source network event or null
+	 */
+	private void fireMapElementsAdded(List<MapElement> mapElements, NetworkEvent netEvent)
+	{
+		List<MapElement> list = Collections.unmodifiableList(mapElements);
+		
+		for (GameTableMapListenerIF listener : m_listeners)
+			listener.onMapElementsAdded(this, list, netEvent);
+	}
+	
+	/**
+	 * Notify listeners that map elements have been removed
+	 * 
+	 * @param mapElements Removed elements
+	 * @param netEvent Source network event or null
+	 */
+	private void fireMapElementsRemoved(List<MapElement> mapElements, NetworkEvent netEvent)
+	{
+		// Call "big" listener
+		for (GameTableMapListenerIF listener : m_listeners)
+			listener.onMapElementsRemoved(this, mapElements, netEvent);
+		
+		// Call "small" listeners with batch flag
+		for (MapElement mapElement : mapElements)
+		{
+			for (GameTableMapListenerIF listener : m_listeners)
+				listener.onMapElementRemoved(this, mapElement, true, netEvent);
+		}
+	}
+	
+	/**
+	 * Deliver the notifications buffered so far, if a batch is in progress.  The batch remains open.
+	 */
+	private void flushBatch()
+	{
+		if (m_batch == null)
+			return;
+		
+		PendingMapChanges batch = m_batch;
+		m_batch = new PendingMapChanges();
+		deliver(batch);
+		
+		m_groupManager.flushBatch();
+	}
+	
   /**
 	 * Find instances matching a given name
 	 * 
@@ -723,5 +1196,259 @@ public class GameTableMap implements MapElementRepositoryIF
   	return m_elementListener.removeListener(listener);
   }
 	
+	/**
+	 * Listeners registered to be notified of changes to any of the map's elements
+	 */
 	private final MapElementAdapterOmni m_elementListener;
+	
+	/**
+	 * Listener registered on each element of the map.  Keeps the layers in sync and forwards notifications to
+	 * the registered element listeners, or to the batch in progress.
+	 */
+	private final ElementDispatcher m_elementDispatcher;
+	
+	/**
+	 * Notifications buffered by the batch in progress (null if no batch is in progress)
+	 */
+	private PendingMapChanges m_batch = null;
+	
+	/**
+	 * Number of nested batches currently open
+	 */
+	private int m_batchDepth = 0;
+	
+	/**
+	 * Map elements by layer, in z-order, with a spatial index over their bounds
+	 */
+	private final MapElementLayers m_layers;
+	
+	/**
+	 * Notifications buffered while a batch is in progress
+	 */
+	private static class PendingMapChanges
+	{
+		/**
+		 * Changes to the properties of the elements
+		 */
+		final MapElementChangeBuffer elementChanges = new MapElementChangeBuffer();
+		
+		/**
+		 * Added elements, by source network event
+		 */
+		final Map<NetworkEvent, List<MapElement>> added = new LinkedHashMap<NetworkEvent, List<MapElement>>();
+		
+		/**
+		 * Removed elements, by source network event
+		 */
+		final Map<NetworkEvent, List<MapElement>> removed = new LinkedHashMap<NetworkEvent, List<MapElement>>();
+		
+		/**
+		 * Added line segments, by source network event
+		 */
+		final Map<NetworkEvent, List<LineSegment>> lines = new LinkedHashMap<NetworkEvent, List<LineSegment>>();
+		
+		/**
+		 * Added shapes, by source network event
+		 */
+		final Map<NetworkEvent, List<MapShape>> shapes = new LinkedHashMap<NetworkEvent, List<MapShape>>();
+		
+		/**
+		 * Record added line segments
+		 * @param lineSegments Added line segments
+		 * @param netEvent Source network event or null
+		 */
+		void addLines(List<LineSegment> lineSegments, NetworkEvent netEvent)
+		{
+			getList(lines, netEvent).addAll(lineSegments);
+		}
+		
+		/**
+		 * Record added shapes
+		 * @param addedShapes Added shapes
+		 * @param netEvent Source network event or null
+		 */
+		void addShapes(List<MapShape> addedShapes, NetworkEvent netEvent)
+		{
+			getList(shapes, netEvent).addAll(addedShapes);
+		}
+		
+		/**
+		 * Record added elements
+		 * @param mapElements Added elements
+		 * @param netEvent Source network event or null
+		 */
+		void addMapElements(List<MapElement> mapElements, NetworkEvent netEvent)
+		{
+			for (MapElement mapElement : mapElements)
+			{
+				// Changes prior to the addition are irrelevant - the element is reported as a whole
+				elementChanges.discard(mapElement);
+				getList(added, netEvent).add(mapElement);
+			}
+		}
+		
+		/**
+		 * Drop all notifications concerning elements
+		 */
+		void clearMapElements()
+		{
+			elementChanges.clear();
+			added.clear();
+			removed.clear();
+		}
+		
+		/**
+		 * Record removed elements
+		 * @param mapElements Removed elements
+		 * @param netEvent Source network event or null
+		 */
+		void removeMapElements(List<MapElement> mapElements, NetworkEvent netEvent)
+		{
+			for (MapElement mapElement : mapElements)
+			{
+				elementChanges.discard(mapElement);
+				
+				// An element added and removed within the batch is not reported at all
+				if (!removeFrom(added, mapElement))
+					getList(removed, netEvent).add(mapElement);
+			}
+		}
+		
+		/**
+		 * Get the list of items recorded for a given network event, creating it if needed
+		 * @param items Recorded items, by network event
+		 * @param netEvent Source network event or null
+		 * @return List of items
+		 */
+		private static <T> List<T> getList(Map<NetworkEvent, List<T>> items, NetworkEvent netEvent)
+		{
+			List<T> list = items.get(netEvent);
+			if (list == null)
+			{
+				list = new ArrayList<T>();
+				items.put(netEvent, list);
+			}
+			
+			return list;
+		}
+		
+		/**
+		 * Remove an element from the recorded items
+		 * @param items Recorded items, by network event
+		 * @param mapElement Element to remove
+		 * @return True if the element was found
+		 */
+		private static boolean removeFrom(Map<NetworkEvent, List<MapElement>> items, MapElement mapElement)
+		{
+			for (List<MapElement> list : items.values())
+			{
+				if (list.remove(mapElement))
+					return true;
+			}
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * Listener registered on each element of the map.  Keeps the layers and their spatial indexes in sync with changes
+	 * affecting the bounds or layer of the elements, then forwards the notification.
+	 */
+	private class ElementDispatcher implements MapElementListenerIF
+	{
+		/**
+		 * @return Listener to forward notifications to
+		 */
+		private MapElementListenerIF getTarget()
+		{
+			return m_batch != null ? m_batch.elementChanges : m_elementListener;
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onAngleChanged(com.gametable.data.MapElement, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onAngleChanged(MapElement element, NetworkEvent netEvent)
+		{
+			m_layers.update(element);
+			getTarget().onAngleChanged(element, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onAttributeChanged(com.gametable.data.MapElement, java.lang.String, java.lang.String, java.lang.String, boolean, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onAttributeChanged(MapElement element, String attributeName, String newValue, String oldValue, boolean batch, NetworkEvent netEvent)
+		{
+			getTarget().onAttributeChanged(element, attributeName, newValue, oldValue, batch, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onAttributesChanged(com.gametable.data.MapElement, java.util.Map, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onAttributesChanged(MapElement element, Map<String, String> attributes, NetworkEvent netEvent)
+		{
+			getTarget().onAttributesChanged(element, attributes, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onElementTypeChanged(com.gametable.data.MapElement, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onElementTypeChanged(MapElement element, NetworkEvent netEvent)
+		{
+			m_layers.update(element);
+			getTarget().onElementTypeChanged(element, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onFaceSizeChanged(com.gametable.data.MapElement, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onFaceSizeChanged(MapElement element, NetworkEvent netEvent)
+		{
+			m_layers.update(element);
+			getTarget().onFaceSizeChanged(element, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onFlipChanged(com.gametable.data.MapElement, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onFlipChanged(MapElement element, NetworkEvent netEvent)
+		{
+			m_layers.update(element);
+			getTarget().onFlipChanged(element, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onLayerChanged(com.gametable.data.MapElement, com.gametable.data.MapElementTypeIF.Layer, com.gametable.data.MapElementTypeIF.Layer, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onLayerChanged(MapElement element, Layer newLayer, Layer oldLayer, NetworkEvent netEvent)
+		{
+			m_layers.update(element);
+			getTarget().onLayerChanged(element, newLayer, oldLayer, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onNameChanged(com.gametable.data.MapElement, java.lang.String, java.lang.String, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onNameChanged(MapElement element, String newName, String oldName, NetworkEvent netEvent)
+		{
+			getTarget().onNameChanged(element, newName, oldName, netEvent);
+		}
+		
+		/*
+		 * @see com.gametable.data.MapElementListenerIF#onPositionChanged(com.gametable.data.MapElement, com.gametable.data.MapCoordinates, com.gametable.data.MapCoordinates, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onPositionChanged(MapElement element, MapCoordinates newPosition, MapCoordinates oldPosition, NetworkEvent netEvent)
+		{
+			m_layers.update(element);
+			getTarget().onPositionChanged(element, newPosition, oldPosition, netEvent);
+		}
+	}
 }
@@ -23,6 +23,7 @@
 package com.gametable.data;
 
 import java.util.List;
+import java.util.Map;
 
 import com.gametable.net.NetworkEvent;
 
@@ -41,6 +42,18 @@ public class GameTableMapAdapter implements GameTableMapListenerIF
 	 */
 	@Override
 	public void onMapElementAdded(GameTableMap map, MapElement mapElement, NetworkEvent netEvent) {}
+	
+	/**
+	 * Calls onMapElementAdded for each element.  Override to process the elements as a batch.
+	 * 
+	 * @see com.gametable.data.GameTableMapListenerIF#onMapElementsAdded(com.gametable.data.GameTableMap, java.util.List, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onMapElementsAdded(GameTableMap map, List<MapElement> mapElements, NetworkEvent netEvent)
+	{
+		for (MapElement mapElement : mapElements)
+			onMapElementAdded(map, mapElement, netEvent);
+	}
 
 	/*
 	 * @see com.gametable.data.GameTableMapListenerIF#onMapElementInstanceRemoved(com.gametable.data.GameTableMap, com.gametable.data.MapElement, boolean)
@@ -54,6 +67,12 @@ public class GameTableMapAdapter implements GameTableMapListenerIF
 	@Override
 	public void onMapElementsRemoved(GameTableMap map, List<MapElement> mapElements, NetworkEvent netEvent) {}
 
+	/*
+	 * @see com.gametable.data.GameTableMapListenerIF#onMapElementsMoved(com.gametable.data.GameTableMap, java.util.Map, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onMapElementsMoved(GameTableMap map, Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent) {}
+
 	/*
 	 * @see com.gametable.data.GameTableMapListenerIF#onMapElementInstancesCleared(com.gametable.data.GameTableMap)
 	 */
@@ -78,6 +97,12 @@ public class GameTableMapAdapter implements GameTableMapListenerIF
 	@Override
 	public void onEraseLineSegments(GameTableMap map, MapRectangle rect, boolean colorSpecific, int color, NetworkEvent netEvent) {}
 	
+	/*
+	 * @see com.gametable.data.GameTableMapListenerIF#onShapesAdded(com.gametable.data.GameTableMap, java.util.List, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onShapesAdded(GameTableMap map, List<MapShape> shapes, NetworkEvent netEvent) {}
+	
 	/*
 	 * @see com.gametable.data.GameTableMapListenerIF#onClearLineSegments(com.gametable.data.GameTableMap, com.gametable.net.NetworkEvent)
 	 */
@@ -23,6 +23,7 @@
 package com.gametable.data;
 
 import java.util.List;
+import java.util.Map;
 
 import com.gametable.net.NetworkEvent;
 
@@ -36,13 +37,24 @@ import com.gametable.net.NetworkEvent;
 public interface GameTableMapListenerIF
 {
 	/**
-	 * Called when a map element instance has been added to the map
+	 * Called when a map element instance has been added to the map (onMapElementsAdded is called instead for elements
+	 * added in a single call)
 	 * @param map The triggering map
 	 * @param mapElement The map element that has been added
 	 * @param netEvent Network event information that triggered the event or null
 	 */
 	public void onMapElementAdded(GameTableMap map, MapElement mapElement, NetworkEvent netEvent);
 	
+	/**
+	 * Called when multiple map element instances have been added to the map in a single call.  Called once the whole batch
+	 * has been added.  onMapElementAdded is not called for the individual items (GameTableMapAdapter forwards this call
+	 * to onMapElementAdded for each item).
+	 * @param map The triggering map
+	 * @param mapElements The list of map elements that have been added
+	 * @param netEvent Network event information that triggered the event or null
+	 */
+	public void onMapElementsAdded(GameTableMap map, List<MapElement> mapElements, NetworkEvent netEvent);
+	
 	/**
 	 * Called when all map element instances have been removed in one call (onMapElementInstanceRemoved will also be called for individual items)
 	 * @param map The triggering map
@@ -68,6 +80,15 @@ public interface GameTableMapListenerIF
 	 */
 	public void onMapElementsRemoved(GameTableMap map, List<MapElement> mapElements, NetworkEvent netEvent);
 	
+	/**
+	 * Called when multiple map elements have been moved in a single operation (see
+	 * {@link GameTableMap#moveMapElements(Map, NetworkEvent)}).  The elements do not report individual position changes.
+	 * @param map The triggering map
+	 * @param oldPositions The moved elements, with their position prior to the move
+	 * @param netEvent Network event information that triggered the event or null
+	 */
+	public void onMapElementsMoved(GameTableMap map, Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent);
+	
 	/**
 	 * Called when a line segment has been added to the map
 	 * @param map The triggering map
@@ -87,7 +108,15 @@ public interface GameTableMapListenerIF
 	public void onLineSegmentsAdded(GameTableMap map, List<LineSegment> lineSegments, NetworkEvent netEvent);
 	
 	/**
-	 * An erase operation has been applied on the map.  All lines in the map might have been impacted.
+	 * Called when vector shapes have been added to the map
+	 * @param map The triggering map
+	 * @param shapes The list of shapes that have been added
+	 * @param netEvent If non-null, contains information about the network event that triggered the change.
+	 */
+	public void onShapesAdded(GameTableMap map, List<MapShape> shapes, NetworkEvent netEvent);
+	
+	/**
+	 * An erase operation has been applied on the map.  All lines and shapes in the map might have been impacted.
 	 * @param map The triggering map
 	 * @param rect Rectangular region of the map to erase
 	 * @param colorSpecific If true, will erase line segments of matching color
@@ -97,7 +126,7 @@ public interface GameTableMapListenerIF
 	public void onEraseLineSegments(GameTableMap map, MapRectangle rect, boolean colorSpecific, int color, NetworkEvent netEvent);
 	
 	/**
-	 * All lines were cleared from a given map
+	 * All lines and shapes were cleared from a given map
 	 * @param map The triggering map
 	 * @param netEvent If non-null, contains information about the network event that triggered the change.
 	 */
@@ -78,8 +78,17 @@ public class Group
 	 */
 	public void deleteGroup(NetworkEvent netEvent)
 	{
-		removeAllElements(netEvent);
-		m_manager.removeGroup(this, false, netEvent);
+		// Listeners are only told about the group's removal, which implies removing its elements 
+		m_manager.beginBatch();
+		try
+		{
+			removeAllElements(netEvent);
+			m_manager.removeGroup(this, false, netEvent);
+		}
+		finally
+		{
+			m_manager.commitBatch();
+		}
 	}
 
 	/**
@@ -67,15 +67,22 @@ public class GroupManager
 	 */
 	public void deleteAllGroups(NetworkEvent netEvent)
 	{
-		for (Group g : m_groups.values())
+		// Element removals are implied by the group removals
+		beginBatch();
+		try
 		{
-			g.removeAllElements(netEvent);
-			
-			for (GroupManagerListenerIF listener : m_listeners)
-				listener.onRemoveGroup(g, netEvent);
+			for (Group g : m_groups.values())
+			{
+				g.removeAllElements(netEvent);
+				fireRemoveGroup(g, netEvent);
+			}
+	
+			m_groups.clear();
+		}
+		finally
+		{
+			commitBatch();
 		}
-
-		m_groups.clear();
 	}
 	
 	/**
@@ -100,9 +107,7 @@ public class GroupManager
 			if (g.getElementCount() == 0)
 			{
 				iter.remove();
-				
-				for (GroupManagerListenerIF listener : m_listeners)
-					listener.onRemoveGroup(g, netEvent);
+				fireRemoveGroup(g, netEvent);
 			}
 		}
 	}
@@ -275,6 +280,186 @@ public class GroupManager
 	}
 
 	
+	/**
+	 * Start buffering listener notifications (see {@link GameTableMap#beginBatch()}).  Batches can be nested.
+	 */
+	void beginBatch()
+	{
+		if (m_batchDepth++ == 0)
+			m_pendingEvents = new ArrayList<PendingEvent>();
+	}
+	
+	/**
+	 * Close a batch opened by {@link #beginBatch()}.  When the outermost batch is closed, the buffered notifications are
+	 * delivered in order, except changes to the content of groups that were removed later within the batch (removing a
+	 * group implies removing its elements).  Elements added to or removed from the same group are reported through a
+	 * single onAddMapElementsToGroup / onRemoveMapElementsFromGroup call.
+	 */
+	void commitBatch()
+	{
+		if (m_batchDepth == 0)
+			throw new IllegalStateException("No batch in progress");
+		
+		if (--m_batchDepth > 0)
+			return;
+		
+		List<PendingEvent> events = m_pendingEvents;
+		m_pendingEvents = null;
+		deliver(events);
+	}
+	
+	/**
+	 * Deliver the notifications buffered so far, if a batch is in progress.  The batch remains open.
+	 */
+	void flushBatch()
+	{
+		if (m_pendingEvents == null)
+			return;
+		
+		List<PendingEvent> events = m_pendingEvents;
+		m_pendingEvents = new ArrayList<PendingEvent>();
+		deliver(events);
+	}
+	
+	/**
+	 * Deliver buffered notifications to the listeners
+	 * @param events Buffered notifications, in order
+	 */
+	private void deliver(List<PendingEvent> events)
+	{
+		// Position of each group's removal within the batch
+		Map<Group, Integer> removals = new IdentityHashMap<Group, Integer>();
+		for (int i = 0; i < events.size(); i++)
+		{
+			PendingEvent event = events.get(i);
+			if (event.type == PendingEvent.Type.REMOVE_GROUP)
+				removals.put(event.group, i);
+		}
+		
+		// Element events are merged by group, as long as the events of each element are delivered in their original order.
+		// Group events deliver the merged events first.
+		List<PendingElements> merged = new ArrayList<PendingElements>();
+		Map<MapElementID, Integer> lastMerged = new HashMap<MapElementID, Integer>();
+		
+		for (int i = 0; i < events.size(); i++)
+		{
+			PendingEvent event = events.get(i);
+			
+			Integer removal = removals.get(event.group);
+			if (removal != null && i < removal && event.type != PendingEvent.Type.RENAME)
+				continue;
+			
+			if (event.type == PendingEvent.Type.ADD_ELEMENT || event.type == PendingEvent.Type.REMOVE_ELEMENT)
+			{
+				int index = getPendingElements(merged, event);
+				
+				Integer last = lastMerged.get(event.mapElementID);
+				if (last != null && last.intValue() >= index)
+				{
+					deliverElements(merged);
+					lastMerged.clear();
+					index = getPendingElements(merged, event);
+				}
+				
+				merged.get(index).mapElementIDs.add(event.mapElementID);
+				lastMerged.put(event.mapElementID, index);
+				continue;
+			}
+			
+			deliverElements(merged);
+			lastMerged.clear();
+			
+			for (GroupManagerListenerIF listener : m_listeners)
+			{
+				switch (event.type)
+				{
+				case REMOVE_GROUP:
+					listener.onRemoveGroup(event.group, event.netEvent);
+					break;
+					
+				case RENAME:
+					listener.onGroupRename(event.group, event.oldName, event.netEvent);
+					break;
+				}
+			}
+		}
+		
+		deliverElements(merged);
+	}
+	
+	/**
+	 * Deliver merged element notifications to the listeners, then clear them
+	 * @param merged Merged element notifications, in order
+	 */
+	private void deliverElements(List<PendingElements> merged)
+	{
+		for (PendingElements elements : merged)
+		{
+			final boolean add = elements.type == PendingEvent.Type.ADD_ELEMENT;
+			
+			for (GroupManagerListenerIF listener : m_listeners)
+			{
+				if (elements.mapElementIDs.size() > 1)
+				{
+					List<MapElementID> mapElementIDs = Collections.unmodifiableList(elements.mapElementIDs);
+					
+					if (add)
+						listener.onAddMapElementsToGroup(elements.group, mapElementIDs, elements.netEvent);
+					else
+						listener.onRemoveMapElementsFromGroup(elements.group, mapElementIDs, elements.netEvent);
+				}
+				else
+				{
+					MapElementID mapElementID = elements.mapElementIDs.get(0);
+					
+					if (add)
+						listener.onAddMapElementToGroup(elements.group, mapElementID, elements.netEvent);
+					else
+						listener.onRemoveMapElementFromGroup(elements.group, mapElementID, elements.netEvent);
+				}
+			}
+		}
+		
+		merged.clear();
+	}
+	
+	/**
+	 * Get the merged element notifications matching a buffered notification, creating them if needed
+	 * @param merged Merged element notifications
+	 * @param event Buffered element notification
+	 * @return Index of the merged notifications of the same type, for the same group and network event
+	 */
+	private static int getPendingElements(List<PendingElements> merged, PendingEvent event)
+	{
+		for (int i = 0; i < merged.size(); i++)
+		{
+			PendingElements elements = merged.get(i);
+			if (elements.type == event.type && elements.group == event.group && elements.netEvent == event.netEvent)
+				return i;
+		}
+		
+		merged.add(new PendingElements(event.type, event.group, event.netEvent));
+		
+		return merged.size() - 1;
+	}
+	
+	/**
+	 * Notify listeners that a group has been removed
+	 * @param group Removed group
+	 * @param netEvent Source network event or null
+	 */
+	private void fireRemoveGroup(Group group, NetworkEvent netEvent)
+	{
+		if (m_pendingEvents != null)
+		{
+			m_pendingEvents.add(new PendingEvent(PendingEvent.Type.REMOVE_GROUP, group, null, null, netEvent));
+			return;
+		}
+		
+		for (GroupManagerListenerIF listener : m_listeners)
+			listener.onRemoveGroup(group, netEvent);
+	}
+	
 	/**
 	 * Add a group to the list of groups.  Should be used only by Group Object
 	 * @param Group group instance
@@ -295,10 +480,7 @@ public class GroupManager
 		m_groups.remove(group.getName());
 		
 		if (!silent)
-		{
-			for (GroupManagerListenerIF listener : m_listeners)
-				listener.onRemoveGroup(group, netEvent);
-		}
+			fireRemoveGroup(group, netEvent);
 	}
 	
 	/**
@@ -311,6 +493,12 @@ public class GroupManager
 	{
 		m_elements.put(mapElementID, group);
 
+		if (m_pendingEvents != null)
+		{
+			m_pendingEvents.add(new PendingEvent(PendingEvent.Type.ADD_ELEMENT, group, mapElementID, null, netEvent));
+			return;
+		}
+
 		for (GroupManagerListenerIF listener : m_listeners)
 			listener.onAddMapElementToGroup(group, mapElementID, netEvent);
 	}
@@ -325,6 +513,12 @@ public class GroupManager
 	{
 		m_elements.remove(mapElementID);
 		
+		if (m_pendingEvents != null)
+		{
+			m_pendingEvents.add(new PendingEvent(PendingEvent.Type.REMOVE_ELEMENT, group, mapElementID, null, netEvent));
+			return;
+		}
+
 		for (GroupManagerListenerIF listener : m_listeners)
 			listener.onRemoveMapElementFromGroup(group, mapElementID, netEvent);		
 	}
@@ -342,6 +536,12 @@ public class GroupManager
 		
 		m_groups.put(group.getName(), group);
 
+		if (m_pendingEvents != null)
+		{
+			m_pendingEvents.add(new PendingEvent(PendingEvent.Type.RENAME, group, null, oldName, netEvent));
+			return;
+		}
+
 		for (GroupManagerListenerIF listener : m_listeners)
 			listener.onGroupRename(group, oldName, netEvent);
 	}
@@ -351,5 +551,107 @@ public class GroupManager
 	 */
 	private List<GroupManagerListenerIF> m_listeners = new ArrayList<GroupManagerListenerIF>();
 	
+	/**
+	 * Notifications buffered while a batch is open (null otherwise)
+	 */
+	private List<PendingEvent> m_pendingEvents = null;
+	
+	/**
+	 * Number of nested batches currently open
+	 */
+	private int m_batchDepth = 0;
+	
+	/**
+	 * Notification buffered while a batch is open
+	 */
+	private static class PendingEvent
+	{
+		/**
+		 * Type of notification
+		 */
+		enum Type { ADD_ELEMENT, REMOVE_ELEMENT, REMOVE_GROUP, RENAME };
+		
+		/**
+		 * Type of notification
+		 */
+		final Type					type;
+		
+		/**
+		 * Affected group
+		 */
+		final Group					group;
+		
+		/**
+		 * Affected element (null unless adding or removing an element)
+		 */
+		final MapElementID	mapElementID;
+		
+		/**
+		 * Previous group name (null unless renaming)
+		 */
+		final String				oldName;
+		
+		/**
+		 * Source network event or null
+		 */
+		final NetworkEvent	netEvent;
+		
+		/**
+		 * Constructor
+		 * @param type Type of notification
+		 * @param group Affected group
+		 * @param mapElementID Affected element, if any
+		 * @param oldName Previous group name (rename only)
+		 * @param netEvent Source network event or null
+		 */
+		PendingEvent(Type type, Group group, MapElementID mapElementID, String oldName, NetworkEvent netEvent)
+		{
+			this.type = type;
+			this.group = group;
+			this.mapElementID = mapElementID;
+			this.oldName = oldName;
+			this.netEvent = netEvent;
+		}
+	}
+	
+	/**
+	 * Element notifications of the same type, for the same group and network event, merged on delivery
+	 */
+	private static class PendingElements
+	{
+		/**
+		 * Type of notification (ADD_ELEMENT or REMOVE_ELEMENT)
+		 */
+		final PendingEvent.Type		type;
+		
+		/**
+		 * Affected group
+		 */
+		final Group								group;
+		
+		/**
+		 * Source network event or null
+		 */
+		final NetworkEvent				netEvent;
+		
+		/**
+		 * Affected elements, in order
+		 */
+		final List<MapElementID>	mapElementIDs	= new ArrayList<MapElementID>();
+		
+		/**
+		 * Constructor
+		 * @param type Type of notification
+		 * @param group Affected group
+		 * @param netEvent Source network event or null
+		 */
+		PendingElements(PendingEvent.Type type, Group group, NetworkEvent netEvent)
+		{
+			this.type = type;
+			this.group = group;
+			this.netEvent = netEvent;
+		}
+	}
+	
 	// TODO grab onto listeners to auto-remove
 }
@@ -22,6 +22,8 @@
 
 package com.gametable.data;
 
+import java.util.List;
+
 import com.gametable.net.NetworkEvent;
 
 /**
@@ -53,6 +55,24 @@ public interface GroupManagerListenerIF
 	 * @param netEvent Source Network Event
 	 */
 	public void onRemoveMapElementFromGroup(Group group, MapElementID mapElementID, NetworkEvent netEvent);
+	
+	/**
+	 * Called when multiple elements are added to a group within a batch (see {@link GameTableMap#beginBatch()}), instead
+	 * of calling {@link #onAddMapElementToGroup} for each element
+	 * @param group Group the elements are added to
+	 * @param mapElementIDs IDs of the elements
+	 * @param netEvent Source Network Event
+	 */
+	public void onAddMapElementsToGroup(Group group, List<MapElementID> mapElementIDs, NetworkEvent netEvent);
+	
+	/**
+	 * Called when multiple elements are removed from a group within a batch (see {@link GameTableMap#beginBatch()}),
+	 * instead of calling {@link #onRemoveMapElementFromGroup} for each element
+	 * @param group Group the elements are removed from
+	 * @param mapElementIDs IDs of the elements
+	 * @param netEvent Source Network Event
+	 */
+	public void onRemoveMapElementsFromGroup(Group group, List<MapElementID> mapElementIDs, NetworkEvent netEvent);
 
 	/**
 	 * Called when a group's name is changed
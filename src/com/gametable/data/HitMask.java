@@ -0,0 +1,180 @@
+/*
+ * HitMask.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Immutable, run-length encoded visibility mask of a map element. A point is part of the element if the corresponding
+ * pixel of its image is not fully transparent.
+ *
+ * Each row is stored as a list of opaque spans, so large solid images cost a few integers per row rather than a bit per
+ * pixel. Masks are shared between all elements displaying the same image with the same orientation and size (see
+ * {@link MapElementRenderer}).
+ */
+final class HitMask
+{
+	/**
+	 * Width of the mask
+	 */
+	private final int		m_width;
+
+	/**
+	 * Height of the mask
+	 */
+	private final int		m_height;
+
+	/**
+	 * Index, within m_runs, of the first span of each row. Holds one more entry than there are rows, marking the end of
+	 * the last row.
+	 */
+	private final int[]	m_rowStart;
+
+	/**
+	 * Opaque spans, as pairs of start (inclusive) and end (exclusive) x coordinates, ordered by row and by position
+	 */
+	private final int[]	m_runs;
+
+	/**
+	 * Constructor
+	 *
+	 * @param width Width of the mask
+	 * @param height Height of the mask
+	 * @param rowStart Index of the first span of each row
+	 * @param runs Opaque spans
+	 */
+	private HitMask(int width, int height, int[] rowStart, int[] runs)
+	{
+		m_width = width;
+		m_height = height;
+		m_rowStart = rowStart;
+		m_runs = runs;
+	}
+
+	/**
+	 * Build a mask from the alpha channel of an image
+	 *
+	 * @param image Source image
+	 * @return New mask
+	 */
+	public static HitMask create(BufferedImage image)
+	{
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+
+		int[] rowStart = new int[height + 1];
+		int[] runs = new int[Math.max(16, height * 2)];
+		int runCount = 0;
+
+		// Rows are read one at a time, in ARGB form whatever the image's format
+		final int[] row = new int[width];
+
+		for (int y = 0; y < height; y++)
+		{
+			rowStart[y] = runCount;
+			image.getRGB(0, y, width, 1, row, 0, width);
+
+			int x = 0;
+			while (x < width)
+			{
+				// Skip transparent pixels
+				while (x < width && (row[x] >>> 24) == 0)
+					x++;
+
+				if (x == width)
+					break;
+
+				final int start = x;
+				while (x < width && (row[x] >>> 24) != 0)
+					x++;
+
+				if (runCount + 2 > runs.length)
+				{
+					int[] grown = new int[runs.length * 2];
+					System.arraycopy(runs, 0, grown, 0, runCount);
+					runs = grown;
+				}
+
+				runs[runCount++] = start;
+				runs[runCount++] = x;
+			}
+		}
+
+		rowStart[height] = runCount;
+
+		int[] trimmed = new int[runCount];
+		System.arraycopy(runs, 0, trimmed, 0, runCount);
+
+		return new HitMask(width, height, rowStart, trimmed);
+	}
+
+	/**
+	 * Verifies if a point is part of the mask
+	 *
+	 * @param x X coordinate, relative to the top left corner of the mask
+	 * @param y Y coordinate, relative to the top left corner of the mask
+	 * @return true if the point is on an opaque pixel
+	 */
+	public boolean contains(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= m_width || y >= m_height)
+			return false;
+
+		// Binary search for the last span starting at or before x
+		int low = m_rowStart[y] / 2;
+		int high = m_rowStart[y + 1] / 2 - 1;
+
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int start = m_runs[mid * 2];
+
+			if (start > x)
+				high = mid - 1;
+			else if (m_runs[mid * 2 + 1] <= x)
+				low = mid + 1;
+			else
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return Height of the mask
+	 */
+	public int getHeight()
+	{
+		return m_height;
+	}
+
+	/**
+	 * @return Approximate memory used by the mask, in bytes
+	 */
+	public long getMemorySize()
+	{
+		return 4L * (m_rowStart.length + m_runs.length);
+	}
+
+	/**
+	 * @return Width of the mask
+	 */
+	public int getWidth()
+	{
+		return m_width;
+	}
+}
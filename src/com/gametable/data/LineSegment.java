@@ -70,29 +70,7 @@ public class LineSegment implements MapElementRendererIF
     public LineSegment(Element parent)
     {
     	Element colorEl = XMLUtils.getFirstChildElementByTagName(parent, "color");
-    	String rgb = XMLUtils.getElementValue(colorEl);    	
-    	
-    	Color c;
-    	try
-    	{
-    		boolean hasAlpha = false;
-    		
-    		if (rgb.length() > 6)
-    			hasAlpha = true;
-
-    		// Converting to long first to get alpha channel value - parseInt won't automatically convert to signed.
-    		long lRGB = Long.parseLong(rgb, 16);
-    		
-    		// ... but casting will convert it properly
-    		int iRGB = (int)lRGB;    		
-	    	
-	    	c = new Color(iRGB, hasAlpha);
-    	}
-    	catch (NumberFormatException e)
-    	{
-    		c = Color.BLACK;
-    	}    	
-    	m_color = c;
+    	m_color = parseColor(XMLUtils.getElementValue(colorEl));
     	
     	Element startEl = XMLUtils.getFirstChildElementByTagName(parent, "start");
     	m_start = new MapCoordinates(startEl);
@@ -103,6 +81,37 @@ public class LineSegment implements MapElementRendererIF
     	m_bounds = new MapRectangle(m_start, m_end);
     }
 
+    /**
+     * Constructor
+     * @param reader Map file reader, positioned on the line's XML element.  The element is consumed.
+     * @throws IOException
+     */
+    LineSegment(MapXMLReader reader) throws IOException
+    {
+    	Color color = Color.BLACK;
+    	MapCoordinates start = MapCoordinates.ORIGIN;
+    	MapCoordinates end = MapCoordinates.ORIGIN;
+    	
+    	String name;
+    	while ((name = reader.nextChild()) != null)
+    	{
+    		if (name.equals("color"))
+    			color = parseColor(reader.readText());
+    		else if (name.equals("start"))
+    			start = reader.readCoordinates();
+    		else if (name.equals("end"))
+    			end = reader.readCoordinates();
+    		else
+    			reader.skip();
+    	}
+    	
+    	m_color = color;
+    	m_start = start;
+    	m_end = end;
+    	
+    	m_bounds = new MapRectangle(m_start, m_end);
+    }
+
     /**
      * Constructor
      * @param dis Data input stream to read from
@@ -147,6 +156,37 @@ public class LineSegment implements MapElementRendererIF
         m_bounds = new MapRectangle(m_start, m_end);
     }
     
+    /**
+     * Parse a color saved as an hexadecimal string
+     * @param rgb Hexadecimal RGB or ARGB value
+     * @return Color (black if the value cannot be parsed)
+     */
+    static Color parseColor(String rgb)
+    {
+    	if (rgb == null)
+    		return Color.BLACK;
+    	
+    	try
+    	{
+    		boolean hasAlpha = false;
+    		
+    		if (rgb.length() > 6)
+    			hasAlpha = true;
+
+    		// Converting to long first to get alpha channel value - parseInt won't automatically convert to signed.
+    		long lRGB = Long.parseLong(rgb.trim(), 16);
+    		
+    		// ... but casting will convert it properly
+    		int iRGB = (int)lRGB;    		
+	    	
+	    	return new Color(iRGB, hasAlpha);
+    	}
+    	catch (NumberFormatException e)
+    	{
+    		return Color.BLACK;
+    	}
+    }
+    
     /**
      * Checks if a given point is on a given rectangle's edge
      * @param pos Coordinates to look for
@@ -427,6 +467,22 @@ public class LineSegment implements MapElementRendererIF
         return m_color;
     }
     
+    /**
+     * @return This line segment's starting point
+     */
+    public MapCoordinates getStart()
+    {
+        return m_start;
+    }
+    
+    /**
+     * @return This line segment's ending point
+     */
+    public MapCoordinates getEnd()
+    {
+        return m_end;
+    }
+    
     /**
      * Calculates the intersection of this line segment with a given pure vertical or horizontal. 
      * @param pos Either the x or the y, depending on the boolean sent with it.
@@ -0,0 +1,813 @@
+/*
+ * LineSegmentStore.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.Color;
+import java.util.*;
+
+/**
+ * Packed, spatially bucketed storage for the line segments drawn on a map.
+ *
+ * Segments are not kept as objects: each segment occupies a slot within parallel int arrays (coordinates and an index
+ * within a palette of shared colors). Maps covered with freehand drawings hold hundreds of thousands of segments, which
+ * would otherwise mean as many small objects to keep in memory and for the garbage collector to scan. LineSegment
+ * objects are only built on request (see {@link #getAll()}); painting and network encoding can read the segments
+ * through a {@link PackedLineSegments} buffer instead.
+ *
+ * The map is divided in square cells and each segment's slot is registered in every cell its bounds touch, so that
+ * erasing and painting only have to visit the segments found near the affected region. Segments spanning a very large
+ * number of cells are kept in a separate list that is always inspected. The cells are those of {@link MapSpatialIndex}.
+ * Slot order is drawing order: the pieces left by erasing part of a segment take the segment's place. Slots freed by
+ * erasing are reclaimed by compacting the arrays once they make up most of the store.
+ *
+ * The store is thread safe: lines are painted from the event thread while network messages may modify them.
+ */
+class LineSegmentStore
+{
+	/**
+	 * Growable list of ints
+	 */
+	private static final class IntList
+	{
+		/**
+		 * Values
+		 */
+		int[]	values	= new int[4];
+
+		/**
+		 * Number of values used
+		 */
+		int		size		= 0;
+
+		/**
+		 * Append a value
+		 *
+		 * @param value Value to add
+		 */
+		void add(int value)
+		{
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+
+			values[size++] = value;
+		}
+
+		/**
+		 * Remove the first occurrence of a value
+		 *
+		 * @param value Value to remove
+		 */
+		void remove(int value)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (values[i] == value)
+				{
+					System.arraycopy(values, i + 1, values, i, size - i - 1);
+					size--;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Segments covering more cells than this are stored in the 'large' list
+	 */
+	private static final int							MAX_CELLS				= 64;
+
+	/**
+	 * Minimum number of free slots before the arrays are compacted
+	 */
+	private static final int							MIN_COMPACT			= 1024;
+
+	/**
+	 * Palette index marking a free slot
+	 */
+	private static final int							FREE						= -1;
+
+	/**
+	 * Start X coordinate of each slot
+	 */
+	private int[]													m_startX				= new int[64];
+
+	/**
+	 * Start Y coordinate of each slot
+	 */
+	private int[]													m_startY				= new int[64];
+
+	/**
+	 * End X coordinate of each slot
+	 */
+	private int[]													m_endX					= new int[64];
+
+	/**
+	 * End Y coordinate of each slot
+	 */
+	private int[]													m_endY					= new int[64];
+
+	/**
+	 * Palette index of the color of each slot, or FREE
+	 */
+	private int[]													m_colors				= new int[64];
+
+	/**
+	 * Stamp of the last query that returned each slot - used to filter out duplicates
+	 */
+	private int[]													m_stamps				= new int[64];
+
+	/**
+	 * Number of slots used (including free slots)
+	 */
+	private int														m_slots					= 0;
+
+	/**
+	 * Number of stored segments
+	 */
+	private int														m_size					= 0;
+
+	/**
+	 * Colors used by the segments
+	 */
+	private final List<Color>							m_palette				= new ArrayList<Color>();
+
+	/**
+	 * Palette index of each color, by RGB value
+	 */
+	private final Map<Integer, Integer>		m_paletteIndex	= new HashMap<Integer, Integer>();
+
+	/**
+	 * Cells (lists of slots), keyed by packed cell coordinates
+	 */
+	private final Map<Long, IntList>			m_cells					= new HashMap<Long, IntList>();
+
+	/**
+	 * Slots of the segments too large to be stored in cells
+	 */
+	private final IntList									m_large					= new IntList();
+
+	/**
+	 * Current query stamp
+	 */
+	private int														m_queryStamp		= 0;
+
+	/**
+	 * True if the cached bounds cover exactly the stored segments
+	 */
+	private boolean												m_boundsValid		= true;
+
+	/**
+	 * Cached bounds of all the segments (meaningful only if the store is not empty)
+	 */
+	private int														m_minX, m_minY, m_maxX, m_maxY;
+
+	/**
+	 * Add a segment to the store
+	 *
+	 * @param ls Segment to add
+	 */
+	public synchronized void add(LineSegment ls)
+	{
+		append(ls.getStart().x, ls.getStart().y, ls.getEnd().x, ls.getEnd().y, ls.getColor());
+	}
+
+	/**
+	 * Add a list of segments to the store
+	 *
+	 * @param lines Segments to add
+	 */
+	public synchronized void addAll(Collection<LineSegment> lines)
+	{
+		ensureCapacity(m_slots + lines.size());
+
+		for (LineSegment ls : lines)
+			append(ls.getStart().x, ls.getStart().y, ls.getEnd().x, ls.getEnd().y, ls.getColor());
+	}
+
+	/**
+	 * Remove all segments from the store
+	 */
+	public synchronized void clear()
+	{
+		m_slots = 0;
+		m_size = 0;
+		m_palette.clear();
+		m_paletteIndex.clear();
+		m_cells.clear();
+		m_large.size = 0;
+		m_boundsValid = true;
+	}
+
+	/**
+	 * Erase the portion of the segments that falls within a rectangle. Only the segments whose bounds intersect the
+	 * rectangle are cropped.
+	 *
+	 * @param rect Region to erase, in map coordinates
+	 * @param colorSpecific If true, only segments of matching color are erased
+	 * @param color Color of the segments to erase (if colorSpecific is true)
+	 * @return true if any segment was modified
+	 */
+	public synchronized boolean erase(MapRectangle rect, boolean colorSpecific, int color)
+	{
+		final MapCoordinates modelStart = rect.topLeft;
+		final MapCoordinates modelEnd = new MapCoordinates(modelStart.x + rect.width, modelStart.y + rect.height);
+
+		boolean modified = false;
+
+		// Additional pieces of the segments split in several pieces, by slot
+		SortedMap<Integer, List<LineSegment>> splits = new TreeMap<Integer, List<LineSegment>>();
+
+		IntList found = query(rect);
+		for (int i = 0; i < found.size; i++)
+		{
+			final int slot = found.values[i];
+
+			if (colorSpecific && m_palette.get(m_colors[slot]).getRGB() != color)
+				continue;
+
+			final LineSegment ls = toLineSegment(slot);
+			final List<LineSegment> result = ls.crop(modelStart, modelEnd);
+
+			// No change if result contains only original line
+			if (result != null && result.size() == 1 && result.get(0) == ls)
+				continue;
+
+			modified = true;
+
+			if (result == null || result.isEmpty())
+			{
+				free(slot);
+				continue;
+			}
+
+			// The first piece takes the segment's slot, the others are inserted right after it
+			replace(slot, result.get(0));
+
+			if (result.size() > 1)
+				splits.put(Integer.valueOf(slot), result.subList(1, result.size()));
+		}
+
+		if (!splits.isEmpty())
+			insertAfter(splits);
+
+		compact();
+
+		return modified;
+	}
+
+	/**
+	 * Get a copy of all stored segments, in insertion order
+	 *
+	 * @return List of segments (never null)
+	 */
+	public synchronized List<LineSegment> getAll()
+	{
+		List<LineSegment> res = new ArrayList<LineSegment>(m_size);
+		for (int slot = 0; slot < m_slots; slot++)
+		{
+			if (m_colors[slot] != FREE)
+				res.add(toLineSegment(slot));
+		}
+
+		return res;
+	}
+
+	/**
+	 * Copy all stored segments to a buffer, in insertion order
+	 *
+	 * @param out Buffer receiving the segments. The buffer is cleared first.
+	 */
+	public synchronized void getAll(PackedLineSegments out)
+	{
+		out.clear();
+		for (int slot = 0; slot < m_slots; slot++)
+		{
+			if (m_colors[slot] != FREE)
+				copy(slot, out);
+		}
+	}
+
+	/**
+	 * Get the bounds of all the stored segments
+	 *
+	 * @return Bounds or null if the store is empty
+	 */
+	public synchronized MapRectangle getBounds()
+	{
+		if (m_size == 0)
+			return null;
+
+		if (!m_boundsValid)
+		{
+			m_boundsValid = true;
+			m_minX = m_minY = Integer.MAX_VALUE;
+			m_maxX = m_maxY = Integer.MIN_VALUE;
+
+			for (int slot = 0; slot < m_slots; slot++)
+			{
+				if (m_colors[slot] != FREE)
+					extendBounds(slot);
+			}
+		}
+
+		return new MapRectangle(new MapCoordinates(m_minX, m_minY), m_maxX - m_minX, m_maxY - m_minY);
+	}
+
+	/**
+	 * Get all segments whose bounds intersect a rectangle
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @return List of segments, in insertion order (never null)
+	 */
+	public synchronized List<LineSegment> getIntersecting(MapRectangle modelRect)
+	{
+		IntList found = query(modelRect);
+
+		List<LineSegment> res = new ArrayList<LineSegment>(found.size);
+		for (int i = 0; i < found.size; i++)
+			res.add(toLineSegment(found.values[i]));
+
+		return res;
+	}
+
+	/**
+	 * Copy all segments whose bounds intersect a rectangle to a buffer, in insertion order
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @param out Buffer receiving the segments. The buffer is cleared first.
+	 */
+	public synchronized void getIntersecting(MapRectangle modelRect, PackedLineSegments out)
+	{
+		out.clear();
+
+		IntList found = query(modelRect);
+		for (int i = 0; i < found.size; i++)
+			copy(found.values[i], out);
+	}
+
+	/**
+	 * @return True if the store holds no segment
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return m_size == 0;
+	}
+
+	/**
+	 * Remove a segment from the store. Segments are matched by value: if the store holds identical segments, the most
+	 * recent one is removed.
+	 *
+	 * @param ls Segment to remove
+	 * @return true if the segment was found
+	 */
+	public synchronized boolean remove(LineSegment ls)
+	{
+		final int rgb = ls.getColor().getRGB();
+
+		IntList found = query(ls.getBounds());
+		for (int i = found.size - 1; i >= 0; i--)
+		{
+			final int slot = found.values[i];
+			if (m_startX[slot] == ls.getStart().x && m_startY[slot] == ls.getStart().y && m_endX[slot] == ls.getEnd().x
+					&& m_endY[slot] == ls.getEnd().y && m_palette.get(m_colors[slot]).getRGB() == rgb)
+			{
+				free(slot);
+				compact();
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return Number of stored segments
+	 */
+	public synchronized int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Store a segment in a new slot
+	 *
+	 * @param startX Start of the segment
+	 * @param startY
+	 * @param endX End of the segment
+	 * @param endY
+	 * @param color Color of the segment
+	 */
+	private void append(int startX, int startY, int endX, int endY, Color color)
+	{
+		ensureCapacity(m_slots + 1);
+
+		final int slot = m_slots++;
+		m_startX[slot] = startX;
+		m_startY[slot] = startY;
+		m_endX[slot] = endX;
+		m_endY[slot] = endY;
+		m_colors[slot] = getPaletteIndex(color);
+		m_stamps[slot] = 0;
+
+		if (m_size++ == 0)
+		{
+			m_boundsValid = true;
+			m_minX = m_minY = Integer.MAX_VALUE;
+			m_maxX = m_maxY = Integer.MIN_VALUE;
+		}
+
+		if (m_boundsValid)
+			extendBounds(slot);
+
+		insert(slot);
+	}
+
+	/**
+	 * Collect the slots from a cell whose segment intersects a given rectangle
+	 *
+	 * @param cell Slots to inspect
+	 * @param modelRect Rectangle to intersect with
+	 * @param stamp Current query stamp
+	 * @param found List receiving the matching slots
+	 */
+	private void collect(IntList cell, MapRectangle modelRect, int stamp, IntList found)
+	{
+		final int rectMinX = modelRect.topLeft.x;
+		final int rectMinY = modelRect.topLeft.y;
+		final int rectMaxX = rectMinX + modelRect.width;
+		final int rectMaxY = rectMinY + modelRect.height;
+
+		for (int i = 0; i < cell.size; i++)
+		{
+			final int slot = cell.values[i];
+			if (m_stamps[slot] == stamp)
+				continue;
+
+			// Edges are inclusive, as horizontal and vertical segments have zero-sized bounds
+			if (Math.min(m_startX[slot], m_endX[slot]) <= rectMaxX && rectMinX <= Math.max(m_startX[slot], m_endX[slot])
+					&& Math.min(m_startY[slot], m_endY[slot]) <= rectMaxY && rectMinY <= Math.max(m_startY[slot], m_endY[slot]))
+			{
+				m_stamps[slot] = stamp;
+				found.add(slot);
+			}
+		}
+	}
+
+	/**
+	 * Reclaim free slots once they make up most of the store. Slot order (insertion order) is preserved.
+	 */
+	private void compact()
+	{
+		final int free = m_slots - m_size;
+		if (free < MIN_COMPACT || free < m_size)
+			return;
+
+		int target = 0;
+		for (int slot = 0; slot < m_slots; slot++)
+		{
+			if (m_colors[slot] == FREE)
+				continue;
+
+			m_startX[target] = m_startX[slot];
+			m_startY[target] = m_startY[slot];
+			m_endX[target] = m_endX[slot];
+			m_endY[target] = m_endY[slot];
+			m_colors[target] = m_colors[slot];
+			m_stamps[target] = 0;
+			target++;
+		}
+
+		m_slots = target;
+
+		// Slots have moved - rebuild the grid
+		m_cells.clear();
+		m_large.size = 0;
+
+		for (int slot = 0; slot < m_slots; slot++)
+			insert(slot);
+	}
+
+	/**
+	 * Copy a slot's segment to a buffer
+	 *
+	 * @param slot Slot
+	 * @param out Buffer
+	 */
+	private void copy(int slot, PackedLineSegments out)
+	{
+		out.add(m_startX[slot], m_startY[slot], m_endX[slot], m_endY[slot], m_palette.get(m_colors[slot]));
+	}
+
+	/**
+	 * Make sure the arrays can hold a given number of slots
+	 *
+	 * @param capacity Number of slots
+	 */
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= m_startX.length)
+			return;
+
+		final int length = Math.max(capacity, m_startX.length * 2);
+
+		m_startX = Arrays.copyOf(m_startX, length);
+		m_startY = Arrays.copyOf(m_startY, length);
+		m_endX = Arrays.copyOf(m_endX, length);
+		m_endY = Arrays.copyOf(m_endY, length);
+		m_colors = Arrays.copyOf(m_colors, length);
+		m_stamps = Arrays.copyOf(m_stamps, length);
+	}
+
+	/**
+	 * Extend the cached bounds to cover a slot's segment
+	 *
+	 * @param slot Slot
+	 */
+	private void extendBounds(int slot)
+	{
+		m_minX = Math.min(m_minX, Math.min(m_startX[slot], m_endX[slot]));
+		m_minY = Math.min(m_minY, Math.min(m_startY[slot], m_endY[slot]));
+		m_maxX = Math.max(m_maxX, Math.max(m_startX[slot], m_endX[slot]));
+		m_maxY = Math.max(m_maxY, Math.max(m_startY[slot], m_endY[slot]));
+	}
+
+	/**
+	 * Free a slot, removing its segment from the grid
+	 *
+	 * @param slot Slot to free
+	 */
+	private void free(int slot)
+	{
+		visitCells(slot, false);
+
+		m_colors[slot] = FREE;
+		m_size--;
+
+		// Bounds might shrink - recomputed on demand
+		m_boundsValid = false;
+	}
+
+	/**
+	 * Get the palette index of a color, adding the color to the palette if needed
+	 *
+	 * @param color Color
+	 * @return Palette index
+	 */
+	private int getPaletteIndex(Color color)
+	{
+		Integer rgb = Integer.valueOf(color.getRGB());
+
+		Integer index = m_paletteIndex.get(rgb);
+		if (index == null)
+		{
+			index = Integer.valueOf(m_palette.size());
+			m_palette.add(color);
+			m_paletteIndex.put(rgb, index);
+		}
+
+		return index.intValue();
+	}
+
+	/**
+	 * Register a slot within the grid, based on the bounds of its segment
+	 *
+	 * @param slot Slot to register
+	 */
+	private void insert(int slot)
+	{
+		visitCells(slot, true);
+	}
+
+	/**
+	 * Insert segments right after given slots, moving the following slots up
+	 *
+	 * @param segments Segments to insert after each slot
+	 */
+	private void insertAfter(SortedMap<Integer, List<LineSegment>> segments)
+	{
+		int count = 0;
+		for (List<LineSegment> list : segments.values())
+			count += list.size();
+
+		ensureCapacity(m_slots + count);
+
+		// New position of each existing slot
+		final int[] moved = new int[m_slots];
+		Iterator<Map.Entry<Integer, List<LineSegment>>> it = segments.entrySet().iterator();
+		Map.Entry<Integer, List<LineSegment>> next = it.next();
+		int shift = 0;
+
+		for (int slot = 0; slot < m_slots; slot++)
+		{
+			moved[slot] = slot + shift;
+
+			if (next != null && next.getKey().intValue() == slot)
+			{
+				shift += next.getValue().size();
+				next = it.hasNext() ? it.next() : null;
+			}
+		}
+
+		// Slots only move up - copy from the end
+		for (int slot = m_slots - 1; slot >= 0; slot--)
+		{
+			final int target = moved[slot];
+			if (target == slot)
+				break;
+
+			m_startX[target] = m_startX[slot];
+			m_startY[target] = m_startY[slot];
+			m_endX[target] = m_endX[slot];
+			m_endY[target] = m_endY[slot];
+			m_colors[target] = m_colors[slot];
+			m_stamps[target] = m_stamps[slot];
+		}
+
+		m_slots += count;
+
+		// Order is preserved, so the cells only need their slot numbers updated
+		for (IntList cell : m_cells.values())
+			renumber(cell, moved);
+
+		renumber(m_large, moved);
+
+		for (Map.Entry<Integer, List<LineSegment>> entry : segments.entrySet())
+		{
+			int slot = moved[entry.getKey().intValue()];
+			for (LineSegment ls : entry.getValue())
+			{
+				slot++;
+				store(slot, ls);
+				m_size++;
+				insert(slot);
+			}
+		}
+	}
+
+	/**
+	 * Find all slots whose segment intersects a rectangle
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @return Slots, in insertion order
+	 */
+	private IntList query(MapRectangle modelRect)
+	{
+		IntList found = new IntList();
+		int stamp = ++m_queryStamp;
+
+		int minX = MapSpatialIndex.toCell(modelRect.topLeft.x);
+		int minY = MapSpatialIndex.toCell(modelRect.topLeft.y);
+		int maxX = MapSpatialIndex.toCell(modelRect.topLeft.x + modelRect.width);
+		int maxY = MapSpatialIndex.toCell(modelRect.topLeft.y + modelRect.height);
+
+		long cellCount = ((long) maxX - minX + 1) * ((long) maxY - minY + 1);
+
+		if (cellCount > m_cells.size())
+		{
+			// Rectangle is larger than the populated part of the map - visit populated cells instead
+			for (IntList cell : m_cells.values())
+				collect(cell, modelRect, stamp, found);
+		}
+		else
+		{
+			for (int cx = minX; cx <= maxX; cx++)
+			{
+				for (int cy = minY; cy <= maxY; cy++)
+				{
+					IntList cell = m_cells.get(MapSpatialIndex.cellKey(cx, cy));
+					if (cell != null)
+						collect(cell, modelRect, stamp, found);
+				}
+			}
+		}
+
+		collect(m_large, modelRect, stamp, found);
+
+		// Slot order is insertion order
+		Arrays.sort(found.values, 0, found.size);
+
+		return found;
+	}
+
+	/**
+	 * Update slot numbers after slots have moved
+	 *
+	 * @param list Slots
+	 * @param moved New position of each slot
+	 */
+	private static void renumber(IntList list, int[] moved)
+	{
+		for (int i = 0; i < list.size; i++)
+			list.values[i] = moved[list.values[i]];
+	}
+
+	/**
+	 * Replace the segment of a used slot
+	 *
+	 * @param slot Slot
+	 * @param ls New segment
+	 */
+	private void replace(int slot, LineSegment ls)
+	{
+		visitCells(slot, false);
+		store(slot, ls);
+		insert(slot);
+
+		// Bounds might shrink - recomputed on demand
+		m_boundsValid = false;
+	}
+
+	/**
+	 * Write a segment's values to a slot
+	 *
+	 * @param slot Slot
+	 * @param ls Segment
+	 */
+	private void store(int slot, LineSegment ls)
+	{
+		m_startX[slot] = ls.getStart().x;
+		m_startY[slot] = ls.getStart().y;
+		m_endX[slot] = ls.getEnd().x;
+		m_endY[slot] = ls.getEnd().y;
+		m_colors[slot] = getPaletteIndex(ls.getColor());
+		m_stamps[slot] = 0;
+	}
+
+	/**
+	 * Build a LineSegment object from a slot
+	 *
+	 * @param slot Slot
+	 * @return New line segment
+	 */
+	private LineSegment toLineSegment(int slot)
+	{
+		return new LineSegment(new MapCoordinates(m_startX[slot], m_startY[slot]), new MapCoordinates(m_endX[slot], m_endY[slot]),
+				m_palette.get(m_colors[slot]));
+	}
+
+	/**
+	 * Add a slot to, or remove it from, the cells covered by its segment
+	 *
+	 * @param slot Slot
+	 * @param add true to add the slot, false to remove it
+	 */
+	private void visitCells(int slot, boolean add)
+	{
+		final int minCellX = MapSpatialIndex.toCell(Math.min(m_startX[slot], m_endX[slot]));
+		final int minCellY = MapSpatialIndex.toCell(Math.min(m_startY[slot], m_endY[slot]));
+		final int maxCellX = MapSpatialIndex.toCell(Math.max(m_startX[slot], m_endX[slot]));
+		final int maxCellY = MapSpatialIndex.toCell(Math.max(m_startY[slot], m_endY[slot]));
+
+		long cellCount = ((long) maxCellX - minCellX + 1) * ((long) maxCellY - minCellY + 1);
+		if (cellCount > MAX_CELLS)
+		{
+			if (add)
+				m_large.add(slot);
+			else
+				m_large.remove(slot);
+
+			return;
+		}
+
+		for (int cx = minCellX; cx <= maxCellX; cx++)
+		{
+			for (int cy = minCellY; cy <= maxCellY; cy++)
+			{
+				Long key = MapSpatialIndex.cellKey(cx, cy);
+				IntList cell = m_cells.get(key);
+
+				if (add)
+				{
+					if (cell == null)
+					{
+						cell = new IntList();
+						m_cells.put(key, cell);
+					}
+
+					cell.add(slot);
+				}
+				else if (cell != null)
+				{
+					cell.remove(slot);
+					if (cell.size == 0)
+						m_cells.remove(key);
+				}
+			}
+		}
+	}
+
+}
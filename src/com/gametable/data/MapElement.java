@@ -4,12 +4,8 @@
 
 package com.gametable.data;
 
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -22,7 +18,6 @@ import org.w3c.dom.Element;
 import com.gametable.data.MapElementTypeIF.Layer;
 import com.gametable.net.NetworkEvent;
 import com.gametable.ui.MapElementRendererIF;
-import com.gametable.util.Images;
 import com.gametable.util.Log;
 import com.gametable.util.UtilityFunctions;
 import com.maziade.tools.XMLUtils;
@@ -53,10 +48,20 @@ public class MapElement implements Comparable<MapElement>
 	}
 
 	/**
-	 * A bit field representing the surface of the image the cursor responds to
-	 * 
+	 * Mask representing the surface of the image the cursor responds to (shared with similar elements, computed on first
+	 * use)
+	 */
+	private HitMask												m_hitMask								= null;
+
+	/**
+	 * Image from which the hit mask was built
+	 */
+	private Image													m_hitMaskImage					= null;
+
+	/**
+	 * True once the dimensions have been computed from the type's image (false while the image is not available)
 	 */
-	public BitSet													m_hitMap;
+	private boolean												m_dimensionsValid				= false;
 
 	/**
 	 * True if this pog is notifying the world that it's text had changed.
@@ -239,12 +244,8 @@ public class MapElement implements Comparable<MapElement>
 		// ID
 		long id = dis.readLong();
 		
-		// If ID is already in use by another MapElement, we need to reassign it
-		MapElementID existingID = MapElementID.get(id);
-		if (existingID != null)
-			existingID.reassignInternalID();
-		
-		m_id = MapElementID.fromNumeric(id);
+		// If ID is already in use by another MapElement, it is reassigned
+		m_id = MapElementID.claim(id);
 
 		// NAME
 		setName(dis.readUTF());
@@ -302,6 +303,9 @@ public class MapElement implements Comparable<MapElement>
 		{
 			layer = Layer.UNDERLAY;
 		}
+		
+		// CONTENT HASH (network protocol version 2 - older players are rejected at login)
+		final String contentHash = dis.readUTF();
 
 		// POST PROCESSING
 		// special case pseudo-hack check
@@ -322,6 +326,9 @@ public class MapElement implements Comparable<MapElement>
 			type = lib.createPlaceholderType(type_fqn, size);
 		}
 
+		if (type instanceof BasicMapElementType && contentHash.length() > 0)
+			((BasicMapElementType)type).setContentHash(contentHash);
+
 		m_mapElementType = type;
 		m_layer = layer; // Saving here as the init updates the layer for newly dropped pogs.
 		
@@ -416,14 +423,12 @@ public class MapElement implements Comparable<MapElement>
 		if (y >= getHeight())
 			return false;
 
-		// Make sure `hit map' has been generated
-		getHitMap();
-
-		// Look within the map to see if we are contained
-		final int idx = x + (y * getWidth());
-		final boolean value = m_hitMap.get(idx);
+		// Look within the mask to see if we are contained - elements without an image are solid
+		final HitMask mask = getHitMask();
+		if (mask == null)
+			return true;
 
-		return value;
+		return mask.contains(x, y);
 	}
 
 	/*
@@ -493,8 +498,9 @@ public class MapElement implements Comparable<MapElement>
 	 */
 	public MapRectangle getBounds()
 	{
-		// Make sure hit map is built and dimensions are ok
-		getHitMap();
+		// Make sure dimensions are ok if the image was not available until now
+		if (!m_dimensionsValid)
+			updateElementDimension();
 
 		final MapRectangle pogArea = new MapRectangle(m_position, getWidth(), getHeight());
 
@@ -697,7 +703,7 @@ public class MapElement implements Comparable<MapElement>
 		final String normalizedName = UtilityFunctions.normalizeName(name);
 		m_attributes.remove(normalizedName);
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onAttributeChanged(this, name, null, null, false, netEvent);		
 	}
 	
@@ -726,11 +732,11 @@ public class MapElement implements Comparable<MapElement>
 			final String normalizedName = UtilityFunctions.normalizeName(name);
 			m_attributes.remove(normalizedName);
 			
-			for (MapElementListenerIF listener : m_listeners)
+			for (MapElementListenerIF listener : getNotifiedListeners())
 				listener.onAttributeChanged(this, name, null, null, true, netEvent);
 		}		
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onAttributesChanged(this, removeList, netEvent);
 	}
 	
@@ -755,7 +761,7 @@ public class MapElement implements Comparable<MapElement>
 		m_angle = angle;
 		reinitializeHitMap();
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onAngleChanged(this, netEvent);
 	}
 
@@ -781,13 +787,13 @@ public class MapElement implements Comparable<MapElement>
 		
 		if (angleChanged)
 		{
-			for (MapElementListenerIF listener : m_listeners)
+			for (MapElementListenerIF listener : getNotifiedListeners())
 				listener.onAngleChanged(this, null);
 		}
 		
 		if (flipChanged)
 		{
-			for (MapElementListenerIF listener : m_listeners)
+			for (MapElementListenerIF listener : getNotifiedListeners())
 				listener.onFlipChanged(this, null);			
 		}
 
@@ -825,7 +831,7 @@ public class MapElement implements Comparable<MapElement>
 		
 		m_attributes.put(normalizedName, new Attribute(name, value));
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onAttributeChanged(this, name, value, old, false, netEvent);
 	}
 	
@@ -861,11 +867,11 @@ public class MapElement implements Comparable<MapElement>
 			final String normalizedName = UtilityFunctions.normalizeName(attr.name);			
 			m_attributes.put(normalizedName, attr);
 			
-			for (MapElementListenerIF listener : m_listeners)
+			for (MapElementListenerIF listener : getNotifiedListeners())
 				listener.onAttributeChanged(this, attr.name, attr.value, old, true, netEvent);
 		}
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onAttributesChanged(this, attributes, netEvent);
 	}
 	
@@ -920,7 +926,7 @@ public class MapElement implements Comparable<MapElement>
 		
 		reinitializeHitMap();
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onFaceSizeChanged(this, netEvent); 
 	}
 	
@@ -937,7 +943,7 @@ public class MapElement implements Comparable<MapElement>
 		m_flipV = flipV;
 		reinitializeHitMap();
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onFlipChanged(this, netEvent);
 	}
 
@@ -973,10 +979,10 @@ public class MapElement implements Comparable<MapElement>
 		if (layer == m_layer)
 			return;
 		
-		Layer old = layer;
+		Layer old = m_layer;
 		m_layer = layer;
 
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onLayerChanged(this, layer, old, netEvent);
 	}
 	
@@ -1012,7 +1018,7 @@ public class MapElement implements Comparable<MapElement>
 
 		reinitializeHitMap();
 		
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onElementTypeChanged(this, netEvent);
 	}
 	
@@ -1038,7 +1044,7 @@ public class MapElement implements Comparable<MapElement>
 		m_name = name;
 		m_nameNormalized = UtilityFunctions.normalizeName(m_name);
 
-		for (MapElementListenerIF listener : m_listeners)
+		for (MapElementListenerIF listener : getNotifiedListeners())
 			listener.onNameChanged(this, name, old, netEvent);
 	}
 	
@@ -1068,11 +1074,29 @@ public class MapElement implements Comparable<MapElement>
 			MapCoordinates old = m_position;
 			m_position = pos;
 			
-			for (MapElementListenerIF listener : m_listeners)
+			for (MapElementListenerIF listener : getNotifiedListeners())
 				listener.onPositionChanged(this, m_position, old, netEvent);
 		}
 	}
 
+	/**
+	 * Change the position of this element without notifying the listeners. Used by {@link GameTableMap} to move multiple
+	 * elements in a single operation, the map then notifying its own listeners.
+	 * 
+	 * @param pos Map position
+	 * @return Previous position
+	 */
+	MapCoordinates swapPosition(final MapCoordinates pos)
+	{
+		if (pos == null)
+			throw new IllegalArgumentException("Cannot set null position for a MapElement");
+		
+		MapCoordinates old = m_position;
+		m_position = pos;
+		
+		return old;
+	}
+
 	/*
 	 * @see java.lang.Object#toString()
 	 */
@@ -1123,73 +1147,57 @@ public class MapElement implements Comparable<MapElement>
 
 		// LAYER TYPE
 		dos.writeInt(m_layer.ordinal());
+		
+		// CONTENT HASH - lets clients find the image locally, whatever its name
+		String hash = null;
+		if (m_mapElementType instanceof BasicMapElementType)
+			hash = ((BasicMapElementType)m_mapElementType).getContentHash();
+		
+		dos.writeUTF(hash == null ? "" : hash);
 	}
 
 	/**
-	 * Gets the visibility mapping of this element. Visibility mapping is a bit field raster array. All coordinates
-	 * corresponding to a 'true' value are part of the element. The others are transparent pixels and considered outside
-	 * of the element.
+	 * Gets the visibility mask of this element. All coordinates within the mask are part of the element. The others are
+	 * transparent pixels and considered outside of the element.
 	 * 
-	 * @return BitSet object
+	 * @return HitMask object or null if the element has no image
 	 */
-	private BitSet getHitMap()
+	private HitMask getHitMask()
 	{
-		if (m_hitMap != null)
-			return m_hitMap;
+		// The type's image might have been replaced (ex: placeholder replaced by downloaded image)
+		final Image image = m_mapElementType.getImage();
+		
+		HitMask mask = m_hitMask;
+		if (mask != null && image == m_hitMaskImage)
+			return mask;
 
+		updateElementDimension();
+
+		getRenderer();
+		mask = m_renderer.getHitMask();
+		m_hitMask = mask;
+		m_hitMaskImage = image;
+		
+		return mask;
+	}
+
+	/**
+	 * Recompute the element's dimensions from its type's image.  To be called when the type's image is replaced (ex:
+	 * placeholder replaced by the downloaded image), through {@link GameTableMap#refreshMapElements(MapElementTypeIF)}.
+	 */
+	void refreshDimensions()
+	{
 		reinitializeHitMap();
-		return m_hitMap;
 	}
 
 	/**
-	 * Rebuild the hit map
+	 * Discard the hit mask and refresh the element's dimensions.  The mask will be fetched again on the next hit test.
 	 */
 	private void reinitializeHitMap()
 	{
-		m_hitMap = null;
+		m_hitMask = null;
 
 		updateElementDimension();
-
-		final Image img = m_mapElementType.getImage();
-		if (img == null)
-		{
-			return;
-		}
-
-		int width = getWidth();
-		int height = getHeight();
-
-		if (width <= 0 || height < 0)
-		{
-			return;
-		}
-
-		// Create a buffer to receive current element representation
-		BufferedImage bufferedImage = Images.createBufferedImage(width, height);
-
-		final Graphics2D g = bufferedImage.createGraphics();
-
-		// Clean the background with a 'marker' color
-		g.setColor(new Color(0xff00ff));
-		g.fillRect(0, 0, width, height);
-
-		// render at origin, with no scaling
-		getRenderer().drawToCanvas(g, null);
-
-		g.dispose();
-
-		final DataBuffer buffer = bufferedImage.getData().getDataBuffer();
-
-		final int len = width * height;
-
-		// Traverse the buffer and set all found marker colors as transparent
-		m_hitMap = new BitSet(len);
-		m_hitMap.clear();
-		for (int i = 0; i < len; ++i)
-		{
-			final int pixel = buffer.getElem(i) & 0xFFFFFF;
-			m_hitMap.set(i, (pixel != 0xFF00FF));
-		}
 	}
 
 	/**
@@ -1212,13 +1220,17 @@ public class MapElement implements Comparable<MapElement>
 	{
 		Image image = m_mapElementType.getImage();
 
-		if (m_mapElementType.getImage() == null)
+		if (image == null)
 		{
 			m_elementSize.setSize(GameTableMap.getBaseTileSize(), GameTableMap.getBaseTileSize());
+			m_dimensionsValid = false;
 		}
 		else
 		{
 			m_elementSize.setSize(image.getWidth(null), image.getHeight(null));
+			
+			// Dimensions are unknown (-1) until the image is loaded
+			m_dimensionsValid = m_elementSize.width >= 0 && m_elementSize.height >= 0;
 			// Images.getRotatedSquareSize(image.getWidth(null), image.getHeight(null), m_angle, m_elementSize);
 		}
 	}
@@ -1283,8 +1295,58 @@ public class MapElement implements Comparable<MapElement>
   	return m_listeners.remove(listener);
   }
 
+  /**
+   * Start buffering change notifications.  Until the matching call to {@link #commitBatch()}, listeners are not called.
+   * Changes are merged (ex: successive moves report a single position change) and delivered once on commit.
+   * Batches can be nested - notifications are delivered when the outermost batch is committed.
+   */
+  public void beginBatch()
+  {
+  	if (m_batchDepth++ == 0)
+  		m_batch = new MapElementChangeBuffer();
+  }
+  
+  /**
+   * Close a batch opened by {@link #beginBatch()}, delivering the merged change notifications if it is the outermost
+   * batch.
+   */
+  public void commitBatch()
+  {
+  	if (m_batchDepth == 0)
+  		throw new IllegalStateException("No batch in progress");
+  	
+  	if (--m_batchDepth > 0)
+  		return;
+  	
+  	MapElementChangeBuffer batch = m_batch;
+  	m_batch = null;
+  	
+  	batch.deliver(new ArrayList<MapElementListenerIF>(m_listeners));
+  }
+  
+  /**
+   * @return Listeners to notify of a change: the registered listeners or, while a batch is open, the batch buffer
+   */
+  private Collection<MapElementListenerIF> getNotifiedListeners()
+  {
+  	if (m_batch != null)
+  		return Collections.<MapElementListenerIF>singletonList(m_batch);
+  	
+  	return m_listeners;
+  }
+
   /**
    * List of map element listeners
    */
   private List<MapElementListenerIF> m_listeners = new ArrayList<MapElementListenerIF>();
+  
+  /**
+   * Buffered change notifications, while a batch is open
+   */
+  private MapElementChangeBuffer m_batch = null;
+  
+  /**
+   * Number of nested batches currently open
+   */
+  private int m_batchDepth = 0;
 }
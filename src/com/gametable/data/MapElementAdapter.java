@@ -87,4 +87,19 @@ public class MapElementAdapter implements MapElementListenerIF
 	 */
 	@Override
 	public void onElementTypeChanged(MapElement element, NetworkEvent netEvent) {}
+	
+	/**
+	 * Elements of a map have been moved as a single operation (see {@link GameTableMapListenerIF#onMapElementsMoved}).
+	 * Reports each move through {@link #onPositionChanged} - override to handle the moves at once.
+	 * @param oldPositions Previous position of each moved element
+	 * @param netEvent Triggering network event or null
+	 */
+	public void onMapElementsMoved(Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+	{
+		for (Map.Entry<MapElement, MapCoordinates> entry : oldPositions.entrySet())
+		{
+			MapElement element = entry.getKey();
+			onPositionChanged(element, element.getPosition(), entry.getValue(), netEvent);
+		}
+	}
 }
@@ -112,6 +112,30 @@ public class MapElementAdapterOmni implements MapElementListenerIF
 			listener.onPositionChanged(element, newPosition, oldPosition, netEvent);
   }  
   
+  /**
+   * Elements have been moved as a single operation.  Listeners extending MapElementAdapter get the moves at once, 
+   * other listeners get each move through onPositionChanged.
+   * @param oldPositions Previous position of each moved element
+   * @param netEvent Triggering network event or null
+   */
+  public void onMapElementsMoved(Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+  {
+  	for (MapElementListenerIF listener : m_listeners)
+  	{
+  		if (listener instanceof MapElementAdapter)
+  		{
+  			((MapElementAdapter)listener).onMapElementsMoved(oldPositions, netEvent);
+  			continue;
+  		}
+  		
+  		for (Map.Entry<MapElement, MapCoordinates> entry : oldPositions.entrySet())
+  		{
+  			MapElement element = entry.getKey();
+  			listener.onPositionChanged(element, element.getPosition(), entry.getValue(), netEvent);
+  		}
+  	}
+  }
+  
   /*
    * @see com.gametable.data.MapElementListenerIF#onFlipChanged(com.gametable.data.MapElement, com.gametable.net.NetworkEvent)
    */
@@ -0,0 +1,531 @@
+/*
+ * MapElementChangeBuffer.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.util.*;
+
+import com.gametable.data.MapElementTypeIF.Layer;
+import com.gametable.net.NetworkEvent;
+import com.gametable.util.UtilityFunctions;
+
+/**
+ * Records element change notifications while a batch is open (see {@link MapElement#beginBatch()} and
+ * {@link GameTableMap#beginBatch()}) and merges them, so each change is delivered once when the batch is committed.
+ *
+ * Successive changes of the same property collapse into a single notification carrying the first old value and the
+ * last new value. Changes reverting a property to its original value are dropped.
+ */
+final class MapElementChangeBuffer implements MapElementListenerIF
+{
+	/**
+	 * Pending changes, by element, in order of first change
+	 */
+	private final Map<MapElement, PendingChanges>	m_changes	= new LinkedHashMap<MapElement, PendingChanges>();
+
+	/**
+	 * Drop all pending notifications
+	 */
+	public void clear()
+	{
+		m_changes.clear();
+	}
+
+	/**
+	 * Deliver the pending notifications to a listener and clear the buffer
+	 *
+	 * @param listener Listener to notify
+	 */
+	public void deliver(MapElementListenerIF listener)
+	{
+		deliver(Collections.singletonList(listener));
+	}
+
+	/**
+	 * Deliver the pending notifications to listeners and clear the buffer
+	 *
+	 * @param listeners Listeners to notify
+	 */
+	public void deliver(Collection<MapElementListenerIF> listeners)
+	{
+		List<PendingChanges> changes = new ArrayList<PendingChanges>(m_changes.values());
+		m_changes.clear();
+
+		for (PendingChanges pending : changes)
+			pending.deliver(listeners);
+	}
+
+	/**
+	 * Drop the pending notifications of an element (for example, because the element has been removed or is being
+	 * reported as a whole)
+	 *
+	 * @param mapElement Map element
+	 */
+	public void discard(MapElement mapElement)
+	{
+		m_changes.remove(mapElement);
+	}
+
+	/**
+	 * @return true if no notification is pending
+	 */
+	public boolean isEmpty()
+	{
+		return m_changes.isEmpty();
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onAngleChanged(com.gametable.data.MapElement,
+	 * com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onAngleChanged(MapElement element, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		pending.angleChanged = true;
+		pending.angleEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onAttributeChanged(com.gametable.data.MapElement, java.lang.String,
+	 * java.lang.String, java.lang.String, boolean, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onAttributeChanged(MapElement element, String attributeName, String newValue, String oldValue, boolean batch, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+
+		final String key = UtilityFunctions.normalizeName(attributeName);
+		PendingAttribute attribute = pending.attributes.get(key);
+		if (attribute == null)
+		{
+			attribute = new PendingAttribute(oldValue);
+			pending.attributes.put(key, attribute);
+		}
+
+		attribute.name = attributeName;
+		attribute.newValue = newValue;
+		pending.attributesEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onAttributesChanged(com.gametable.data.MapElement, java.util.Map,
+	 * com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onAttributesChanged(MapElement element, Map<String, String> attributes, NetworkEvent netEvent)
+	{
+		// Individual attributes are recorded through onAttributeChanged
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onElementTypeChanged(com.gametable.data.MapElement,
+	 * com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onElementTypeChanged(MapElement element, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		pending.typeChanged = true;
+		pending.typeEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onFaceSizeChanged(com.gametable.data.MapElement,
+	 * com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onFaceSizeChanged(MapElement element, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		pending.faceSizeChanged = true;
+		pending.faceSizeEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onFlipChanged(com.gametable.data.MapElement,
+	 * com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onFlipChanged(MapElement element, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		pending.flipChanged = true;
+		pending.flipEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onLayerChanged(com.gametable.data.MapElement,
+	 * com.gametable.data.MapElementTypeIF.Layer, com.gametable.data.MapElementTypeIF.Layer,
+	 * com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onLayerChanged(MapElement element, Layer newLayer, Layer oldLayer, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		if (!pending.layerChanged)
+		{
+			pending.layerChanged = true;
+			pending.oldLayer = oldLayer;
+		}
+
+		pending.newLayer = newLayer;
+		pending.layerEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onNameChanged(com.gametable.data.MapElement, java.lang.String,
+	 * java.lang.String, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onNameChanged(MapElement element, String newName, String oldName, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		if (!pending.nameChanged)
+		{
+			pending.nameChanged = true;
+			pending.oldName = oldName;
+		}
+
+		pending.newName = newName;
+		pending.nameEvent = netEvent;
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementListenerIF#onPositionChanged(com.gametable.data.MapElement,
+	 * com.gametable.data.MapCoordinates, com.gametable.data.MapCoordinates, com.gametable.net.NetworkEvent)
+	 */
+	@Override
+	public void onPositionChanged(MapElement element, MapCoordinates newPosition, MapCoordinates oldPosition, NetworkEvent netEvent)
+	{
+		PendingChanges pending = getPendingChanges(element);
+		if (pending.oldPosition == null)
+			pending.oldPosition = oldPosition;
+
+		pending.newPosition = newPosition;
+		pending.positionEvent = netEvent;
+	}
+
+	/**
+	 * Remove the pending position changes from the buffer, so they can be reported as a single move (see
+	 * {@link GameTableMapListenerIF#onMapElementsMoved}).
+	 *
+	 * @return Previous position of each moved element, grouped by triggering network event (the null key holds local
+	 *         changes)
+	 */
+	public Map<NetworkEvent, Map<MapElement, MapCoordinates>> takeMoves()
+	{
+		Map<NetworkEvent, Map<MapElement, MapCoordinates>> moves = new LinkedHashMap<NetworkEvent, Map<MapElement, MapCoordinates>>();
+
+		for (PendingChanges pending : m_changes.values())
+		{
+			if (pending.oldPosition == null)
+				continue;
+
+			if (!pending.oldPosition.equals(pending.newPosition))
+			{
+				Map<MapElement, MapCoordinates> oldPositions = moves.get(pending.positionEvent);
+				if (oldPositions == null)
+				{
+					oldPositions = new LinkedHashMap<MapElement, MapCoordinates>();
+					moves.put(pending.positionEvent, oldPositions);
+				}
+
+				oldPositions.put(pending.element, pending.oldPosition);
+			}
+
+			pending.oldPosition = null;
+			pending.newPosition = null;
+		}
+
+		return moves;
+	}
+
+	/**
+	 * Get the pending changes of an element, creating them if needed
+	 *
+	 * @param element Map element
+	 * @return Pending changes
+	 */
+	private PendingChanges getPendingChanges(MapElement element)
+	{
+		PendingChanges pending = m_changes.get(element);
+		if (pending == null)
+		{
+			pending = new PendingChanges(element);
+			m_changes.put(element, pending);
+		}
+
+		return pending;
+	}
+
+	/**
+	 * Pending change of an attribute
+	 */
+	private static class PendingAttribute
+	{
+		/**
+		 * Display name of the attribute, as last reported
+		 */
+		String				name;
+
+		/**
+		 * Value before the first change (null if unknown or not set)
+		 */
+		final String	oldValue;
+
+		/**
+		 * Current value (null if removed)
+		 */
+		String				newValue;
+
+		/**
+		 * Constructor
+		 *
+		 * @param oldValue Value before the first change
+		 */
+		PendingAttribute(String oldValue)
+		{
+			this.oldValue = oldValue;
+		}
+
+		/**
+		 * @return true if the attribute is back to its original value
+		 */
+		boolean isReverted()
+		{
+			return oldValue != null && oldValue.equals(newValue);
+		}
+	}
+
+	/**
+	 * Merged pending changes of a single element
+	 */
+	private static class PendingChanges
+	{
+		/**
+		 * Changed element
+		 */
+		final MapElement												element;
+
+		/**
+		 * Changed attributes, by normalized name
+		 */
+		final Map<String, PendingAttribute>	attributes				= new LinkedHashMap<String, PendingAttribute>();
+
+		/**
+		 * Network event of the last attribute change (each property below also keeps the event of its last change)
+		 */
+		NetworkEvent														attributesEvent;
+
+		/**
+		 * True if the element type has changed
+		 */
+		boolean																	typeChanged;
+
+		/**
+		 * Network event of the last element type change
+		 */
+		NetworkEvent														typeEvent;
+
+		/**
+		 * True if the face size has changed
+		 */
+		boolean																	faceSizeChanged;
+
+		/**
+		 * Network event of the last face size change
+		 */
+		NetworkEvent														faceSizeEvent;
+
+		/**
+		 * True if the angle has changed
+		 */
+		boolean																	angleChanged;
+
+		/**
+		 * Network event of the last angle change
+		 */
+		NetworkEvent														angleEvent;
+
+		/**
+		 * True if the flips have changed
+		 */
+		boolean																	flipChanged;
+
+		/**
+		 * Network event of the last flip change
+		 */
+		NetworkEvent														flipEvent;
+
+		/**
+		 * True if the layer has changed
+		 */
+		boolean																	layerChanged;
+
+		/**
+		 * Layer before the first change
+		 */
+		Layer																		oldLayer;
+
+		/**
+		 * Layer after the last change
+		 */
+		Layer																		newLayer;
+
+		/**
+		 * Network event of the last layer change
+		 */
+		NetworkEvent														layerEvent;
+
+		/**
+		 * True if the name has changed
+		 */
+		boolean																	nameChanged;
+
+		/**
+		 * Name before the first change
+		 */
+		String																	oldName;
+
+		/**
+		 * Name after the last change
+		 */
+		String																	newName;
+
+		/**
+		 * Network event of the last name change
+		 */
+		NetworkEvent														nameEvent;
+
+		/**
+		 * Position before the first change (null if the position has not changed)
+		 */
+		MapCoordinates													oldPosition;
+
+		/**
+		 * Position after the last change
+		 */
+		MapCoordinates													newPosition;
+
+		/**
+		 * Network event of the last position change
+		 */
+		NetworkEvent														positionEvent;
+
+		/**
+		 * Constructor
+		 *
+		 * @param element Changed element
+		 */
+		PendingChanges(MapElement element)
+		{
+			this.element = element;
+		}
+
+		/**
+		 * Deliver the merged notifications
+		 *
+		 * @param listeners Listeners to notify
+		 */
+		void deliver(Collection<MapElementListenerIF> listeners)
+		{
+			if (typeChanged)
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onElementTypeChanged(element, typeEvent);
+			}
+
+			if (faceSizeChanged)
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onFaceSizeChanged(element, faceSizeEvent);
+			}
+
+			if (angleChanged)
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onAngleChanged(element, angleEvent);
+			}
+
+			if (flipChanged)
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onFlipChanged(element, flipEvent);
+			}
+
+			if (layerChanged && oldLayer != newLayer)
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onLayerChanged(element, newLayer, oldLayer, layerEvent);
+			}
+
+			if (nameChanged && (oldName == null ? newName != null : !oldName.equals(newName)))
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onNameChanged(element, newName, oldName, nameEvent);
+			}
+
+			if (oldPosition != null && !oldPosition.equals(newPosition))
+			{
+				for (MapElementListenerIF listener : listeners)
+					listener.onPositionChanged(element, newPosition, oldPosition, positionEvent);
+			}
+
+			deliverAttributes(listeners);
+		}
+
+		/**
+		 * Deliver the attribute notifications, the same way as {@link MapElement#setAttribute} (single attribute) or
+		 * {@link MapElement#setAttributes} (multiple attributes) do.
+		 *
+		 * @param listeners Listeners to notify
+		 */
+		private void deliverAttributes(Collection<MapElementListenerIF> listeners)
+		{
+			List<PendingAttribute> changed = new ArrayList<PendingAttribute>();
+			for (PendingAttribute attribute : attributes.values())
+			{
+				if (!attribute.isReverted())
+					changed.add(attribute);
+			}
+
+			if (changed.size() == 1)
+			{
+				PendingAttribute attribute = changed.get(0);
+				for (MapElementListenerIF listener : listeners)
+					listener.onAttributeChanged(element, attribute.name, attribute.newValue, attribute.oldValue, false, attributesEvent);
+
+				return;
+			}
+
+			if (changed.isEmpty())
+				return;
+
+			Map<String, String> values = new HashMap<String, String>();
+			for (PendingAttribute attribute : changed)
+			{
+				values.put(attribute.name, attribute.newValue);
+
+				for (MapElementListenerIF listener : listeners)
+					listener.onAttributeChanged(element, attribute.name, attribute.newValue, attribute.oldValue, true, attributesEvent);
+			}
+
+			for (MapElementListenerIF listener : listeners)
+				listener.onAttributesChanged(element, values, attributesEvent);
+		}
+	}
+}
@@ -22,11 +22,13 @@
 
 package com.gametable.data;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.gametable.GametableApp;
 
 /**
  * Encapsulates a unique map element instance ID to enforce type safety
+ * 
+ * IDs are registered within a {@link MapElementIDRegistry}.  The static methods refer to the registry of the application's
+ * core (see {@link GameTableCore#getMapElementIDRegistry()}).
  *
  * @author Eric Maziade
  */
@@ -39,24 +41,17 @@ public class MapElementID implements Comparable<MapElementID>
 	 */
 	public static MapElementID fromNumeric(long id)
 	{
-		MapElementID mid = g_idMap.get(id);
-		if (mid == null)
-		{
-			mid = new MapElementID(id);
-		}
-		
-		return mid;
+		return getRegistry().getOrCreate(id);
 	}
 	
 	/**
 	 * Get Id from numeric value (used only for network communications) 
 	 * @param id numeric value
-	 * @return MapElementInstanceID
+	 * @return MapElementInstanceID or null if the value is not in use
 	 */
 	public static MapElementID get(long id)
 	{
-		MapElementID mid = g_idMap.get(id);				
-		return mid;
+		return getRegistry().get(id);
 	}
 	
 	/**
@@ -65,40 +60,45 @@ public class MapElementID implements Comparable<MapElementID>
 	 */
 	public static MapElementID acquire()
 	{
-		return new MapElementID(g_nextAvailableID);
+		return getRegistry().acquire();
 	}
 	
 	/**
-	 * Clear all generated MapElementID
-	 * TODO Clear IDs on new projects
+	 * Register an ID for a numeric value received from another player.  If the value is already in use, the ID
+	 * holding it is moved to another value first.
+	 * @param id numeric value
+	 * @return New ID
 	 */
-	public synchronized static void clear()
+	public static MapElementID claim(long id)
 	{
-		g_nextAvailableID = 1;
-		
-		for (MapElementID id : g_idMap.values())
-			id.invalidate();
-		
-		g_idMap.clear();
+		return getRegistry().claim(id);
 	}
 	
 	/**
-	 * Private constructor - use static methods
+	 * Clear all generated MapElementID.  Called by the core when loading a game replaces both maps.
 	 */
-	private MapElementID(long id)
+	public static void clear()
 	{
-		if (g_idMap.get(id) != null)
-			throw new IllegalArgumentException("Invalid MapElementInstanceID - " + id + " already in use");
-		
-		synchronized (this)
-		{
-			// set next available id
-			if (id >= g_nextAvailableID)
-				g_nextAvailableID = id + 1;
-			
-			m_id = id;
-			g_idMap.put(id, this);	
-		}		
+		getRegistry().clear();
+	}
+	
+	/**
+	 * @return Registry the static methods refer to
+	 */
+	private static MapElementIDRegistry getRegistry()
+	{
+		return GametableApp.getCore().getMapElementIDRegistry();
+	}
+	
+	/**
+	 * Constructor - use static methods or the registry
+	 * @param id numeric value
+	 * @param registry Registry holding the ID
+	 */
+	MapElementID(long id, MapElementIDRegistry registry)
+	{
+		m_id = id;
+		m_registry = registry;
 	}
 	
 	/*
@@ -169,39 +169,42 @@ public class MapElementID implements Comparable<MapElementID>
 	/**
 	 * Renders this ID invalid
 	 */
-	private void invalidate()
+	void invalidate()
 	{
 		m_valid = false;		
 	}
 	
 	/**
-	 * Finds a new internal ID to use for this map element ID
+	 * Change the numeric value of this ID (called by the registry)
+	 * @param id New numeric value
 	 */
-	public synchronized void reassignInternalID()
+	void setNumeric(long id)
 	{
-		g_idMap.remove(m_id);
-		m_id = g_nextAvailableID++;
-		g_idMap.put(m_id, this);
-		
+		m_id = id;
 	}
 	
 	/**
-	 * Internal representation of ID
+	 * Finds a new internal ID to use for this map element ID
+	 * @deprecated Use {@link #claim(long)}, which moves the ID holding a value in the same operation
 	 */
-	private long m_id;
+	@Deprecated
+	public void reassignInternalID()
+	{
+		m_registry.reassign(this);
+	}
 	
 	/**
-	 * Validity flag of pog ID
+	 * Internal representation of ID.  Changed by the registry when the ID is reassigned.
 	 */
-	private boolean m_valid = true;
-
+	private volatile long m_id;
+	
 	/**
-	 * Mapping of all used IDs
+	 * Registry holding this ID
 	 */
-	private static Map<Long, MapElementID> g_idMap = new HashMap<Long, MapElementID>();
+	private final MapElementIDRegistry m_registry;
 	
 	/**
-	 * Last used ID
+	 * Validity flag of pog ID
 	 */
-	private static long g_nextAvailableID = 1;
+	private volatile boolean m_valid = true;
 }
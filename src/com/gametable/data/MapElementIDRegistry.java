@@ -0,0 +1,299 @@
+/*
+ * MapElementIDRegistry.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+/**
+ * Registry of the map element IDs in use within a scope.
+ *
+ * IDs are looked up by numeric value whenever a network message refers to a map element, from the network thread, while
+ * the user interface acquires IDs for new elements. All methods are synchronized. The registry indexes IDs by primitive
+ * long within an open addressing table, so lookups neither box their key nor allocate.
+ *
+ * Each core owns a registry (see {@link GameTableCore#getMapElementIDRegistry()}), cleared when a game is loaded, which
+ * invalidates the IDs of the previous game. Public and private maps share the core's registry, as elements are copied
+ * and moved from one map to the other and are indexed by ID across both.
+ */
+public final class MapElementIDRegistry
+{
+	/**
+	 * Initial capacity of the table (power of 2)
+	 */
+	private static final int											INITIAL_CAPACITY	= 256;
+
+	/**
+	 * Numeric values of the registered IDs, by slot
+	 */
+	private long[]																m_keys;
+
+	/**
+	 * Registered IDs, by slot (null for free slots)
+	 */
+	private MapElementID[]												m_values;
+
+	/**
+	 * Number of registered IDs
+	 */
+	private int																		m_size				= 0;
+
+	/**
+	 * Next numeric value available for new IDs
+	 */
+	private long																	m_nextID			= 1;
+
+	/**
+	 * Constructor - creates an empty registry
+	 */
+	public MapElementIDRegistry()
+	{
+		m_keys = new long[INITIAL_CAPACITY];
+		m_values = new MapElementID[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Acquire a new ID, using the next available numeric value
+	 *
+	 * @return New ID
+	 */
+	public synchronized MapElementID acquire()
+	{
+		return register(m_nextID);
+	}
+
+	/**
+	 * Register an ID with a given numeric value (ex: as sent by another player). If the value is already used within this
+	 * registry, the ID holding it is moved to the next available value first.
+	 *
+	 * @param id Numeric value
+	 * @return New ID
+	 */
+	public synchronized MapElementID claim(long id)
+	{
+		MapElementID existing = get(id);
+		if (existing != null)
+			reassign(existing);
+
+		return register(id);
+	}
+
+	/**
+	 * Invalidate and remove all IDs
+	 */
+	public synchronized void clear()
+	{
+		for (int i = 0; i < m_values.length; i++)
+		{
+			if (m_values[i] != null)
+			{
+				m_values[i].invalidate();
+				m_values[i] = null;
+			}
+		}
+
+		m_size = 0;
+		m_nextID = 1;
+	}
+
+	/**
+	 * Get the ID holding a given numeric value
+	 *
+	 * @param id Numeric value
+	 * @return ID or null if the value is not used
+	 */
+	public synchronized MapElementID get(long id)
+	{
+		final int slot = findSlot(id);
+		return slot < 0 ? null : m_values[slot];
+	}
+
+	/**
+	 * Get the ID holding a given numeric value, registering a new ID if the value is not used
+	 *
+	 * @param id Numeric value
+	 * @return ID
+	 */
+	public synchronized MapElementID getOrCreate(long id)
+	{
+		final int slot = findSlot(id);
+		if (slot >= 0)
+			return m_values[slot];
+
+		return register(id);
+	}
+
+	/**
+	 * @return Number of registered IDs
+	 */
+	public synchronized int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Move an ID to the next available numeric value
+	 *
+	 * @param id ID to move
+	 */
+	synchronized void reassign(MapElementID id)
+	{
+		final long oldValue = id.numeric();
+		if (get(oldValue) == id)
+			remove(oldValue);
+
+		final long newValue = m_nextID;
+		id.setNumeric(newValue);
+		put(newValue, id);
+	}
+
+	/**
+	 * Find the slot holding a given numeric value
+	 *
+	 * @param id Numeric value
+	 * @return Slot or -1 if the value is not used
+	 */
+	private int findSlot(long id)
+	{
+		final int mask = m_keys.length - 1;
+
+		int slot = hash(id) & mask;
+		while (m_values[slot] != null)
+		{
+			if (m_keys[slot] == id)
+				return slot;
+
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Store an ID within the table. The numeric value must not be in use.
+	 *
+	 * @param id Numeric value
+	 * @param value ID
+	 */
+	private void put(long id, MapElementID value)
+	{
+		// Keep the table at most half full, so probe sequences stay short
+		if ((m_size + 1) * 2 > m_keys.length)
+			resize(m_keys.length * 2);
+
+		final int mask = m_keys.length - 1;
+
+		int slot = hash(id) & mask;
+		while (m_values[slot] != null)
+			slot = (slot + 1) & mask;
+
+		m_keys[slot] = id;
+		m_values[slot] = value;
+		m_size++;
+
+		if (id >= m_nextID)
+			m_nextID = id + 1;
+	}
+
+	/**
+	 * Create and store a new ID
+	 *
+	 * @param id Numeric value, which must not be in use
+	 * @return New ID
+	 */
+	private MapElementID register(long id)
+	{
+		MapElementID value = new MapElementID(id, this);
+		put(id, value);
+
+		return value;
+	}
+
+	/**
+	 * Remove an ID from the table
+	 *
+	 * @param id Numeric value
+	 */
+	private void remove(long id)
+	{
+		int slot = findSlot(id);
+		if (slot < 0)
+			return;
+
+		final int mask = m_keys.length - 1;
+
+		// Shift back the following entries of the probe sequence, so no lookup stops at the freed slot
+		int next = slot;
+		while (true)
+		{
+			next = (next + 1) & mask;
+			if (m_values[next] == null)
+				break;
+
+			final int home = hash(m_keys[next]) & mask;
+
+			// Entries whose home slot lies cyclically within (slot, next] stay in place
+			final boolean stays = (slot <= next) ? (slot < home && home <= next) : (slot < home || home <= next);
+			if (stays)
+				continue;
+
+			m_keys[slot] = m_keys[next];
+			m_values[slot] = m_values[next];
+			slot = next;
+		}
+
+		m_values[slot] = null;
+		m_size--;
+	}
+
+	/**
+	 * Rebuild the table with a new capacity
+	 *
+	 * @param capacity New capacity (power of 2)
+	 */
+	private void resize(int capacity)
+	{
+		final long[] keys = m_keys;
+		final MapElementID[] values = m_values;
+
+		m_keys = new long[capacity];
+		m_values = new MapElementID[capacity];
+
+		final int mask = capacity - 1;
+		for (int i = 0; i < values.length; i++)
+		{
+			if (values[i] == null)
+				continue;
+
+			int slot = hash(keys[i]) & mask;
+			while (m_values[slot] != null)
+				slot = (slot + 1) & mask;
+
+			m_keys[slot] = keys[i];
+			m_values[slot] = values[i];
+		}
+	}
+
+	/**
+	 * Hash a numeric value. IDs are mostly consecutive, so the bits are mixed to spread them across the table.
+	 *
+	 * @param id Numeric value
+	 * @return hash
+	 */
+	private static int hash(long id)
+	{
+		int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
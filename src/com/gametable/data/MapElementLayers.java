@@ -0,0 +1,230 @@
+/*
+ * MapElementLayers.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.util.*;
+
+import com.gametable.data.MapElementTypeIF.Layer;
+
+/**
+ * Map elements partitioned by layer.
+ *
+ * Each layer keeps its elements in z-order (the order in which they were added to the layer) along with a spatial index
+ * over their bounds. Painting a layer, hit testing or querying a region only looks at the elements of the layers
+ * involved. An element moved to another layer goes on top of its new layer.
+ *
+ * All methods are synchronized, so the map can be painted from several threads at once (see map export).
+ */
+class MapElementLayers
+{
+	/**
+	 * Layers, from bottom to top (painting order)
+	 */
+	static final Layer[]	PAINT_ORDER	= { Layer.UNDERLAY, Layer.OVERLAY, Layer.ENVIRONMENT, Layer.POG };
+
+	/**
+	 * Elements of a single layer
+	 */
+	private static class LayerContents
+	{
+		/**
+		 * Elements, in z-order
+		 */
+		final Set<MapElement>						elements	= new LinkedHashSet<MapElement>();
+
+		/**
+		 * Spatial index over the elements
+		 */
+		final MapElementSpatialIndex		index			= new MapElementSpatialIndex();
+
+		/**
+		 * Read-only copy of the elements, in z-order. Null when it needs to be rebuilt.
+		 */
+		List<MapElement>								snapshot	= null;
+
+		/**
+		 * Add an element on top of the layer
+		 *
+		 * @param mapElement Element to add
+		 */
+		void add(MapElement mapElement)
+		{
+			elements.add(mapElement);
+			index.add(mapElement);
+			snapshot = null;
+		}
+
+		/**
+		 * Remove an element from the layer
+		 *
+		 * @param mapElement Element to remove
+		 */
+		void remove(MapElement mapElement)
+		{
+			elements.remove(mapElement);
+			index.remove(mapElement);
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Contents of each layer
+	 */
+	private final Map<Layer, LayerContents>	m_layers	= new EnumMap<Layer, LayerContents>(Layer.class);
+
+	/**
+	 * Layer each element is currently stored in. The element's own layer might already differ when it is being moved
+	 * to another layer.
+	 */
+	private final Map<MapElement, Layer>		m_layerOf	= new HashMap<MapElement, Layer>();
+
+	/**
+	 * Constructor
+	 */
+	public MapElementLayers()
+	{
+		for (Layer layer : Layer.values())
+			m_layers.put(layer, new LayerContents());
+	}
+
+	/**
+	 * Add an element on top of its layer
+	 *
+	 * @param mapElement Element to add
+	 */
+	public synchronized void add(MapElement mapElement)
+	{
+		if (m_layerOf.containsKey(mapElement))
+			return;
+
+		Layer layer = mapElement.getLayer();
+		m_layerOf.put(mapElement, layer);
+		m_layers.get(layer).add(mapElement);
+	}
+
+	/**
+	 * Remove all elements
+	 */
+	public synchronized void clear()
+	{
+		m_layerOf.clear();
+
+		for (Layer layer : Layer.values())
+			m_layers.put(layer, new LayerContents());
+	}
+
+	/**
+	 * Get the elements of a layer
+	 *
+	 * @param layer Layer
+	 * @return Read-only list of elements, in painting order
+	 */
+	public synchronized List<MapElement> getElements(Layer layer)
+	{
+		LayerContents contents = m_layers.get(layer);
+		if (contents.snapshot == null)
+			contents.snapshot = Collections.unmodifiableList(new ArrayList<MapElement>(contents.elements));
+
+		return contents.snapshot;
+	}
+
+	/**
+	 * Get the elements of a layer whose bounds intersect a given rectangle
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @param layer Layer
+	 * @return List of elements, in painting order (never null)
+	 */
+	public synchronized List<MapElement> getIntersecting(MapRectangle modelRect, Layer layer)
+	{
+		return m_layers.get(layer).index.getIntersecting(modelRect);
+	}
+
+	/**
+	 * Get the elements of all layers whose bounds intersect a given rectangle
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @return List of elements, layer by layer in painting order (never null)
+	 */
+	public synchronized List<MapElement> getIntersecting(MapRectangle modelRect)
+	{
+		List<MapElement> found = new ArrayList<MapElement>();
+		for (Layer layer : PAINT_ORDER)
+			found.addAll(m_layers.get(layer).index.getIntersecting(modelRect));
+
+		return found;
+	}
+
+	/**
+	 * Get the topmost element found at a given position. Layers are visited from the top, so lower layers are only
+	 * looked at when nothing is hit above them.
+	 *
+	 * @param modelPosition Map coordinates
+	 * @return Element or null
+	 */
+	public synchronized MapElement getTopmostAt(MapCoordinates modelPosition)
+	{
+		for (int i = PAINT_ORDER.length - 1; i >= 0; i--)
+		{
+			List<MapElement> candidates = m_layers.get(PAINT_ORDER[i]).index.getCandidatesAt(modelPosition);
+
+			for (int j = candidates.size() - 1; j >= 0; j--)
+			{
+				MapElement mapElement = candidates.get(j);
+				if (mapElement.contains(modelPosition))
+					return mapElement;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Remove an element
+	 *
+	 * @param mapElement Element to remove
+	 */
+	public synchronized void remove(MapElement mapElement)
+	{
+		Layer layer = m_layerOf.remove(mapElement);
+		if (layer != null)
+			m_layers.get(layer).remove(mapElement);
+	}
+
+	/**
+	 * Refresh an element's placement. To be called whenever the element's position, dimensions or layer change.
+	 *
+	 * @param mapElement Element to update
+	 */
+	public synchronized void update(MapElement mapElement)
+	{
+		Layer layer = m_layerOf.get(mapElement);
+		if (layer == null)
+			return;
+
+		Layer newLayer = mapElement.getLayer();
+		if (newLayer == layer)
+		{
+			m_layers.get(layer).index.update(mapElement);
+			return;
+		}
+
+		m_layers.get(layer).remove(mapElement);
+		m_layerOf.put(mapElement, newLayer);
+		m_layers.get(newLayer).add(mapElement);
+	}
+}
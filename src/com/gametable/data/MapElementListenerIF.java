@@ -72,7 +72,9 @@ public interface MapElementListenerIF
 	public void onAttributesChanged(MapElement element, Map<String, String> attributes, NetworkEvent netEvent);
 	
 	/**
-	 * Name has changed
+	 * Position has changed.  Also called for each element moved as part of a batch (see
+	 * {@link GameTableMapListenerIF#onMapElementsMoved}), unless the listener extends {@link MapElementAdapter} and
+	 * overrides {@link MapElementAdapter#onMapElementsMoved}.
 	 * @param element Element that has changed
 	 * @param newPosition new position
 	 * @param oldPosition old position
@@ -19,14 +19,13 @@
 package com.gametable.data;
 
 import java.awt.*;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Collection;
+import java.awt.image.BufferedImage;
+import java.util.*;
 
 import com.gametable.data.MapElement.Attribute;
 import com.gametable.ui.GametableCanvas;
+import com.gametable.ui.GametableCanvas.ZoomLevel;
 import com.gametable.ui.MapElementRendererIF;
-import com.gametable.util.ImageCache;
 import com.gametable.util.Images;
 
 /**
@@ -93,82 +92,365 @@ public class MapElementRenderer implements MapElementRendererIF
 	@Override
 	public boolean drawToCanvas(Graphics g, GametableCanvas canvas)
 	{
-		// First check if element is visible
-		final MapRectangle visbleCanvas = canvas == null ? null : canvas.getVisibleCanvasRect(canvas.getZoomLevel());
+		// First check if element is within the painted area (the canvas, or a tile when exporting)
+		final Rectangle clip = g.getClipBounds();
 
-		if (canvas != null && !visbleCanvas.intersects(m_mapElement.getBounds()))
+		if (canvas != null && clip != null && !clip.intersects(canvas.modelToView(m_mapElement.getBounds())))
 			return false;
 
 		// convert our model coordinates to draw coordinates
 		final Point drawCoords = canvas == null ? new Point(0, 0) : canvas.modelToView(m_mapElement.getPosition());
-		final float scale = canvas == null ? 1 : (float) canvas.getTileSize() / (float) GameTableMap.getBaseTileSize();
+		final ZoomLevel zoomLevel = canvas == null ? null : canvas.getZoomLevel();
 
-		drawScaled(g, drawCoords.x, drawCoords.y, scale);
+		drawScaled(g, drawCoords.x, drawCoords.y, zoomLevel);
 
 		return true;
 	}
-
+	
 	/**
 	 * Drawing a scaled version of the element on specified device
 	 * 
 	 * @param g Graphics device
 	 * @param x x Coordinate for the paint
 	 * @param y y Coordinate for the paint
+	 * @param zoomLevel Canvas zoom level, used to cache the scaled image.  Null to draw at full resolution.
+	 */
+	private void drawScaled(final Graphics g, final int x, final int y, final ZoomLevel zoomLevel)
+	{
+		final Image image = m_mapElement.getMapElementType().getImage();
+		if (image == null)
+			return;
+		
+		final float scale = zoomLevel == null ? 1 : (float) GametableCanvas.getTileSize(zoomLevel) / (float) GameTableMap.getBaseTileSize();
+		
+		final int drawWidth = Math.round(m_mapElement.getWidth() * scale);
+		final int drawHeight = Math.round(m_mapElement.getHeight() * scale);
+		
+		if (drawWidth <= 0 || drawHeight <= 0)
+			return;
+
+		// Center the image into a square, taking into consideration the height and width
+		final int mw = getCenteringOffset(image, drawWidth, drawHeight, scale);
+		final int mh = 0;
+		
+		if (zoomLevel == null)
+		{
+			g.drawImage(getOrientedImage(image), x - mw / 2, y - mh / 2, drawWidth, drawHeight, null);
+			return;
+		}
+
+		// Sprites are looked up on every draw rather than kept by the renderer, so that the shared cache alone decides
+		// how many of them stay in memory
+		final Image sprite = getSprite(image, zoomLevel, drawWidth, drawHeight);
+
+		// Sprite is already at the proper size - no resampling required
+		g.drawImage(sprite, x - mw / 2, y - mh / 2, null);
+	}
+	
+	/**
+	 * Horizontal offset applied to center rotated images
+	 * 
+	 * @param image Source image
+	 * @param drawWidth Drawing width
+	 * @param drawHeight Drawing height
 	 * @param scale Scaling ratio
+	 * @return offset
+	 */
+	private int getCenteringOffset(Image image, int drawWidth, int drawHeight, float scale)
+	{
+		if (m_mapElement.getAngle() == 0)
+			return 0;
+		
+		return Math.round(drawHeight - (image.getWidth(null) * scale));
+	}
+	
+	/**
+	 * Get the hit mask matching the element's current image, orientation and size.  Masks are computed on first use and
+	 * shared by all elements displaying the same image the same way.
+	 * 
+	 * @return Hit mask or null if the element has no image
 	 */
-	private void drawScaled(final Graphics g, final int x, final int y, final float scale)
+	HitMask getHitMask()
 	{
-		URI uri = createImageURI();
+		final Image image = m_mapElement.getMapElementType().getImage();
+		if (image == null)
+			return null;
+		
+		final int width = m_mapElement.getWidth();
+		final int height = m_mapElement.getHeight();
 		
-		Image im = uri == null ? null : ImageCache.getCachedImage(uri);
+		if (width <= 0 || height <= 0)
+			return null;
+		
+		SpriteKey key = new SpriteKey(image, m_mapElement.getAngle(), m_mapElement.getFlipH(), m_mapElement.getFlipV(), null, width, height);
+		
+		synchronized (g_hitMasks)
+		{
+			HitMask mask = g_hitMasks.get(key);
+			if (mask != null)
+				return mask;
+		}
+		
+		// Same positioning as when painting at scale 1
+		final int mw = getCenteringOffset(image, width, height, 1f);
+		final Image oriented = getOrientedImage(image);
+		
+		BufferedImage buffer;
+		if (mw == 0 && oriented instanceof BufferedImage && oriented.getWidth(null) == width && oriented.getHeight(null) == height)
+		{
+			// Read the alpha channel straight from the image
+			buffer = (BufferedImage) oriented;
+		}
+		else
+		{
+			buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = buffer.createGraphics();
+			g.drawImage(oriented, -mw / 2, 0, width, height, null);
+			g.dispose();
+		}
+		
+		HitMask mask = HitMask.create(buffer);
+		
+		synchronized (g_hitMasks)
+		{
+			g_hitMasks.put(key, mask);
+			g_hitMaskBytes += mask.getMemorySize();
+			
+			// Evict least recently used masks until we are back within budget
+			Iterator<HitMask> masks = g_hitMasks.values().iterator();
+			while (g_hitMaskBytes > MAX_HIT_MASK_BYTES && masks.hasNext())
+			{
+				HitMask evicted = masks.next();
+				if (evicted == mask)
+					break;
+				
+				g_hitMaskBytes -= evicted.getMemorySize();
+				masks.remove();
+			}
+		}
+		
+		return mask;
+	}
+	
+	/**
+	 * Get the element's image, flipped and rotated, at full resolution.  Transformed images are kept in their own cache,
+	 * so that building sprites for large images does not evict the sprites being displayed.
+	 * 
+	 * @param source Image of the element's type
+	 * @return Image
+	 */
+	private Image getOrientedImage(Image source)
+	{
+		final double angle = m_mapElement.getAngle();
+		final boolean flipH = m_mapElement.getFlipH();
+		final boolean flipV = m_mapElement.getFlipV();
+		
+		// Nothing to transform - the source image is already held by the element's type
+		if (angle == 0 && !flipH && !flipV)
+			return source;
+		
+		SpriteKey key = new SpriteKey(source, angle, flipH, flipV, null, 0, 0);
+		
+		Image im = g_orientedImages.get(key);
+		if (im == null)
+		{
+			im = Images.rotateImage(Images.flipImage(source, flipH, flipV), angle);
+			g_orientedImages.put(key, im);
+		}
+		
+		return im;
+	}
+	
+	/**
+	 * Get the element's sprite for a zoom level from the shared sprite cache, building it if required.  Elements sharing
+	 * the same type, orientation and size share the same sprites.  A replaced type image (ex: placeholder replaced by the
+	 * downloaded image) simply maps to new entries, the old ones aging out of the cache.
+	 * 
+	 * @param source Image of the element's type
+	 * @param zoomLevel Zoom level
+	 * @param width Width of the sprite, in pixels
+	 * @param height Height of the sprite, in pixels
+	 * @return Image
+	 */
+	private Image getSprite(Image source, ZoomLevel zoomLevel, int width, int height)
+	{
+		SpriteKey key = new SpriteKey(source, m_mapElement.getAngle(), m_mapElement.getFlipH(), m_mapElement.getFlipV(), zoomLevel,
+				m_mapElement.getWidth(), m_mapElement.getHeight());
 		
+		Image im = g_sprites.get(key);
 		if (im == null)
 		{
-			im = Images.rotateImage(
-				Images.flipImage(
-						m_mapElement.getMapElementType().getImage(), m_mapElement.getFlipH(), m_mapElement.getFlipV()
-				),
-				m_mapElement.getAngle()
-			);
+			im = Images.getProgressiveScaledInstance(getOrientedImage(source), width, height);
+			g_sprites.put(key, im);
+		}
+		
+		return im;
+	}
+	
+	/**
+	 * Least recently used cache of images, bounded by a number of pixels
+	 */
+	private static class SpriteCache
+	{
+		/**
+		 * Cached images, in least recently used order
+		 */
+		private final Map<SpriteKey, Image>	m_images	= new LinkedHashMap<SpriteKey, Image>(16, 0.75f, true);
+		
+		/**
+		 * Maximum number of pixels held by the cache
+		 */
+		private final long									m_maxPixels;
+		
+		/**
+		 * Number of pixels currently held by the cache
+		 */
+		private long												m_pixels	= 0;
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param maxPixels Maximum number of pixels held by the cache
+		 */
+		SpriteCache(long maxPixels)
+		{
+			m_maxPixels = maxPixels;
+		}
+		
+		/**
+		 * Get a cached image
+		 * 
+		 * @param key Image key
+		 * @return Image or null if not cached
+		 */
+		synchronized Image get(SpriteKey key)
+		{
+			return m_images.get(key);
+		}
+		
+		/**
+		 * Add an image to the cache, evicting the least recently used images until the cache is back within budget.  The
+		 * added image is always kept.
+		 * 
+		 * @param key Image key
+		 * @param im Image
+		 */
+		synchronized void put(SpriteKey key, Image im)
+		{
+			Image replaced = m_images.put(key, im);
+			if (replaced != null)
+				m_pixels -= getPixels(replaced);
+			
+			m_pixels += getPixels(im);
 			
-			ImageCache.cacheImage(uri, im);
+			Iterator<Image> images = m_images.values().iterator();
+			while (m_pixels > m_maxPixels && images.hasNext())
+			{
+				Image evicted = images.next();
+				if (evicted == im)
+					break;
+				
+				m_pixels -= getPixels(evicted);
+				images.remove();
+			}
 		}
 		
-		final int drawWidth = Math.round(m_mapElement.getWidth() * scale);
-		final int drawHeight = Math.round(m_mapElement.getHeight() * scale);
-
-		// Center the image into a square, taking into consideration the height and width
-		int mw = 0;
-		int mh = 0;
-		if (m_mapElement.getAngle() != 0)
+		/**
+		 * @param im Image
+		 * @return Number of pixels of the image
+		 */
+		private static long getPixels(Image im)
 		{
-			Image image = m_mapElement.getMapElementType().getImage();
-
-			mw = Math.round(drawWidth - (image.getHeight(null) * scale));
-			mw = Math.round(drawHeight - (image.getWidth(null) * scale));
+			return (long) im.getWidth(null) * im.getHeight(null);
 		}
-
-		g.drawImage(im, x - mw / 2, y - mh / 2, drawWidth, drawHeight, null);
 	}
 	
 	/**
-	 * Creates an URI based on the map element's display properties.  This URI will be used for caching purposes.
-	 * @return URI
+	 * Identifies a cached sprite
 	 */
-	private URI createImageURI()
+	private static class SpriteKey
 	{
-		// Use the source image - if it was to change, and none of the other elements, I'd like to know.
-		Image srcImage = m_mapElement.getMapElementType().getImage();
-		int srcHash = srcImage.hashCode();
+		/**
+		 * Source image - compared by identity
+		 */
+		final Image		source;
+		
+		/**
+		 * Rotation angle
+		 */
+		final double	angle;
 		
-		try
+		/**
+		 * Horizontal flip
+		 */
+		final boolean	flipH;
+		
+		/**
+		 * Vertical flip
+		 */
+		final boolean	flipV;
+		
+		/**
+		 * Zoom level of the sprite (null for images at map resolution)
+		 */
+		final ZoomLevel	zoomLevel;
+		
+		/**
+		 * Size of the element, in map units (0 for full resolution images)
+		 */
+		final int			width, height;
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param src Source image
+		 * @param ang Rotation angle
+		 * @param fH Horizontal flip
+		 * @param fV Vertical flip
+		 * @param zoom Zoom level
+		 * @param w Width
+		 * @param h Height
+		 */
+		SpriteKey(Image src, double ang, boolean fH, boolean fV, ZoomLevel zoom, int w, int h)
 		{
-			URI uri = new URI("gti://" + srcHash + "/" + m_mapElement.getAngle() + "/" + m_mapElement.getFlipH() + "/" + m_mapElement.getFlipV());		
-			return uri;
+			source = src;
+			angle = ang;
+			flipH = fH;
+			flipV = fV;
+			zoomLevel = zoom;
+			width = w;
+			height = h;
+		}
+		
+		/*
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof SpriteKey))
+				return false;
+			
+			SpriteKey key = (SpriteKey) obj;
+			return key.source == source && key.angle == angle && key.flipH == flipH && key.flipV == flipV && key.zoomLevel == zoomLevel
+					&& key.width == width && key.height == height;
 		}
-		catch (URISyntaxException e)
+		
+		/*
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode()
 		{
-			return null;	// this will disable caching
+			long bits = Double.doubleToLongBits(angle);
+			int hash = System.identityHashCode(source);
+			hash = hash * 31 + (int) (bits ^ (bits >>> 32));
+			hash = hash * 31 + (flipH ? 1 : 0) + (flipV ? 2 : 0);
+			hash = hash * 31 + (zoomLevel == null ? -1 : zoomLevel.ordinal());
+			hash = hash * 31 + width;
+			hash = hash * 31 + height;
+			
+			return hash;
 		}
 	}
 
@@ -340,4 +622,39 @@ public class MapElementRenderer implements MapElementRendererIF
 	 * Map element to render
 	 */
 	protected final MapElement	m_mapElement;
+	
+	/**
+	 * Maximum number of pixels held by the shared sprite cache (16M pixels - 64MB at 32 bits per pixel)
+	 */
+	private static final long		MAX_SPRITE_PIXELS	= 16 * 1024 * 1024;
+	
+	/**
+	 * Maximum number of pixels held by the cache of flipped and rotated full resolution images (16M pixels)
+	 */
+	private static final long		MAX_ORIENTED_PIXELS	= 16 * 1024 * 1024;
+	
+	/**
+	 * Sprites shared between all elements, by zoom level
+	 */
+	private static final SpriteCache	g_sprites		= new SpriteCache(MAX_SPRITE_PIXELS);
+	
+	/**
+	 * Flipped and rotated full resolution images, used to build the sprites and hit masks
+	 */
+	private static final SpriteCache	g_orientedImages	= new SpriteCache(MAX_ORIENTED_PIXELS);
+	
+	/**
+	 * Maximum memory used by the shared hit masks (16MB)
+	 */
+	private static final long		MAX_HIT_MASK_BYTES	= 16 * 1024 * 1024;
+	
+	/**
+	 * Hit masks shared between all elements, in least recently used order
+	 */
+	private static final Map<SpriteKey, HitMask>	g_hitMasks	= new LinkedHashMap<SpriteKey, HitMask>(16, 0.75f, true);
+	
+	/**
+	 * Memory currently used by the shared hit masks, in bytes
+	 */
+	private static long					g_hitMaskBytes		= 0;
 }
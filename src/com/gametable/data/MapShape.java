@@ -0,0 +1,654 @@
+/*
+ * MapShape.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.maziade.tools.XMLUtils;
+
+/**
+ * Immutable vector shape drawn on the map (freehand stroke, box or circle).
+ *
+ * A shape is defined by a few points and is stored, sent and saved as such, rather than as the many line segments it
+ * would take to draw it. It is only converted to a drawable outline for display, at the current zoom level (see
+ * {@link #toViewShape(int)}). Erasing part of a shape leaves polylines made of what remains of its outline, so shapes
+ * are erased the same way line segments are.
+ */
+public abstract class MapShape
+{
+	/**
+	 * Kinds of shapes
+	 */
+	public enum Type
+	{
+		/**
+		 * Connected series of line segments
+		 */
+		POLYLINE,
+
+		/**
+		 * Outline of a rectangle
+		 */
+		RECTANGLE,
+
+		/**
+		 * Outline of an ellipse, inscribed within a rectangle
+		 */
+		ELLIPSE
+	}
+
+	/**
+	 * Defining points (x, y pairs)
+	 */
+	protected final int[]			m_coords;
+
+	/**
+	 * Color of the shape
+	 */
+	private final Color				m_color;
+
+	/**
+	 * Bounds of the defining points
+	 */
+	private final MapRectangle	m_bounds;
+
+	/**
+	 * Constructor
+	 *
+	 * @param coords Defining points (x, y pairs). The array is kept by the shape.
+	 * @param color Color of the shape
+	 */
+	protected MapShape(int[] coords, Color color)
+	{
+		m_coords = coords;
+		m_color = color;
+
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+
+		for (int i = 0; i < coords.length; i += 2)
+		{
+			minX = Math.min(minX, coords[i]);
+			minY = Math.min(minY, coords[i + 1]);
+			maxX = Math.max(maxX, coords[i]);
+			maxY = Math.max(maxY, coords[i + 1]);
+		}
+
+		m_bounds = new MapRectangle(new MapCoordinates(minX, minY), maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * Create a shape of a given type
+	 *
+	 * @param type Type of shape
+	 * @param coords Defining points (x, y pairs): all points for polylines, two opposite corners for rectangles and
+	 *          ellipses. The array is kept by the shape.
+	 * @param color Color of the shape
+	 * @return New shape
+	 * @throws IllegalArgumentException if the number of points does not match the type of shape
+	 */
+	public static MapShape create(Type type, int[] coords, Color color)
+	{
+		switch (type)
+		{
+		case POLYLINE:
+			if (coords.length < 4 || coords.length % 2 != 0)
+				throw new IllegalArgumentException("A polyline requires at least 2 points");
+
+			return new PolylineShape(coords, color);
+
+		case RECTANGLE:
+			if (coords.length != 4)
+				throw new IllegalArgumentException("A rectangle requires 2 points");
+
+			return new RectangleShape(coords, color);
+
+		case ELLIPSE:
+			if (coords.length != 4)
+				throw new IllegalArgumentException("An ellipse requires 2 points");
+
+			return new EllipseShape(coords, color);
+		}
+
+		throw new IllegalArgumentException("Unknown shape type " + type);
+	}
+
+	/**
+	 * Read a shape from a data stream (as written by {@link #writeToPacket(DataOutputStream)})
+	 *
+	 * @param dis Data input stream to read from
+	 * @return New shape
+	 * @throws IOException
+	 */
+	public static MapShape readFromPacket(DataInputStream dis) throws IOException
+	{
+		final int typeIndex = dis.readByte();
+		if (typeIndex < 0 || typeIndex >= Type.values().length)
+			throw new IOException("Unknown shape type " + typeIndex);
+
+		final Color color = new Color(dis.readInt());
+
+		final int pointCount = dis.readInt();
+		if (pointCount < 2 || pointCount > MAX_POINTS)
+			throw new IOException("Invalid shape point count " + pointCount);
+
+		final int[] coords = new int[pointCount * 2];
+		for (int i = 0; i < coords.length; i++)
+			coords[i] = dis.readInt();
+
+		try
+		{
+			return create(Type.values()[typeIndex], coords, color);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Read a shape from XML (as written by {@link #serialize(Element)})
+	 *
+	 * @param parent XML element of the shape
+	 * @return New shape or null if the element does not describe a valid shape
+	 */
+	public static MapShape deserialize(Element parent)
+	{
+		Type type = parseType(parent.getAttribute("type"));
+		if (type == null)
+			return null;
+
+		Element colorEl = XMLUtils.getFirstChildElementByTagName(parent, "color");
+		Color color = LineSegment.parseColor(XMLUtils.getElementValue(colorEl));
+
+		List<Element> pointEls = XMLUtils.getChildElementsByTagName(parent, "point");
+
+		int[] coords = new int[pointEls.size() * 2];
+		int i = 0;
+		for (Element pointEl : pointEls)
+		{
+			MapCoordinates point = new MapCoordinates(pointEl);
+			coords[i++] = point.x;
+			coords[i++] = point.y;
+		}
+
+		return createOrNull(type, coords, color);
+	}
+
+	/**
+	 * Read a shape from a map file
+	 *
+	 * @param reader Map file reader, positioned on the shape's XML element. The element is consumed.
+	 * @return New shape or null if the element does not describe a valid shape
+	 * @throws IOException
+	 */
+	static MapShape deserialize(MapXMLReader reader) throws IOException
+	{
+		Type type = parseType(reader.getAttribute("type"));
+
+		Color color = Color.BLACK;
+		int[] coords = new int[8];
+		int size = 0;
+
+		String name;
+		while ((name = reader.nextChild()) != null)
+		{
+			if (name.equals("color"))
+			{
+				color = LineSegment.parseColor(reader.readText());
+			}
+			else if (name.equals("point"))
+			{
+				MapCoordinates point = reader.readCoordinates();
+
+				if (size + 2 > coords.length)
+				{
+					int[] newCoords = new int[coords.length * 2];
+					System.arraycopy(coords, 0, newCoords, 0, size);
+					coords = newCoords;
+				}
+
+				coords[size++] = point.x;
+				coords[size++] = point.y;
+			}
+			else
+			{
+				reader.skip();
+			}
+		}
+
+		if (type == null)
+			return null;
+
+		int[] points = new int[size];
+		System.arraycopy(coords, 0, points, 0, size);
+
+		return createOrNull(type, points, color);
+	}
+
+	/**
+	 * Get the parts of the shape that lie outside of a rectangle (for erasing)
+	 *
+	 * @param rect Rectangle to remove from the shape, in map coordinates
+	 * @return Null if the shape does not touch the rectangle (the shape is unchanged). Otherwise, the polylines
+	 *         remaining from the shape's outline (empty if the whole shape lies within the rectangle).
+	 */
+	public List<MapShape> crop(MapRectangle rect)
+	{
+		if (!touches(rect))
+			return null;
+
+		return clip(rect, false);
+	}
+
+	/**
+	 * @return Bounds of the shape, in map coordinates
+	 */
+	public MapRectangle getBounds()
+	{
+		return m_bounds;
+	}
+
+	/**
+	 * @return Color of the shape
+	 */
+	public Color getColor()
+	{
+		return m_color;
+	}
+
+	/**
+	 * Get one of the points defining the shape
+	 *
+	 * @param index Index of the point
+	 * @return Map coordinates
+	 */
+	public MapCoordinates getPoint(int index)
+	{
+		return new MapCoordinates(m_coords[index * 2], m_coords[index * 2 + 1]);
+	}
+
+	/**
+	 * @return Number of points defining the shape
+	 */
+	public int getPointCount()
+	{
+		return m_coords.length / 2;
+	}
+
+	/**
+	 * Get the parts of the shape that lie within a rectangle
+	 *
+	 * @param rect Rectangle, in map coordinates
+	 * @return List containing this shape if it lies entirely within the rectangle. Otherwise, the polylines made from
+	 *         the portions of its outline within the rectangle (empty if the shape lies outside the rectangle).
+	 */
+	public List<MapShape> getPortionsInside(MapRectangle rect)
+	{
+		if (!touches(rect))
+			return new ArrayList<MapShape>();
+
+		List<MapShape> res = clip(rect, true);
+		if (res == null)
+		{
+			res = new ArrayList<MapShape>(1);
+			res.add(this);
+		}
+
+		return res;
+	}
+
+	/**
+	 * @return Type of shape
+	 */
+	public abstract Type getType();
+
+	/**
+	 * Store information about the shape within an XML element
+	 *
+	 * @param parent Element to fill
+	 */
+	public void serialize(Element parent)
+	{
+		Document doc = parent.getOwnerDocument();
+
+		parent.setAttribute("type", getType().name().toLowerCase());
+
+		Element colorEl = doc.createElement("color");
+		colorEl.appendChild(doc.createTextNode(Integer.toHexString(m_color.getRGB())));
+		parent.appendChild(colorEl);
+
+		for (int i = 0; i < getPointCount(); i++)
+		{
+			Element pointEl = doc.createElement("point");
+			getPoint(i).serialize(pointEl);
+			parent.appendChild(pointEl);
+		}
+	}
+
+	/**
+	 * Verify if the bounds of the shape touch a rectangle. Edges are included, as horizontal or vertical shapes have
+	 * bounds of zero width or height.
+	 *
+	 * @param rect Rectangle, in map coordinates
+	 * @return true if the bounds touch the rectangle
+	 */
+	public boolean touches(MapRectangle rect)
+	{
+		return m_bounds.topLeft.x <= rect.topLeft.x + rect.width && rect.topLeft.x <= m_bounds.topLeft.x + m_bounds.width
+				&& m_bounds.topLeft.y <= rect.topLeft.y + rect.height && rect.topLeft.y <= m_bounds.topLeft.y + m_bounds.height;
+	}
+
+	/**
+	 * Convert the shape to view coordinates, for drawing
+	 *
+	 * @param tileSize Size of a square at the current zoom level, in pixels
+	 * @return Shape in view coordinates
+	 */
+	public abstract Shape toViewShape(int tileSize);
+
+	/**
+	 * Write the shape to a data stream
+	 *
+	 * @param dos Stream to write to
+	 * @throws IOException
+	 */
+	public void writeToPacket(DataOutputStream dos) throws IOException
+	{
+		dos.writeByte(getType().ordinal());
+		dos.writeInt(m_color.getRGB());
+		dos.writeInt(getPointCount());
+
+		for (int i = 0; i < m_coords.length; i++)
+			dos.writeInt(m_coords[i]);
+	}
+
+	/**
+	 * Get the outline of the shape as a series of connected points, in map coordinates. Closed shapes repeat their
+	 * first point at the end. The outline only depends on the shape itself, so all players crop shapes identically.
+	 *
+	 * @return Outline points (x, y pairs)
+	 */
+	protected abstract int[] getOutline();
+
+	/**
+	 * Convert a map coordinate to a view coordinate. Same conversion as the canvas, so shapes stay aligned with line
+	 * segments and map elements.
+	 *
+	 * @param c Map coordinate
+	 * @param tileSize Size of a square, in pixels
+	 * @return View coordinate
+	 */
+	protected static int toView(int c, int tileSize)
+	{
+		return (int) Math.round(c / (double) GameTableMap.getBaseTileSize() * tileSize);
+	}
+
+	/**
+	 * Split the outline of the shape against a rectangle
+	 *
+	 * @param rect Rectangle, in map coordinates
+	 * @param inside If true, the portions within the rectangle are kept. Otherwise, the portions outside are kept.
+	 * @return Null if the outline lies entirely on the kept side. Otherwise, the kept portions as polylines.
+	 */
+	private List<MapShape> clip(MapRectangle rect, boolean inside)
+	{
+		final int[] outline = getOutline();
+
+		final double minX = rect.topLeft.x;
+		final double minY = rect.topLeft.y;
+		final double maxX = minX + rect.width;
+		final double maxY = minY + rect.height;
+
+		final List<MapShape> res = new ArrayList<MapShape>();
+		final PointList current = new PointList();
+
+		boolean split = false;
+
+		for (int i = 2; i < outline.length; i += 2)
+		{
+			final int x1 = outline[i - 2];
+			final int y1 = outline[i - 1];
+			final int x2 = outline[i];
+			final int y2 = outline[i + 1];
+
+			// Liang-Barsky: find the portion [t0, t1] of the segment within the rectangle
+			final double dx = x2 - x1;
+			final double dy = y2 - y1;
+
+			double t0 = 0;
+			double t1 = 1;
+
+			final double[] p = { -dx, dx, -dy, dy };
+			final double[] q = { x1 - minX, maxX - x1, y1 - minY, maxY - y1 };
+
+			for (int edge = 0; edge < 4 && t0 <= t1; edge++)
+			{
+				if (p[edge] == 0)
+				{
+					if (q[edge] < 0)
+						t1 = -1; // parallel to and outside of this edge
+				}
+				else
+				{
+					final double t = q[edge] / p[edge];
+					if (p[edge] < 0)
+						t0 = Math.max(t0, t);
+					else
+						t1 = Math.min(t1, t);
+				}
+			}
+
+			final boolean crosses = t0 <= t1;
+
+			if (inside)
+			{
+				if (!crosses)
+				{
+					split = true;
+					res.addAll(current.flush(m_color));
+					continue;
+				}
+
+				if (t0 > 0 || t1 < 1)
+					split = true;
+
+				if (t0 > 0)
+					res.addAll(current.flush(m_color));
+
+				current.add(x1 + dx * t0, y1 + dy * t0);
+				current.add(x1 + dx * t1, y1 + dy * t1);
+
+				if (t1 < 1)
+					res.addAll(current.flush(m_color));
+			}
+			else
+			{
+				if (!crosses)
+				{
+					current.add(x1, y1);
+					current.add(x2, y2);
+					continue;
+				}
+
+				split = true;
+
+				if (t0 > 0)
+				{
+					current.add(x1, y1);
+					current.add(x1 + dx * t0, y1 + dy * t0);
+				}
+
+				res.addAll(current.flush(m_color));
+
+				if (t1 < 1)
+				{
+					current.add(x1 + dx * t1, y1 + dy * t1);
+					current.add(x2, y2);
+				}
+			}
+		}
+
+		if (!split)
+			return null;
+
+		final List<MapShape> last = current.flush(m_color);
+
+		// On closed outlines, the last portion joins the first one if both go through the starting point
+		final int startX = outline[0];
+		final int startY = outline[1];
+		final boolean closed = outline[outline.length - 2] == startX && outline[outline.length - 1] == startY;
+
+		if (closed && !last.isEmpty() && !res.isEmpty())
+		{
+			final int[] head = last.get(0).m_coords;
+			final int[] tail = res.get(0).m_coords;
+
+			if (head[head.length - 2] == startX && head[head.length - 1] == startY && tail[0] == startX && tail[1] == startY)
+			{
+				final int[] joined = new int[head.length + tail.length - 2];
+				System.arraycopy(head, 0, joined, 0, head.length);
+				System.arraycopy(tail, 2, joined, head.length, tail.length - 2);
+
+				res.set(0, new PolylineShape(joined, m_color));
+				return res;
+			}
+		}
+
+		res.addAll(last);
+		return res;
+	}
+
+	/**
+	 * Create a shape, returning null rather than failing if the points do not match the type of shape
+	 *
+	 * @param type Type of shape
+	 * @param coords Defining points
+	 * @param color Color of the shape
+	 * @return New shape or null
+	 */
+	private static MapShape createOrNull(Type type, int[] coords, Color color)
+	{
+		try
+		{
+			return create(type, coords, color);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Parse the name of a type of shape
+	 *
+	 * @param name Name, as written by {@link #serialize(Element)}
+	 * @return Type or null if unknown
+	 */
+	private static Type parseType(String name)
+	{
+		if (name == null)
+			return null;
+
+		try
+		{
+			return Type.valueOf(name.toUpperCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Points of a polyline being built while clipping
+	 */
+	private static class PointList
+	{
+		/**
+		 * Points (x, y pairs)
+		 */
+		private int[]	m_points	= new int[16];
+
+		/**
+		 * Number of values used
+		 */
+		private int		m_size		= 0;
+
+		/**
+		 * Add a point, unless it matches the last point added
+		 *
+		 * @param x Map coordinates (rounded to the nearest unit)
+		 * @param y
+		 */
+		void add(double x, double y)
+		{
+			final int ix = (int) Math.round(x);
+			final int iy = (int) Math.round(y);
+
+			if (m_size > 0 && m_points[m_size - 2] == ix && m_points[m_size - 1] == iy)
+				return;
+
+			if (m_size + 2 > m_points.length)
+			{
+				int[] points = new int[m_points.length * 2];
+				System.arraycopy(m_points, 0, points, 0, m_size);
+				m_points = points;
+			}
+
+			m_points[m_size++] = ix;
+			m_points[m_size++] = iy;
+		}
+
+		/**
+		 * Turn the points added so far into a polyline and start over
+		 *
+		 * @param color Color of the polyline
+		 * @return List containing the polyline, empty if less than 2 distinct points were added
+		 */
+		List<MapShape> flush(Color color)
+		{
+			List<MapShape> res = new ArrayList<MapShape>(1);
+
+			if (m_size >= 4)
+			{
+				int[] points = new int[m_size];
+				System.arraycopy(m_points, 0, points, 0, m_size);
+				res.add(new PolylineShape(points, color));
+			}
+
+			m_size = 0;
+			return res;
+		}
+	}
+
+	/**
+	 * Maximum number of points accepted for a shape received from the network
+	 */
+	private static final int	MAX_POINTS	= 1 << 20;
+}
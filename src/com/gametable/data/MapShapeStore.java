@@ -0,0 +1,192 @@
+/*
+ * MapShapeStore.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for the vector shapes drawn on a map.
+ *
+ * Shapes are kept in a list, in the order they were added, and indexed by their bounds in the same kind of grid as the
+ * map elements, so that repainting a few tiles of a heavily drawn map only looks at the shapes crossing those tiles.
+ * Bounds of the whole set are cached.
+ *
+ * The store is thread safe: shapes are painted from the event thread while network messages may modify them.
+ */
+class MapShapeStore
+{
+	/**
+	 * Shapes, in the order they were added
+	 */
+	private List<MapShape>	m_shapes	= new ArrayList<MapShape>();
+
+	/**
+	 * Shapes indexed by their bounds
+	 */
+	private final MapSpatialIndex<MapShape>	m_index		= new MapSpatialIndex<MapShape>() {
+		@Override
+		protected MapRectangle getBounds(MapShape shape)
+		{
+			return shape.getBounds();
+		}
+	};
+
+	/**
+	 * Cached bounds of all shapes. Null when it needs to be recalculated.
+	 */
+	private MapRectangle		m_bounds	= null;
+
+	/**
+	 * Add a shape to the store
+	 *
+	 * @param shape Shape to add
+	 */
+	public synchronized void add(MapShape shape)
+	{
+		m_shapes.add(shape);
+		m_index.add(shape);
+
+		if (m_bounds != null)
+			m_bounds = m_bounds.add(shape.getBounds());
+	}
+
+	/**
+	 * Add a list of shapes to the store
+	 *
+	 * @param shapes Shapes to add
+	 */
+	public synchronized void addAll(Collection<MapShape> shapes)
+	{
+		for (MapShape shape : shapes)
+			add(shape);
+	}
+
+	/**
+	 * Remove all shapes from the store
+	 */
+	public synchronized void clear()
+	{
+		m_shapes = new ArrayList<MapShape>();
+		m_index.clear();
+		m_bounds = null;
+	}
+
+	/**
+	 * Erase the portion of the shapes that falls within a rectangle. Shapes crossing the rectangle are replaced by the
+	 * polylines that remain of their outline.
+	 *
+	 * @param rect Region to erase, in map coordinates
+	 * @param colorSpecific If true, only shapes of matching color are erased
+	 * @param color Color of the shapes to erase (if colorSpecific is true)
+	 * @return true if any shape was modified
+	 */
+	public synchronized boolean erase(MapRectangle rect, boolean colorSpecific, int color)
+	{
+		// Only shapes touching the rectangle can be cropped
+		Map<MapShape, List<MapShape>> replacements = new IdentityHashMap<MapShape, List<MapShape>>();
+
+		for (MapShape shape : m_index.getIntersecting(rect))
+		{
+			if (colorSpecific && shape.getColor().getRGB() != color)
+				continue;
+
+			List<MapShape> result = shape.crop(rect);
+			if (result != null)
+				replacements.put(shape, result);
+		}
+
+		if (replacements.isEmpty())
+			return false;
+
+		// Rebuild the list so that the remains of a shape take its place in the drawing order
+		List<MapShape> shapes = new ArrayList<MapShape>(m_shapes.size());
+		for (MapShape shape : m_shapes)
+		{
+			List<MapShape> result = replacements.get(shape);
+			if (result == null)
+				shapes.add(shape);
+			else
+				shapes.addAll(result);
+		}
+
+		m_shapes = shapes;
+		m_bounds = null;
+
+		m_index.clear();
+		for (MapShape shape : m_shapes)
+			m_index.add(shape);
+
+		return true;
+	}
+
+	/**
+	 * Get a copy of all stored shapes, in the order they were added
+	 *
+	 * @return List of shapes (never null)
+	 */
+	public synchronized List<MapShape> getAll()
+	{
+		return new ArrayList<MapShape>(m_shapes);
+	}
+
+	/**
+	 * Get the bounds of all the stored shapes
+	 *
+	 * @return Bounds or null if the store is empty
+	 */
+	public synchronized MapRectangle getBounds()
+	{
+		if (m_bounds == null)
+		{
+			for (MapShape shape : m_shapes)
+				m_bounds = m_bounds == null ? shape.getBounds() : m_bounds.add(shape.getBounds());
+		}
+
+		return m_bounds;
+	}
+
+	/**
+	 * Get all shapes whose bounds touch a rectangle
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @return List of shapes, in the order they were added (never null)
+	 */
+	public synchronized List<MapShape> getIntersecting(MapRectangle modelRect)
+	{
+		return m_index.getIntersecting(modelRect);
+	}
+
+	/**
+	 * @return True if the store holds no shape
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return m_shapes.isEmpty();
+	}
+
+	/**
+	 * @return Number of stored shapes
+	 */
+	public synchronized int size()
+	{
+		return m_shapes.size();
+	}
+}
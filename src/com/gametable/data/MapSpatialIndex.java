@@ -0,0 +1,440 @@
+/*
+ * MapSpatialIndex.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.util.*;
+
+/**
+ * Uniform grid indexing map items by their bounds.
+ *
+ * The map is divided in square cells. Each item is registered in every cell its bounds touch, so that point and
+ * rectangle queries only have to look at the items found in a few cells instead of the whole map. Items covering a
+ * very large number of cells (large underlays, long strokes) are kept in a separate list that is always inspected.
+ *
+ * Results are always returned in insertion order, which is the painting order of the map.
+ *
+ * Subclasses tell how the bounds of an item are obtained. Items are compared by equality.
+ *
+ * @param <T> Type of indexed item
+ */
+abstract class MapSpatialIndex<T>
+{
+	/**
+	 * Index information kept for each item
+	 *
+	 * @param <T> Type of indexed item
+	 */
+	private static class Entry<T>
+	{
+		/**
+		 * Indexed item
+		 */
+		final T						item;
+
+		/**
+		 * Insertion order of the item within the map
+		 */
+		final long				order;
+
+		/**
+		 * Bounds used the last time the item was indexed
+		 */
+		MapRectangle			bounds;
+
+		/**
+		 * Cell range covered by the item (inclusive). Unused if 'large' is true.
+		 */
+		int								minCellX, minCellY, maxCellX, maxCellY;
+
+		/**
+		 * True if the item is kept in the large item list rather than in cells
+		 */
+		boolean						large;
+
+		/**
+		 * Stamp of the last query that returned this entry - used to filter out duplicates
+		 */
+		int								queryStamp;
+
+		/**
+		 * Constructor
+		 *
+		 * @param it Indexed item
+		 * @param ord Insertion order
+		 */
+		Entry(T it, long ord)
+		{
+			item = it;
+			order = ord;
+		}
+	}
+
+	/**
+	 * Sorts entries by insertion order
+	 */
+	private static final Comparator<Entry<?>>	ORDER_COMPARATOR	= new Comparator<Entry<?>>() {
+		@Override
+		public int compare(Entry<?> a, Entry<?> b)
+		{
+			if (a.order == b.order)
+				return 0;
+
+			return a.order < b.order ? -1 : 1;
+		}
+	};
+
+	/**
+	 * Size of a cell, in map units (4 squares)
+	 */
+	private static final int								CELL_SIZE					= GameTableMap.getBaseTileSize() * 4;
+
+	/**
+	 * Items covering more cells than this are stored in the 'large' list
+	 */
+	private static final int								MAX_CELLS					= 256;
+
+	/**
+	 * Indexed items, mapped to their index information
+	 */
+	private final Map<T, Entry<T>>					m_entries					= new HashMap<T, Entry<T>>();
+
+	/**
+	 * Cells, keyed by packed cell coordinates
+	 */
+	private final Map<Long, List<Entry<T>>>	m_cells						= new HashMap<Long, List<Entry<T>>>();
+
+	/**
+	 * Items too large to be stored in cells
+	 */
+	private final List<Entry<T>>						m_large						= new ArrayList<Entry<T>>();
+
+	/**
+	 * Next insertion order
+	 */
+	private long														m_nextOrder				= 0;
+
+	/**
+	 * Current query stamp
+	 */
+	private int															m_queryStamp			= 0;
+
+	/**
+	 * Adds an item to the index. The item is considered to be on top of all previously added items.
+	 *
+	 * @param item Item to add
+	 */
+	public void add(T item)
+	{
+		if (m_entries.containsKey(item))
+			return;
+
+		Entry<T> entry = new Entry<T>(item, m_nextOrder++);
+		m_entries.put(item, entry);
+		insert(entry);
+	}
+
+	/**
+	 * Remove all items from the index
+	 */
+	public void clear()
+	{
+		m_entries.clear();
+		m_cells.clear();
+		m_large.clear();
+	}
+
+	/**
+	 * Get all items whose bounds contain the specified point
+	 *
+	 * @param modelPosition Map coordinates
+	 * @return List of candidate items, in painting order (never null)
+	 */
+	public List<T> getCandidatesAt(MapCoordinates modelPosition)
+	{
+		List<Entry<T>> found = new ArrayList<Entry<T>>();
+
+		List<Entry<T>> cell = m_cells.get(cellKey(toCell(modelPosition.x), toCell(modelPosition.y)));
+		if (cell != null)
+		{
+			for (Entry<T> entry : cell)
+			{
+				if (contains(entry.bounds, modelPosition))
+					found.add(entry);
+			}
+		}
+
+		for (Entry<T> entry : m_large)
+		{
+			if (contains(entry.bounds, modelPosition))
+				found.add(entry);
+		}
+
+		return toItems(found);
+	}
+
+	/**
+	 * Get all items whose bounds intersect the specified rectangle. Edges are included.
+	 *
+	 * @param modelRect Rectangle in map coordinates
+	 * @return List of items, in painting order (never null)
+	 */
+	public List<T> getIntersecting(MapRectangle modelRect)
+	{
+		List<Entry<T>> found = new ArrayList<Entry<T>>();
+		int stamp = ++m_queryStamp;
+
+		int minX = toCell(modelRect.topLeft.x);
+		int minY = toCell(modelRect.topLeft.y);
+		int maxX = toCell(modelRect.topLeft.x + modelRect.width);
+		int maxY = toCell(modelRect.topLeft.y + modelRect.height);
+
+		long cellCount = ((long) maxX - minX + 1) * ((long) maxY - minY + 1);
+
+		if (cellCount > m_cells.size())
+		{
+			// Rectangle is larger than the populated part of the map - visit populated cells instead
+			for (List<Entry<T>> cell : m_cells.values())
+				collect(cell, modelRect, stamp, found);
+		}
+		else
+		{
+			for (int cx = minX; cx <= maxX; cx++)
+			{
+				for (int cy = minY; cy <= maxY; cy++)
+				{
+					List<Entry<T>> cell = m_cells.get(cellKey(cx, cy));
+					if (cell != null)
+						collect(cell, modelRect, stamp, found);
+				}
+			}
+		}
+
+		collect(m_large, modelRect, stamp, found);
+
+		return toItems(found);
+	}
+
+	/**
+	 * Remove an item from the index
+	 *
+	 * @param item Item to remove
+	 */
+	public void remove(T item)
+	{
+		Entry<T> entry = m_entries.remove(item);
+		if (entry != null)
+			extract(entry);
+	}
+
+	/**
+	 * Refresh the indexed bounds of an item. To be called whenever the item's position or dimensions change.
+	 *
+	 * @param item Item to update
+	 */
+	public void update(T item)
+	{
+		Entry<T> entry = m_entries.get(item);
+		if (entry == null)
+			return;
+
+		MapRectangle bounds = getBounds(item);
+
+		// Most moves stay within the same cells - avoid touching the grid if that is the case
+		if (!entry.large && toCell(bounds.topLeft.x) == entry.minCellX && toCell(bounds.topLeft.y) == entry.minCellY
+				&& toCell(bounds.topLeft.x + bounds.width) == entry.maxCellX && toCell(bounds.topLeft.y + bounds.height) == entry.maxCellY)
+		{
+			entry.bounds = bounds;
+			return;
+		}
+
+		extract(entry);
+		insert(entry);
+	}
+
+	/**
+	 * Get the current bounds of an item
+	 *
+	 * @param item Indexed item
+	 * @return Bounds, in map coordinates
+	 */
+	protected abstract MapRectangle getBounds(T item);
+
+	/**
+	 * Collect entries from a cell that intersect a given rectangle
+	 *
+	 * @param cell Entries to inspect
+	 * @param modelRect Rectangle to intersect with
+	 * @param stamp Current query stamp
+	 * @param found List receiving the matching entries
+	 */
+	private void collect(List<Entry<T>> cell, MapRectangle modelRect, int stamp, List<Entry<T>> found)
+	{
+		for (Entry<T> entry : cell)
+		{
+			if (entry.queryStamp == stamp)
+				continue;
+
+			if (intersects(entry.bounds, modelRect))
+			{
+				entry.queryStamp = stamp;
+				found.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Remove an entry from the grid
+	 *
+	 * @param entry Entry to remove
+	 */
+	private void extract(Entry<T> entry)
+	{
+		if (entry.large)
+		{
+			m_large.remove(entry);
+			return;
+		}
+
+		for (int cx = entry.minCellX; cx <= entry.maxCellX; cx++)
+		{
+			for (int cy = entry.minCellY; cy <= entry.maxCellY; cy++)
+			{
+				Long key = cellKey(cx, cy);
+				List<Entry<T>> cell = m_cells.get(key);
+				if (cell != null)
+				{
+					cell.remove(entry);
+					if (cell.isEmpty())
+						m_cells.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Store an entry within the grid, based on the current bounds of its item
+	 *
+	 * @param entry Entry to store
+	 */
+	private void insert(Entry<T> entry)
+	{
+		MapRectangle bounds = getBounds(entry.item);
+		entry.bounds = bounds;
+
+		entry.minCellX = toCell(bounds.topLeft.x);
+		entry.minCellY = toCell(bounds.topLeft.y);
+		entry.maxCellX = toCell(bounds.topLeft.x + bounds.width);
+		entry.maxCellY = toCell(bounds.topLeft.y + bounds.height);
+
+		long cellCount = ((long) entry.maxCellX - entry.minCellX + 1) * ((long) entry.maxCellY - entry.minCellY + 1);
+		entry.large = cellCount > MAX_CELLS;
+
+		if (entry.large)
+		{
+			m_large.add(entry);
+			return;
+		}
+
+		for (int cx = entry.minCellX; cx <= entry.maxCellX; cx++)
+		{
+			for (int cy = entry.minCellY; cy <= entry.maxCellY; cy++)
+			{
+				Long key = cellKey(cx, cy);
+				List<Entry<T>> cell = m_cells.get(key);
+				if (cell == null)
+				{
+					cell = new ArrayList<Entry<T>>(4);
+					m_cells.put(key, cell);
+				}
+
+				cell.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Sort found entries in painting order and extract their items
+	 *
+	 * @param found List of entries
+	 * @return List of items
+	 */
+	private List<T> toItems(List<Entry<T>> found)
+	{
+		if (found.size() > 1)
+			Collections.sort(found, ORDER_COMPARATOR);
+
+		List<T> res = new ArrayList<T>(found.size());
+		for (Entry<T> entry : found)
+			res.add(entry.item);
+
+		return res;
+	}
+
+	/**
+	 * Packs cell coordinates into a single key. Shared with {@link LineSegmentStore}, which uses the same grid.
+	 *
+	 * @param cellX Cell column
+	 * @param cellY Cell row
+	 * @return key
+	 */
+	static Long cellKey(int cellX, int cellY)
+	{
+		return Long.valueOf(((long) cellX << 32) | (cellY & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Verifies if a point is within the given bounds. Same rules as {@link MapElement#contains(MapCoordinates)} (right
+	 * and bottom edges are excluded)
+	 *
+	 * @param bounds Item bounds
+	 * @param pos Point to verify
+	 * @return true if contained
+	 */
+	private static boolean contains(MapRectangle bounds, MapCoordinates pos)
+	{
+		int x = pos.x - bounds.topLeft.x;
+		int y = pos.y - bounds.topLeft.y;
+
+		return x >= 0 && y >= 0 && x < bounds.width && y < bounds.height;
+	}
+
+	/**
+	 * Verifies if item bounds intersect a rectangle. Unlike {@link MapRectangle#intersects(MapRectangle)}, a zero-sized
+	 * query rectangle is accepted.
+	 *
+	 * @param bounds Item bounds
+	 * @param rect Query rectangle
+	 * @return true if intersecting
+	 */
+	private static boolean intersects(MapRectangle bounds, MapRectangle rect)
+	{
+		return bounds.topLeft.x <= rect.topLeft.x + rect.width && rect.topLeft.x <= bounds.topLeft.x + bounds.width
+				&& bounds.topLeft.y <= rect.topLeft.y + rect.height && rect.topLeft.y <= bounds.topLeft.y + bounds.height;
+	}
+
+	/**
+	 * Converts a map coordinate to a cell coordinate. Shared with {@link LineSegmentStore}, which uses the same grid.
+	 *
+	 * @param c Map coordinate
+	 * @return Cell coordinate
+	 */
+	static int toCell(int c)
+	{
+		// Floor division, so negative coordinates land in the proper cell
+		return c >= 0 ? c / CELL_SIZE : -((-c - 1) / CELL_SIZE) - 1;
+	}
+}
@@ -0,0 +1,362 @@
+/*
+ * MapXMLReader.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.io.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.maziade.tools.XMLUtils;
+
+/**
+ * Sequential reader for saved map files.
+ *
+ * The file is read as a stream of events rather than being loaded in a complete DOM tree, so large maps can be loaded
+ * in a single pass with little memory. Sections that are small and handled by existing DOM-based code (a single map
+ * element, groups, module data) can be materialized on their own as DOM elements through {@link #readElement()}.
+ *
+ * The reader is always positioned on an element. {@link #nextChild()} moves to the next child of that element; every
+ * child must then be consumed with {@link #readElement()}, {@link #readText()}, {@link #skip()} or nested calls to
+ * {@link #nextChild()} before asking for the next one.
+ */
+final class MapXMLReader
+{
+	/**
+	 * Shared factory - looking up the StAX implementation is costly
+	 */
+	private static XMLInputFactory	g_inputFactory	= null;
+
+	/**
+	 * Source stream
+	 */
+	private final InputStream				m_in;
+
+	/**
+	 * StAX reader
+	 */
+	private final XMLStreamReader		m_reader;
+
+	/**
+	 * Document owning the DOM elements created by readElement (created on first use)
+	 */
+	private Document								m_document			= null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param file File to read from
+	 * @throws IOException
+	 */
+	public MapXMLReader(File file) throws IOException
+	{
+		m_in = new BufferedInputStream(new FileInputStream(file));
+
+		try
+		{
+			m_reader = getInputFactory().createXMLStreamReader(m_in);
+		}
+		catch (XMLStreamException e)
+		{
+			m_in.close();
+			throw toIOException(e);
+		}
+	}
+
+	/**
+	 * Release the reader and close the underlying file
+	 */
+	public void close()
+	{
+		try
+		{
+			m_reader.close();
+		}
+		catch (XMLStreamException e)
+		{
+			// nothing to do
+		}
+
+		try
+		{
+			m_in.close();
+		}
+		catch (IOException e)
+		{
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Get an attribute of the current element
+	 *
+	 * @param name Name of the attribute
+	 * @return Attribute value or null if the attribute is not defined
+	 */
+	public String getAttribute(String name)
+	{
+		return m_reader.getAttributeValue(null, name);
+	}
+
+	/**
+	 * Move to the next child element of the current element.
+	 *
+	 * @return Tag name of the child element or null once the end of the current element has been reached (the reader is
+	 *         then positioned on the end of the current element)
+	 * @throws IOException
+	 */
+	public String nextChild() throws IOException
+	{
+		try
+		{
+			while (m_reader.hasNext())
+			{
+				switch (m_reader.next())
+				{
+				case XMLStreamConstants.START_ELEMENT:
+					return m_reader.getLocalName();
+
+				case XMLStreamConstants.END_ELEMENT:
+					return null;
+				}
+			}
+
+			return null;
+		}
+		catch (XMLStreamException e)
+		{
+			throw toIOException(e);
+		}
+	}
+
+	/**
+	 * Read the coordinates stored within the current element (as written by {@link MapCoordinates#serialize(Element)})
+	 * and move to its end.
+	 *
+	 * @return Coordinates (origin if none are found)
+	 * @throws IOException
+	 */
+	public MapCoordinates readCoordinates() throws IOException
+	{
+		MapCoordinates res = null;
+
+		String name;
+		while ((name = nextChild()) != null)
+		{
+			if (name.equals("loc") && res == null)
+				res = new MapCoordinates(parseInt(getAttribute("x")), parseInt(getAttribute("y")));
+
+			skip();
+		}
+
+		return res == null ? MapCoordinates.ORIGIN : res;
+	}
+
+	/**
+	 * Materialize the current element and all its content as a DOM element and move to its end.
+	 *
+	 * @return DOM element
+	 * @throws IOException
+	 */
+	public Element readElement() throws IOException
+	{
+		if (m_document == null)
+			m_document = XMLUtils.createDocument();
+
+		try
+		{
+			Element root = createElement();
+			Node current = root;
+
+			while (current != null)
+			{
+				switch (m_reader.next())
+				{
+				case XMLStreamConstants.START_ELEMENT:
+					Element el = createElement();
+					current.appendChild(el);
+					current = el;
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					current = current == root ? null : current.getParentNode();
+					break;
+
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					current.appendChild(m_document.createTextNode(m_reader.getText()));
+					break;
+				}
+			}
+
+			return root;
+		}
+		catch (XMLStreamException e)
+		{
+			throw toIOException(e);
+		}
+	}
+
+	/**
+	 * Read the text content of the current element and move to its end. Text found within child elements is ignored.
+	 *
+	 * @return Text content (empty string if none)
+	 * @throws IOException
+	 */
+	public String readText() throws IOException
+	{
+		try
+		{
+			StringBuilder text = new StringBuilder();
+			int depth = 0;
+
+			while (true)
+			{
+				switch (m_reader.next())
+				{
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					if (depth == 0)
+						return text.toString();
+
+					depth--;
+					break;
+
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (depth == 0)
+						text.append(m_reader.getText());
+					break;
+				}
+			}
+		}
+		catch (XMLStreamException e)
+		{
+			throw toIOException(e);
+		}
+	}
+
+	/**
+	 * Skip the current element and all its content
+	 *
+	 * @throws IOException
+	 */
+	public void skip() throws IOException
+	{
+		try
+		{
+			int depth = 0;
+
+			while (true)
+			{
+				switch (m_reader.next())
+				{
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					if (depth == 0)
+						return;
+
+					depth--;
+					break;
+				}
+			}
+		}
+		catch (XMLStreamException e)
+		{
+			throw toIOException(e);
+		}
+	}
+
+	/**
+	 * Create a DOM element from the current start tag
+	 *
+	 * @return Element holding the tag name and attributes
+	 */
+	private Element createElement()
+	{
+		Element el = m_document.createElement(m_reader.getLocalName());
+
+		for (int i = 0; i < m_reader.getAttributeCount(); i++)
+			el.setAttribute(m_reader.getAttributeLocalName(i), m_reader.getAttributeValue(i));
+
+		return el;
+	}
+
+	/**
+	 * @return Shared StAX factory
+	 */
+	private static synchronized XMLInputFactory getInputFactory()
+	{
+		if (g_inputFactory == null)
+		{
+			g_inputFactory = XMLInputFactory.newInstance();
+			g_inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			g_inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			g_inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		}
+
+		return g_inputFactory;
+	}
+
+	/**
+	 * Parse an integer value, as MapCoordinates(Element) does
+	 *
+	 * @param value String value
+	 * @return Parsed value or 0 if invalid
+	 */
+	private static int parseInt(String value)
+	{
+		if (value == null)
+			return 0;
+
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Wrap a parsing exception, the same way XMLUtils reports parsing errors
+	 *
+	 * @param e Parsing exception
+	 * @return IOException
+	 */
+	private static IOException toIOException(XMLStreamException e)
+	{
+		IOException ex = new IOException("Parse exception");
+		ex.initCause(e);
+		return ex;
+	}
+}
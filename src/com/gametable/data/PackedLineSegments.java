@@ -0,0 +1,186 @@
+/*
+ * PackedLineSegments.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable buffer of line segments held as primitive values rather than LineSegment objects.
+ *
+ * Filled by the map (see {@link GameTableMap#getLines(MapRectangle, PackedLineSegments)}) so that painting or sending
+ * a large number of lines does not create an object per segment. Colors are shared instances from the map's palette.
+ */
+public final class PackedLineSegments
+{
+	/**
+	 * Coordinates of the segments (start x, start y, end x, end y for each segment)
+	 */
+	private int[]		m_coords	= new int[64];
+
+	/**
+	 * Colors of the segments
+	 */
+	private Color[]	m_colors	= new Color[16];
+
+	/**
+	 * Number of segments held
+	 */
+	private int			m_size		= 0;
+
+	/**
+	 * Add a segment to the buffer
+	 *
+	 * @param startX Start of the segment
+	 * @param startY
+	 * @param endX End of the segment
+	 * @param endY
+	 * @param color Color of the segment
+	 */
+	public void add(int startX, int startY, int endX, int endY, Color color)
+	{
+		if (m_size == m_colors.length)
+		{
+			m_colors = Arrays.copyOf(m_colors, m_size * 2);
+			m_coords = Arrays.copyOf(m_coords, m_size * 8);
+		}
+
+		final int pos = m_size * 4;
+		m_coords[pos] = startX;
+		m_coords[pos + 1] = startY;
+		m_coords[pos + 2] = endX;
+		m_coords[pos + 3] = endY;
+		m_colors[m_size] = color;
+
+		m_size++;
+	}
+
+	/**
+	 * Remove all segments from the buffer. The buffer's memory is kept for reuse.
+	 */
+	public void clear()
+	{
+		Arrays.fill(m_colors, 0, m_size, null);
+		m_size = 0;
+	}
+
+	/**
+	 * Build a LineSegment object from a segment of the buffer
+	 *
+	 * @param index Segment index
+	 * @return New line segment
+	 */
+	public LineSegment get(int index)
+	{
+		final int pos = index * 4;
+		return new LineSegment(new MapCoordinates(m_coords[pos], m_coords[pos + 1]), new MapCoordinates(m_coords[pos + 2], m_coords[pos + 3]),
+				m_colors[index]);
+	}
+
+	/**
+	 * @param index Segment index
+	 * @return Color of the segment
+	 */
+	public Color getColor(int index)
+	{
+		return m_colors[index];
+	}
+
+	/**
+	 * @param index Segment index
+	 * @return X coordinate of the end of the segment
+	 */
+	public int getEndX(int index)
+	{
+		return m_coords[index * 4 + 2];
+	}
+
+	/**
+	 * @param index Segment index
+	 * @return Y coordinate of the end of the segment
+	 */
+	public int getEndY(int index)
+	{
+		return m_coords[index * 4 + 3];
+	}
+
+	/**
+	 * @param index Segment index
+	 * @return X coordinate of the start of the segment
+	 */
+	public int getStartX(int index)
+	{
+		return m_coords[index * 4];
+	}
+
+	/**
+	 * @param index Segment index
+	 * @return Y coordinate of the start of the segment
+	 */
+	public int getStartY(int index)
+	{
+		return m_coords[index * 4 + 1];
+	}
+
+	/**
+	 * @return Number of segments held
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Build LineSegment objects for all the segments of the buffer
+	 *
+	 * @return New list of line segments
+	 */
+	public List<LineSegment> toList()
+	{
+		List<LineSegment> lines = new ArrayList<LineSegment>(m_size);
+		for (int i = 0; i < m_size; i++)
+			lines.add(get(i));
+
+		return lines;
+	}
+
+	/**
+	 * Write the segments to a data stream: the number of segments, followed by each segment in the format of
+	 * {@link LineSegment#writeToPacket(DataOutputStream)}
+	 *
+	 * @param dos Stream to write to
+	 * @throws IOException
+	 */
+	public void writeToPacket(DataOutputStream dos) throws IOException
+	{
+		dos.writeInt(m_size);
+
+		for (int i = 0; i < m_size; i++)
+		{
+			final int pos = i * 4;
+			dos.writeInt(m_coords[pos]);
+			dos.writeInt(m_coords[pos + 1]);
+			dos.writeInt(m_coords[pos + 2]);
+			dos.writeInt(m_coords[pos + 3]);
+			dos.writeInt(m_colors[i].getRGB());
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * PolylineShape.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.util.List;
+
+/**
+ * Connected series of line segments (ex: a freehand pen stroke)
+ */
+public class PolylineShape extends MapShape
+{
+	/**
+	 * Constructor
+	 *
+	 * @param points Points of the polyline, in map coordinates
+	 * @param color Color of the polyline
+	 * @throws IllegalArgumentException if less than 2 points are given
+	 */
+	public PolylineShape(List<MapCoordinates> points, Color color)
+	{
+		this(toCoords(points), color);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param coords Points of the polyline (x, y pairs). The array is kept by the shape.
+	 * @param color Color of the polyline
+	 */
+	PolylineShape(int[] coords, Color color)
+	{
+		super(coords, color);
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#getType()
+	 */
+	@Override
+	public Type getType()
+	{
+		return Type.POLYLINE;
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#toViewShape(int)
+	 */
+	@Override
+	public Shape toViewShape(int tileSize)
+	{
+		GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO, m_coords.length / 2);
+
+		path.moveTo(toView(m_coords[0], tileSize), toView(m_coords[1], tileSize));
+		for (int i = 2; i < m_coords.length; i += 2)
+			path.lineTo(toView(m_coords[i], tileSize), toView(m_coords[i + 1], tileSize));
+
+		return path;
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#getOutline()
+	 */
+	@Override
+	protected int[] getOutline()
+	{
+		return m_coords;
+	}
+
+	/**
+	 * Convert a list of points to coordinate pairs
+	 *
+	 * @param points Points
+	 * @return Coordinates (x, y pairs)
+	 */
+	private static int[] toCoords(List<MapCoordinates> points)
+	{
+		if (points.size() < 2)
+			throw new IllegalArgumentException("A polyline requires at least 2 points");
+
+		int[] coords = new int[points.size() * 2];
+
+		int i = 0;
+		for (MapCoordinates point : points)
+		{
+			coords[i++] = point.x;
+			coords[i++] = point.y;
+		}
+
+		return coords;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * RectangleShape.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Shape;
+
+/**
+ * Outline of a rectangle (ex: drawn with the box tool)
+ */
+public class RectangleShape extends MapShape
+{
+	/**
+	 * Constructor
+	 *
+	 * @param rect Rectangle, in map coordinates
+	 * @param color Color of the outline
+	 */
+	public RectangleShape(MapRectangle rect, Color color)
+	{
+		this(new int[] { rect.topLeft.x, rect.topLeft.y, rect.topLeft.x + rect.width, rect.topLeft.y + rect.height }, color);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param coords Two opposite corners (x, y pairs). The array is kept by the shape.
+	 * @param color Color of the outline
+	 */
+	RectangleShape(int[] coords, Color color)
+	{
+		super(coords, color);
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#getType()
+	 */
+	@Override
+	public Type getType()
+	{
+		return Type.RECTANGLE;
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#toViewShape(int)
+	 */
+	@Override
+	public Shape toViewShape(int tileSize)
+	{
+		final MapRectangle bounds = getBounds();
+
+		final int x = toView(bounds.topLeft.x, tileSize);
+		final int y = toView(bounds.topLeft.y, tileSize);
+
+		return new Rectangle(x, y, toView(bounds.topLeft.x + bounds.width, tileSize) - x, toView(bounds.topLeft.y + bounds.height, tileSize) - y);
+	}
+
+	/*
+	 * @see com.gametable.data.MapShape#getOutline()
+	 */
+	@Override
+	protected int[] getOutline()
+	{
+		final MapRectangle bounds = getBounds();
+
+		final int left = bounds.topLeft.x;
+		final int top = bounds.topLeft.y;
+		final int right = left + bounds.width;
+		final int bottom = top + bounds.height;
+
+		return new int[] { left, top, right, top, right, bottom, left, bottom, left, top };
+	}
+}
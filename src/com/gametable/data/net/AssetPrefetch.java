@@ -0,0 +1,241 @@
+/*
+ * AssetPrefetch.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data.net;
+
+import java.util.*;
+
+import com.gametable.data.BasicMapElementType;
+import com.gametable.data.MapElementTypeIF;
+import com.gametable.data.MapElementTypeLibrary;
+import com.gametable.data.MapElementTypeLibraryListenerIF;
+import com.gametable.net.NetworkConnectionIF;
+
+/**
+ * Loads a list of element types from the network ahead of their use, a few at a time (see {@link NetAssetManifest}).
+ *
+ * Keeping a bounded number of transfers in flight lets small images arrive early, while leaving room on the connection
+ * for other messages.
+ */
+final class AssetPrefetch implements MapElementTypeLibraryListenerIF
+{
+	/**
+	 * Maximum number of types loading at once
+	 */
+	private static final int										MAX_TRANSFERS	= 4;
+
+	/**
+	 * Time after which the prefetch is considered complete even if some transfers are still in progress, in milliseconds.
+	 * Failed transfers end the prefetch right away - this is a fallback for players that stop responding.
+	 */
+	private static final long										TIMEOUT				= 60 * 1000;
+
+	/**
+	 * Timer handling time outs
+	 */
+	private static Timer												g_timer				= null;
+
+	/**
+	 * Connection to load the types from
+	 */
+	private final NetworkConnectionIF						m_connection;
+
+	/**
+	 * Types waiting to be loaded
+	 */
+	private final LinkedList<MapElementTypeIF>	m_queue;
+
+	/**
+	 * Types currently loading
+	 */
+	private final List<MapElementTypeIF>				m_loading			= new ArrayList<MapElementTypeIF>();
+
+	/**
+	 * Called once all the types are loaded or have failed to load (or on time out).  Can be null.
+	 */
+	private final Runnable											m_onComplete;
+
+	/**
+	 * Time out task
+	 */
+	private final TimerTask											m_timeout;
+
+	/**
+	 * True once completed
+	 */
+	private boolean															m_completed		= false;
+
+	/**
+	 * Start loading element types
+	 *
+	 * @param connection Connection to load the types from
+	 * @param types Types to load, in order
+	 * @param onComplete Called once all the types are loaded or have failed to load, or after a time out (can be null)
+	 */
+	public static void start(NetworkConnectionIF connection, List<MapElementTypeIF> types, Runnable onComplete)
+	{
+		AssetPrefetch prefetch = new AssetPrefetch(connection, types, onComplete);
+		MapElementTypeLibrary.getMasterLibrary().addListener(prefetch);
+
+		getTimer().schedule(prefetch.m_timeout, TIMEOUT);
+		prefetch.next();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param connection Connection to load the types from
+	 * @param types Types to load
+	 * @param onComplete Completion callback or null
+	 */
+	private AssetPrefetch(NetworkConnectionIF connection, List<MapElementTypeIF> types, Runnable onComplete)
+	{
+		m_connection = connection;
+		m_queue = new LinkedList<MapElementTypeIF>(types);
+		m_onComplete = onComplete;
+
+		m_timeout = new TimerTask() {
+			@Override
+			public void run()
+			{
+				complete();
+			}
+		};
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementTypeLibraryListenerIF#onLibraryAdded(com.gametable.data.MapElementTypeLibrary,
+	 * com.gametable.data.MapElementTypeLibrary)
+	 */
+	@Override
+	public void onLibraryAdded(MapElementTypeLibrary parentLibrary, MapElementTypeLibrary newLibrary)
+	{
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementTypeLibraryListenerIF#onMapElementTypeAdded(com.gametable.data.MapElementTypeLibrary,
+	 * com.gametable.data.MapElementTypeIF)
+	 */
+	@Override
+	public void onMapElementTypeAdded(MapElementTypeLibrary parentLibrary, MapElementTypeIF newType)
+	{
+		next();
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementTypeLibraryListenerIF#onMapElementTypeRemoved(com.gametable.data.MapElementTypeLibrary,
+	 * com.gametable.data.MapElementTypeIF)
+	 */
+	@Override
+	public void onMapElementTypeRemoved(MapElementTypeLibrary parentLibrary, MapElementTypeIF removedType)
+	{
+		synchronized (this)
+		{
+			m_queue.remove(removedType);
+			m_loading.remove(removedType);
+		}
+
+		next();
+	}
+
+	/*
+	 * @see com.gametable.data.MapElementTypeLibraryListenerIF#onMapElementTypeUpdated(com.gametable.data.MapElementTypeLibrary,
+	 * com.gametable.data.MapElementTypeIF)
+	 */
+	@Override
+	public void onMapElementTypeUpdated(MapElementTypeLibrary parentLibrary, MapElementTypeIF type)
+	{
+		next();
+	}
+
+	/**
+	 * Mark the prefetch as completed and notify the caller
+	 */
+	private void complete()
+	{
+		synchronized (this)
+		{
+			if (m_completed)
+				return;
+
+			m_completed = true;
+		}
+
+		m_timeout.cancel();
+		MapElementTypeLibrary.getMasterLibrary().removeListener(this);
+
+		if (m_onComplete != null)
+			m_onComplete.run();
+	}
+
+	/**
+	 * Drop the loaded and failed types from the transfers in progress and start new transfers, up to the limit
+	 */
+	private void next()
+	{
+		synchronized (this)
+		{
+			if (m_completed)
+				return;
+
+			for (Iterator<MapElementTypeIF> it = m_loading.iterator(); it.hasNext();)
+			{
+				MapElementTypeIF type = it.next();
+				if (type.isLoaded() || isLoadFailed(type))
+					it.remove();
+			}
+
+			while (m_loading.size() < MAX_TRANSFERS && !m_queue.isEmpty())
+			{
+				MapElementTypeIF type = m_queue.removeFirst();
+				if (type.isLoaded())
+					continue;
+
+				m_loading.add(type);
+
+				// Might complete right away (ex: found locally)
+				type.loadDataFromNetwork(m_connection);
+			}
+
+			if (!m_loading.isEmpty() || !m_queue.isEmpty())
+				return;
+		}
+
+		complete();
+	}
+
+	/**
+	 * Check whether a type's transfer failed
+	 *
+	 * @param type Type being loaded
+	 * @return True if the type could not be loaded from the network
+	 */
+	private static boolean isLoadFailed(MapElementTypeIF type)
+	{
+		return type instanceof BasicMapElementType && ((BasicMapElementType) type).isLoadFailed();
+	}
+
+	/**
+	 * @return Timer handling time outs
+	 */
+	private static synchronized Timer getTimer()
+	{
+		if (g_timer == null)
+			g_timer = new Timer("AssetPrefetch", true);
+
+		return g_timer;
+	}
+}
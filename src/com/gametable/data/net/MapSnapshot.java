@@ -0,0 +1,441 @@
+/*
+ * MapSnapshot.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data.net;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.gametable.GametableApp;
+import com.gametable.data.*;
+import com.gametable.net.*;
+import com.gametable.util.Log;
+
+/**
+ * Binary map snapshots, shared by the network messages transferring whole maps.
+ *
+ * Snapshots are written using the same encoding as the individual map element, line segment and shape messages. They
+ * are sent as a series of fixed-size chunks, optionally compressed, and reassembled on the receiving end before being
+ * applied.
+ */
+final class MapSnapshot
+{
+	/**
+	 * Private constructor - static methods only
+	 */
+	private MapSnapshot()
+	{
+	}
+
+	/**
+	 * Maximum number of snapshot bytes sent within a single packet
+	 */
+	private static final int	CHUNK_SIZE						= 32 * 1024;
+
+	/**
+	 * Snapshots smaller than this are not worth compressing
+	 */
+	private static final int	COMPRESSION_THRESHOLD	= 1024;
+
+	/**
+	 * Largest snapshot accepted from the network, before and after decompression (64MB)
+	 */
+	private static final int	MAX_SNAPSHOT_SIZE			= 64 * 1024 * 1024;
+
+	/**
+	 * Last transfer ID used when sending
+	 */
+	private static int				g_lastTransferID			= 0;
+
+	/**
+	 * Snapshot being received from a given connection
+	 */
+	private static class Transfer
+	{
+		/**
+		 * Sender's transfer ID
+		 */
+		final int			transferID;
+
+		/**
+		 * True if the data is compressed
+		 */
+		final boolean	compressed;
+
+		/**
+		 * Snapshot data
+		 */
+		final byte[]	data;
+
+		/**
+		 * Number of bytes received so far
+		 */
+		int						received	= 0;
+
+		/**
+		 * Index of the next expected chunk
+		 */
+		int						nextChunk	= 0;
+
+		/**
+		 * Number of chunks making up the snapshot
+		 */
+		final int			chunkCount;
+
+		/**
+		 * Constructor
+		 *
+		 * @param id Sender's transfer ID
+		 * @param size Total size of the snapshot (validated by the caller)
+		 * @param chunks Number of chunks making up the snapshot
+		 * @param deflated True if the data is compressed
+		 */
+		Transfer(int id, int size, int chunks, boolean deflated)
+		{
+			transferID = id;
+			data = new byte[size];
+			chunkCount = chunks;
+			compressed = deflated;
+		}
+	}
+
+	/**
+	 * Reassembles snapshot chunks received for a given message type
+	 */
+	static class Assembler
+	{
+		/**
+		 * Snapshots currently being received, by source connection
+		 */
+		private final Map<NetworkConnectionIF, Transfer>	m_transfers	= new HashMap<NetworkConnectionIF, Transfer>();
+
+		/**
+		 * Read a chunk from a received packet
+		 *
+		 * @param sourceConnection Connection the packet was received from
+		 * @param dis Packet data
+		 * @param event Network event
+		 * @return The complete (uncompressed) snapshot if this was the last chunk, null otherwise
+		 * @throws IOException
+		 */
+		public synchronized byte[] receive(NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
+		{
+			final int transferID = dis.readInt();
+			final int chunk = dis.readInt();
+			final int chunkCount = dis.readInt();
+			final int totalSize = dis.readInt();
+			final boolean compressed = dis.readBoolean();
+			final int length = dis.readInt();
+
+			// Sizes come from the network - reject anything the sender could not have produced before allocating memory
+			if (totalSize < 0 || totalSize > MAX_SNAPSHOT_SIZE || chunkCount != getChunkCount(totalSize) || length < 0
+					|| length > CHUNK_SIZE)
+			{
+				Log.log(Log.SYS, "Invalid map snapshot chunk " + chunk + " for transfer " + transferID + " - transfer dropped");
+				m_transfers.remove(sourceConnection);
+				return null;
+			}
+
+			Transfer transfer = m_transfers.get(sourceConnection);
+
+			if (chunk == 0)
+			{
+				// A new snapshot replaces any incomplete one
+				transfer = new Transfer(transferID, totalSize, chunkCount, compressed);
+				m_transfers.put(sourceConnection, transfer);
+			}
+
+			if (transfer == null || transfer.transferID != transferID || transfer.nextChunk != chunk || transfer.chunkCount != chunkCount
+					|| transfer.data.length != totalSize || transfer.received + length > transfer.data.length)
+			{
+				Log.log(Log.SYS, "Unexpected map snapshot chunk " + chunk + " for transfer " + transferID + " - ignored");
+				m_transfers.remove(sourceConnection);
+				return null;
+			}
+
+			dis.readFully(transfer.data, transfer.received, length);
+			transfer.received += length;
+			transfer.nextChunk++;
+
+			GametableApp.getCore().notifyMapTransferProgress(transfer.received, transfer.data.length, event);
+
+			if (transfer.nextChunk < chunkCount)
+				return null;
+
+			m_transfers.remove(sourceConnection);
+
+			if (transfer.received != transfer.data.length)
+			{
+				Log.log(Log.SYS, "Incomplete map snapshot for transfer " + transferID + " - ignored");
+				return null;
+			}
+
+			if (!transfer.compressed)
+				return transfer.data;
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.min(transfer.data.length * 4, MAX_SNAPSHOT_SIZE));
+			InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(transfer.data));
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+			{
+				if (bos.size() + read > MAX_SNAPSHOT_SIZE)
+				{
+					Log.log(Log.SYS, "Map snapshot for transfer " + transferID + " is too large once decompressed - ignored");
+					return null;
+				}
+
+				bos.write(buffer, 0, read);
+			}
+
+			return bos.toByteArray();
+		}
+	}
+
+	/**
+	 * Split a snapshot in network packets
+	 *
+	 * @param messageType Message type used for the packets
+	 * @param snapshot Snapshot data
+	 * @return List of packets, to be sent in order to the same recipients
+	 * @throws IOException
+	 */
+	static List<byte[]> makePackets(NetworkMessageTypeIF messageType, byte[] snapshot) throws IOException
+	{
+		boolean compressed = false;
+
+		if (snapshot.length > COMPRESSION_THRESHOLD)
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(snapshot.length / 2);
+			DeflaterOutputStream out = new DeflaterOutputStream(bos);
+			out.write(snapshot);
+			out.close();
+
+			if (bos.size() < snapshot.length)
+			{
+				snapshot = bos.toByteArray();
+				compressed = true;
+			}
+		}
+
+		NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+
+		int transferID = nextTransferID();
+		int chunkCount = getChunkCount(snapshot.length);
+
+		List<byte[]> packets = new ArrayList<byte[]>(chunkCount);
+
+		for (int chunk = 0; chunk < chunkCount; chunk++)
+		{
+			int offset = chunk * CHUNK_SIZE;
+			int length = Math.min(CHUNK_SIZE, snapshot.length - offset);
+
+			DataPacketStream dos = module.createDataPacketStream(messageType);
+			dos.writeInt(transferID);
+			dos.writeInt(chunk);
+			dos.writeInt(chunkCount);
+			dos.writeInt(snapshot.length);
+			dos.writeBoolean(compressed);
+			dos.writeInt(length);
+			dos.write(snapshot, offset, length);
+
+			packets.add(dos.toByteArray());
+		}
+
+		return packets;
+	}
+
+	/**
+	 * Read an item count from a snapshot.  Every item takes at least one byte, so a count larger than the remaining data
+	 * can only come from a corrupted or malicious snapshot.
+	 *
+	 * @param dis Snapshot data, read from memory
+	 * @return Item count
+	 * @throws IOException if the count is invalid
+	 */
+	static int readCount(DataInputStream dis) throws IOException
+	{
+		final int count = dis.readInt();
+		if (count < 0 || count > dis.available())
+			throw new IOException("Invalid item count in map snapshot: " + count);
+
+		return count;
+	}
+
+	/**
+	 * Replace the content of a map with a snapshot. The map's listeners are notified of the whole snapshot as a single
+	 * batch.
+	 *
+	 * @param map Map to load into
+	 * @param dis Snapshot data, as written by {@link #writeMap(GameTableMap, DataOutputStream)}
+	 * @param sourceConnection Connection the snapshot was received from (used to request missing element types)
+	 * @param event Network event
+	 * @throws IOException
+	 */
+	static void readMap(GameTableMap map, DataInputStream dis, NetworkConnectionIF sourceConnection, NetworkEvent event) throws IOException
+	{
+		map.beginBatch();
+		try
+		{
+			readMapContent(map, dis, sourceConnection, event);
+		}
+		finally
+		{
+			map.commitBatch();
+		}
+	}
+
+	/**
+	 * Replace the content of a map with a snapshot, within a batch opened by the caller
+	 *
+	 * @param map Map to load into
+	 * @param dis Snapshot data
+	 * @param sourceConnection Connection the snapshot was received from
+	 * @param event Network event
+	 * @throws IOException
+	 */
+	private static void readMapContent(GameTableMap map, DataInputStream dis, NetworkConnectionIF sourceConnection, NetworkEvent event) throws IOException
+	{
+		map.clearMap(event);
+
+		// Elements
+		final int elementCount = readCount(dis);
+		List<MapElement> elements = new ArrayList<MapElement>(elementCount);
+		for (int i = 0; i < elementCount; i++)
+		{
+			final MapElement element = new MapElement(dis);
+
+			if (element.isCorrupted())
+				continue;
+
+			// If map element is not loaded, we'll need to request it
+			MapElementTypeIF type = element.getMapElementType();
+			if (!type.isLoaded())
+				type.loadDataFromNetwork(sourceConnection);
+
+			elements.add(element);
+		}
+
+		if (elements.size() > 0)
+			map.addMapElements(elements, event);
+
+		// Lines
+		final int lineCount = readCount(dis);
+		List<LineSegment> lines = new ArrayList<LineSegment>(lineCount);
+		for (int i = 0; i < lineCount; i++)
+			lines.add(new LineSegment(dis));
+
+		if (lines.size() > 0)
+			map.addLineSegments(lines, event);
+
+		// Shapes
+		final int shapeCount = readCount(dis);
+		List<MapShape> shapes = new ArrayList<MapShape>(shapeCount);
+		for (int i = 0; i < shapeCount; i++)
+			shapes.add(MapShape.readFromPacket(dis));
+
+		if (shapes.size() > 0)
+			map.addShapes(shapes, event);
+
+		// Groups
+		GroupManager groupManager = map.getGroupManager();
+
+		final int groupCount = readCount(dis);
+		for (int i = 0; i < groupCount; i++)
+		{
+			Group group = groupManager.getGroup(dis.readUTF(), true);
+
+			elements.clear();
+
+			final int count = readCount(dis);
+			for (int j = 0; j < count; j++)
+			{
+				// IDs from the snapshot have been claimed by the elements read above
+				MapElement element = map.getMapElement(MapElementID.get(dis.readLong()));
+				if (element != null)
+					elements.add(element);
+			}
+
+			group.addElements(elements, event);
+		}
+	}
+
+	/**
+	 * Write a binary snapshot of a map
+	 *
+	 * @param map Map to write
+	 * @param dos Stream to write to
+	 * @throws IOException
+	 */
+	static void writeMap(GameTableMap map, DataOutputStream dos) throws IOException
+	{
+		// Elements
+		List<MapElement> elements = map.getMapElements();
+		dos.writeInt(elements.size());
+		for (MapElement element : elements)
+			element.writeToPacket(dos);
+
+		// Lines - encoded straight from packed storage
+		PackedLineSegments lines = new PackedLineSegments();
+		map.getLines(lines);
+		lines.writeToPacket(dos);
+
+		// Shapes
+		List<MapShape> shapes = map.getShapes();
+		dos.writeInt(shapes.size());
+		for (MapShape shape : shapes)
+			shape.writeToPacket(dos);
+
+		// Groups
+		GroupManager groupManager = map.getGroupManager();
+		List<String> groupNames = groupManager.getGroupNames(null);
+		dos.writeInt(groupNames.size());
+		for (String groupName : groupNames)
+		{
+			Group group = groupManager.getGroup(groupName);
+			List<MapElement> groupElements = group.getMapElements();
+
+			dos.writeUTF(groupName);
+			dos.writeInt(groupElements.size());
+			for (MapElement element : groupElements)
+				dos.writeLong(element.getID().numeric());
+		}
+	}
+
+	/**
+	 * Get the number of chunks used to send a snapshot
+	 *
+	 * @param size Size of the (possibly compressed) snapshot data
+	 * @return Number of chunks (at least one, even for empty snapshots)
+	 */
+	private static int getChunkCount(int size)
+	{
+		return Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+	}
+
+	/**
+	 * @return A new transfer ID
+	 */
+	private static synchronized int nextTransferID()
+	{
+		return ++g_lastTransferID;
+	}
+}
@@ -24,6 +24,8 @@ package com.gametable.data.net;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.gametable.GametableApp;
 import com.gametable.data.GameTableCore;
@@ -81,6 +83,7 @@ public class NetAddMapElement implements NetworkMessageTypeIF
 			DataPacketStream dos = module.createDataPacketStream(getMessageType());
 
 			dos.writeBoolean(publicLayer); // layer
+			dos.writeInt(1); // number of elements
 			mapElement.writeToPacket(dos);
 
 			return dos.toByteArray();
@@ -92,6 +95,34 @@ public class NetAddMapElement implements NetworkMessageTypeIF
 		}
 	}
 	
+	/**
+	 * Create a data packet to add multiple elements to a specified layer in a single operation
+	 * @param mapElements Map elements to add
+	 * @param publicLayer True if elements are to be added to public layer
+	 * @return data packet
+	 */
+	public static byte[] makePacket(List<MapElement> mapElements, boolean publicLayer)
+  {
+		try
+		{
+			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+			DataPacketStream dos = module.createDataPacketStream(getMessageType());
+
+			dos.writeBoolean(publicLayer); // layer
+			dos.writeInt(mapElements.size()); // number of elements
+			
+			for (MapElement mapElement : mapElements)
+				mapElement.writeToPacket(dos);
+
+			return dos.toByteArray();
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
+	
 	/*
 	 * @see com.gametable.data.net.NetworkMessageIF#getID()
 	 */
@@ -120,27 +151,37 @@ public class NetAddMapElement implements NetworkMessageTypeIF
 	public void processData(NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
 	{
 		boolean addToPublicLayer = dis.readBoolean(); 
-
-		final MapElement element = new MapElement(dis);
+		int count = dis.readInt();
 		
-		if (element.isCorrupted())
-		{
-			// for one reason or another, this element is corrupt and should be ignored
-			return;
-		}
-
-		// If map element is not loaded, we'll need to request it
-		MapElementTypeIF type = element.getMapElementType();
-		if (!type.isLoaded())
+		List<MapElement> elements = new ArrayList<MapElement>(count);
+		for (int i = 0; i < count; i++)
 		{
-			type.loadDataFromNetwork(sourceConnection);
+			final MapElement element = new MapElement(dis);
+			
+			if (element.isCorrupted())
+			{
+				// for one reason or another, this element is corrupt and should be ignored
+				continue;
+			}
+	
+			// If map element is not loaded, we'll need to request it
+			MapElementTypeIF type = element.getMapElementType();
+			if (!type.isLoaded())
+			{
+				type.loadDataFromNetwork(sourceConnection);
+			}
+			
+			elements.add(element);
 		}
 
 		// Have the model react
 		GameTableCore core = GametableApp.getCore();
 		GameTableMap map = core.getMap(addToPublicLayer ? GameTableCore.MapType.PUBLIC : GameTableCore.MapType.PRIVATE);
 		
-		map.addMapElement(element, event);
+		if (elements.size() == 1)
+			map.addMapElement(elements.get(0), event);
+		else if (elements.size() > 1)
+			map.addMapElements(elements, event);
 	}
 	
 	/*
@@ -0,0 +1,349 @@
+/*
+ * NetAssetManifest.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data.net;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import com.gametable.GametableApp;
+import com.gametable.data.*;
+import com.gametable.data.GameTableCore.NetworkResponderCore;
+import com.gametable.net.*;
+import com.gametable.util.Log;
+
+/**
+ * Lists the element types used by the public map, so that players can load the missing ones before the map itself is
+ * sent.
+ *
+ * When a player joins, the host sends the manifest first and waits for the player to report that its assets are ready
+ * (or that it gave up on some of them) before sending the map. Joining a prepared session thus shows the real images
+ * right away rather than placeholders. After a map load, the manifest is sent ahead of the map without waiting.
+ */
+public class NetAssetManifest implements NetworkMessageTypeIF
+{
+	/**
+	 * Kind of message
+	 */
+	private enum Kind
+	{
+		/**
+		 * Manifest sent ahead of a map (no reply expected)
+		 */
+		MANIFEST,
+
+		/**
+		 * Manifest sent to a joining player - the player replies with READY once its assets are loaded
+		 */
+		JOIN_MANIFEST,
+
+		/**
+		 * Player's reply to JOIN_MANIFEST
+		 */
+		READY;
+
+		/**
+		 * Get a kind from its ordinal value
+		 * @param ord Ordinal value
+		 * @return Kind or null
+		 */
+		static Kind fromOrdinal(int ord)
+		{
+			for (Kind kind : values())
+			{
+				if (kind.ordinal() == ord)
+					return kind;
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Singleton factory method
+	 * @return
+	 */
+	public static NetAssetManifest getMessageType()
+	{
+		if (g_messageType == null)
+			g_messageType = new NetAssetManifest();
+
+		return g_messageType;
+	}
+
+	/**
+	 * Singleton factory method
+	 * @param responder Core responder, notified when a joining player is ready
+	 * @return
+	 */
+	public static NetAssetManifest getMessageType(NetworkResponderCore responder)
+	{
+		NetAssetManifest manifest = getMessageType();
+		manifest.m_responder = responder;
+
+		return manifest;
+	}
+
+	/**
+	 * Singleton instance
+	 */
+	private static NetAssetManifest	g_messageType	= null;
+
+	/**
+	 * Message's private ID
+	 */
+	private static int							g_id					= 0;
+
+	/**
+	 * Messagae's unique string representation
+	 */
+	private static String						g_name				= null;
+
+	/**
+	 * Core responder
+	 */
+	private NetworkResponderCore		m_responder		= null;
+
+	/**
+	 * Create a manifest of the element types used by the public map and background
+	 *
+	 * @param core Core holding the map
+	 * @param join True if sent to a joining player, who is expected to reply when ready
+	 * @return data packet
+	 */
+	public static byte[] makePacket(GameTableCore core, boolean join)
+	{
+		// Distinct types, in order of first use
+		Set<MapElementTypeIF> types = new LinkedHashSet<MapElementTypeIF>();
+
+		MapElementTypeIF background = core.getBackgroundMapElementType();
+		if (background != null)
+			types.add(background);
+
+		for (MapElement mapElement : core.getMap(GameTableCore.MapType.PUBLIC).getMapElements())
+			types.add(mapElement.getMapElementType());
+
+		List<Entry> entries = new ArrayList<Entry>(types.size());
+		for (MapElementTypeIF type : types)
+		{
+			Entry entry = new Entry(type.getFullyQualifiedName(), type.getFaceSize());
+
+			if (type instanceof BasicMapElementType)
+			{
+				BasicMapElementType basicType = (BasicMapElementType) type;
+				entry.size = new File(basicType.getImageFilename()).length();
+				entry.hash = basicType.getContentHash();
+			}
+
+			entries.add(entry);
+		}
+
+		// Smallest first, so most images show up early
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b)
+			{
+				return a.size < b.size ? -1 : (a.size == b.size ? 0 : 1);
+			}
+		});
+
+		try
+		{
+			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+			DataPacketStream dos = module.createDataPacketStream(getMessageType());
+
+			dos.writeInt((join ? Kind.JOIN_MANIFEST : Kind.MANIFEST).ordinal());
+			dos.writeInt(entries.size());
+
+			for (Entry entry : entries)
+			{
+				dos.writeUTF(entry.fqn);
+				dos.writeInt(entry.faceSize);
+				dos.writeLong(entry.size);
+				dos.writeUTF(entry.hash == null ? "" : entry.hash);
+			}
+
+			return dos.toByteArray();
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Create the reply sent by a joining player once its assets are loaded
+	 *
+	 * @return data packet
+	 */
+	protected static byte[] makeReadyPacket()
+	{
+		try
+		{
+			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+			DataPacketStream dos = module.createDataPacketStream(getMessageType());
+
+			dos.writeInt(Kind.READY.ordinal());
+
+			return dos.toByteArray();
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#getID()
+	 */
+	@Override
+	public int getID()
+	{
+		return g_id;
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		if (g_name == null)
+			g_name = this.getClass().getSimpleName();
+
+		return g_name;
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#processData(com.gametable.data.net.Connection,
+	 * java.io.DataInputStream)
+	 */
+	@Override
+	public void processData(final NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
+	{
+		Kind kind = Kind.fromOrdinal(dis.readInt());
+		if (kind == null)
+			return;
+
+		if (kind == Kind.READY)
+		{
+			// A joining player is ready to receive the map
+			if (m_responder != null)
+				m_responder.onPlayerAssetsReady(sourceConnection);
+
+			return;
+		}
+
+		MapElementTypeLibrary lib = MapElementTypeLibrary.getMasterLibrary();
+		List<MapElementTypeIF> missing = new ArrayList<MapElementTypeIF>();
+
+		final int count = dis.readInt();
+		for (int i = 0; i < count; i++)
+		{
+			String fqn = dis.readUTF();
+			int faceSize = dis.readInt();
+			dis.readLong(); // size - used by the host for ordering
+			String hash = dis.readUTF();
+
+			MapElementTypeIF type = lib.getMapElementType(fqn);
+			if (type == null)
+			{
+				try
+				{
+					type = lib.createPlaceholderType(fqn, faceSize);
+				}
+				catch (IllegalStateException e)
+				{
+					Log.log(Log.SYS, "Map element type not found: " + fqn);
+				}
+			}
+
+			if (type == null || type.isLoaded())
+				continue;
+
+			if (type instanceof BasicMapElementType && hash.length() > 0)
+				((BasicMapElementType) type).setContentHash(hash);
+
+			missing.add(type);
+		}
+
+		Runnable onComplete = null;
+		if (kind == Kind.JOIN_MANIFEST)
+		{
+			onComplete = new Runnable() {
+				@Override
+				public void run()
+				{
+					byte[] packet = makeReadyPacket();
+					if (packet != null)
+						sourceConnection.sendPacket(packet);
+				}
+			};
+		}
+
+		AssetPrefetch.start(sourceConnection, missing, onComplete);
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#setID(int)
+	 */
+	@Override
+	public void setID(int id)
+	{
+		g_id = id;
+	}
+
+	/**
+	 * Manifest entry
+	 */
+	private static class Entry
+	{
+		/**
+		 * Type's fully qualified name
+		 */
+		final String	fqn;
+
+		/**
+		 * Type's face size, used to build placeholders
+		 */
+		final int			faceSize;
+
+		/**
+		 * Size of the type's data, in bytes (0 if unknown)
+		 */
+		long					size	= 0;
+
+		/**
+		 * Content hash (see {@link BasicMapElementType#getContentHash()}) or null
+		 */
+		String				hash	= null;
+
+		/**
+		 * Constructor
+		 * @param fqn Type's fully qualified name
+		 * @param faceSize Type's face size
+		 */
+		Entry(String fqn, int faceSize)
+		{
+			this.fqn = fqn;
+			this.faceSize = faceSize;
+		}
+	}
+}
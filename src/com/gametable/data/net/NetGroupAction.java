@@ -24,6 +24,9 @@ package com.gametable.data.net;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import javax.naming.InvalidNameException;
 
@@ -57,11 +60,12 @@ public class NetGroupAction implements NetworkMessageTypeIF
 	private static NetGroupAction g_messageType = null;
 	
 	/**
-	 * Describes an action that can be performed on a group
+	 * Describes an action that can be performed on a group.  ADD_ELEMENTS and REMOVE_ELEMENTS carry a list of elements
+	 * (see {@link NetGroupAction#makePacket(Action, String, Collection, Player)}).
 	 */
 	public static enum Action
 	{
-		ADD_ELEMENT, DELETE, NEW, REMOVE_ELEMENT, RENAME;
+		ADD_ELEMENT, DELETE, NEW, REMOVE_ELEMENT, RENAME, ADD_ELEMENTS, REMOVE_ELEMENTS;
 
 		/**
 		 * Get ActionType from ordinal value
@@ -129,6 +133,41 @@ public class NetGroupAction implements NetworkMessageTypeIF
 		}
 	}
 	
+	/**
+	 * Build a message adding or removing multiple elements to or from a group
+	 * @param action ADD_ELEMENTS or REMOVE_ELEMENTS
+	 * @param groupName Group name to perform action upon
+	 * @param mapElementIDs IDs of the affected elements
+	 * @param player Source player sending the message
+	 * @return Data packet
+	 */
+	public static byte[] makePacket(Action action, String groupName, Collection<MapElementID> mapElementIDs, Player player)
+	{
+		if (action != Action.ADD_ELEMENTS && action != Action.REMOVE_ELEMENTS)
+			throw new IllegalArgumentException("Not a multiple element action: " + action);
+		
+		try
+		{
+			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+			DataPacketStream dos = module.createDataPacketStream(getMessageType());
+			
+			dos.writeInt(action.ordinal());
+			dos.writeUTF(groupName == null ? "" : groupName);
+			
+			dos.writeInt(mapElementIDs.size());
+			for (MapElementID mapElementID : mapElementIDs)
+				dos.writeLong(mapElementID.numeric());
+			
+			dos.writeInt(player.getID());
+			
+			return dos.toByteArray();
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
   
   /**
    * Convenience method to craete a rename packet
@@ -150,9 +189,12 @@ public class NetGroupAction implements NetworkMessageTypeIF
 	{
 		final int actionOrd = dis.readInt();
     Action action = Action.fromOrdinal(actionOrd);
+    if (action == null)
+    	throw new IOException("Unknown group action: " + actionOrd);
     
     final String group = dis.readUTF();
     MapElementID mapElementID = null;
+    List<MapElementID> mapElementIDs = null;
     
     String newGroupName = null;
     
@@ -160,6 +202,17 @@ public class NetGroupAction implements NetworkMessageTypeIF
     {
     	newGroupName = dis.readUTF(); 
     }
+    else if (action == Action.ADD_ELEMENTS || action == Action.REMOVE_ELEMENTS)
+    {
+    	// Each ID takes 8 bytes - a larger count can only come from a corrupted packet
+    	final int count = dis.readInt();
+    	if (count < 0 || count > dis.available() / 8)
+    		throw new IOException("Invalid element count in group action: " + count);
+    	
+    	mapElementIDs = new ArrayList<MapElementID>(count);
+    	for (int i = 0; i < count; i++)
+    		mapElementIDs.add(MapElementID.fromNumeric(dis.readLong()));
+    }
     else
     {            
     	long mapElement = dis.readLong();
@@ -172,15 +225,58 @@ public class NetGroupAction implements NetworkMessageTypeIF
     if (core.getPlayerID() == playerID)
     	return;
     
-    if (mapElementID != null)
+    // Listeners see the whole action as a single batch
+    GameTableMap map = core.getMap(GameTableCore.MapType.PUBLIC);
+    map.beginBatch();
+    try
     {
-    	handleActionNetworkMessage(action, group, mapElementID, event);
+    	if (mapElementIDs != null)
+    	{
+    		handleElementsNetworkMessage(action, group, mapElementIDs, event);
+    	}
+    	else if (mapElementID != null)
+	    {
+	    	handleActionNetworkMessage(action, group, mapElementID, event);
+	    }
+	    else
+	    {
+	    	handleRenameNetworkMessage(group, newGroupName, event);
+	    }
     }
-    else
+    finally
     {
-    	handleRenameNetworkMessage(group, newGroupName, event);
+    	map.commitBatch();
     }
 	}
+	
+	/**
+	 * Handle a received network packet affecting multiple elements
+	 * 
+	 * @param action ADD_ELEMENTS or REMOVE_ELEMENTS
+	 * @param groupName Name of affected group
+	 * @param elementIDs Element unique IDs
+	 * @param netEvent Source Network Event
+	 */
+	private void handleElementsNetworkMessage(Action action, final String groupName, final List<MapElementID> elementIDs, NetworkEvent netEvent)
+	{
+		GameTableCore core = GametableApp.getCore();		
+		GameTableMap map = core.getMap(GameTableCore.MapType.PUBLIC);
+		GroupManager manager = core.getGroupManager(GameTableCore.MapType.PUBLIC);
+		
+		Group group = manager.getGroup(groupName, action == Action.ADD_ELEMENTS);
+		if (group == null)
+			return;
+		
+		for (MapElementID elementID : elementIDs)
+		{
+			final MapElement element = map.getMapElement(elementID);
+			
+			if (action == Action.ADD_ELEMENTS)
+				group.addElement(element, netEvent);
+			else
+				group.removeElement(element, netEvent);
+		}
+	}
 
 	/**
 	 * Handle a received network communication packet
@@ -220,7 +316,9 @@ public class NetGroupAction implements NetworkMessageTypeIF
 			// handled through another method return
 
 		case NEW:
-			// do nothing
+		case ADD_ELEMENTS:
+		case REMOVE_ELEMENTS:
+			// do nothing (ADD_ELEMENTS and REMOVE_ELEMENTS are handled through another method)
 			break;
 		}
 	}
@@ -0,0 +1,206 @@
+/*
+ * NetJoinSnapshot.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data.net;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gametable.GametableApp;
+import com.gametable.data.*;
+import com.gametable.data.grid.GridModeID;
+import com.gametable.net.*;
+import com.gametable.ui.BackgroundColor;
+import com.gametable.util.Log;
+
+/**
+ * Network message sending the whole session state to a player joining a hosted session: grid mode, background, public
+ * map (elements, lines and groups) and locked elements.
+ *
+ * The state is sent as a binary snapshot (see {@link MapSnapshot}) and applied in bulk once completely received.
+ */
+public class NetJoinSnapshot implements NetworkMessageTypeIF
+{
+	/**
+	 * Singleton factory method
+	 * @return
+	 */
+	public static NetJoinSnapshot getMessageType()
+	{
+		if (g_messageType == null)
+			g_messageType = new NetJoinSnapshot();
+
+		return g_messageType;
+	}
+
+	/**
+	 * Singleton instance
+	 */
+	private static NetJoinSnapshot g_messageType = null;
+
+	/**
+	 * Message's private ID
+	 */
+	private static int		g_id		= 0;
+
+	/**
+	 * Messagae's unique string representation
+	 */
+	private static String	g_name	= null;
+
+	/**
+	 * Reassembles the snapshot chunks
+	 */
+	private final MapSnapshot.Assembler m_assembler = new MapSnapshot.Assembler();
+
+	/**
+	 * Create the network data packets holding the current session state
+	 *
+	 * All packets must be sent, in order, to the same recipient.
+	 *
+	 * @param core Core holding the session state
+	 * @return list of data packets or null
+	 */
+	public static List<byte[]> makePackets(GameTableCore core)
+	{
+		try
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bos);
+
+			// Grid mode
+			out.writeInt(core.getGridModeID().ordinal());
+
+			// Background
+			MapElementTypeIF type = core.getBackgroundMapElementType();
+			out.writeBoolean(type != null);
+			if (type != null)
+				out.writeUTF(type.getFullyQualifiedName());
+			else
+				out.writeInt(core.getBackgroundColor().ordinal());
+
+			// Public map
+			GameTableMap map = core.getMap(GameTableCore.MapType.PUBLIC);
+			MapSnapshot.writeMap(map, out);
+
+			// Locked elements from the public map
+			List<MapElement> locked = new ArrayList<MapElement>();
+			for (MapElement element : core.getLockedMapElements())
+			{
+				if (map.getMapElement(element.getID()) == element)
+					locked.add(element);
+			}
+
+			out.writeInt(locked.size());
+			for (MapElement element : locked)
+				out.writeLong(element.getID().numeric());
+
+			out.flush();
+
+			return MapSnapshot.makePackets(getMessageType(), bos.toByteArray());
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#getID()
+	 */
+	@Override
+	public int getID()
+	{
+		return g_id;
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		if (g_name == null)
+			g_name = this.getClass().getSimpleName();
+
+		return g_name;
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#processData(com.gametable.data.net.Connection,
+	 * java.io.DataInputStream)
+	 */
+	@Override
+	public void processData(NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
+	{
+		byte[] snapshot = m_assembler.receive(sourceConnection, dis, event);
+		if (snapshot == null)
+			return;
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+		GameTableCore core = GametableApp.getCore();
+
+		// Grid mode
+		GridModeID gridMode = GridModeID.fromOrdinal(in.readInt());
+		if (gridMode == null)
+			gridMode  = GridModeID.NONE;
+
+		core.setGridMode(gridMode, event);
+
+		// Background
+		if (in.readBoolean())
+		{
+			String mapElementTypeFQN = in.readUTF();
+			MapElementTypeIF type = MapElementTypeLibrary.getMasterLibrary().getMapElementType(mapElementTypeFQN);
+			if (type != null)
+				core.setBackgroundMapElementType(type, event);
+			else
+				Log.log(Log.SYS, "Map element type not found: " + mapElementTypeFQN);
+		}
+		else
+		{
+			core.setBackgroundColor(BackgroundColor.fromOrdinal(in.readInt()), event);
+		}
+
+		// Public map
+		GameTableMap map = core.getMap(GameTableCore.MapType.PUBLIC);
+		MapSnapshot.readMap(map, in, sourceConnection, event);
+
+		// Locked elements
+		final int lockedCount = MapSnapshot.readCount(in);
+		List<MapElement> locked = new ArrayList<MapElement>(lockedCount);
+		for (int i = 0; i < lockedCount; i++)
+		{
+			MapElement element = map.getMapElement(MapElementID.get(in.readLong()));
+			if (element != null)
+				locked.add(element);
+		}
+
+		if (locked.size() > 0)
+			core.lockMapElements(GameTableCore.MapType.PUBLIC, locked, true, event);
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#setID(int)
+	 */
+	@Override
+	public void setID(int id)
+	{
+		g_id = id;
+	}
+}
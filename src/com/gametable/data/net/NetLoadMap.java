@@ -18,24 +18,19 @@
 
 package com.gametable.data.net;
 
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.StringReader;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import java.io.*;
+import java.util.List;
 
 import com.gametable.GametableApp;
-import com.gametable.data.GameTableCore;
-import com.gametable.data.GameTableMap;
-import com.gametable.data.MapElementID;
-import com.gametable.data.XMLSerializeConverter;
+import com.gametable.data.*;
 import com.gametable.net.*;
 import com.gametable.util.Log;
-import com.maziade.tools.XMLUtils;
 
 /**
- * Network message to share the public map
+ * Network message to share the public map.
+ * 
+ * The map is sent as a binary snapshot (see {@link MapSnapshot}).  The receiving end only replaces its public map once
+ * the whole snapshot has been received.
  */
 public class NetLoadMap implements NetworkMessageTypeIF
 {
@@ -56,39 +51,6 @@ public class NetLoadMap implements NetworkMessageTypeIF
 	 */
 	private static NetLoadMap g_messageType = null;
 	
-/**
-	 * MapElementID converter when loading a map.
-	 * 
-	 * Reassigns element IDs that already in use
-	 * 
-	 */
-	private static class LoadMapSerializeConverter extends XMLSerializeConverter
-	{
-		/*
-		 * @see com.gametable.data.XMLSerializeConverter#getMapElementID(long)
-		 */
-		@Override
-		public MapElementID getMapElementID(long savedElementID)
-		{
-			MapElementID id = super.getMapElementID(savedElementID);
-			if (id != null)
-				return id;
-
-			id = MapElementID.get(savedElementID);
-
-			// If ID was in use, let us reassign internal ID
-			if (id != null)
-			{
-				id.reassignInternalID();
-			}
-
-			id = MapElementID.fromNumeric(savedElementID);
-			this.storeMapElementID(savedElementID, id);
-
-			return id;
-		}
-	}
-
 	/**
 	 * Message's private ID
 	 */
@@ -98,39 +60,30 @@ public class NetLoadMap implements NetworkMessageTypeIF
 	 * Messagae's unique string representation
 	 */
 	private static String	g_name	= null;
+	
+	/**
+	 * Reassembles the snapshot chunks
+	 */
+	private final MapSnapshot.Assembler m_assembler = new MapSnapshot.Assembler();
 
 	/**
-	 * Create a network data packet requesting that other players load the specified file as public map
+	 * Create the network data packets requesting that other players load the specified map as public map.
+	 * 
+	 * All packets must be sent, in order, to the same recipients.
 	 * 
 	 * @param map Map to share
-	 * @return data packet
+	 * @return list of data packets or null
 	 */
-	public static byte[] makePacket(GameTableMap map)
+	public static List<byte[]> makePackets(GameTableMap map)
 	{
-		Document doc = null;
-		try
-		{
-			doc = XMLUtils.createDocument();
-			Element rootEl = doc.createElement("map");
-			doc.appendChild(rootEl);
-			map.serializeToXML(rootEl);
-		}
-		catch (IOException e)
-		{
-			Log.log(Log.SYS, "Could not create XML document " + e.getMessage());
-		}
-
-		if (doc == null)
-			return null;
-
 		try
 		{
-			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
-			DataPacketStream dos = module.createDataPacketStream(getMessageType());
-
-			dos.writeUTF(XMLUtils.xmlToString(doc, "UTF-8"));
-
-			return dos.toByteArray();
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bos);
+			MapSnapshot.writeMap(map, out);
+			out.flush();
+			
+			return MapSnapshot.makePackets(getMessageType(), bos.toByteArray());
 		}
 		catch (final IOException ex)
 		{
@@ -167,17 +120,14 @@ public class NetLoadMap implements NetworkMessageTypeIF
 	@Override
 	public void processData(NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
 	{
-		String xml = dis.readUTF();
-		Document mapDocument = XMLUtils.parseXMLDocument(new StringReader(xml), null);
+		byte[] snapshot = m_assembler.receive(sourceConnection, dis, event);
+		if (snapshot == null)
+			return;
 		
-		GameTableCore core = GametableApp.getCore();
-
-		GameTableMap map = core.getMap(GameTableCore.MapType.PUBLIC);
-		map.clearMap(event);
-
-		LoadMapSerializeConverter converter = new LoadMapSerializeConverter();
-		map.deserializeFromXML(mapDocument.getDocumentElement(), converter, event);
+		GameTableMap map = GametableApp.getCore().getMap(GameTableCore.MapType.PUBLIC);
+		MapSnapshot.readMap(map, new DataInputStream(new ByteArrayInputStream(snapshot)), sourceConnection, event);
 	}
+	
 	/*
 	 * @see com.gametable.data.net.NetworkMessageIF#setID(int)
 	 */
@@ -18,11 +18,12 @@
 
 package com.gametable.data.net;
 
-import java.io.DataInputStream;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.gametable.GametableApp;
 import com.gametable.net.*;
@@ -52,6 +53,10 @@ public class NetRequestFile implements NetworkMessageTypeIF
 
 	/**
 	 * Request a file from a given network connection
+	 * 
+	 * Files are transferred in chunks (see {@link NetSendFile}).  If the file is already being requested, the transfer is
+	 * resumed through the specified connection from the last chunk received.
+	 * 
 	 * @param conn Connection through which to request the file
 	 * @param fileSource Unique name identifying the file source (see registerFileSource)  
 	 * @param fileName Name identifying the file within the specified file source
@@ -60,34 +65,91 @@ public class NetRequestFile implements NetworkMessageTypeIF
 	 */
 	public static void requestFile(NetworkConnectionIF conn, String fileSource, String fileName, File destination, FileRequestListenerIF listener)
 	{
-		// Exit if file already in queue,
-		if (g_requestedFiles.containsKey(fileName))
-			return;
-
-		// Add to the request queue
-		FileRequestInfo req = new FileRequestInfo();
-
-		req.fileName = new FileName(fileSource, fileName);
-		req.destinationFile = destination;
-		req.listener = listener;
+		FileName name = new FileName(fileSource, fileName);
+		FileRequestInfo req;
+		
+		synchronized (g_requestedFiles)
+		{
+			req = g_requestedFiles.get(name);
+			
+			if (req == null)
+			{
+				// Add to the request queue
+				req = new FileRequestInfo();
 		
-		g_requestedFiles.put(req.fileName, req);
+				req.fileName = name;
+				req.destinationFile = destination;
+				req.listener = listener;
+				
+				g_requestedFiles.put(req.fileName, req);
+			}
+		}
 
 		// Validate network connection
 		if (conn == null)
 			return;
 
-		// Send an file request to the host
-		conn.sendPacket(makePacket(req.fileName));
+		synchronized (req)
+		{
+			// Already in progress through that connection
+			if (req.connection == conn)
+				return;
+			
+			// Send a file request to the host, starting (or resuming) where we are at 
+			req.connection = conn;
+			requestNextChunks(req, true);
+		}
+	}
+	
+	/**
+	 * Resume all incomplete file transfers through a new connection (ex: after reconnecting to the host)
+	 * 
+	 * @param conn Connection through which to request the files
+	 */
+	public static void resumeRequests(NetworkConnectionIF conn)
+	{
+		for (FileRequestInfo req : getRequests())
+		{
+			synchronized (req)
+			{
+				if (req.connection != conn)
+				{
+					req.connection = conn;
+					requestNextChunks(req, true);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Suspend the transfers going through a connection that was lost.  Received data is kept so the transfers can be
+	 * resumed later on.
+	 * 
+	 * @param conn Lost connection
+	 */
+	public static void onConnectionDropped(NetworkConnectionIF conn)
+	{
+		for (FileRequestInfo req : getRequests())
+		{
+			synchronized (req)
+			{
+				if (req.connection == conn)
+					req.connection = null;
+			}
+		}
+		
+		NetSendFile.removeUnfulfilledRequests(conn);
 	}
 
 	/**
-	 * Build a data packet to request a file from the network
+	 * Build a data packet to request a range of chunks of a file
 	 * 
 	 * @param fileName Identifies a file request
+	 * @param offset Offset, within the file, of the first chunk to send
+	 * @param chunkCount Number of chunks to send
 	 * @return Data packet
 	 */
-	protected static byte[] makePacket(FileName fileName)
+	protected static byte[] makePacket(FileName fileName, long offset, int chunkCount)
 	{
 		try
 		{
@@ -95,6 +157,8 @@ public class NetRequestFile implements NetworkMessageTypeIF
 			DataPacketStream dos = module.createDataPacketStream(getMessageType());
 			dos.writeUTF(fileName.fileSource);
 			dos.writeUTF(fileName.fileName);
+			dos.writeLong(offset);
+			dos.writeInt(chunkCount);
 			
 			return dos.toByteArray();
 		}
@@ -104,6 +168,46 @@ public class NetRequestFile implements NetworkMessageTypeIF
 			return null;
 		}
 	}
+	
+	/**
+	 * Request more chunks for an ongoing transfer, so that a full window of chunks is always in flight.  Must be called
+	 * while holding the request's lock.
+	 * 
+	 * @param req File request
+	 * @param restart If true, chunks already in flight are discarded and the window is requested again from the last
+	 *          received position
+	 */
+	protected static void requestNextChunks(FileRequestInfo req, boolean restart)
+	{
+		if (req.connection == null)
+			return;
+		
+		if (restart)
+			req.requested = req.received;
+		
+		// Wait until half the window has been received before asking for more
+		final long windowEnd = req.received + (long)WINDOW_CHUNKS * NetSendFile.CHUNK_SIZE;
+		int count = (int)((windowEnd - req.requested) / NetSendFile.CHUNK_SIZE);
+		if (!restart && count < WINDOW_CHUNKS / 2)
+			return;
+		
+		// No need to go beyond the end of the file
+		if (req.length >= 0)
+		{
+			final long remaining = req.length - req.requested;
+			if (remaining <= 0 && !restart)
+				return;
+			
+			count = (int)Math.min(count, Math.max(1, (remaining + NetSendFile.CHUNK_SIZE - 1) / NetSendFile.CHUNK_SIZE));
+		}
+		
+		byte[] packet = makePacket(req.fileName, req.requested, count);
+		if (packet == null)
+			return;
+		
+		req.requested += (long)count * NetSendFile.CHUNK_SIZE;
+		req.connection.sendPacket(packet);
+	}
 
 	/*
 	 * @see com.gametable.data.net.NetworkMessageIF#processData(com.gametable.data.net.Connection,
@@ -114,23 +218,31 @@ public class NetRequestFile implements NetworkMessageTypeIF
 	{
 		// We received a file request
 		FileName fileName = new FileName(dis.readUTF(), dis.readUTF());
+		final long offset = dis.readLong();
+		final int chunkCount = dis.readInt();
 
 		File file = getFileFromFileName(fileName);
 
-		// We will build a data packet and send a file packet back to the requester
-		byte[] packet = null;
+		// Send the requested chunks back to the requester, one packet per chunk
+		boolean sent = false;
 		
 		if (file != null)
-				packet = NetSendFile.makeFilePacket(fileName, file);
+			sent = NetSendFile.sendChunks(sourceConnection, fileName, file, offset, chunkCount);
 		
-		if (packet != null)
-		{
-			sourceConnection.sendPacket(packet);
-		}
-		else
+		if (!sent)
 		{
-			// If we somehow cannot build the packet, we will ask 'SendFile' to send the file back to the requester if we eventually receive the file
-			NetSendFile.addUnfulfilledRequest(fileName.fileName, sourceConnection);
+			if (getRequestInfo(fileName) != null)
+			{
+				// We are receiving the file ourselves - 'SendFile' will send the chunks back to the requester once we have it
+				NetSendFile.addUnfulfilledRequest(fileName, sourceConnection, offset, chunkCount);
+			}
+			else
+			{
+				// We have no way to get the file - let the requester know rather than leaving it waiting
+				byte[] packet = NetSendFile.makeUnavailablePacket(fileName);
+				if (packet != null)
+					sourceConnection.sendPacket(packet);
+			}
 		}
 	}
 
@@ -186,11 +298,15 @@ public class NetRequestFile implements NetworkMessageTypeIF
 		if (source == null)
 		{
 			Log.log(Log.SYS, "No file source registerd in NetRequestFile for " + fileName.fileSource);
-			return null;
+			return g_receivedFiles.get(fileName);
 		}
 		
 		File file = source.getFile(fileName.fileSource, fileName.fileName);
 		
+		// Files we have received ourselves can be relayed even if the source does not know about them 
+		if (file == null)
+			file = g_receivedFiles.get(fileName);
+		
 		return file;
 	}
 	
@@ -223,6 +339,12 @@ public class NetRequestFile implements NetworkMessageTypeIF
 	 */
 	private static String				g_name						= null;
 
+	/**
+	 * Number of chunks requested at once.  Limits the amount of file data queued on a connection, so that other messages
+	 * are not held back by large transfers.
+	 */
+	private static final int		WINDOW_CHUNKS			= 8;
+
 	/**
 	 * Files queued for request.  A security measure to make sure we're not receiving files we have not requested.
 	 * Key = Unique, fully qualified name
@@ -230,6 +352,11 @@ public class NetRequestFile implements NetworkMessageTypeIF
 	 */
 	private static Map<FileName, FileRequestInfo> g_requestedFiles	= new HashMap<FileName, FileRequestInfo>();
 	
+	/**
+	 * Files received through the network, which we can send in turn to other players
+	 */
+	private static Map<FileName, File> g_receivedFiles	= new ConcurrentHashMap<FileName, File>();
+	
 	/**
 	 * Get a file request info based on a file name
 	 * @param fileName
@@ -237,7 +364,55 @@ public class NetRequestFile implements NetworkMessageTypeIF
 	 */
 	protected static FileRequestInfo getRequestInfo(FileName fileName)
 	{
-		return g_requestedFiles.get(fileName);
+		synchronized (g_requestedFiles)
+		{
+			return g_requestedFiles.get(fileName);
+		}
+	}
+	
+	/**
+	 * Get a copy of the list of pending file requests
+	 * @return List of requests
+	 */
+	private static List<FileRequestInfo> getRequests()
+	{
+		synchronized (g_requestedFiles)
+		{
+			return new ArrayList<FileRequestInfo>(g_requestedFiles.values());
+		}
+	}
+	
+	/**
+	 * Mark a file request as completed
+	 * @param req Completed request
+	 */
+	protected static void completeRequest(FileRequestInfo req)
+	{
+		synchronized (g_requestedFiles)
+		{
+			if (g_requestedFiles.get(req.fileName) == req)
+				g_requestedFiles.remove(req.fileName);
+		}
+		
+		g_receivedFiles.put(req.fileName, req.destinationFile);
+	}
+	
+	/**
+	 * Mark a file request as failed and notify its listener.  The file can be requested again later on.
+	 * @param req Failed request
+	 */
+	protected static void failRequest(FileRequestInfo req)
+	{
+		synchronized (g_requestedFiles)
+		{
+			if (g_requestedFiles.get(req.fileName) != req)
+				return;
+			
+			g_requestedFiles.remove(req.fileName);
+		}
+		
+		if (req.listener != null)
+			req.listener.onFileRequestFailed(req.fileName.fileName);
 	}
 	
 	/**
@@ -259,6 +434,45 @@ public class NetRequestFile implements NetworkMessageTypeIF
 		 * Listener to notify upon reception
 		 */
 		protected FileRequestListenerIF listener;
+		
+		/**
+		 * Connection through which the file is being received (null if the transfer is suspended)
+		 */
+		protected NetworkConnectionIF connection = null;
+		
+		/**
+		 * Stream writing received data to the temporary file (null until the first chunk is received)
+		 */
+		protected OutputStream out = null;
+		
+		/**
+		 * Number of bytes received and written so far
+		 */
+		protected long received = 0;
+		
+		/**
+		 * Position up to which chunks have been requested
+		 */
+		protected long requested = 0;
+		
+		/**
+		 * Total size of the file (-1 until the first chunk is received)
+		 */
+		protected long length = -1;
+		
+		/**
+		 * Version of the file being received, as reported by the sender.  Used to detect a change in the file while
+		 * resuming.
+		 */
+		protected long version = 0;
+		
+		/**
+		 * @return Temporary file receiving the data until the transfer is complete
+		 */
+		protected File getPartialFile()
+		{
+			return new File(destinationFile.getPath() + ".part");
+		}
 	}
 	
 	/**
@@ -272,6 +486,12 @@ public class NetRequestFile implements NetworkMessageTypeIF
 		 * @param file Pointer to the received file (normally at the requested destination)
 		 */
 		public void onFileRequestReceived(String fileName, File file);
+		
+		/**
+		 * Called when the requested file could not be received (ex: the file is not available from the connection)
+		 * @param fileName Name of the file within its data source
+		 */
+		public void onFileRequestFailed(String fileName);
 	}
 	
 	/**
@@ -145,7 +145,7 @@ public class NetSendChatText implements NetworkMessageTypeIF
 	    	for (Player player : core.getPlayers())
 				{
 					if (player.equals(toPlayer))
-						core.send(makePacket(msgType, toPlayer, text), player.getConnection());
+						core.send(makePacket(msgType, toPlayer, text), player.getConnection(), OutboundQueue.Priority.INTERACTIVE);
 				}
 			}
 		}
@@ -19,21 +19,20 @@
 package com.gametable.data.net;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.zip.CRC32;
 
 import com.gametable.GametableApp;
 import com.gametable.data.net.NetRequestFile.FileName;
 import com.gametable.data.net.NetRequestFile.FileRequestInfo;
 import com.gametable.net.*;
 import com.gametable.util.Log;
-import com.gametable.util.UtilityFunctions;
 
 /**
  * Message allowing to send and receive files.  Used by {@link NetRequestFile}, should not be used directly.
  * 
+ * Files are sent in fixed-size chunks, each carrying its position and checksum, only when requested by the receiver.
+ * Received chunks are appended to a temporary file until the transfer is complete.
  */
 public class NetSendFile implements NetworkMessageTypeIF
 {
@@ -55,21 +54,87 @@ public class NetSendFile implements NetworkMessageTypeIF
 	private static NetSendFile g_messageType = null;
 
 	/**
-	 * Make a data packet sending a file
+	 * Maximum number of file bytes sent within a single packet
+	 */
+	protected static final int CHUNK_SIZE = 32 * 1024;
+
+	/**
+	 * Send a range of chunks of a file.  Only one chunk is held in memory at a time.
+	 * @param conn Connection to send the chunks to
 	 * @param fileName File identifier
-	 * @param File file to send
-	 * @return
+	 * @param file File to send
+	 * @param offset Offset of the first chunk to send
+	 * @param chunkCount Number of chunks to send
+	 * @return true if the chunks could be read and sent
 	 */
-	protected static byte[] makeFilePacket(FileName fileName, File file)
+	protected static boolean sendChunks(NetworkConnectionIF conn, FileName fileName, File file, long offset, int chunkCount)
 	{
-		// load the entire file
-		final byte[] fileData = UtilityFunctions.loadFileToArray(file);
-
-		if (fileData == null)
+		RandomAccessFile in = null;
+		
+		try
 		{
-			return null;
+			in = new RandomAccessFile(file, "r");
+			
+			final long length = in.length();
+			final long version = file.lastModified();
+			final byte[] buffer = new byte[(int)Math.min(CHUNK_SIZE, Math.max(0, length - offset))];
+			
+			// At least one (possibly empty) chunk is sent so the requester learns about the file's size
+			int count = 0;
+			do
+			{
+				int size = (int)Math.min(CHUNK_SIZE, Math.max(0, length - offset));
+				
+				in.seek(offset);
+				in.readFully(buffer, 0, size);
+				
+				byte[] packet = makeChunkPacket(fileName, length, version, offset, buffer, size);
+				if (packet == null)
+					return false;
+				
+				// Low priority, so chat and moves are not held behind large files
+				GametableApp.getCore().send(packet, conn, OutboundQueue.Priority.TRANSFER);
+				
+				offset += size;
+				count++;
+			}
+			while (count < chunkCount && offset < length);
+			
+			return true;
 		}
-
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return false;
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException e)
+				{
+					// nothing to do
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Make a data packet holding a chunk of a file
+	 * @param fileName File identifier
+	 * @param length Total length of the file
+	 * @param version Version of the file (last modification stamp)
+	 * @param offset Offset of the chunk within the file
+	 * @param data Buffer holding the chunk data
+	 * @param size Size of the chunk
+	 * @return Data packet
+	 */
+	private static byte[] makeChunkPacket(FileName fileName, long length, long version, long offset, byte[] data, int size)
+	{
 		try
 		{
 			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
@@ -77,12 +142,20 @@ public class NetSendFile implements NetworkMessageTypeIF
 			
 			dos.writeUTF(fileName.fileSource);
 			dos.writeUTF(fileName.fileName);
-
-			// now write the data length
-			dos.writeLong(file.length());
+			
+			dos.writeLong(length);
+			dos.writeLong(version);
+			
+			// Chunk position, size and checksum
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, size);
+			
+			dos.writeLong(offset);
+			dos.writeInt(size);
+			dos.writeLong(crc.getValue());
 
 			// and finally, the data itself
-			writeFileToStream(file, dos);
+			dos.write(data, 0, size);
 
 			return dos.toByteArray();
 		}
@@ -94,30 +167,36 @@ public class NetSendFile implements NetworkMessageTypeIF
 	}
 	
 	/**
-	 * Write file to output stream
-	 * @param file File to read
-	 * @param out Output stream
-	 * @throws IOException
+	 * Make a data packet telling the requester that a file is not available
+	 * @param fileName File identifier
+	 * @return Data packet
 	 */
-	private static void writeFileToStream(File file, DataPacketStream out) throws IOException
+	protected static byte[] makeUnavailablePacket(FileName fileName)
 	{
-		final DataInputStream infile = new DataInputStream(new FileInputStream(file));
-		final byte[] buffer = new byte[1024];
-		
-		while (true)
+		try
 		{
-			final int bytesRead = infile.read(buffer);
-			if (bytesRead > 0)
-			{
-				out.write(buffer, 0, bytesRead);
-			}
-			else
-			{
-				break;
-			}
-		}		
-	}
+			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+			DataPacketStream dos = module.createDataPacketStream(getMessageType());
+			
+			dos.writeUTF(fileName.fileSource);
+			dos.writeUTF(fileName.fileName);
+			
+			// Negative length - no chunk follows
+			dos.writeLong(UNAVAILABLE);
+			dos.writeLong(0);
+			dos.writeLong(0);
+			dos.writeInt(0);
+			dos.writeLong(0);
 
+			return dos.toByteArray();
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
+	
 	/*
 	 * @see com.gametable.data.net.NetworkMessageIF#processData(com.gametable.data.net.Connection,
 	 * java.io.DataInputStream)
@@ -125,74 +204,179 @@ public class NetSendFile implements NetworkMessageTypeIF
 	@Override
 	public void processData(NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
 	{
-		try
-		{
-			final FileName fileName = new FileName(dis.readUTF(), dis.readUTF());			
+		final FileName fileName = new FileName(dis.readUTF(), dis.readUTF());			
 
-			// read the length of the file data
-			final long len = dis.readLong();
+		final long length = dis.readLong();
+		final long version = dis.readLong();
+		final long offset = dis.readLong();
+		final int size = dis.readInt();
+		final long checksum = dis.readLong();
+		
+		// Make sure we're receiving a file we have requested.
+		FileRequestInfo req = NetRequestFile.getRequestInfo(fileName);
+		if (req == null)
+		{
+			// This file was not in our request buffer - moving on.
+			return;
+		}
+		
+		if (length == UNAVAILABLE)
+		{
+			Log.log(Log.SYS, "File " + fileName.fileName + " is not available");
 			
-			// Make sure we're receiving a file we have requested.
-			FileRequestInfo req = NetRequestFile.getRequestInfo(fileName);
-			if (req == null)
+			synchronized (req)
 			{
-				// This file was not in our request buffer - moving on.
-				return;
+				resetRequest(req);
 			}
-
-			File parentDir = req.destinationFile.getParentFile();
-			if (!parentDir.exists())
-				parentDir.mkdirs();
-						
-			FileOutputStream out = new FileOutputStream(req.destinationFile);
-			long written = 0;
-			byte buf[] = new byte[1024];
 			
-			while (written != len)
+			NetRequestFile.failRequest(req);
+			return;
+		}
+		
+		boolean failed = false;
+		
+		synchronized (req)
+		{
+			try
 			{
-				int size = (int)Math.min(buf.length, len - written);				
-				dis.readFully(buf, 0, size);
-				out.write(buf, 0, size);
+				// Chunk sizes come from the network - a chunk must fit within the file and make progress (unless the file is empty)
+				if (length < 0 || offset < 0 || size < 0 || size > CHUNK_SIZE || offset > length || size > length - offset
+						|| (size == 0 && offset < length))
+				{
+					throw new IOException("Invalid chunk received for " + fileName.fileName + ": offset " + offset + ", size " + size
+							+ ", file length " + length);
+				}
+				
+				if (req.received > 0 && (req.version != version || req.length != length))
+				{
+					// The file changed since we started receiving it - start over
+					Log.log(Log.SYS, "File " + fileName.fileName + " changed during transfer - restarting");
+					resetRequest(req);
+					NetRequestFile.requestNextChunks(req, true);
+					return;
+				}
+				
+				// Chunks requested before a resume or a checksum error may still be in flight
+				if (offset != req.received)
+					return;
+				
+				byte data[] = new byte[size];
+				dis.readFully(data);
+				
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				
+				if (crc.getValue() != checksum)
+				{
+					Log.log(Log.SYS, "Checksum error receiving " + fileName.fileName + " at " + offset + " - requesting again");
+					NetRequestFile.requestNextChunks(req, true);
+					return;
+				}
 				
-				written += size;
+				if (req.out == null)
+				{
+					File partFile = req.getPartialFile();
+					
+					File parentDir = partFile.getParentFile();
+					if (parentDir != null && !parentDir.exists())
+						parentDir.mkdirs();
+					
+					// Data we previously received is at the beginning of the file 
+					req.out = new BufferedOutputStream(new FileOutputStream(partFile, req.received > 0));
+				}
+				
+				req.length = length;
+				req.version = version;
+				
+				req.out.write(data);
+				req.received += size;
+				
+				if (req.received < length)
+				{
+					NetRequestFile.requestNextChunks(req, false);
+					return;
+				}
+				
+				req.out.close();
+				req.out = null;
+				
+				if (req.destinationFile.exists())
+					req.destinationFile.delete();
+				
+				if (!req.getPartialFile().renameTo(req.destinationFile))
+					throw new IOException("Could not rename " + req.getPartialFile() + " to " + req.destinationFile);
+			}
+			catch (final IOException ex)
+			{
+				Log.log(Log.SYS, ex);
+				resetRequest(req);
+				failed = true;
 			}
-			
-			out.flush();
-			out.close();
-			
-			// Now that we have received the file, we can fulfill pending requests
-			fullfilRequest(fileName, req.destinationFile);
-			
-			// Notify requester
-			if (req.listener != null)
-				req.listener.onFileRequestReceived(fileName.fileName, req.destinationFile);
 		}
-		catch (final IOException ex)
+		
+		if (failed)
 		{
-			Log.log(Log.SYS, ex);
+			NetRequestFile.failRequest(req);
+			return;
 		}
+		
+		NetRequestFile.completeRequest(req);
+			
+		// Now that we have received the file, we can fulfill pending requests
+		fullfilRequest(fileName, req.destinationFile);
+		
+		// Notify requester
+		if (req.listener != null)
+			req.listener.onFileRequestReceived(fileName.fileName, req.destinationFile);
 	}
 	
 	/**
-	 * Fulfill any pending requests for an FQN with the specified file
+	 * Discard the data received so far for a file request
+	 * @param req File request
+	 */
+	private static void resetRequest(FileRequestInfo req)
+	{
+		if (req.out != null)
+		{
+			try
+			{
+				req.out.close();
+			}
+			catch (IOException e)
+			{
+				// nothing to do
+			}
+			
+			req.out = null;
+		}
+		
+		req.getPartialFile().delete();
+		
+		req.received = 0;
+		req.requested = 0;
+		req.length = -1;
+	}
+	
+	/**
+	 * Fulfill any pending requests for a file with the specified file
 	 * @param fileName File identifier
 	 * @param dataFile Destination data file
 	 */
 	private void fullfilRequest(FileName fileName, File dataFile)
 	{
-		FileRequest req = g_unfulfilledRequests.get(fileName);
-		if (req == null)
-			return;
-
-		// Remove from list right away to prevent potential concurrent issues
-		g_unfulfilledRequests.remove(fileName);
-		
-		byte packet[] = makeFilePacket(fileName, dataFile);
+		List<PendingRequest> pending;
 		
-		for (NetworkConnectionIF conn : req.connections)
+		// Remove from list right away to prevent potential concurrent issues
+		synchronized (g_unfulfilledRequests)
 		{
-			conn.sendPacket(packet);
+			pending = g_unfulfilledRequests.remove(fileName);
 		}
+		
+		if (pending == null)
+			return;
+
+		for (PendingRequest req : pending)
+			sendChunks(req.connection, fileName, dataFile, req.offset, req.chunkCount);
 	}
 
 	/*
@@ -227,38 +411,100 @@ public class NetSendFile implements NetworkMessageTypeIF
 	
 	/**
 	 * Add file request to the 'unfulfilled' list to be tried later.
-	 * @param filename
-	 * @param connection
+	 * @param fileName File identifier
+	 * @param connection Connection requesting the file
+	 * @param offset Offset of the first requested chunk
+	 * @param chunkCount Number of requested chunks
 	 */
-  protected static void addUnfulfilledRequest(final String fqn, final NetworkConnectionIF connection)
-  {
-  	FileRequest req = g_unfulfilledRequests.get(fqn);
-  	if (req == null)
-  	{
-  		req = new FileRequest();
-  		g_unfulfilledRequests.put(fqn, req);
-  	}
-
-  	if (!req.connections.contains(connection))
-  		req.connections.add(connection);
-  }
+	protected static void addUnfulfilledRequest(final FileName fileName, final NetworkConnectionIF connection, long offset, int chunkCount)
+	{
+		synchronized (g_unfulfilledRequests)
+		{
+			List<PendingRequest> pending = g_unfulfilledRequests.get(fileName);
+			if (pending == null)
+			{
+				pending = new ArrayList<PendingRequest>();
+				g_unfulfilledRequests.put(fileName, pending);
+			}
+	
+			// A new request from a connection replaces its previous one
+			for (Iterator<PendingRequest> it = pending.iterator(); it.hasNext();)
+			{
+				if (it.next().connection == connection)
+					it.remove();
+			}
+	
+			pending.add(new PendingRequest(connection, offset, chunkCount));
+		}
+	}
+	
+	/**
+	 * Remove all unfulfilled requests coming from a given connection
+	 * @param connection Connection that was lost
+	 */
+	protected static void removeUnfulfilledRequests(final NetworkConnectionIF connection)
+	{
+		synchronized (g_unfulfilledRequests)
+		{
+			for (Iterator<List<PendingRequest>> it = g_unfulfilledRequests.values().iterator(); it.hasNext();)
+			{
+				List<PendingRequest> pending = it.next();
+				for (Iterator<PendingRequest> reqIt = pending.iterator(); reqIt.hasNext();)
+				{
+					if (reqIt.next().connection == connection)
+						reqIt.remove();
+				}
+				
+				if (pending.isEmpty())
+					it.remove();
+			}
+		}
+	}
 
 	private static int		g_id		= 0;
 	private static String	g_name	= null;
 	
-  /**
-   * A Map of sets of pending incoming requests that could not be fulfilled.
-   */
-  private static Map<String, FileRequest>     g_unfulfilledRequests     = new HashMap<String, FileRequest>();
-  
-  /**
-   * Holds file request information
-   */
-  private static class FileRequest
-  {
-  	/**
-  	 * List of connections waiting to receive the file
-  	 */
-  	private List<NetworkConnectionIF> connections = new ArrayList<NetworkConnectionIF>();
-  }
+	/**
+	 * File length sent in place of a chunk when the requested file is not available
+	 */
+	private static final long	UNAVAILABLE	= -1;
+	
+	/**
+	 * Pending incoming requests that could not be fulfilled, by file.
+	 */
+	private static Map<FileName, List<PendingRequest>>	g_unfulfilledRequests	= new HashMap<FileName, List<PendingRequest>>();
+	
+	/**
+	 * Holds the information of a request that could not be fulfilled
+	 */
+	private static class PendingRequest
+	{
+		/**
+		 * Connection waiting to receive the file
+		 */
+		private final NetworkConnectionIF connection;
+		
+		/**
+		 * Offset of the first requested chunk
+		 */
+		private final long offset;
+		
+		/**
+		 * Number of requested chunks
+		 */
+		private final int chunkCount;
+		
+		/**
+		 * Constructor
+		 * @param conn Connection waiting to receive the file
+		 * @param off Offset of the first requested chunk
+		 * @param count Number of requested chunks
+		 */
+		private PendingRequest(NetworkConnectionIF conn, long off, int count)
+		{
+			connection = conn;
+			offset = off;
+			chunkCount = count;
+		}
+	}
 }
@@ -155,7 +155,14 @@ public class NetSendPlayerInfoToHost implements NetworkMessageTypeIF
 	private static int g_id = 0;
 	private static String g_name = null;
 	
-	private static int VERSION = 1;
+	/**
+	 * Network protocol version. Players must use the same version to join a session. Increase whenever a message format
+	 * changes or a message type is registered.
+	 * 
+	 * 2: map snapshots, windowed file transfers, batched positions, element counts in NetAddMapElement, content hashes in
+	 * element packets, asset manifests and shapes
+	 */
+	static final int VERSION = 2;
 	
 	/**
 	 * Responder interface to communicate with 'hidden' features of the core
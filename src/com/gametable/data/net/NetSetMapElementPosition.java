@@ -58,6 +58,17 @@ public class NetSetMapElementPosition implements NetworkMessageTypeIF
 	private static NetSetMapElementPosition g_messageType = null;
 	
 /**
+	 * Get the key identifying the position updates of a map element, so that queued updates are replaced by newer ones
+	 * (see {@link com.gametable.net.OutboundQueue})
+	 * @param id Map element ID
+	 * @return Coalescing key
+	 */
+	public static Object getCoalesceKey(MapElementID id)
+	{
+		return "NetSetMapElementPosition " + id.numeric();
+	}
+	
+	/**
 	 * Create a data packet requesting a map element be moved to specific coordinates
 	 * @param mapElement Map Element
 	 * @param modelPos Map coordinates
@@ -0,0 +1,241 @@
+/*
+ * NetSetMapElementPositions.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.data.net;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+import com.gametable.GametableApp;
+import com.gametable.data.*;
+import com.gametable.net.*;
+import com.gametable.util.Log;
+
+/**
+ * Network message moving multiple map elements in a single operation (linked or grouped moves).
+ *
+ * Elements are sent sorted by ID. IDs and coordinates are written as differences from the previous element, packed as
+ * variable-length integers: elements moved together are usually close to one another, so most entries fit in a few
+ * bytes.
+ */
+public class NetSetMapElementPositions implements NetworkMessageTypeIF
+{
+	/**
+	 * Singleton factory method
+	 * @return
+	 */
+	public static NetSetMapElementPositions getMessageType()
+	{
+		if (g_messageType == null)
+			g_messageType = new NetSetMapElementPositions();
+
+		return g_messageType;
+	}
+
+	/**
+	 * Singleton instance
+	 */
+	private static NetSetMapElementPositions g_messageType = null;
+
+	/**
+	 * Message's private ID
+	 */
+	private static int		g_id		= 0;
+
+	/**
+	 * Messagae's unique string representation
+	 */
+	private static String	g_name	= null;
+
+	/**
+	 * Create a data packet moving map elements to their current positions
+	 *
+	 * @param mapElements Map elements to send
+	 * @return data packet or null
+	 */
+	public static byte[] makePacket(Collection<MapElement> mapElements)
+	{
+		List<MapElement> sorted = new ArrayList<MapElement>(mapElements);
+		Collections.sort(sorted, new Comparator<MapElement>() {
+			@Override
+			public int compare(MapElement a, MapElement b)
+			{
+				return a.getID().compareTo(b.getID());
+			}
+		});
+
+		try
+		{
+			NetworkModuleIF module = GametableApp.getCore().getNetworkModule();
+			DataPacketStream dos = module.createDataPacketStream(getMessageType());
+
+			writeVarLong(dos, sorted.size());
+
+			long lastID = 0;
+			int lastX = 0;
+			int lastY = 0;
+
+			for (MapElement mapElement : sorted)
+			{
+				final long id = mapElement.getID().numeric();
+				final MapCoordinates pos = mapElement.getPosition();
+
+				writeVarLong(dos, zigZag(id - lastID));
+				writeVarLong(dos, zigZag(pos.x - lastX));
+				writeVarLong(dos, zigZag(pos.y - lastY));
+
+				lastID = id;
+				lastX = pos.x;
+				lastY = pos.y;
+			}
+
+			return dos.toByteArray();
+		}
+		catch (final IOException ex)
+		{
+			Log.log(Log.SYS, ex);
+			return null;
+		}
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#getID()
+	 */
+	@Override
+	public int getID()
+	{
+		return g_id;
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		if (g_name == null)
+			g_name = this.getClass().getSimpleName();
+
+		return g_name;
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#processData(com.gametable.data.net.Connection,
+	 * java.io.DataInputStream)
+	 */
+	@Override
+	public void processData(NetworkConnectionIF sourceConnection, DataInputStream dis, NetworkEvent event) throws IOException
+	{
+		final long count = readVarLong(dis);
+
+		GameTableMap map = GametableApp.getCore().getMap(GameTableCore.MapType.PUBLIC);
+		Map<MapElement, MapCoordinates> positions = new LinkedHashMap<MapElement, MapCoordinates>();
+
+		long id = 0;
+		int x = 0;
+		int y = 0;
+
+		for (long i = 0; i < count; i++)
+		{
+			id += unZigZag(readVarLong(dis));
+			x += (int) unZigZag(readVarLong(dis));
+			y += (int) unZigZag(readVarLong(dis));
+
+			MapElementID mapElementID = MapElementID.get(id);
+			MapElement mapElement = mapElementID == null ? null : map.getMapElement(mapElementID);
+			if (mapElement != null)
+				positions.put(mapElement, new MapCoordinates(x, y));
+		}
+
+		// Applied as a single operation once the whole message has been read
+		map.moveMapElements(positions, event);
+	}
+
+	/*
+	 * @see com.gametable.data.net.NetworkMessageIF#setID(int)
+	 */
+	@Override
+	public void setID(int id)
+	{
+		g_id = id;
+	}
+
+	/**
+	 * Read an unsigned variable-length integer (7 bits per byte, high bit set on all but the last byte)
+	 *
+	 * @param in Stream to read from
+	 * @return Value
+	 * @throws IOException
+	 */
+	private static long readVarLong(DataInput in) throws IOException
+	{
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	/**
+	 * Decode a signed value encoded by {@link #zigZag(long)}
+	 *
+	 * @param value Encoded value
+	 * @return Signed value
+	 */
+	private static long unZigZag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Write an unsigned variable-length integer (7 bits per byte, high bit set on all but the last byte)
+	 *
+	 * @param out Stream to write to
+	 * @param value Value to write
+	 * @throws IOException
+	 */
+	private static void writeVarLong(DataOutput out, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Encode a signed value so that small negative and positive values both write as short variable-length integers
+	 *
+	 * @param value Signed value
+	 * @return Encoded value
+	 */
+	private static long zigZag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+}
@@ -57,6 +57,17 @@ public class NetShowPointingMarker implements NetworkMessageTypeIF
 	private static NetShowPointingMarker g_messageType = null;
 	
 /**
+	 * Get the key identifying the pointer updates of a player, so that queued updates are replaced by newer ones (see
+	 * {@link com.gametable.net.OutboundQueue})
+	 * @param player Player
+	 * @return Coalescing key
+	 */
+	public static Object getCoalesceKey(Player player)
+	{
+		return "NetShowPointingMarker " + player.getID();
+	}
+	
+	/**
 	 * Create a network data packet requesting that the pointer be shown or hidden
 	 * @param player Player showing or hiding his pointer
 	 * @param point The coordinates at which the pointer is to be shown
@@ -0,0 +1,392 @@
+/*
+ * OutboundQueue.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.net;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.gametable.util.Log;
+
+/**
+ * Outbound packet queue of a single network connection.
+ *
+ * Packets are handed to the network module by a dedicated thread, so the callers never wait on the network. The
+ * network module interface makes no promise of thread safety: the queues of all connections take turns calling it (the
+ * bundled module only appends the packet to the connection's buffer, so no queue holds the others back for long). Packets can be sent with a coalescing key identifying the state they update (ex: the position of a given
+ * element). A packet replaces any packet with the same key that has not been sent yet, so a peer falling behind
+ * receives the latest state rather than every intermediate step.
+ *
+ * Packets are also sent by priority (see {@link Priority}), so chat and pointer updates are not stuck behind a file
+ * transfer or a map snapshot.
+ *
+ * The queue never blocks the caller. A peer whose queue keeps growing despite coalescing is disconnected once the queue
+ * reaches {@link #MAX_BYTES}.
+ */
+public class OutboundQueue
+{
+	/**
+	 * Priority lane of a packet
+	 */
+	public enum Priority
+	{
+		/**
+		 * Short messages that do not depend on the state of the map (chat, pointers, typing flags). Sent ahead of
+		 * everything else.
+		 */
+		INTERACTIVE,
+
+		/**
+		 * Game state changes. Sent in order with snapshots, so they are never applied before a snapshot that was sent
+		 * earlier.
+		 */
+		NORMAL,
+
+		/**
+		 * Parts of a full map snapshot. Kept in order with NORMAL packets, but share the connection with file transfers
+		 * rather than going ahead of them.
+		 */
+		SNAPSHOT,
+
+		/**
+		 * Bulk data independent of the game state (file chunks). Sent once nothing else is waiting, taking turns with
+		 * snapshots.
+		 */
+		TRANSFER
+	}
+
+	/**
+	 * Queued packet
+	 */
+	private static class Entry
+	{
+		/**
+		 * Packet data (null once superseded)
+		 */
+		byte[]				packet;
+
+		/**
+		 * Coalescing key or null
+		 */
+		final Object		key;
+
+		/**
+		 * Packet's priority
+		 */
+		final Priority	priority;
+
+		/**
+		 * True if the packet was replaced by a newer one with the same key
+		 */
+		boolean					superseded	= false;
+
+		/**
+		 * Constructor
+		 *
+		 * @param packet Packet data
+		 * @param key Coalescing key or null
+		 * @param priority Packet's priority
+		 */
+		Entry(byte[] packet, Object key, Priority priority)
+		{
+			this.packet = packet;
+			this.key = key;
+			this.priority = priority;
+		}
+	}
+
+	/**
+	 * Serializes the calls into the network module, shared by the queues of all connections
+	 */
+	private static final Object					g_sendLock		= new Object();
+
+	/**
+	 * Queue size above which a warning is logged, in bytes
+	 */
+	private static final long						WARNING_BYTES	= 1024 * 1024;
+
+	/**
+	 * Queue size at which the peer is considered lost, in bytes
+	 */
+	private static final long						MAX_BYTES			= 64 * 1024 * 1024;
+
+	/**
+	 * Module used to send the packets
+	 */
+	private final NetworkModuleIF				m_module;
+
+	/**
+	 * Connection the packets are sent through
+	 */
+	private final NetworkConnectionIF		m_connection;
+
+	/**
+	 * INTERACTIVE packets waiting to be sent, in order
+	 */
+	private final LinkedList<Entry>			m_interactive	= new LinkedList<Entry>();
+
+	/**
+	 * NORMAL and SNAPSHOT packets waiting to be sent, in order
+	 */
+	private final LinkedList<Entry>			m_ordered			= new LinkedList<Entry>();
+
+	/**
+	 * TRANSFER packets waiting to be sent, in order
+	 */
+	private final LinkedList<Entry>			m_transfers		= new LinkedList<Entry>();
+
+	/**
+	 * Pending packets by coalescing key
+	 */
+	private final Map<Object, Entry>		m_entriesByKey	= new HashMap<Object, Entry>();
+
+	/**
+	 * Size of the pending packets, in bytes
+	 */
+	private long												m_bytes				= 0;
+
+	/**
+	 * True once the warning about the queue size has been logged
+	 */
+	private boolean											m_warned			= false;
+
+	/**
+	 * True once the queue has been closed
+	 */
+	private boolean											m_closed			= false;
+
+	/**
+	 * True if the next low priority packet should be a transfer rather than a snapshot
+	 */
+	private boolean											m_transferTurn	= false;
+
+	/**
+	 * Constructor - starts the sending thread
+	 *
+	 * @param module Module used to send the packets
+	 * @param connection Connection the packets are sent through
+	 */
+	public OutboundQueue(NetworkModuleIF module, NetworkConnectionIF connection)
+	{
+		m_module = module;
+		m_connection = connection;
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				sendPackets();
+			}
+		}, "OutboundQueue");
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop sending. Pending packets are discarded.
+	 */
+	public synchronized void close()
+	{
+		m_closed = true;
+		m_interactive.clear();
+		m_ordered.clear();
+		m_transfers.clear();
+		m_entriesByKey.clear();
+		m_bytes = 0;
+
+		notifyAll();
+	}
+
+	/**
+	 * Queue a packet with NORMAL priority
+	 *
+	 * @param packet Packet to send
+	 * @param key Coalescing key, or null if the packet must always be sent
+	 */
+	public void enqueue(byte[] packet, Object key)
+	{
+		enqueue(packet, key, Priority.NORMAL);
+	}
+
+	/**
+	 * Queue a packet
+	 *
+	 * @param packet Packet to send
+	 * @param key Coalescing key, or null if the packet must always be sent. Keys are expected to always be used with the
+	 *          same priority.
+	 * @param priority Packet's priority
+	 */
+	public void enqueue(byte[] packet, Object key, Priority priority)
+	{
+		if (packet == null)
+			return;
+
+		synchronized (this)
+		{
+			if (m_closed)
+				return;
+
+			Entry entry = new Entry(packet, key, priority);
+
+			if (key != null)
+			{
+				// Sent after the packets queued since the one it replaces, so it can depend on them
+				Entry previous = m_entriesByKey.put(key, entry);
+				if (previous != null)
+				{
+					// The entry stays in its lane until reached, but its data is released right away
+					previous.superseded = true;
+					m_bytes -= previous.packet.length;
+					previous.packet = null;
+				}
+			}
+
+			getLane(priority).add(entry);
+			m_bytes += packet.length;
+
+			if (m_bytes > WARNING_BYTES && !m_warned)
+			{
+				m_warned = true;
+				Log.log(Log.NET, "Outbound queue falling behind: " + m_bytes + " bytes pending");
+			}
+
+			if (m_bytes <= MAX_BYTES)
+			{
+				notifyAll();
+				return;
+			}
+
+			Log.log(Log.NET, "Outbound queue full: closing connection");
+		}
+
+		close();
+		m_connection.close();
+	}
+
+	/**
+	 * @return Size of the pending packets, in bytes
+	 */
+	public synchronized long getPendingBytes()
+	{
+		return m_bytes;
+	}
+
+	/**
+	 * Get the list holding the packets of a given priority
+	 *
+	 * @param priority Priority
+	 * @return List of packets
+	 */
+	private LinkedList<Entry> getLane(Priority priority)
+	{
+		switch (priority)
+		{
+		case INTERACTIVE:
+			return m_interactive;
+
+		case TRANSFER:
+			return m_transfers;
+
+		default:
+			return m_ordered;
+		}
+	}
+
+	/**
+	 * Remove the next packet to send from the lanes
+	 *
+	 * @return Next packet, or null if no packet is waiting
+	 */
+	private Entry nextEntry()
+	{
+		if (!m_interactive.isEmpty())
+			return m_interactive.removeFirst();
+
+		boolean snapshot = !m_ordered.isEmpty() && m_ordered.getFirst().priority == Priority.SNAPSHOT;
+
+		if (!m_ordered.isEmpty() && !snapshot)
+			return m_ordered.removeFirst();
+
+		// Low priority - snapshots and transfers take turns
+		if (snapshot && (m_transfers.isEmpty() || !m_transferTurn))
+		{
+			m_transferTurn = true;
+			return m_ordered.removeFirst();
+		}
+
+		if (!m_transfers.isEmpty())
+		{
+			m_transferTurn = false;
+			return m_transfers.removeFirst();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Sending thread's loop
+	 */
+	private void sendPackets()
+	{
+		while (true)
+		{
+			Entry entry;
+
+			synchronized (this)
+			{
+				while ((entry = nextEntry()) == null && !m_closed)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+
+				if (m_closed)
+					return;
+
+				if (entry.superseded)
+					continue;
+
+				if (entry.key != null)
+					m_entriesByKey.remove(entry.key);
+
+				m_bytes -= entry.packet.length;
+
+				if (m_bytes < WARNING_BYTES / 2)
+					m_warned = false;
+			}
+
+			try
+			{
+				synchronized (g_sendLock)
+				{
+					m_module.send(entry.packet, m_connection);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				Log.log(Log.NET, e);
+			}
+		}
+	}
+}
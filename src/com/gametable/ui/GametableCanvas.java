@@ -19,13 +19,14 @@ package com.gametable.ui;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -136,7 +137,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	public int getLineStrokeWidth()
 	{
-		switch (m_zoom)
+		switch (getZoomLevel())
 		{
 		case LEVEL1:
 			return 3;
@@ -189,8 +190,40 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	public int getTileSize()
 	{
+		final ZoomLevel renderZoom = m_renderZoom.get();
+		if (renderZoom != null)
+			return getTileSize(renderZoom);
+		
 		return m_tileSize;
 	}
+	
+	/**
+	 * Get the square size for a given zoom level
+	 * 
+	 * @param zoomLevel Zoom level
+	 * @return Size of a square, in pixels (view coordinates)
+	 */
+	public static int getTileSize(ZoomLevel zoomLevel)
+	{
+		switch (zoomLevel)
+		{
+		case LEVEL2:
+			return (GameTableMap.getBaseTileSize() / 4) * 3;
+
+		case LEVEL3:
+			return GameTableMap.getBaseTileSize() / 2;
+
+		case LEVEL4:
+			return GameTableMap.getBaseTileSize() / 4;
+
+		case LEVEL5:
+			return GameTableMap.getBaseTileSize() / 8;
+
+		case LEVEL1:
+		default:
+			return GameTableMap.getBaseTileSize();
+		}
+	}
 
 	/**
 	 * Get the visible range within the map, based on the given zoom level
@@ -245,6 +278,10 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	public ZoomLevel getZoomLevel()
 	{
+		final ZoomLevel renderZoom = m_renderZoom.get();
+		if (renderZoom != null)
+			return renderZoom;
+		
 		return m_zoom;
 	}
 
@@ -294,6 +331,128 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		return new Rectangle(topLeft.x, topLeft.y, bottomRight.x - topLeft.x, bottomRight.y - topLeft.y);
 	}
 
+	/**
+	 * Repaint the part of the canvas showing a given region of the map.  Requests are accumulated by Swing and painted
+	 * together, clipped to the damaged area.
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 */
+	public void repaintMapRegion(MapRectangle modelRect)
+	{
+		Rectangle viewRect = modelToView(modelRect);
+		
+		// Margin also covers the width of line strokes
+		final int margin = REPAINT_MARGIN + getLineStrokeWidth();
+		
+		repaint(viewRect.x - m_scrollPosition.x - margin, viewRect.y - m_scrollPosition.y - margin, viewRect.width + margin * 2, viewRect.height + margin * 2);
+	}
+
+	/**
+	 * Repaint the part of the canvas affected by a change to a map element
+	 * 
+	 * @param mapElement Changed element
+	 * @param oldBounds Bounds of the element before the change (null if unchanged)
+	 */
+	public void repaintMapElement(MapElement mapElement, MapRectangle oldBounds)
+	{
+		final MapRectangle bounds = mapElement.getBounds();
+		
+		// Information overlays are drawn outside of the elements' bounds
+		if (isInformationOverlayAffected(bounds) || (oldBounds != null && isInformationOverlayAffected(oldBounds)))
+		{
+			repaint();
+			return;
+		}
+		
+		if (oldBounds != null)
+			repaintMapRegion(oldBounds);
+		
+		repaintMapRegion(bounds);
+	}
+
+	/**
+	 * Refresh the elements of a type whose image was updated (ex: placeholder replaced by the downloaded image).  The maps
+	 * are not notified of such changes: the elements are re-indexed with their new dimensions, then the tiles and regions
+	 * they cover are repainted.
+	 * 
+	 * @param type Updated type
+	 */
+	public void onMapElementTypeUpdated(MapElementTypeIF type)
+	{
+		for (MapType mapType : new MapType[] { MapType.PUBLIC, MapType.PRIVATE })
+		{
+			// Both maps are displayed
+			final Map<MapElement, MapRectangle> oldBounds = m_core.getMap(mapType).refreshMapElements(type);
+			
+			for (Map.Entry<MapElement, MapRectangle> entry : oldBounds.entrySet())
+			{
+				invalidateMapTiles(entry.getKey(), entry.getValue());
+				
+				if (oldBounds.size() <= MAX_DAMAGED_ELEMENTS)
+					repaintMapElement(entry.getKey(), entry.getValue());
+			}
+			
+			if (oldBounds.size() > MAX_DAMAGED_ELEMENTS)
+				repaint();
+		}
+	}
+
+	/**
+	 * Repaint the part of the canvas affected by a change to a player's pointer
+	 * 
+	 * @param player Player whose pointing status or location changed
+	 */
+	public void repaintPointer(Player player)
+	{
+		synchronized (m_pointerLocations)
+		{
+			final MapCoordinates previous = m_pointerLocations.remove(player);
+			if (previous != null)
+				repaintPointerAt(player, previous);
+			
+			if (player.isPointing())
+			{
+				final MapCoordinates location = player.getPointingLocation();
+				m_pointerLocations.put(player, location);
+				repaintPointerAt(player, location);
+			}
+		}
+	}
+
+	/**
+	 * Repaint the area covered by a player's pointer, as drawn by paintMap
+	 * 
+	 * @param player Pointing player
+	 * @param location Pointing location, in map coordinates
+	 */
+	private void repaintPointerAt(Player player, MapCoordinates location)
+	{
+		final Point pointingAt = modelToView(location);
+		final FontMetrics fm = getFontMetrics(MAIN_FONT);
+		final int padding = 3;
+		
+		final int left = pointingAt.x - padding;
+		final int top = pointingAt.y - 5 - fm.getHeight() - 2;
+		final int right = pointingAt.x + Math.max(m_pointingImage.getWidth(null), fm.stringWidth(player.getCharacterName()) + padding);
+		final int bottom = pointingAt.y - 5 + m_pointingImage.getHeight(null);
+		
+		repaint(left - m_scrollPosition.x - REPAINT_MARGIN, top - m_scrollPosition.y - REPAINT_MARGIN, right - left + REPAINT_MARGIN * 2, bottom - top + REPAINT_MARGIN * 2);
+	}
+
+	/**
+	 * Verifies if a change within a region of the map could affect the information overlays (names and attributes)
+	 * 
+	 * @param modelRect Region of the map, in map coordinates
+	 * @return true if information overlays could be affected
+	 */
+	private boolean isInformationOverlayAffected(MapRectangle modelRect)
+	{
+		if (m_bShiftKeyDown || m_frame.shouldShowNames())
+			return true;
+		
+		return m_bMouseOnView && m_mousePositionModel != null && modelRect.contains(m_mousePositionModel);
+	}
+
 	/*
 	 * @see java.awt.event.MouseListener#mouseClicked(java.awt.event.MouseEvent)
 	 */
@@ -465,7 +624,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	@Override
 	public void paintComponent(final Graphics graphics)
 	{
-		paintComponent(graphics, getWidth(), getHeight());
+		paintComponent(graphics, getScrollPosition(), getWidth(), getHeight(), true);
 	}
 
 	/**
@@ -512,7 +671,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	public int viewToModel(int pixels)
 	{
-		double squares = pixels / (double) m_tileSize;
+		double squares = pixels / (double) getTileSize();
 		return (int) (squares * GameTableMap.getBaseTileSize());
 	}
 
@@ -571,7 +730,8 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	}
 
 	/**
-	 * export the map to a jpeg image
+	 * export the map to an image, at the current zoom level.  The format is chosen from the file's extension (JPEG, as
+	 * before, unless the file is named .png)
 	 * 
 	 * @param mapToExport instance of the map that should be exported. If null will use the active map
 	 * @param outputFile file where to save the result
@@ -579,27 +739,72 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	protected void exportMap(GameTableMap mapToExport, File outputFile) throws IOException
 	{
-		if (mapToExport == null)
-			mapToExport = m_core.getMap(GameTableCore.MapType.ACTIVE);
-
-		MapRectangle mapBoundsModel = mapToExport.getBounds();
-		Rectangle mapBounds = modelToView(mapBoundsModel);
-
-		int squareSize = getTileSize();
-		mapBounds.grow(squareSize, squareSize);
-
-		BufferedImage image = new BufferedImage(mapBounds.width, mapBounds.height, BufferedImage.TYPE_INT_RGB);
-		Graphics g = image.getGraphics();
+		exportMap(mapToExport, outputFile, MapExporter.Format.fromFile(outputFile), getZoomLevel(), true);
+	}
 
-		Point scrollPos = getScrollPosition();
+	/**
+	 * export the map.  The map is rendered tile by tile, so even very large maps can be exported without holding the
+	 * whole image in memory (see {@link MapExporter}).  Can be called from any thread: the map is only read on the event
+	 * dispatch thread.
+	 * 
+	 * @param mapToExport instance of the map that should be exported. If null will use the active map
+	 * @param output file where to save the result (folder for {@link MapExporter.Format#PYRAMID})
+	 * @param format Output format
+	 * @param zoomLevel Zoom level at which to render the map
+	 * @param parallel true to render tiles on all available processors
+	 * @throws IOException if file saving causes an error
+	 */
+	protected void exportMap(GameTableMap mapToExport, File output, MapExporter.Format format, final ZoomLevel zoomLevel, boolean parallel)
+			throws IOException
+	{
+		final GameTableMap map = mapToExport == null ? m_core.getMap(GameTableCore.MapType.ACTIVE) : mapToExport;
+		final Rectangle mapBounds = new Rectangle();
+		
+		MapExporter.invokeOnEventThread(new Runnable() {
+			@Override
+			public void run()
+			{
+				// The display keeps its own zoom level - only the export's view conversions use the export's
+				m_renderZoom.set(zoomLevel);
+				try
+				{
+					mapBounds.setBounds(modelToView(map.getBounds()));
 
-		setScrollPosition(mapBounds.x, mapBounds.y);
+					int squareSize = getTileSize();
+					mapBounds.grow(squareSize, squareSize);
+				}
+				finally
+				{
+					m_renderZoom.remove();
+				}
+			}
+		});
 
-		paintComponent(g, mapBounds.width, mapBounds.height);
+		new MapExporter(this, mapBounds, zoomLevel, parallel).export(output, format);
+	}
 
-		setScrollPosition(scrollPos);
+	/**
+	 * Paint a region of the map for export, while the canvas is displayed.  Must be called on the event dispatch thread,
+	 * like any other painting: the map, the selection, the UI mode and the plug-in listeners are not thread safe.
+	 * 
+	 * @param g Graphics device, with its origin at the top left corner of the region
+	 * @param region Region to paint, in view coordinates
+	 * @param zoomLevel Zoom level at which to paint the region
+	 */
+	void paintExportRegion(Graphics2D g, Rectangle region, ZoomLevel zoomLevel)
+	{
+		g.setClip(0, 0, region.width, region.height);
 
-		ImageIO.write(image, "jpg", outputFile);
+		m_renderZoom.set(zoomLevel);
+		try
+		{
+			// Exported areas are painted once - do not fill the tile cache with them
+			paintComponent(g, region.getLocation(), region.width, region.height, false);
+		}
+		finally
+		{
+			m_renderZoom.remove();
+		}
 	}
 
 	/**
@@ -1299,22 +1504,32 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	private int modelToView(int c)
 	{
 		final double squaresX = (double) c / (double) GameTableMap.getBaseTileSize();
-		return (int) Math.round(squaresX * m_tileSize);
+		return (int) Math.round(squaresX * getTileSize());
 	}
 
 	/**
 	 * Paint the component to the specified graphics, without limiting to the component's size
 	 * 
 	 * @param graphics
+	 * @param origin View coordinates drawn at the top left corner of the graphics device (normally the scroll position)
 	 * @param width
 	 * @param height
+	 * @param useTileCache true to draw the static layers from the tile cache
 	 */
-	private void paintComponent(final Graphics graphics, int width, int height)
+	private void paintComponent(final Graphics graphics, Point origin, int width, int height, boolean useTileCache)
 	{
 		final Graphics2D g = (Graphics2D) graphics.create();
 		g.addRenderingHints(Images.getRenderingHints());
 		g.setFont(MAIN_FONT);
 
+		if (useTileCache)
+		{
+			// Selected and highlighted elements are tinted within the cached tiles - refresh the tiles showing them
+			Set<MapElement> tintedElements = new HashSet<MapElement>(m_frame.getSelectedMapElementInstances(MapType.ACTIVE));
+			tintedElements.addAll(m_frame.getHighlightedMapElementInstances());
+			m_tileCache.setTintedElements(tintedElements);
+		}
+
 		// if they're on the private layer, we draw it first, then the private layer
 		// on top of it at half alpha.
 		// if they're on the priavet layer, we draw the private layer on white at half alpha,
@@ -1325,19 +1540,19 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 			// they are on the private map. Draw the private map as normal,
 			g.setColor(Color.WHITE);
 			g.fillRect(0, 0, width, height);
-			paintMap(g, m_core.getMap(GameTableCore.MapType.PUBLIC), width, height);
+			paintMap(g, m_core.getMap(GameTableCore.MapType.PUBLIC), origin, width, height, useTileCache);
 		}
 		else
 		{
 			// they're on the private map. First, draw the private map as normal.
 			// Then draw a 50% alpha sheet over it. then draw the private map
-			paintMap(g, m_core.getMap(GameTableCore.MapType.PUBLIC), width, height);
+			paintMap(g, m_core.getMap(GameTableCore.MapType.PUBLIC), origin, width, height, useTileCache);
 
 			g.setColor(OVERLAY_COLOR); // OVERLAY_COLOR is white with 50% alpha
 			g.fillRect(0, 0, width, height);
 
 			// now draw the private layer
-			paintMap(g, m_core.getMap(GameTableCore.MapType.PRIVATE), width, height);
+			paintMap(g, m_core.getMap(GameTableCore.MapType.PRIVATE), origin, width, height, useTileCache);
 		}
 		g.dispose();
 	}
@@ -1346,16 +1561,18 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 * Paint a map on the graphics device
 	 * @param g
 	 * @param mapToDraw
+	 * @param origin View coordinates drawn at the top left corner of the graphics device
 	 * @param width
 	 * @param height
+	 * @param useTileCache true to draw the static layers from the tile cache
 	 */
-	private void paintMap(final Graphics g, final GameTableMap mapToDraw, int width, int height)
+	private void paintMap(final Graphics g, final GameTableMap mapToDraw, Point origin, int width, int height, boolean useTileCache)
 	{
 		Graphics2D g2 = (Graphics2D) g;
 
 		boolean isActiveMap = mapToDraw == m_core.getMap(GameTableCore.MapType.ACTIVE);
 
-		Point scrollPos = getScrollPosition();
+		Point scrollPos = origin;
 
 		g.translate(-scrollPos.x, -scrollPos.y);
 
@@ -1364,15 +1581,17 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		{
 			drawMapBackground(g, scrollPos.x, scrollPos.y, width, height);
 		}
+		
+		// only elements touching the visible portion of the map (limited to the damaged area) need to be rendered
+		Rectangle paintRect = new Rectangle(scrollPos.x, scrollPos.y, width, height);
+		final Rectangle clip = g.getClipBounds();
+		if (clip != null)
+			paintRect = paintRect.intersection(clip);
+		
+		final MapRectangle visibleRect = new MapRectangle(viewToModel(paintRect.getLocation()), viewToModel(paintRect.width + 1), viewToModel(paintRect.height + 1));
 
 		// draw all the underlays here
-		for (MapElement mapElement : mapToDraw.getMapElements())
-		{
-			if (mapElement.getLayer() != Layer.POG)
-			{
-				renderMapElement(g2, mapElement);
-			}
-		}
+		paintStaticLayer(g2, mapToDraw, Layer.UNDERLAY, visibleRect, paintRect, useTileCache);
 
 		// we don't draw the underlay being dragged if we're not
 		// drawing the current map
@@ -1396,13 +1615,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		}
 
 		// Overlays
-		for (MapElement mapElement : mapToDraw.getMapElements())
-		{
-			if (mapElement.getLayer() == Layer.OVERLAY)
-			{
-				renderMapElement(g2, mapElement);
-			}
-		}
+		paintStaticLayer(g2, mapToDraw, Layer.OVERLAY, visibleRect, paintRect, useTileCache);
 
 		// we don't draw the grid if we're on the private map)
 		if (mapToDraw.isPublicMap())
@@ -1410,30 +1623,16 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 			m_core.getGridMode().drawLines(g2, scrollPos.x, scrollPos.y, width, height, this);
 		}
 
-		// lines
-		for (LineSegment ls : mapToDraw.getLines())
-		{
-			// LineSegments police themselves, performance wise. If they won't touch the current
-			// viewport, they don't draw
-			ls.drawToCanvas(g, this);
-		}
+		// lines (only those crossing the viewport are fetched from the map)
+		m_lineRenderers.get().paint(g2, mapToDraw, visibleRect, paintRect);
 
 		// env
-		for (MapElement mapElement : mapToDraw.getMapElements())
-		{
-			if (mapElement.getLayer() == Layer.ENVIRONMENT)
-			{
-				renderMapElement(g2, mapElement);
-			}
-		}
+		paintStaticLayer(g2, mapToDraw, Layer.ENVIRONMENT, visibleRect, paintRect, useTileCache);
 
 		// pogs
-		for (MapElement mapElement : mapToDraw.getMapElements())
+		for (MapElement mapElement : mapToDraw.getMapElements(visibleRect, Layer.POG))
 		{
-			if (mapElement.getLayer() == Layer.POG)
-			{
-				renderMapElement(g2, mapElement);
-			}
+			renderMapElement(g2, mapElement);
 		}
 
 		// we don't draw the pog being dragged if we're not
@@ -1518,11 +1717,11 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	}
 
 	/**
-	 * Render a given map element
+	 * Render a given map element, tinted if it is selected or highlighted.  Also used by the tile cache.
 	 * @param g graphics device
 	 * @param mapElement Map element to render
 	 */
-	private void renderMapElement(Graphics2D g, MapElement mapElement)
+	void renderMapElement(Graphics2D g, MapElement mapElement)
 	{
 		Composite oldComposite = g.getComposite();
 
@@ -1545,6 +1744,45 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		}
 	}
 
+	/**
+	 * Draw the elements of a static layer (underlay, overlay or environment)
+	 * 
+	 * @param g Graphics device, in canvas coordinates
+	 * @param mapToDraw Map being drawn
+	 * @param layer Layer to draw
+	 * @param visibleRect Painted area, in map coordinates
+	 * @param paintRect Painted area, in canvas coordinates
+	 * @param useTileCache true to draw the layer from the tile cache rather than element by element
+	 */
+	private void paintStaticLayer(Graphics2D g, GameTableMap mapToDraw, Layer layer, MapRectangle visibleRect, Rectangle paintRect, boolean useTileCache)
+	{
+		if (useTileCache)
+		{
+			m_tileCache.paint(g, mapToDraw, layer, paintRect);
+			return;
+		}
+
+		for (MapElement mapElement : mapToDraw.getMapElements(visibleRect, layer))
+			renderMapElement(g, mapElement);
+	}
+
+	/**
+	 * Discard the cached tiles showing a map element
+	 * 
+	 * @param mapElement Map element
+	 * @param oldBounds Bounds of the element before a change (null if unchanged)
+	 */
+	private void invalidateMapTiles(MapElement mapElement, MapRectangle oldBounds)
+	{
+		if (!MapTileCache.isCached(mapElement.getLayer()))
+			return;
+
+		if (oldBounds != null)
+			m_tileCache.invalidate(oldBounds);
+
+		m_tileCache.invalidate(mapElement.getBounds());
+	}
+
 	/**
 	 * Sets the pointer location for a given player in map coordinates
 	 * 
@@ -1623,31 +1861,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	private void updateTileSize()
 	{
-		int ret = GameTableMap.getBaseTileSize();
-		switch (m_zoom)
-		{
-		case LEVEL1:
-			ret = GameTableMap.getBaseTileSize();
-			break;
-
-		case LEVEL2:
-			ret = (GameTableMap.getBaseTileSize() / 4) * 3;
-			break;
-
-		case LEVEL3:
-			ret = GameTableMap.getBaseTileSize() / 2;
-			break;
-
-		case LEVEL4:
-			ret = GameTableMap.getBaseTileSize() / 4;
-			break;
-
-		case LEVEL5:
-			ret = GameTableMap.getBaseTileSize() / 8;
-			break;
-		}
-
-		m_tileSize = ret;
+		m_tileSize = getTileSize(m_zoom);
 	}
 
 	/**
@@ -1678,6 +1892,37 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	private static final int			SMOOTH_SCROLL_TIME		= 300;
 
+	/**
+	 * Last painted pointing location of each pointing player
+	 */
+	private final Map<Player, MapCoordinates>	m_pointerLocations	= new HashMap<Player, MapCoordinates>();
+
+	/**
+	 * Pre-rendered tiles of the static map layers
+	 */
+	private final MapTileCache					m_tileCache					= new MapTileCache(this);
+
+	/**
+	 * Batched renderers for the line segments - one per painting thread (see {@link MapExporter})
+	 */
+	private final ThreadLocal<LineRenderer>	m_lineRenderers		= new ThreadLocal<LineRenderer>() {
+		@Override
+		protected LineRenderer initialValue()
+		{
+			return new LineRenderer(GametableCanvas.this);
+		}
+	};
+
+	/**
+	 * Extra pixels repainted around damaged regions (rounding, outlines)
+	 */
+	private static final int			REPAINT_MARGIN				= 2;
+
+	/**
+	 * Above this number of added elements, the whole canvas is repainted rather than each element's region
+	 */
+	private static final int			MAX_DAMAGED_ELEMENTS	= 64;
+
 	/**
 	 * ALT key is down
 	 */
@@ -1783,8 +2028,22 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 	 */
 	private ZoomLevel										m_zoom									= ZoomLevel.LEVEL1;
 
+	/**
+	 * Zoom level used by the current thread while painting the map for export, in place of the displayed zoom level
+	 */
+	private final ThreadLocal<ZoomLevel>	m_renderZoom						= new ThreadLocal<ZoomLevel>();
+
 	private class CanvasMapElementListener extends MapElementAdapter
 	{
+		/*
+		 * @see com.gametable.data.MapElementAdapter#onMapElementsMoved(java.util.Map, com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onMapElementsMoved(Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+		{
+			// Repainted at once by CanvasMapListener.onMapElementsMoved
+		}
+		
 		/*
 		 * @see com.gametable.data.MapElementAdapter#onAngleChanged(com.gametable.data.MapElement,
 		 * com.gametable.net.NetworkEvent)
@@ -1792,6 +2051,10 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onAngleChanged(MapElement element, NetworkEvent netEvent)
 		{
+			// Previous dimensions are unknown
+			if (MapTileCache.isCached(element.getLayer()))
+				m_tileCache.clear();
+
 			repaint();
 		}
 
@@ -1803,7 +2066,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		public void onAttributeChanged(MapElement element, String attributeName, String newValue, String oldValue, boolean batch, NetworkEvent netEvent)
 		{
 			if (!batch)
-				repaint();
+				repaintMapElement(element, null);
 		}
 
 		/*
@@ -1814,7 +2077,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onAttributesChanged(MapElement element, Map<String, String> attributes, NetworkEvent netEvent)
 		{
-			repaint();
+			repaintMapElement(element, null);
 		}
 
 		/*
@@ -1825,6 +2088,10 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onElementTypeChanged(MapElement element, NetworkEvent netEvent)
 		{
+			// Previous dimensions are unknown
+			if (MapTileCache.isCached(element.getLayer()))
+				m_tileCache.clear();
+
 			repaint();
 		}
 
@@ -1836,6 +2103,11 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		public void onFaceSizeChanged(MapElement element, NetworkEvent netEvent)
 		{
 			snapMapElementToGrid(element);
+			
+			// Previous dimensions are unknown
+			if (MapTileCache.isCached(element.getLayer()))
+				m_tileCache.clear();
+
 			repaint();
 		}
 
@@ -1846,7 +2118,8 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onFlipChanged(MapElement element, NetworkEvent netEvent)
 		{
-			repaint();
+			invalidateMapTiles(element, null);
+			repaintMapElement(element, null);
 		}
 
 		/*
@@ -1857,7 +2130,11 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onLayerChanged(MapElement element, Layer newLayer, Layer oldLayer, NetworkEvent netEvent)
 		{
-			repaint();
+			// The element leaves or joins a cached layer
+			if (MapTileCache.isCached(newLayer) || MapTileCache.isCached(oldLayer))
+				m_tileCache.invalidate(element.getBounds());
+
+			repaintMapElement(element, null);
 		}
 
 		/*
@@ -1867,7 +2144,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onNameChanged(MapElement element, String newName, String oldName, NetworkEvent netEvent)
 		{
-			repaint();
+			repaintMapElement(element, null);
 		}
 
 		/*
@@ -1878,7 +2155,10 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onPositionChanged(MapElement element, MapCoordinates newPosition, MapCoordinates oldPosition, NetworkEvent netEvent)
 		{
-			repaint();
+			// Moving does not change the element's dimensions
+			final MapRectangle oldBounds = new MapRectangle(oldPosition, element.getWidth(), element.getHeight());
+			invalidateMapTiles(element, oldBounds);
+			repaintMapElement(element, oldBounds);
 		}
 	}
 
@@ -1903,7 +2183,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onEraseLineSegments(GameTableMap map, MapRectangle rect, boolean colorSpecific, int color, NetworkEvent netEvent)
 		{
-			repaint();
+			repaintMapRegion(rect);
 		}
 
 		/*
@@ -1915,7 +2195,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		public void onLineSegmentAdded(GameTableMap map, LineSegment lineSegment, boolean batch, NetworkEvent netEvent)
 		{
 			if (!batch)
-				repaint();
+				repaintMapRegion(lineSegment.getBounds());
 		}
 
 		/*
@@ -1926,7 +2206,31 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onLineSegmentsAdded(GameTableMap map, List<LineSegment> lineSegments, NetworkEvent netEvent)
 		{
-			repaint();
+			if (lineSegments.size() > MAX_DAMAGED_ELEMENTS)
+			{
+				repaint();
+				return;
+			}
+			
+			for (LineSegment ls : lineSegments)
+				repaintMapRegion(ls.getBounds());
+		}
+
+		/*
+		 * @see com.gametable.data.GameTableMapAdapter#onShapesAdded(com.gametable.data.GameTableMap, java.util.List,
+		 * com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onShapesAdded(GameTableMap map, List<MapShape> shapes, NetworkEvent netEvent)
+		{
+			if (shapes.size() > MAX_DAMAGED_ELEMENTS)
+			{
+				repaint();
+				return;
+			}
+			
+			for (MapShape shape : shapes)
+				repaintMapRegion(shape.getBounds());
 		}
 
 		/*
@@ -1936,7 +2240,49 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 		@Override
 		public void onMapElementAdded(GameTableMap map, MapElement mapElement, NetworkEvent netEvent)
 		{
-			repaint();
+			invalidateMapTiles(mapElement, null);
+			repaintMapElement(mapElement, null);
+		}
+
+		/*
+		 * @see com.gametable.data.GameTableMapAdapter#onMapElementsAdded(com.gametable.data.GameTableMap, java.util.List,
+		 * com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onMapElementsAdded(GameTableMap map, List<MapElement> mapElements, NetworkEvent netEvent)
+		{
+			for (MapElement mapElement : mapElements)
+			{
+				invalidateMapTiles(mapElement, null);
+				
+				if (mapElements.size() <= MAX_DAMAGED_ELEMENTS)
+					repaintMapElement(mapElement, null);
+			}
+			
+			if (mapElements.size() > MAX_DAMAGED_ELEMENTS)
+				repaint();
+		}
+
+		/*
+		 * @see com.gametable.data.GameTableMapAdapter#onMapElementsMoved(com.gametable.data.GameTableMap, java.util.Map,
+		 * com.gametable.net.NetworkEvent)
+		 */
+		@Override
+		public void onMapElementsMoved(GameTableMap map, Map<MapElement, MapCoordinates> oldPositions, NetworkEvent netEvent)
+		{
+			for (Map.Entry<MapElement, MapCoordinates> entry : oldPositions.entrySet())
+			{
+				// Moving does not change the element's dimensions
+				final MapElement mapElement = entry.getKey();
+				final MapRectangle oldBounds = new MapRectangle(entry.getValue(), mapElement.getWidth(), mapElement.getHeight());
+				invalidateMapTiles(mapElement, oldBounds);
+				
+				if (oldPositions.size() <= MAX_DAMAGED_ELEMENTS)
+					repaintMapElement(mapElement, oldBounds);
+			}
+			
+			if (oldPositions.size() > MAX_DAMAGED_ELEMENTS)
+				repaint();
 		}
 
 		/*
@@ -1951,7 +2297,8 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 				m_frame.selectMapElementInstance(mapElement, MapType.ACTIVE, false);
 				m_frame.highlightMapElementInstance(mapElement, false);
 
-				repaint();
+				invalidateMapTiles(mapElement, null);
+				repaintMapElement(mapElement, null);
 			}
 		}
 
@@ -1965,6 +2312,7 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 			m_frame.unselectAllMapElementInstances(MapType.ACTIVE);
 			m_frame.highlightAllMapElementInstances(false);
 
+			m_tileCache.clear();
 			repaint();
 		}
 
@@ -1982,7 +2330,18 @@ public class GametableCanvas extends JComponent implements MouseListener, MouseM
 				m_frame.highlightMapElementInstance(mapElement, false);
 			}
 
-			repaint();
+			if (mapElements.size() > MAX_DAMAGED_ELEMENTS)
+			{
+				m_tileCache.clear();
+				repaint();
+				return;
+			}
+			
+			for (MapElement mapElement : mapElements)
+			{
+				invalidateMapTiles(mapElement, null);
+				repaintMapElement(mapElement, null);
+			}
 		}
 	}
 	
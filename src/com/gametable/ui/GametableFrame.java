@@ -11,6 +11,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.*;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.text.NumberFormat;
 import java.util.*;
 import java.util.List;
 
@@ -28,6 +29,7 @@ import com.gametable.data.*;
 import com.gametable.data.ChatEngineIF.MessageType;
 import com.gametable.data.GameTableCore.MapType;
 import com.gametable.data.grid.GridModeID;
+import com.gametable.data.net.NetAssetManifest;
 import com.gametable.data.net.NetLoadMap;
 import com.gametable.module.Module;
 import com.gametable.net.*;
@@ -449,7 +451,7 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 	public void highlightMapElementInstance(MapElement mapElement, boolean highlight)
 	{
 		m_highlightedElements.selectMapElement(mapElement, highlight);
-		repaint();
+		m_gametableCanvas.repaintMapElement(mapElement, null);
 	}
 
 	/**
@@ -874,6 +876,9 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 
 		Group group = activeMap.getGroupManager().getGroup(movingMapElement);
 
+		// Linked elements are moved in a single operation
+		Map<MapElement, MapCoordinates> positions = new LinkedHashMap<MapElement, MapCoordinates>();
+
 		if (isSelected(movingMapElement, MapType.ACTIVE))
 		{
 			// converted to array to prevent concurrent modification issues
@@ -882,7 +887,7 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 				if (mapElement.getID() != mapElementID)
 				{
 					MapCoordinates newPos = mapElement.getPosition().delta(diffx, diffy);
-					mapElement.setPosition(newPos);
+					positions.put(mapElement, newPos);
 				}
 			}
 		}
@@ -895,12 +900,20 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 				if (mapElement != movingMapElement)
 				{
 					MapCoordinates newPos = mapElement.getPosition().delta(diffx, diffy);
-					mapElement.setPosition(newPos);
+					positions.put(mapElement, newPos);
 				}
 			}
 		}
 
-		movingMapElement.setPosition(position);
+		if (positions.isEmpty())
+		{
+			movingMapElement.setPosition(position);
+		}
+		else
+		{
+			positions.put(movingMapElement, position);
+			activeMap.moveMapElements(positions);
+		}
 	}
 
 	/**
@@ -1187,23 +1200,60 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 	}
 
 	/**
-	 * Export map to JPeg file
+	 * Export map to an image file or a tile pyramid.  The map is rendered in the background, at its own zoom level, while
+	 * the display remains usable.
 	 */
 	private void exportMap()
 	{
-		File out = getMapExportFile();
+		final File out = getMapExportFile();
 		if (out == null)
 			return;
 
-		try
-		{
-			m_gametableCanvas.exportMap(null, out);
-		}
-		catch (IOException e)
-		{
-			JOptionPane.showMessageDialog(this, e.getMessage(), "Failed saving JPeg File.", JOptionPane.ERROR_MESSAGE);
-			e.printStackTrace();
-		}
+		// Zoom levels are shown as a percentage of the full size
+		final ZoomLevel[] levels = ZoomLevel.values();
+		final String[] labels = new String[levels.length];
+		
+		final NumberFormat percent = NumberFormat.getPercentInstance();
+		percent.setMaximumFractionDigits(1);
+		
+		for (int i = 0; i < levels.length; i++)
+			labels[i] = percent.format(GametableCanvas.getTileSize(levels[i]) / (double) GameTableMap.getBaseTileSize());
+		
+		final Object selected = JOptionPane.showInputDialog(this, getLanguageResource().MAP_EXPORT_ZOOM, getLanguageResource().MAP_EXPORT,
+				JOptionPane.QUESTION_MESSAGE, null, labels, labels[m_gametableCanvas.getZoomLevel().ordinal()]);
+
+		if (selected == null)
+			return;
+
+		final ZoomLevel zoomLevel = levels[Arrays.asList(labels).indexOf(selected)];
+		final MapExporter.Format format = m_mapExportFormat;
+		final GameTableMap map = m_core.getMap(GameTableCore.MapType.ACTIVE);
+		
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				try
+				{
+					m_gametableCanvas.exportMap(map, out, format, zoomLevel, true);
+					m_core.sendMessageLocal(MessageType.SYSTEM, getLanguageResource().MAP_EXPORT_DONE + " " + out.getPath());
+				}
+				catch (final IOException e)
+				{
+					Log.log(Log.SYS, e);
+					
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run()
+						{
+							JOptionPane.showMessageDialog(GametableFrame.this, e.getMessage(), getLanguageResource().MAP_SAVE_IMG_FAIL, JOptionPane.ERROR_MESSAGE);
+						}
+					});
+				}
+			}
+		}, "MapExport");
+		
+		thread.start();
 	}
 
 	/**
@@ -1614,7 +1664,7 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 	}
 
 	/**
-	 * Ask the user to choose a file name for the exported map
+	 * Ask the user to choose a file name and format for the exported map (the format is kept in m_mapExportFormat)
 	 * 
 	 * @return File object or null if the user did not choose
 	 */
@@ -1627,7 +1677,25 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 			chooser.setSelectedFile(m_mapExportSaveFolder);
 		}
 
-		FileFilter filter = new FileFilter() {
+		FileFilter pngFilter = new FileFilter() {
+			/*
+			 * @see javax.swing.filechooser.FileFilter#accept(java.io.File)
+			 */
+			public boolean accept(File f)
+			{
+				return f.isDirectory() || f.getPath().toLowerCase().endsWith(".png");
+			}
+
+			/*
+			 * @see javax.swing.filechooser.FileFilter#getDescription()
+			 */
+			public String getDescription()
+			{
+				return "PNG Files (*.png)";
+			}
+		};
+
+		FileFilter jpegFilter = new FileFilter() {
 			/*
 			 * @see javax.swing.filechooser.FileFilter#accept(java.io.File)
 			 */
@@ -1646,7 +1714,42 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 			}
 		};
 
-		chooser.setFileFilter(filter);
+		FileFilter pyramidFilter = new FileFilter() {
+			/*
+			 * @see javax.swing.filechooser.FileFilter#accept(java.io.File)
+			 */
+			public boolean accept(File f)
+			{
+				return f.isDirectory();
+			}
+
+			/*
+			 * @see javax.swing.filechooser.FileFilter#getDescription()
+			 */
+			public String getDescription()
+			{
+				return "Zoomable Tiles (folder)";
+			}
+		};
+
+		chooser.addChoosableFileFilter(pngFilter);
+		chooser.addChoosableFileFilter(jpegFilter);
+		chooser.addChoosableFileFilter(pyramidFilter);
+
+		switch (m_mapExportFormat)
+		{
+		case JPEG:
+			chooser.setFileFilter(jpegFilter);
+			break;
+
+		case PYRAMID:
+			chooser.setFileFilter(pyramidFilter);
+			break;
+
+		default:
+			chooser.setFileFilter(pngFilter);
+			break;
+		}
 
 		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
 		{
@@ -1657,9 +1760,24 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 		File out = chooser.getSelectedFile();
 		String fileName = out.getAbsolutePath().toLowerCase();
 
-		if (!(fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")))
+		if (chooser.getFileFilter() == pyramidFilter)
 		{
-			out = new File(out.getAbsolutePath() + ".jpg");
+			m_mapExportFormat = MapExporter.Format.PYRAMID;
+		}
+		else if (chooser.getFileFilter() == jpegFilter)
+		{
+			m_mapExportFormat = MapExporter.Format.JPEG;
+
+			if (!(fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")))
+				out = new File(out.getAbsolutePath() + ".jpg");
+		}
+		else
+		{
+			// Files named without a known extension are exported as JPEG, as they always were, unless PNG was chosen
+			if (!(fileName.endsWith(".png") || fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")))
+				out = new File(out.getAbsolutePath() + (chooser.getFileFilter() == pngFilter ? ".png" : ".jpg"));
+
+			m_mapExportFormat = MapExporter.Format.fromFile(out);
 		}
 
 		// If file exists, confirm before overwrite
@@ -2290,7 +2408,16 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 			@Override
 			public void onPointingLocationChanged(Player player, boolean pointing, MapCoordinates location, NetworkEvent netEvent)
 			{
-				repaint();
+				m_gametableCanvas.repaintPointer(player);
+			}
+			
+			@Override
+			public void onMapTransferProgress(int bytesReceived, int bytesTotal, NetworkEvent netEvent)
+			{
+				if (bytesReceived < bytesTotal)
+					m_status.setText(getLanguageResource().MAP_RECEIVING + " " + (int)(bytesReceived * 100L / bytesTotal) + "%");
+				else
+					updateStatus();
 			}
 		};
 
@@ -2410,6 +2537,9 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 			@Override
 			public void onMapElementTypeUpdated(MapElementTypeLibrary parentLibrary, MapElementTypeIF type)
 			{
+				// Elements of this type might have changed size
+				m_gametableCanvas.onMapElementTypeUpdated(type);
+
 				// Queue a refresh message
 				MSG_REFRESH_MAP_LIBRARY.addMessage(GametableFrame.this, "type-updated");
 			}
@@ -2499,8 +2629,16 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 
 			if (m_core.getNetworkStatus() == NetworkStatus.HOSTING)
 			{
-				// Send data to other connected players (host only)
-				m_core.sendBroadcast(NetLoadMap.makePacket(m_core.getMap(GameTableCore.MapType.PUBLIC)));
+				// Send data to other connected players (host only).  The asset manifest goes first, so players start
+				// loading missing images before the map arrives.
+				m_core.sendBroadcast(NetAssetManifest.makePacket(m_core, false));
+				
+				List<byte[]> packets = NetLoadMap.makePackets(m_core.getMap(GameTableCore.MapType.PUBLIC));
+				if (packets != null)
+				{
+					for (byte[] packet : packets)
+						m_core.sendBroadcast(packet, null, OutboundQueue.Priority.SNAPSHOT);
+				}
 			}
 		}
 	}
@@ -2831,6 +2969,11 @@ public class GametableFrame extends JFrame implements ActionListener, MessageLis
 	// NULL if unset.
 	private static File									m_mapExportSaveFolder			= new File("./saves");
 
+	/**
+	 * Format of the last map export
+	 */
+	private static MapExporter.Format		m_mapExportFormat					= MapExporter.Format.JPEG;
+
 	/**
 	 * @return
 	 */
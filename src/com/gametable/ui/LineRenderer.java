@@ -0,0 +1,245 @@
+/*
+ * LineRenderer.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.ui;
+
+import java.awt.*;
+import java.awt.geom.GeneralPath;
+import java.util.*;
+import java.util.List;
+
+import com.gametable.data.GameTableMap;
+import com.gametable.data.MapRectangle;
+import com.gametable.data.MapShape;
+import com.gametable.data.PackedLineSegments;
+
+/**
+ * Draws the line segments and vector shapes of a map in batches.
+ *
+ * Drawing segments one by one converts each through temporary objects and changes the graphics state for every segment,
+ * which dominates paint time on maps covered in freehand drawings. The renderer rather converts the segments' view
+ * coordinates into primitive arrays grouped by color, then draws a single path per color with a stroke of the line
+ * width. Segments are read from the map through a packed buffer, so neither the map nor the renderer create an object
+ * per segment. Shapes are converted to view coordinates at the current zoom level and appended to the path of their
+ * color. Buffers, arrays and paths are reused from one paint to the next.
+ */
+final class LineRenderer
+{
+	/**
+	 * Segments of a single color
+	 */
+	private static class Batch
+	{
+		/**
+		 * View coordinates of the segments (x1, y1, x2, y2 for each segment)
+		 */
+		float[]							coords	= new float[64];
+
+		/**
+		 * Number of values used in coords
+		 */
+		int									count		= 0;
+
+		/**
+		 * Shapes of the batch
+		 */
+		final List<MapShape>	shapes	= new ArrayList<MapShape>();
+
+		/**
+		 * Path drawn for the batch
+		 */
+		final GeneralPath		path		= new GeneralPath();
+
+		/**
+		 * Add a segment to the batch
+		 *
+		 * @param x1 View coordinates of the start of the segment
+		 * @param y1
+		 * @param x2 View coordinates of the end of the segment
+		 * @param y2
+		 */
+		void add(int x1, int y1, int x2, int y2)
+		{
+			if (count + 4 > coords.length)
+				coords = Arrays.copyOf(coords, coords.length * 2);
+
+			coords[count++] = x1;
+			coords[count++] = y1;
+			coords[count++] = x2;
+			coords[count++] = y2;
+		}
+	}
+
+	/**
+	 * Canvas drawing the lines
+	 */
+	private final GametableCanvas			m_canvas;
+
+	/**
+	 * Batches by color, in order of first use
+	 */
+	private final Map<Color, Batch>	m_batches			= new LinkedHashMap<Color, Batch>();
+
+	/**
+	 * Stroke used to draw the lines
+	 */
+	private BasicStroke								m_stroke			= null;
+
+	/**
+	 * Segments read from the map
+	 */
+	private final PackedLineSegments	m_lines				= new PackedLineSegments();
+
+	/**
+	 * Constructor
+	 *
+	 * @param canvas Canvas drawing the lines
+	 */
+	LineRenderer(GametableCanvas canvas)
+	{
+		m_canvas = canvas;
+	}
+
+	/**
+	 * Draw the line segments and shapes of a map
+	 *
+	 * @param g Graphics device, translated to the canvas' scroll position
+	 * @param map Map whose segments are drawn
+	 * @param modelRect Region of the map to draw, in map coordinates
+	 * @param paintRect Region to draw, in view coordinates. Segments outside this region are skipped.
+	 */
+	void paint(Graphics2D g, GameTableMap map, MapRectangle modelRect, Rectangle paintRect)
+	{
+		final PackedLineSegments lines = m_lines;
+
+		map.getLines(modelRect, lines);
+		final List<MapShape> shapes = map.getShapes(modelRect);
+		if (lines.size() == 0 && shapes.isEmpty())
+			return;
+
+		final int width = m_canvas.getLineStrokeWidth();
+
+		// Leave room for the thickness of the lines
+		final int minX = paintRect.x - width;
+		final int minY = paintRect.y - width;
+		final int maxX = paintRect.x + paintRect.width + width;
+		final int maxY = paintRect.y + paintRect.height + width;
+
+		// Same conversion as the canvas, so lines stay aligned with the grid and elements
+		final double baseTileSize = GameTableMap.getBaseTileSize();
+		final double tileSize = m_canvas.getTileSize();
+
+		Color lastColor = null;
+		Batch batch = null;
+
+		final int count = lines.size();
+		for (int i = 0; i < count; i++)
+		{
+			final int x1 = (int) Math.round(lines.getStartX(i) / baseTileSize * tileSize);
+			final int y1 = (int) Math.round(lines.getStartY(i) / baseTileSize * tileSize);
+			final int x2 = (int) Math.round(lines.getEndX(i) / baseTileSize * tileSize);
+			final int y2 = (int) Math.round(lines.getEndY(i) / baseTileSize * tileSize);
+
+			if ((x1 < minX && x2 < minX) || (x1 > maxX && x2 > maxX) || (y1 < minY && y2 < minY) || (y1 > maxY && y2 > maxY))
+				continue;
+
+			// Consecutive segments usually share their color (ex: a freehand stroke)
+			final Color color = lines.getColor(i);
+			if (color != lastColor)
+			{
+				lastColor = color;
+				batch = m_batches.get(color);
+
+				if (batch == null)
+				{
+					batch = new Batch();
+					m_batches.put(color, batch);
+				}
+			}
+
+			batch.add(x1, y1, x2, y2);
+		}
+
+		final Rectangle cullRect = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+		for (MapShape shape : shapes)
+		{
+			if (!cullRect.intersects(m_canvas.modelToView(shape.getBounds())))
+				continue;
+
+			final Color color = shape.getColor();
+			if (color != lastColor)
+			{
+				lastColor = color;
+				batch = m_batches.get(color);
+
+				if (batch == null)
+				{
+					batch = new Batch();
+					m_batches.put(color, batch);
+				}
+			}
+
+			batch.shapes.add(shape);
+		}
+
+		// Bevel joins, so sharp turns within polylines do not produce spikes
+		if (m_stroke == null || m_stroke.getLineWidth() != width)
+			m_stroke = new BasicStroke(width, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL);
+
+		final Stroke oldStroke = g.getStroke();
+		final Color oldColor = g.getColor();
+
+		g.setStroke(m_stroke);
+
+		for (Iterator<Map.Entry<Color, Batch>> it = m_batches.entrySet().iterator(); it.hasNext();)
+		{
+			final Map.Entry<Color, Batch> entry = it.next();
+			final Batch b = entry.getValue();
+
+			// Drop colors that are no longer in use
+			if (b.count == 0 && b.shapes.isEmpty())
+			{
+				it.remove();
+				continue;
+			}
+
+			final GeneralPath path = b.path;
+			final float[] coords = b.coords;
+
+			path.reset();
+			for (int i = 0; i < b.count; i += 4)
+			{
+				path.moveTo(coords[i], coords[i + 1]);
+				path.lineTo(coords[i + 2], coords[i + 3]);
+			}
+
+			for (MapShape shape : b.shapes)
+				path.append(shape.toViewShape(m_canvas.getTileSize()), false);
+
+			g.setColor(entry.getKey());
+			g.draw(path);
+
+			b.count = 0;
+			b.shapes.clear();
+		}
+
+		g.setStroke(oldStroke);
+		g.setColor(oldColor);
+
+		// Do not hold on to the map's colors
+		lines.clear();
+	}
+}
@@ -1123,13 +1123,21 @@ public class MapElementTypeLibraryPanel extends JPanel
 		GameTableCore core = GametableApp.getCore();
 		GameTableMap mapToReplace = core.getMap(GameTableCore.MapType.ACTIVE);
 
-		for (MapElement pog : mapToReplace.getMapElements())
+		mapToReplace.beginBatch();
+		try
 		{
-			if (pog.getMapElementType() == lookForType)
+			for (MapElement pog : mapToReplace.getMapElements())
 			{
-				pog.setMapElementType(replaceWithType);
+				if (pog.getMapElementType() == lookForType)
+				{
+					pog.setMapElementType(replaceWithType);
+				}
 			}
 		}
+		finally
+		{
+			mapToReplace.commitBatch();
+		}
 	}
 
 }
@@ -0,0 +1,568 @@
+/*
+ * MapExporter.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.ui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import com.gametable.ui.GametableCanvas.ZoomLevel;
+import com.gametable.util.PNGStreamWriter;
+
+/**
+ * Exports a map as images, rendering it one tile at a time.
+ *
+ * A single image covering a large map at full zoom does not fit in memory. The exporter renders a row of tiles at a time
+ * and streams it to a PNG file, so memory use depends on the map's width only. It can also write the map as a zoomable
+ * pyramid of tiles (see {@link Format#PYRAMID}), in which case memory use does not depend on the map's size at all.
+ *
+ * Tiles are painted one at a time on the event dispatch thread, which owns the map and the display state, so the
+ * display stays responsive between tiles. Encoding and downsampling the tiles can run on all available processors.
+ */
+final class MapExporter
+{
+	/**
+	 * Export format
+	 */
+	enum Format
+	{
+		/**
+		 * Single PNG image, streamed to the file
+		 */
+		PNG,
+
+		/**
+		 * Single JPEG image. The whole image is held in memory while encoding.
+		 */
+		JPEG,
+
+		/**
+		 * Folder holding PNG tiles of TILE_SIZE pixels for each zoom step. Level N holds the map at the export's zoom level,
+		 * each lower level halves the resolution, down to level 0 where the whole map fits in a single tile. Tiles are named
+		 * level/column_row.png. A tiles.properties file describes the pyramid.
+		 */
+		PYRAMID;
+
+		/**
+		 * Get the format matching a file's extension
+		 *
+		 * @param file Output file
+		 * @return PNG for .png files, JPEG (the historical export format) otherwise
+		 */
+		static Format fromFile(File file)
+		{
+			if (file.getName().toLowerCase().endsWith(".png"))
+				return PNG;
+
+			return JPEG;
+		}
+	}
+
+	/**
+	 * Size of the rendered tiles, in pixels
+	 */
+	static final int											TILE_SIZE	= 256;
+
+	/**
+	 * Canvas rendering the map
+	 */
+	private final GametableCanvas					m_canvas;
+
+	/**
+	 * Exported region, in view coordinates
+	 */
+	private final Rectangle								m_bounds;
+
+	/**
+	 * Number of tile columns
+	 */
+	private final int											m_columns;
+
+	/**
+	 * Number of tile rows
+	 */
+	private final int											m_rows;
+
+	/**
+	 * Executor encoding tiles in parallel, or null to encode on the calling thread
+	 */
+	private ExecutorService								m_executor	= null;
+
+	/**
+	 * True to encode tiles in parallel
+	 */
+	private final boolean									m_parallel;
+
+	/**
+	 * Zoom level at which the map is rendered
+	 */
+	private final ZoomLevel								m_zoomLevel;
+
+	/**
+	 * Constructor
+	 *
+	 * @param canvas Canvas rendering the map
+	 * @param bounds Region to export, in view coordinates at the export's zoom level
+	 * @param zoomLevel Zoom level at which to render the map
+	 * @param parallel true to encode tiles on all available processors
+	 */
+	MapExporter(GametableCanvas canvas, Rectangle bounds, ZoomLevel zoomLevel, boolean parallel)
+	{
+		m_canvas = canvas;
+		m_zoomLevel = zoomLevel;
+		m_bounds = new Rectangle(bounds);
+		m_columns = (bounds.width + TILE_SIZE - 1) / TILE_SIZE;
+		m_rows = (bounds.height + TILE_SIZE - 1) / TILE_SIZE;
+		// Workers wait on the event dispatch thread to paint - an export started from it must not wait on them
+		m_parallel = parallel && Runtime.getRuntime().availableProcessors() > 1 && !SwingUtilities.isEventDispatchThread();
+	}
+
+	/**
+	 * Export the map
+	 *
+	 * @param output Output file (folder for {@link Format#PYRAMID})
+	 * @param format Output format
+	 * @throws IOException
+	 */
+	void export(File output, Format format) throws IOException
+	{
+		if (m_bounds.isEmpty())
+			throw new IOException("Nothing to export");
+
+		if (m_parallel)
+			m_executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "MapExporter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		try
+		{
+			switch (format)
+			{
+			case PNG:
+				writePNG(output);
+				break;
+
+			case JPEG:
+				writeJPEG(output);
+				break;
+
+			case PYRAMID:
+				writePyramid(output);
+				break;
+			}
+		}
+		finally
+		{
+			if (m_executor != null)
+			{
+				m_executor.shutdownNow();
+				m_executor = null;
+			}
+		}
+	}
+
+	/**
+	 * Stream the map to a PNG file, a row of tiles at a time
+	 *
+	 * @param file Output file
+	 * @throws IOException
+	 */
+	private void writePNG(File file) throws IOException
+	{
+		final int width = m_bounds.width;
+		final int[] line = new int[width];
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try
+		{
+			PNGStreamWriter png = new PNGStreamWriter(out, width, m_bounds.height);
+
+			for (int row = 0; row < m_rows; row++)
+			{
+				List<BufferedImage> tiles = renderRow(row);
+				final int tileHeight = tiles.get(0).getHeight();
+
+				for (int y = 0; y < tileHeight; y++)
+				{
+					int x = 0;
+					for (BufferedImage tile : tiles)
+					{
+						tile.getRGB(0, y, tile.getWidth(), 1, line, x, width);
+						x += tile.getWidth();
+					}
+
+					png.writeRow(line, 0);
+				}
+			}
+
+			png.finish();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the map to a JPEG file
+	 *
+	 * @param file Output file
+	 * @throws IOException
+	 */
+	private void writeJPEG(File file) throws IOException
+	{
+		BufferedImage image = new BufferedImage(m_bounds.width, m_bounds.height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+
+		try
+		{
+			for (int row = 0; row < m_rows; row++)
+			{
+				int x = 0;
+				for (BufferedImage tile : renderRow(row))
+				{
+					g.drawImage(tile, x, row * TILE_SIZE, null);
+					x += tile.getWidth();
+				}
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		ImageIO.write(image, "jpg", file);
+	}
+
+	/**
+	 * Write the map as a pyramid of tiles
+	 *
+	 * @param folder Output folder
+	 * @throws IOException
+	 */
+	private void writePyramid(final File folder) throws IOException
+	{
+		// Number of halvings needed for the map to fit in a single tile
+		int maxLevel = 0;
+		while ((Math.max(m_columns, m_rows) - 1) >> maxLevel > 0)
+			maxLevel++;
+
+		// Full resolution level, straight from the canvas
+		final File top = getLevelFolder(folder, maxLevel);
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(m_columns * m_rows);
+		for (int row = 0; row < m_rows; row++)
+		{
+			for (int col = 0; col < m_columns; col++)
+			{
+				final int c = col;
+				final int r = row;
+
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException
+					{
+						ImageIO.write(renderTile(c, r), "png", getTileFile(top, c, r));
+						return null;
+					}
+				});
+			}
+		}
+
+		invokeAll(tasks);
+
+		// Each lower level is built from the four tiles below it
+		int columns = m_columns;
+		int rows = m_rows;
+		for (int level = maxLevel - 1; level >= 0; level--)
+		{
+			final File source = getLevelFolder(folder, level + 1);
+			final File destination = getLevelFolder(folder, level);
+
+			columns = (columns + 1) / 2;
+			rows = (rows + 1) / 2;
+
+			tasks.clear();
+			for (int row = 0; row < rows; row++)
+			{
+				for (int col = 0; col < columns; col++)
+				{
+					final int c = col;
+					final int r = row;
+
+					tasks.add(new Callable<Void>() {
+						@Override
+						public Void call() throws IOException
+						{
+							ImageIO.write(downsample(source, c, r), "png", getTileFile(destination, c, r));
+							return null;
+						}
+					});
+				}
+			}
+
+			invokeAll(tasks);
+		}
+
+		Properties props = new Properties();
+		props.setProperty("width", String.valueOf(m_bounds.width));
+		props.setProperty("height", String.valueOf(m_bounds.height));
+		props.setProperty("tileSize", String.valueOf(TILE_SIZE));
+		props.setProperty("levels", String.valueOf(maxLevel + 1));
+		props.setProperty("format", "png");
+
+		OutputStream out = new FileOutputStream(new File(folder, "tiles.properties"));
+		try
+		{
+			props.store(out, "Gametable map tile pyramid");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Build a tile by halving the resolution of the four matching tiles of the next level
+	 *
+	 * @param source Folder of the next level
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @return Tile image
+	 * @throws IOException
+	 */
+	private BufferedImage downsample(File source, int col, int row) throws IOException
+	{
+		BufferedImage[] children = new BufferedImage[4];
+		for (int i = 0; i < 4; i++)
+		{
+			File file = getTileFile(source, col * 2 + i % 2, row * 2 + i / 2);
+			if (file.isFile())
+				children[i] = ImageIO.read(file);
+		}
+
+		// Edge tiles can be smaller than TILE_SIZE
+		final int width = (children[0].getWidth() + (children[1] == null ? 0 : children[1].getWidth()) + 1) / 2;
+		final int height = (children[0].getHeight() + (children[2] == null ? 0 : children[2].getHeight()) + 1) / 2;
+
+		BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = tile.createGraphics();
+		try
+		{
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.scale(0.5, 0.5);
+
+			for (int i = 0; i < 4; i++)
+			{
+				if (children[i] != null)
+					g.drawImage(children[i], (i % 2) * TILE_SIZE, (i / 2) * TILE_SIZE, null);
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return tile;
+	}
+
+	/**
+	 * Render a row of tiles
+	 *
+	 * @param row Tile row
+	 * @return Tiles, from left to right
+	 * @throws IOException
+	 */
+	private List<BufferedImage> renderRow(final int row) throws IOException
+	{
+		List<BufferedImage> tiles = new ArrayList<BufferedImage>(m_columns);
+		for (int col = 0; col < m_columns; col++)
+			tiles.add(renderTile(col, row));
+
+		return tiles;
+	}
+
+	/**
+	 * Render a single tile
+	 *
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @return Tile image (smaller than TILE_SIZE on the right and bottom edges)
+	 * @throws IOException if interrupted
+	 */
+	private BufferedImage renderTile(int col, int row) throws IOException
+	{
+		final Rectangle region = new Rectangle(m_bounds.x + col * TILE_SIZE, m_bounds.y + row * TILE_SIZE, TILE_SIZE, TILE_SIZE)
+				.intersection(m_bounds);
+
+		final BufferedImage tile = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+
+		invokeOnEventThread(new Runnable() {
+			@Override
+			public void run()
+			{
+				Graphics2D g = tile.createGraphics();
+				try
+				{
+					m_canvas.paintExportRegion(g, region, m_zoomLevel);
+				}
+				finally
+				{
+					g.dispose();
+				}
+			}
+		});
+
+		return tile;
+	}
+
+	/**
+	 * Run a task on the event dispatch thread and wait for it to complete
+	 *
+	 * @param task Task to run
+	 * @throws IOException if interrupted while waiting
+	 */
+	static void invokeOnEventThread(Runnable task) throws IOException
+	{
+		if (SwingUtilities.isEventDispatchThread())
+		{
+			task.run();
+			return;
+		}
+
+		try
+		{
+			SwingUtilities.invokeAndWait(task);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		}
+		catch (InvocationTargetException e)
+		{
+			throw toIOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Run tasks, in parallel if enabled
+	 *
+	 * @param tasks Tasks to run
+	 * @return Results, in the order of the tasks
+	 * @throws IOException if a task failed
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+
+		try
+		{
+			if (m_executor == null)
+			{
+				for (Callable<T> task : tasks)
+					results.add(task.call());
+			}
+			else
+			{
+				for (Future<T> future : m_executor.invokeAll(tasks))
+					results.add(future.get());
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw toIOException(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		}
+		catch (Exception e)
+		{
+			throw toIOException(e);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Convert a task failure to an IOException
+	 *
+	 * @param e Failure
+	 * @return IOException
+	 */
+	private static IOException toIOException(Throwable e)
+	{
+		if (e instanceof IOException)
+			return (IOException) e;
+
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+
+		if (e instanceof Error)
+			throw (Error) e;
+
+		return new IOException(e.getMessage(), e);
+	}
+
+	/**
+	 * Get the folder holding the tiles of a pyramid level, creating it if needed
+	 *
+	 * @param folder Pyramid folder
+	 * @param level Level
+	 * @return Level folder
+	 * @throws IOException
+	 */
+	private static File getLevelFolder(File folder, int level) throws IOException
+	{
+		File levelFolder = new File(folder, String.valueOf(level));
+		if (!levelFolder.isDirectory() && !levelFolder.mkdirs())
+			throw new IOException("Could not create folder " + levelFolder.getPath());
+
+		return levelFolder;
+	}
+
+	/**
+	 * Get the file holding a tile
+	 *
+	 * @param levelFolder Level folder
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @return Tile file
+	 */
+	private static File getTileFile(File levelFolder, int col, int row)
+	{
+		return new File(levelFolder, col + "_" + row + ".png");
+	}
+}
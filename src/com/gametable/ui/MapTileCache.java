@@ -0,0 +1,371 @@
+/*
+ * MapTileCache.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.ui;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+import com.gametable.data.*;
+import com.gametable.data.MapElementTypeIF.Layer;
+import com.gametable.ui.GametableCanvas.ZoomLevel;
+import com.gametable.util.Images;
+
+/**
+ * Cache of pre-rendered tiles for the static layers of the maps (underlay, overlay and environment).
+ *
+ * Static layers seldom change during play, so rather than rendering each of their elements on every repaint, the canvas
+ * blits fixed-size tiles rendered once per map, layer and zoom level. A tile is discarded when an element intersecting it
+ * changes.
+ *
+ * Selected and highlighted elements are drawn tinted. They are rendered tinted within the tiles, so that they keep
+ * their place in the painting order, and the tiles showing them are discarded whenever the selection or highlight
+ * changes.
+ */
+final class MapTileCache
+{
+	/**
+	 * Size of a tile, in pixels
+	 */
+	private static final int		TILE_SIZE		= 256;
+
+	/**
+	 * Maximum memory used by the cached tiles (64MB)
+	 */
+	private static final long		MAX_BYTES		= 64 * 1024 * 1024;
+
+	/**
+	 * Memory used by a single tile image
+	 */
+	private static final long		TILE_BYTES	= 4L * TILE_SIZE * TILE_SIZE;
+
+	/**
+	 * Canvas rendering the tiles
+	 */
+	private final GametableCanvas	m_canvas;
+
+	/**
+	 * Cached tiles, in least recently used order
+	 */
+	private final LinkedHashMap<TileKey, Tile>	m_tiles					= new LinkedHashMap<TileKey, Tile>(64, 0.75f, true);
+
+	/**
+	 * Memory currently used by the cached tiles, in bytes
+	 */
+	private long									m_bytes					= 0;
+
+	/**
+	 * Elements drawn tinted within the tiles
+	 */
+	private Set<MapElement>				m_tintedElements	= Collections.emptySet();
+
+	/**
+	 * Constructor
+	 *
+	 * @param canvas Canvas rendering the tiles
+	 */
+	public MapTileCache(GametableCanvas canvas)
+	{
+		m_canvas = canvas;
+	}
+
+	/**
+	 * Discard all tiles
+	 */
+	public synchronized void clear()
+	{
+		m_tiles.clear();
+		m_bytes = 0;
+	}
+
+	/**
+	 * Discard the tiles showing a region of the map
+	 *
+	 * @param modelRect Region of the map, in map coordinates
+	 */
+	public synchronized void invalidate(MapRectangle modelRect)
+	{
+		for (Iterator<Tile> it = m_tiles.values().iterator(); it.hasNext();)
+		{
+			Tile tile = it.next();
+			if (tile.bounds.intersects(modelRect))
+			{
+				it.remove();
+				m_bytes -= tile.getMemorySize();
+			}
+		}
+	}
+
+	/**
+	 * Verifies if the elements of a layer are rendered through the tile cache
+	 *
+	 * @param layer Layer
+	 * @return true for static layers
+	 */
+	public static boolean isCached(Layer layer)
+	{
+		return layer != Layer.POG;
+	}
+
+	/**
+	 * Draw a layer of a map from cached tiles, rendering missing tiles as needed
+	 *
+	 * @param g Graphics device, in canvas coordinates
+	 * @param map Map to draw
+	 * @param layer Static layer to draw
+	 * @param paintRect Area to draw, in canvas coordinates
+	 */
+	public synchronized void paint(Graphics2D g, GameTableMap map, Layer layer, Rectangle paintRect)
+	{
+		final ZoomLevel zoom = m_canvas.getZoomLevel();
+
+		final int firstCol = floorDiv(paintRect.x);
+		final int lastCol = floorDiv(paintRect.x + paintRect.width);
+		final int firstRow = floorDiv(paintRect.y);
+		final int lastRow = floorDiv(paintRect.y + paintRect.height);
+
+		for (int row = firstRow; row <= lastRow; row++)
+		{
+			for (int col = firstCol; col <= lastCol; col++)
+			{
+				final TileKey key = new TileKey(map, layer, zoom, col, row);
+				Tile tile = m_tiles.get(key);
+
+				if (tile == null)
+				{
+					tile = renderTile(map, layer, col, row);
+					m_tiles.put(key, tile);
+					m_bytes += tile.getMemorySize();
+					trim();
+				}
+
+				if (tile.image != null)
+					g.drawImage(tile.image, col * TILE_SIZE, row * TILE_SIZE, null);
+			}
+		}
+	}
+
+	/**
+	 * Set the elements currently drawn tinted (selected or highlighted). Tiles showing elements that were added to or
+	 * removed from the set are discarded.
+	 *
+	 * @param tintedElements Elements drawn tinted
+	 */
+	public synchronized void setTintedElements(Set<MapElement> tintedElements)
+	{
+		if (tintedElements.equals(m_tintedElements))
+			return;
+
+		for (MapElement mapElement : m_tintedElements)
+		{
+			if (!tintedElements.contains(mapElement) && isCached(mapElement.getLayer()))
+				invalidate(mapElement.getBounds());
+		}
+
+		for (MapElement mapElement : tintedElements)
+		{
+			if (!m_tintedElements.contains(mapElement) && isCached(mapElement.getLayer()))
+				invalidate(mapElement.getBounds());
+		}
+
+		m_tintedElements = tintedElements;
+	}
+
+	/**
+	 * Render a tile
+	 *
+	 * @param map Map to draw
+	 * @param layer Layer to draw
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @return New tile
+	 */
+	private Tile renderTile(GameTableMap map, Layer layer, int col, int row)
+	{
+		final int x = col * TILE_SIZE;
+		final int y = row * TILE_SIZE;
+
+		// Include elements touching the tile through rounding
+		final int margin = Math.max(1, m_canvas.viewToModel(2));
+		final MapCoordinates topLeft = m_canvas.viewToModel(x, y).delta(-margin, -margin);
+		final MapRectangle bounds = new MapRectangle(topLeft, m_canvas.viewToModel(TILE_SIZE) + margin * 2, m_canvas.viewToModel(TILE_SIZE) + margin * 2);
+
+		List<MapElement> elements = map.getMapElements(bounds, layer);
+
+		// Empty tiles hold no image
+		if (elements.isEmpty())
+			return new Tile(bounds, null);
+
+		BufferedImage image = Images.createBufferedImage(TILE_SIZE, TILE_SIZE);
+		Graphics2D g = image.createGraphics();
+		try
+		{
+			g.addRenderingHints(Images.getRenderingHints());
+			g.translate(-x, -y);
+
+			// Painting order is kept, selected and highlighted elements included
+			for (MapElement mapElement : elements)
+				m_canvas.renderMapElement(g, mapElement);
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return new Tile(bounds, image);
+	}
+
+	/**
+	 * Discard the least recently used tiles until the cache fits within its memory limit
+	 */
+	private void trim()
+	{
+		Iterator<Tile> it = m_tiles.values().iterator();
+		while (m_bytes > MAX_BYTES && it.hasNext())
+		{
+			m_bytes -= it.next().getMemorySize();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Get the index of the tile holding a canvas coordinate
+	 *
+	 * @param pos Canvas coordinate
+	 * @return Tile index (rounded toward negative infinity)
+	 */
+	private static int floorDiv(int pos)
+	{
+		return pos >= 0 ? pos / TILE_SIZE : -((-pos + TILE_SIZE - 1) / TILE_SIZE);
+	}
+
+	/**
+	 * Rendered tile
+	 */
+	private static class Tile
+	{
+		/**
+		 * Region of the map covered by the tile (including elements touching its edges)
+		 */
+		final MapRectangle	bounds;
+
+		/**
+		 * Rendered image, or null if no element is shown on the tile
+		 */
+		final BufferedImage	image;
+
+		/**
+		 * Constructor
+		 *
+		 * @param bounds Region of the map covered by the tile
+		 * @param image Rendered image
+		 */
+		Tile(MapRectangle bounds, BufferedImage image)
+		{
+			this.bounds = bounds;
+			this.image = image;
+		}
+
+		/**
+		 * @return Memory used by the tile, in bytes
+		 */
+		long getMemorySize()
+		{
+			return image == null ? 0 : TILE_BYTES;
+		}
+	}
+
+	/**
+	 * Identifies a tile within the cache
+	 */
+	private static class TileKey
+	{
+		/**
+		 * Map shown on the tile
+		 */
+		private final GameTableMap	m_map;
+
+		/**
+		 * Layer shown on the tile
+		 */
+		private final Layer					m_layer;
+
+		/**
+		 * Zoom level the tile was rendered at
+		 */
+		private final ZoomLevel			m_zoom;
+
+		/**
+		 * Tile column
+		 */
+		private final int						m_col;
+
+		/**
+		 * Tile row
+		 */
+		private final int						m_row;
+
+		/**
+		 * Constructor
+		 *
+		 * @param map Map shown on the tile
+		 * @param layer Layer shown on the tile
+		 * @param zoom Zoom level
+		 * @param col Tile column
+		 * @param row Tile row
+		 */
+		TileKey(GameTableMap map, Layer layer, ZoomLevel zoom, int col, int row)
+		{
+			m_map = map;
+			m_layer = layer;
+			m_zoom = zoom;
+			m_col = col;
+			m_row = row;
+		}
+
+		/*
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj == this)
+				return true;
+
+			if (!(obj instanceof TileKey))
+				return false;
+
+			TileKey key = (TileKey) obj;
+			return key.m_map == m_map && key.m_layer == m_layer && key.m_zoom == m_zoom && key.m_col == m_col && key.m_row == m_row;
+		}
+
+		/*
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode()
+		{
+			int hash = System.identityHashCode(m_map);
+			hash = hash * 31 + m_layer.ordinal();
+			hash = hash * 31 + m_zoom.ordinal();
+			hash = hash * 31 + m_col;
+			hash = hash * 31 + m_row;
+			return hash;
+		}
+	}
+}
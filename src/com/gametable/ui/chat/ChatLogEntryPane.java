@@ -27,6 +27,7 @@ import javax.swing.text.html.HTMLDocument;
 import com.gametable.GametableApp;
 import com.gametable.data.GameTableCore;
 import com.gametable.data.ChatEngineIF.MessageType;
+import com.gametable.net.OutboundQueue;
 import com.gametable.net.NetworkStatus;
 import com.gametable.ui.GametableFrame;
 import com.gametable.ui.net.NetSendTypingFlag;
@@ -354,7 +355,7 @@ public class ChatLogEntryPane extends JEditorPane
 	                
 	                if (typing != m_lastTyping)
 	                {
-	                	m_core.sendBroadcast(NetSendTypingFlag.makePacket(m_core.getPlayer(), typing));
+	                	m_core.sendBroadcast(NetSendTypingFlag.makePacket(m_core.getPlayer(), typing), NetSendTypingFlag.getCoalesceKey(m_core.getPlayer()), OutboundQueue.Priority.INTERACTIVE);
 	                	m_lastTyping = typing;
 	                }
                 }
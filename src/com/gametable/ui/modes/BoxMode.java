@@ -23,12 +23,12 @@ package com.gametable.ui.modes;
 import java.awt.*;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
 
 import com.gametable.GametableApp;
 import com.gametable.data.GameTableCore;
-import com.gametable.data.LineSegment;
 import com.gametable.data.MapCoordinates;
+import com.gametable.data.MapRectangle;
+import com.gametable.data.RectangleShape;
 import com.gametable.ui.*;
 import com.gametable.util.Images;
 import com.gametable.util.UtilityFunctions;
@@ -236,25 +236,14 @@ public class BoxMode extends UIMode
 		{
 			if ((m_mouseStart != null) && !m_mouseStart.equals(m_mousePosition))
 			{
-				// we're going to add 4 lines
+				// we're going to add a rectangle shape
 				final Color drawColor = m_frame.getDrawColor();
 				final MapCoordinates topLeft = canvas.viewToModel(m_mouseStart);
 				final MapCoordinates bottomRight = topLeft.delta(canvas.viewToModel(m_mousePosition.x - m_mouseStart.x), canvas.viewToModel(m_mousePosition.y - m_mouseStart.y));
-				final MapCoordinates topRight = new MapCoordinates(bottomRight.x, topLeft.y);
-				final MapCoordinates bottomLeft = new MapCoordinates(topLeft.x, bottomRight.y);
 
-				final LineSegment top = new LineSegment(topLeft, topRight, drawColor);
-				final LineSegment left = new LineSegment(topLeft, bottomLeft, drawColor);
-				final LineSegment right = new LineSegment(topRight, bottomRight, drawColor);
-				final LineSegment bottom = new LineSegment(bottomLeft, bottomRight, drawColor);
+				final RectangleShape box = new RectangleShape(new MapRectangle(topLeft, bottomRight), drawColor);
 
-				java.util.List<LineSegment> lines = new ArrayList<LineSegment>(4);
-				lines.add(top);
-				lines.add(left);
-				lines.add(right);
-				lines.add(bottom);
-
-				GametableApp.getCore().getMap(GameTableCore.MapType.ACTIVE).addLineSegments(lines);
+				GametableApp.getCore().getMap(GameTableCore.MapType.ACTIVE).addShape(box);
 			}
 
 			cancelMode();
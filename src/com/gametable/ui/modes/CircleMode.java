@@ -26,7 +26,7 @@ import java.awt.event.KeyEvent;
 
 import com.gametable.GametableApp;
 import com.gametable.data.GameTableCore;
-import com.gametable.data.LineSegment;
+import com.gametable.data.EllipseShape;
 import com.gametable.data.MapCoordinates;
 import com.gametable.ui.*;
 
@@ -143,8 +143,6 @@ public class CircleMode extends UIMode
 				g3.dispose();
 			}
 			
-			// don't forget the penAsset
-			//m_penAsset.draw(g2, m_canvas);
 			g2.dispose();
 		}
 	}
@@ -222,27 +220,13 @@ public class CircleMode extends UIMode
 		@Override
 		public void mouseButtonReleased(GametableCanvas canvas, int mouseX, int mouseY, final int modifierMask)
 		{
-			PenAsset penAsset = new PenAsset(m_frame.getDrawColor());
-
-			// Figure the radius of the circle and use a PenAsset as if we had drawn
-			// the circle with the PenTool.
+			// The circle is stored as a shape - it is only broken into segments when drawn, at the current zoom level
 			if ((m_mouseAnchor != null) && !m_mouseAnchor.equals(m_mouseFloat))
 			{        
-				double rad = m_mouseAnchor.distance(m_mouseFloat);
-				// With this loop, all circles are composed of the same number of segments regardless of size. 
-				// Maybe make theta increment dependent on radius?
-				for (double theta = 0; theta < 2 * Math.PI; theta += .1)
-				{
-					penAsset.addPoint(m_mouseAnchor.delta((int)(Math.cos(theta) * rad), (int)(Math.sin(theta) * rad)));
-				}
-				penAsset.addPoint(m_mouseAnchor.delta((int)rad, 0));
-				// The call to smooth() reduces the number of line segments in the
-				// circle, drawing it faster but making it rougher. Uncomment if
-				// redrawing takes too long.
-				// m_penAsset.smooth();
-				java.util.List<LineSegment> lines = penAsset.getLineSegments();
-
-				GametableApp.getCore().getMap(GameTableCore.MapType.ACTIVE).addLineSegments(lines);
+				int rad = (int)m_mouseAnchor.distance(m_mouseFloat);
+				
+				EllipseShape circle = EllipseShape.createCircle(m_mouseAnchor, rad, m_frame.getDrawColor());
+				GametableApp.getCore().getMap(GameTableCore.MapType.ACTIVE).addShape(circle);
 			}
 			
 			cancelMode();
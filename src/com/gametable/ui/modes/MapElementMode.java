@@ -890,6 +890,8 @@ public class MapElementMode extends UIMode
 			if ((m_grabbedMapElement != null) && !m_core.isMapElementLocked(m_grabbedMapElement))
 			{
 				m_clicked = false;
+				final MapRectangle oldBounds = m_ghostMapElement.getBounds();
+				
 				if (m_snapping)
 				{
 					final Point adjustment = getSnapDragAdjustment(m_ghostMapElement);
@@ -902,7 +904,8 @@ public class MapElementMode extends UIMode
 					m_ghostMapElement.setPosition(m_mouseMapPosition.delta(m_grabOffset.x, m_grabOffset.y));
 				}
 
-				m_frame.repaint();
+				canvas.repaintMapRegion(oldBounds);
+				canvas.repaintMapRegion(m_ghostMapElement.getBounds());
 			}
 			else if (m_startScroll != null)
 			{
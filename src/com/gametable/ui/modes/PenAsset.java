@@ -5,21 +5,27 @@
 
 package com.gametable.ui.modes;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Point;
+import java.awt.*;
+import java.awt.geom.GeneralPath;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.gametable.data.GameTableMap;
 import com.gametable.data.LineSegment;
 import com.gametable.data.MapCoordinates;
+import com.gametable.data.MapRectangle;
+import com.gametable.data.PolylineShape;
 import com.gametable.ui.GametableCanvas;
 
 
 
 /**
- * #GT-COMMENT
+ * Freehand stroke being drawn with the pen.
+ * 
+ * The stroke is kept as a polyline that is extended as points are added: adding a point, or painting the stroke after
+ * a point was added, only processes the new point. Once the stroke is complete, {@link #smooth(GametableCanvas)} drops
+ * the points that do not visibly contribute to its shape before it is turned into line segments.
  * 
  * @author sephalon
  * 
@@ -36,7 +42,13 @@ public class PenAsset
         init(color);
     }
 
-    public void addPoint(MapCoordinates toAdd)
+    /**
+     * Extend the stroke to a new point
+     * 
+     * @param toAdd Map coordinates of the point
+     * @return true if the point was added, false if it was too close to the previous point
+     */
+    public boolean addPoint(MapCoordinates toAdd)
     {
         if (m_points.size() > 0)
         {
@@ -50,25 +62,91 @@ public class PenAsset
             if (distSq < MINIMUM_MOVE_DISTANCE * MINIMUM_MOVE_DISTANCE)
             {
                 // they didn't move far enough to interest us.
-                return;
+                return false;
             }
+
+            m_bounds = m_bounds.add(new MapRectangle(toAdd, 0, 0));
+        }
+        else
+        {
+            m_bounds = new MapRectangle(toAdd, 0, 0);
         }
 
         m_points.add(toAdd);
+        return true;
     }
+
+    /**
+     * Draw the stroke. Only the points added since the last call are converted to view coordinates, unless the zoom
+     * level changed.
+     * 
+     * @param g Graphics device
+     * @param canvas Canvas to draw on
+     */
     public void draw(final Graphics g, final GametableCanvas canvas)
     {
-        List<LineSegment> lines = getLineSegments();
-        for (LineSegment line : lines)
+        if (m_points.size() < 2)
+        {
+            return;
+        }
+
+        final int tileSize = canvas.getTileSize();
+        if (tileSize != m_pathTileSize)
         {
-            line.drawToCanvas(g, canvas);
+            // zoom changed - view coordinates must all be recomputed
+            m_path.reset();
+            m_pathLength = 0;
+            m_pathTileSize = tileSize;
         }
+
+        for (; m_pathLength < m_points.size(); m_pathLength++)
+        {
+            final Point p = canvas.modelToView(m_points.get(m_pathLength));
+            if (m_pathLength == 0)
+            {
+                m_path.moveTo(p.x, p.y);
+            }
+            else
+            {
+                m_path.lineTo(p.x, p.y);
+            }
+        }
+
+        final Graphics2D g2 = (Graphics2D) g;
+        g2.setColor(m_color);
+        g2.setStroke(new BasicStroke(canvas.getLineStrokeWidth(), BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL));
+        g2.draw(m_path);
+    }
+
+    /**
+     * @return Bounds of the stroke, in map coordinates, or null if the stroke has no point
+     */
+    public MapRectangle getBounds()
+    {
+        return m_bounds;
     }
+
     public Color getColor()
     {
         return m_color;
     }
 
+    /**
+     * Get the last segment of the stroke
+     * 
+     * @return Line segment or null if the stroke has less than 2 points
+     */
+    public LineSegment getLastSegment()
+    {
+        final int size = m_points.size();
+        if (size < 2)
+        {
+            return null;
+        }
+
+        return new LineSegment(m_points.get(size - 2), m_points.get(size - 1), m_color);
+    }
+
     public List<LineSegment> getLineSegments()
     {
         if (m_points.size() < 2)
@@ -89,138 +167,211 @@ public class PenAsset
         return lines;
     }
 
-    public void init(final Color color)
-    {
-        m_color = color;
-    }
-
     /**
-     * Cull out unneeded points.
+     * Build a polyline shape from the points of the stroke
+     * 
+     * @return New shape or null if the stroke has less than 2 points
      */
-    public void smooth()
+    public PolylineShape toShape()
     {
-        // We can't reduce to less than 2 points.
         if (m_points.size() < 2)
         {
-            return;
+            return null;
         }
 
-        final List<MapCoordinates> newPoints = new ArrayList<MapCoordinates>(m_points.size());
+        return new PolylineShape(m_points, m_color);
+    }
 
-        // no matter what, the first point will have to be in there
-        newPoints.add(m_points.get(0));
+    public void init(final Color color)
+    {
+        m_color = color;
+    }
 
-        int currentIdx = 0;
-        final int maxIdx = m_points.size() - 1;
-        while (currentIdx < maxIdx)
-        {
-            currentIdx = getNextUsefulPoint(currentIdx);
-            newPoints.add(m_points.get(currentIdx));
-        }
+    /**
+     * Cull out unneeded points, using a tolerance of WIGGLE_TOLERANCE map units.
+     */
+    public void smooth()
+    {
+        smooth(WIGGLE_TOLERANCE);
+    }
 
-        // we're done.
-        m_points = newPoints;
+    /**
+     * Cull out the points that would not be visible at the canvas' current zoom level: points are dropped if they are
+     * within WIGGLE_TOLERANCE pixels of the simplified stroke.
+     * 
+     * @param canvas Canvas the stroke was drawn on
+     */
+    public void smooth(final GametableCanvas canvas)
+    {
+        smooth(WIGGLE_TOLERANCE * GameTableMap.getBaseTileSize() / canvas.getTileSize());
     }
 
-    protected int getNextUsefulPoint(final int startIdx)
+    /**
+     * Cull out unneeded points (Douglas-Peucker simplification). A point is kept only if it lies further than the
+     * tolerance from the segment joining the points kept around it. The first and last points are always kept.
+     * 
+     * @param tolerance Maximum distance between the original points and the simplified stroke, in map units
+     */
+    public void smooth(final double tolerance)
     {
-        // starting from startIdx, look forward as many points as we can,
-        // checking intervening points to see if they're close enough to be
-        // on the line and thus ignored
+        final int size = m_points.size();
 
-        if (startIdx == m_points.size() - 1)
+        // Nothing to remove with less than 3 points.
+        if (size < 3)
         {
-            // this is the endpoint.
-            return startIdx;
+            return;
         }
 
-        if (startIdx == m_points.size() - 1)
+        final int[] xs = new int[size];
+        final int[] ys = new int[size];
+        for (int i = 0; i < size; i++)
         {
-            // this is the one before the endpoint. The endpoint
-            // is invariable valid
-            return m_points.size() - 1;
+            final MapCoordinates p = m_points.get(i);
+            xs[i] = p.x;
+            ys[i] = p.y;
         }
 
-        // work forward till you get an invalid one, then go back a step
-        int lastGoodIdx = startIdx + 1;
-        for (int i = startIdx + 2; i < m_points.size(); i++)
+        final boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+
+        // ranges still to be inspected (start, end), kept on an explicit stack rather than through recursion, as
+        // long strokes would otherwise exhaust the call stack
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+
+        final double toleranceSq = tolerance * tolerance;
+
+        while (top > 0)
         {
-            // check the points for valid lines
-            if (pointsOutsideDirectLine(startIdx, i))
+            final int end = stack[--top];
+            final int start = stack[--top];
+
+            // find the point furthest from the segment joining start and end
+            int furthest = -1;
+            double furthestDistSq = toleranceSq;
+            for (int i = start + 1; i < end; i++)
             {
-                // we found a point outside the direct line. So
-                // we're done with the search. we return the last good value
-                return lastGoodIdx;
+                final double distSq = distanceToLineSq(xs[start], ys[start], xs[end], ys[end], xs[i], ys[i]);
+                if (distSq > furthestDistSq)
+                {
+                    furthest = i;
+                    furthestDistSq = distSq;
+                }
             }
 
-            // there were no points outside the direct line. Carry on with the
-            // next point
-            lastGoodIdx = i;
-        }
+            if (furthest < 0)
+            {
+                // every point in between is close enough to the direct line
+                continue;
+            }
 
-        // if we made it out of the loop, it means we got all the way to the
-        // end point without failing. So the end point is the next useful point
-        return m_points.size() - 1;
-    }
+            keep[furthest] = true;
 
-    protected boolean pointsOutsideDirectLine(final int startIdx, final int endIdx)
-    {
-        final MapCoordinates checkStart = m_points.get(startIdx);
-        final MapCoordinates checkEnd = m_points.get(endIdx);
-        for (int i = startIdx + 1; i < endIdx; i++)
+            if (top + 4 > stack.length)
+            {
+                final int[] newStack = new int[stack.length * 2];
+                System.arraycopy(stack, 0, newStack, 0, top);
+                stack = newStack;
+            }
+
+            stack[top++] = start;
+            stack[top++] = furthest;
+            stack[top++] = furthest;
+            stack[top++] = end;
+        }
+
+        final List<MapCoordinates> newPoints = new ArrayList<MapCoordinates>();
+        for (int i = 0; i < size; i++)
         {
-            final MapCoordinates checkMiddle = m_points.get(i);
-            final double dist = distanceToLine(checkStart, checkEnd, checkMiddle);
-            if (dist > WIGGLE_TOLERANCE)
+            if (keep[i])
             {
-                // we found a point that's outside the line
-                return true;
+                newPoints.add(m_points.get(i));
             }
         }
 
-        // if we're here, we must not have found any invalid points
-        return false;
+        // we're done.
+        m_points = newPoints;
+
+        m_path.reset();
+        m_pathLength = 0;
     }
 
-    private double distanceToLine(final MapCoordinates lineStart, final MapCoordinates lineEnd, final MapCoordinates point)
+    /**
+     * Get the squared distance between a point and a line segment
+     * 
+     * @param startX Start of the segment
+     * @param startY
+     * @param endX End of the segment
+     * @param endY
+     * @param x Point
+     * @param y
+     * @return squared distance
+     */
+    private static double distanceToLineSq(final int startX, final int startY, final int endX, final int endY, final int x,
+        final int y)
     {
-        // zero everything. put lineStart at the origin
-        final Point vectorB = new Point();
-        vectorB.x = lineEnd.x - lineStart.x;
-        vectorB.y = lineEnd.y - lineStart.y;
-
-        final Point vectorA = new Point();
-        vectorA.x = point.x - lineStart.x;
-        vectorA.y = point.y - lineStart.y;
-
-        // A dot B divided by the length of B is A's projection along B
-        // in this case, A is the vector to the point
-        final double A_dot_B = vectorA.x * vectorB.x + vectorA.y * vectorB.y;
-        final double normB = Math.sqrt(vectorB.x * vectorB.x + vectorB.y * vectorB.y);
-        final double proj = A_dot_B / normB;
-
-        // now we need to find the point that is "proj" along vector B
-        final double ratioProj = (proj / normB);
-        final double projPointX = ratioProj * vectorB.x;
-        final double projPointY = ratioProj * vectorB.y;
-
-        // proj is the distance along vector B that A projects to. Now we
-        // need to get the distance between it and the sent in point
-        // (which is now vector A)
-        final double dx = projPointX - vectorA.x;
-        final double dy = projPointY - vectorA.y;
-        final double dist = Math.sqrt(dx * dx + dy * dy);
-
-        return dist;
+        // zero everything. put the start of the segment at the origin
+        final double bx = endX - startX;
+        final double by = endY - startY;
+        final double ax = x - startX;
+        final double ay = y - startY;
+
+        final double normBSq = bx * bx + by * by;
+        if (normBSq == 0)
+        {
+            // degenerate segment (ex: closed stroke) - distance to its end point
+            return ax * ax + ay * ay;
+        }
+
+        // A dot B divided by the squared length of B is the ratio of B at which A projects, clamped to the segment
+        double ratio = (ax * bx + ay * by) / normBSq;
+        if (ratio < 0)
+        {
+            ratio = 0;
+        }
+        else if (ratio > 1)
+        {
+            ratio = 1;
+        }
+
+        final double dx = ratio * bx - ax;
+        final double dy = ratio * by - ay;
+
+        return dx * dx + dy * dy;
     }
 
     public final static int    MINIMUM_MOVE_DISTANCE = 1;
 
+    /**
+     * Tolerance used when culling points: in map units for {@link #smooth()}, in pixels for
+     * {@link #smooth(GametableCanvas)}
+     */
     public final static double WIGGLE_TOLERANCE      = 2.0;
 
-    GametableCanvas            m_canvas;
-
     Color                      m_color;
 
     List<MapCoordinates>                       m_points              = new ArrayList<MapCoordinates>();
+
+    /**
+     * Bounds of the stroke
+     */
+    private MapRectangle       m_bounds              = null;
+
+    /**
+     * Stroke in view coordinates, built as points are added
+     */
+    private final GeneralPath  m_path                = new GeneralPath();
+
+    /**
+     * Number of points already in m_path
+     */
+    private int                m_pathLength          = 0;
+
+    /**
+     * Tile size m_path was built for
+     */
+    private int                m_pathTileSize        = 0;
 }
@@ -19,11 +19,12 @@ package com.gametable.ui.modes;
 import java.awt.Cursor;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
-import java.util.List;
 
 import com.gametable.GametableApp;
 import com.gametable.data.GameTableCore;
 import com.gametable.data.LineSegment;
+import com.gametable.data.MapRectangle;
+import com.gametable.data.PolylineShape;
 import com.gametable.ui.*;
 
 /**
@@ -150,10 +151,17 @@ public class PenMode extends UIMode
 		{
 			if (m_penAsset != null)
 			{
-				m_penAsset.smooth();
-				List<LineSegment> lines = m_penAsset.getLineSegments();
-
-				GametableApp.getCore().getMap(GameTableCore.MapType.ACTIVE).addLineSegments(lines);
+				// the raw stroke is no longer drawn once replaced by its simplified lines
+				MapRectangle bounds = m_penAsset.getBounds();
+				
+				m_penAsset.smooth(canvas);
+				PolylineShape stroke = m_penAsset.toShape();
+
+				if (stroke != null)
+					GametableApp.getCore().getMap(GameTableCore.MapType.ACTIVE).addShape(stroke);
+				
+				if (bounds != null)
+					canvas.repaintMapRegion(bounds);
 			}
 
 			cancelMode();
@@ -167,8 +175,13 @@ public class PenMode extends UIMode
 		{
 			if (m_penAsset != null)
 			{
-				m_penAsset.addPoint(canvas.viewToModel(mouseX, mouseY));	// TODO #Useful?);
-				m_frame.repaint();
+				// only the new segment of the stroke needs to be painted
+				if (m_penAsset.addPoint(canvas.viewToModel(mouseX, mouseY)))
+				{
+					LineSegment segment = m_penAsset.getLastSegment();
+					if (segment != null)
+						canvas.repaintMapRegion(segment.getBounds());
+				}
 			}
 		}
 
@@ -229,39 +229,70 @@ public class PublishMode extends UIMode
 			{
 				// GametableFrame frame = GametableFrame.g_gameTableFrame;
 
-				// first off, copy all the elements over to the public layer
-				for (MapElement mapElement : m_sourceMap.getMapElements())
+				// Copies are reported to listeners (and sent over the network) as a single change
+				List<MapElement> lockedElements = new ArrayList<MapElement>();
+				m_destinationMap.beginBatch();
+				try
 				{
-					if (m_frame.isHighlighted(mapElement) && (!m_core.isMapElementLocked(mapElement) || (modifierMask & InputEvent.SHIFT_DOWN_MASK) != 0))
+					// first off, copy all the elements over to the public layer
+					for (MapElement mapElement : m_sourceMap.getMapElements())
 					{
-						// this element gets copied
-						final MapElement newElement = new MapElement(mapElement);
-
-						m_destinationMap.addMapElement(newElement);
-
-						if (m_core.isMapElementLocked(mapElement))
+						if (m_frame.isHighlighted(mapElement) && (!m_core.isMapElementLocked(mapElement) || (modifierMask & InputEvent.SHIFT_DOWN_MASK) != 0))
 						{
-							m_core.lockMapElement(GameTableCore.MapType.ACTIVE, newElement, true);
+							// this element gets copied
+							final MapElement newElement = new MapElement(mapElement);
+	
+							m_destinationMap.addMapElement(newElement);
+	
+							if (m_core.isMapElementLocked(mapElement))
+							{
+								lockedElements.add(newElement);
+							}
 						}
 					}
-				}
-
-				// now, copy over all the line segments. we run through all the
-				// line segments on the private layer, and collect a list of the
-				// ones that are at least partially in the rect
-				final List<LineSegment> lineList = new ArrayList<LineSegment>();
-
-				for (LineSegment ls : m_sourceMap.getLines())
-				{
-					final LineSegment result = ls.getPortionInsideRect(m_mouseAnchor, m_mouseFloat);
-
-					if (result != null)
+	
+					// now, copy over all the line segments. we run through the
+					// line segments of the private layer crossing the rect, and collect
+					// a list of the portions that are inside the rect
+					final List<LineSegment> lineList = new ArrayList<LineSegment>();
+	
+					for (LineSegment ls : m_sourceMap.getLines(new MapRectangle(m_mouseAnchor, m_mouseFloat)))
+					{
+						final LineSegment result = ls.getPortionInsideRect(m_mouseAnchor, m_mouseFloat);
+	
+						if (result != null)
+						{
+							lineList.add(result);
+						}
+					}
+	
+					m_destinationMap.addLineSegments(lineList);
+	
+					// shapes entirely inside the rect are copied as they are, others
+					// contribute the portions of their outline that are inside the rect
+					final MapRectangle publishRect = new MapRectangle(m_mouseAnchor, m_mouseFloat);
+					final List<MapShape> shapeList = new ArrayList<MapShape>();
+	
+					for (MapShape shape : m_sourceMap.getShapes(publishRect))
+					{
+						shapeList.addAll(shape.getPortionsInside(publishRect));
+					}
+	
+					if (!shapeList.isEmpty())
 					{
-						lineList.add(result);
+						m_destinationMap.addShapes(shapeList);
 					}
 				}
-
-				m_destinationMap.addLineSegments(lineList);
+				finally
+				{
+					m_destinationMap.commitBatch();
+				}
+				
+				// Locks refer to the copies, which must have been reported first
+				for (MapElement newElement : lockedElements)
+				{
+					m_core.lockMapElement(GameTableCore.MapType.ACTIVE, newElement, true);
+				}
 
 				boolean bDeleteFromPrivate = false;
 				if ((modifierMask & InputEvent.CTRL_DOWN_MASK) == 0) // not holding control
@@ -64,6 +64,17 @@ public class NetSendTypingFlag implements NetworkMessageTypeIF
 	private static NetSendTypingFlag g_messageType = null;
 	
 /**
+	 * Get the key identifying the typing flag updates of a player, so that queued updates are replaced by newer ones (see
+	 * {@link com.gametable.net.OutboundQueue})
+	 * @param player Player
+	 * @return Coalescing key
+	 */
+	public static Object getCoalesceKey(Player player)
+	{
+		return "NetSendTypingFlag " + player.getID();
+	}
+	
+	/**
 	 * Make a network data packet informing that a player is currently typing in the chat window
 	 * 
 	 * @param player player
@@ -0,0 +1,501 @@
+/*
+ * AssetStore.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.util;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import com.gametable.GametableApp;
+
+/**
+ * Static class indexing local asset files by content hash (SHA-256).
+ *
+ * Lets files be located by their content rather than their name: an image received from the host under one name can be
+ * found again when the host refers to it under another name, and an image already present in a local library is never
+ * transferred at all.
+ *
+ * Files are registered as they are discovered and hashed by a background thread, so lookups never wait on the disk: a
+ * file not hashed yet is simply not found, and the content gets transferred instead. Computed hashes are kept in an
+ * index file within the user folder, keyed by path, size and modification time, so unchanged files are never hashed
+ * twice.
+ */
+public class AssetStore
+{
+	/**
+	 * Hash information on a local file
+	 */
+	private static class Entry
+	{
+		/**
+		 * Hashed file
+		 */
+		final File		file;
+
+		/**
+		 * File size when hashed
+		 */
+		final long		length;
+
+		/**
+		 * File modification time when hashed
+		 */
+		final long		lastModified;
+
+		/**
+		 * Hex encoded SHA-256 hash of the file's content
+		 */
+		final String	hash;
+
+		/**
+		 * Constructor
+		 *
+		 * @param file Hashed file
+		 * @param length File size when hashed
+		 * @param lastModified File modification time when hashed
+		 * @param hash Content hash
+		 */
+		Entry(File file, long length, long lastModified, String hash)
+		{
+			this.file = file;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+
+		/**
+		 * @return true if the file has not changed since it was hashed
+		 */
+		boolean isCurrent()
+		{
+			return file.length() == length && file.lastModified() == lastModified;
+		}
+	}
+
+	/**
+	 * Name of the index file, within the user folder
+	 */
+	private static final String								INDEX_FILE		= "assets.idx";
+
+	/**
+	 * Hashed files, by path
+	 */
+	private static final Map<File, Entry>				g_entries			= new HashMap<File, Entry>();
+
+	/**
+	 * Hashed files, by hash
+	 */
+	private static final Map<String, List<File>>	g_filesByHash	= new HashMap<String, List<File>>();
+
+	/**
+	 * Registered files not hashed yet
+	 */
+	private static final Set<File>							g_unhashed		= new LinkedHashSet<File>();
+
+	/**
+	 * True once the index file has been read
+	 */
+	private static boolean											g_loaded			= false;
+
+	/**
+	 * True if the index holds hashes not yet saved
+	 */
+	private static boolean											g_modified		= false;
+
+	/**
+	 * True while the background thread is hashing the registered files
+	 */
+	private static boolean											g_hashing			= false;
+
+	/**
+	 * Find a local file holding the given content. Only files already hashed are considered (see
+	 * {@link #register(File)}).
+	 *
+	 * @param hash Content hash (see {@link #getHash(File)})
+	 * @return Matching file or null
+	 */
+	public static synchronized File find(String hash)
+	{
+		if (hash == null)
+			return null;
+
+		load();
+
+		File file = findIndexed(hash);
+
+		save();
+		startHashing();
+
+		return file;
+	}
+
+	/**
+	 * Get the content hash of a file
+	 *
+	 * @param file File to hash
+	 * @return Hex encoded SHA-256 hash, or null if the file could not be read
+	 */
+	public static synchronized String getHash(File file)
+	{
+		load();
+
+		file = file.getAbsoluteFile();
+		g_unhashed.remove(file);
+
+		Entry entry = g_entries.get(file);
+		if (entry != null && entry.isCurrent())
+			return entry.hash;
+
+		String hash = computeHash(file);
+		save();
+
+		return hash;
+	}
+
+	/**
+	 * Register a local file, so it can be found by content. The file is hashed in the background.
+	 *
+	 * @param file File to register
+	 */
+	public static synchronized void register(File file)
+	{
+		load();
+
+		file = file.getAbsoluteFile();
+
+		Entry entry = g_entries.get(file);
+		if (entry == null || !entry.isCurrent())
+		{
+			g_unhashed.add(file);
+			startHashing();
+		}
+	}
+
+	/**
+	 * Start the background thread hashing the registered files, unless it is running or there is nothing to hash
+	 */
+	private static void startHashing()
+	{
+		if (g_hashing || g_unhashed.isEmpty())
+			return;
+
+		g_hashing = true;
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				hashRegisteredFiles();
+			}
+		}, "AssetStore");
+
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Background thread's loop: hash the registered files, one at a time. Files are read without holding the lock.
+	 */
+	private static void hashRegisteredFiles()
+	{
+		while (true)
+		{
+			File file;
+
+			synchronized (AssetStore.class)
+			{
+				Iterator<File> it = g_unhashed.iterator();
+				if (!it.hasNext())
+				{
+					g_hashing = false;
+					save();
+					return;
+				}
+
+				file = it.next();
+				it.remove();
+			}
+
+			if (!file.isFile())
+				continue;
+
+			final long length = file.length();
+			final long lastModified = file.lastModified();
+
+			String hash;
+			try
+			{
+				hash = hash(file);
+			}
+			catch (IOException e)
+			{
+				Log.log(Log.SYS, e);
+				continue;
+			}
+
+			synchronized (AssetStore.class)
+			{
+				// Changed while being read - hashed again if registered again
+				if (file.length() != length || file.lastModified() != lastModified)
+					continue;
+
+				removeEntry(file);
+				addEntry(new Entry(file, length, lastModified, hash));
+				g_modified = true;
+			}
+		}
+	}
+
+	/**
+	 * Hash a file and add it to the index
+	 *
+	 * @param file File to hash (absolute)
+	 * @return Content hash or null
+	 */
+	private static String computeHash(File file)
+	{
+		removeEntry(file);
+
+		if (!file.isFile())
+			return null;
+
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+
+		String hash;
+		try
+		{
+			hash = hash(file);
+		}
+		catch (IOException e)
+		{
+			Log.log(Log.SYS, e);
+			return null;
+		}
+
+		addEntry(new Entry(file, length, lastModified, hash));
+		g_modified = true;
+
+		return hash;
+	}
+
+	/**
+	 * Add an entry to the index
+	 *
+	 * @param entry Entry to add
+	 */
+	private static void addEntry(Entry entry)
+	{
+		g_entries.put(entry.file, entry);
+
+		List<File> files = g_filesByHash.get(entry.hash);
+		if (files == null)
+		{
+			files = new ArrayList<File>(1);
+			g_filesByHash.put(entry.hash, files);
+		}
+
+		files.add(entry.file);
+	}
+
+	/**
+	 * Look for an indexed file holding the given content, dropping entries of files that have changed
+	 *
+	 * @param hash Content hash
+	 * @return Matching file or null
+	 */
+	private static File findIndexed(String hash)
+	{
+		List<File> files = g_filesByHash.get(hash);
+		if (files == null)
+			return null;
+
+		for (File file : new ArrayList<File>(files))
+		{
+			if (g_entries.get(file).isCurrent())
+				return file;
+
+			// Changed since it was hashed - it will be hashed again if registered
+			removeEntry(file);
+			g_modified = true;
+
+			if (file.isFile())
+				g_unhashed.add(file);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Compute the SHA-256 hash of a file
+	 *
+	 * @param file File to hash
+	 * @return Hex encoded hash
+	 * @throws IOException
+	 */
+	private static String hash(File file) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException("SHA-256 not available", e);
+		}
+
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				digest.update(buffer, 0, read);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		StringBuilder sb = new StringBuilder(64);
+		for (byte b : digest.digest())
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return Index file, or null if no user folder is set
+	 */
+	private static File getIndexFile()
+	{
+		if (GametableApp.USER_FILES_PATH == null)
+			return null;
+
+		return new File(GametableApp.USER_FILES_PATH, INDEX_FILE);
+	}
+
+	/**
+	 * Read the index file, if not already done
+	 */
+	private static void load()
+	{
+		if (g_loaded)
+			return;
+
+		g_loaded = true;
+
+		File indexFile = getIndexFile();
+		if (indexFile == null || !indexFile.isFile())
+			return;
+
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+			try
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					// hash, length, modification time, path
+					String parts[] = line.split("\t", 4);
+					if (parts.length != 4)
+						continue;
+
+					try
+					{
+						Entry entry = new Entry(new File(parts[3]), Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]);
+						if (entry.isCurrent())
+							addEntry(entry);
+					}
+					catch (NumberFormatException e)
+					{
+						// Ignore the entry
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			Log.log(Log.SYS, e);
+		}
+	}
+
+	/**
+	 * Remove a file from the index
+	 *
+	 * @param file File to remove
+	 */
+	private static void removeEntry(File file)
+	{
+		Entry entry = g_entries.remove(file);
+		if (entry == null)
+			return;
+
+		List<File> files = g_filesByHash.get(entry.hash);
+		files.remove(file);
+
+		if (files.isEmpty())
+			g_filesByHash.remove(entry.hash);
+	}
+
+	/**
+	 * Write the index file, if modified
+	 */
+	private static void save()
+	{
+		if (!g_modified)
+			return;
+
+		File indexFile = getIndexFile();
+		if (indexFile == null)
+			return;
+
+		g_modified = false;
+
+		try
+		{
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8"));
+			try
+			{
+				for (Entry entry : g_entries.values())
+				{
+					writer.write(entry.hash + "\t" + entry.length + "\t" + entry.lastModified + "\t" + entry.file.getPath());
+					writer.write("\n");
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			Log.log(Log.SYS, e);
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.util.*;
 
@@ -31,6 +32,10 @@ import javax.imageio.stream.ImageInputStream;
 /**
  * Static class handling all image caching
  * 
+ * Cached images are kept in least recently used order.  Recently used images are strongly held, up to a memory budget
+ * computed from the image dimensions.  Images pushed out of the budget are only softly referenced, so they can still be
+ * served from cache until the garbage collector needs the memory back.  Pinned images are always strongly held.
+ * 
  * @author Eric Maziade
  */
 public class ImageCache
@@ -43,20 +48,30 @@ public class ImageCache
 	private static class CacheInfo
 	{
 		/**
-		 * Cached image
+		 * Cached image - null if the image is only softly referenced
 		 */
-		Image	image;
-
+		Image									image;
+		
 		/**
-		 * The time at which this item was last accessed
+		 * Soft reference to the cached image
 		 */
-		long	timestamp;
+		SoftReference<Image>	softImage;
+		
+		/**
+		 * Estimated memory used by the image, in bytes
+		 */
+		long									size;
+		
+		/**
+		 * True if the image must never be evicted
+		 */
+		boolean								pinned;
 	}
 
 	/**
-	 * Caching information
+	 * Caching information, in least recently used order
 	 */
-	private static Map<URI, CacheInfo>	g_imageCache	= new HashMap<URI, CacheInfo>();
+	private static final LinkedHashMap<URI, CacheInfo>	g_imageCache	= new LinkedHashMap<URI, CacheInfo>(64, 0.75f, true);
 
 	/**
 	 * Timer daemon that periodically cleans up cache
@@ -64,10 +79,35 @@ public class ImageCache
 	private static Timer								g_timer				= null;
 
 	/**
-	 * Time before a cached item expires. Also the delay between runs of the cleanup process
+	 * Delay between runs of the cleanup process
 	 */
-	private static final long	TIMEOUT_DELAY_MS	= 1000 * 60 * 5;	// 5 minute life time
-
+	private static final long	CLEANUP_DELAY_MS	= 1000 * 60;	// 1 minute
+	
+	/**
+	 * Maximum number of bytes held by strongly referenced images
+	 */
+	private static long				g_maxBytes				= Math.min(Runtime.getRuntime().maxMemory() / 4, 256L * 1024 * 1024);
+	
+	/**
+	 * Number of bytes currently held by strongly referenced images
+	 */
+	private static long				g_bytes						= 0;
+	
+	/**
+	 * Number of cache hits
+	 */
+	private static long				g_hits						= 0;
+	
+	/**
+	 * Number of cache misses
+	 */
+	private static long				g_misses					= 0;
+	
+	/**
+	 * Number of images pushed out of the memory budget
+	 */
+	private static long				g_evictions				= 0;
+	
 	/**
 	 * Stores an image to cache
 	 * 
@@ -76,15 +116,37 @@ public class ImageCache
 	 */
 	public static void cacheImage(URI uri, Image image)
 	{
+		cacheImage(uri, image, false);
+	}
+
+	/**
+	 * Stores an image to cache
+	 * 
+	 * @param uri Object that uniquely identifies the cached image
+	 * @param image Image to cache
+	 * @param pinned If true, the image will never be evicted from cache
+	 */
+	public static void cacheImage(URI uri, Image image, boolean pinned)
+	{
+		if (uri == null || image == null)
+			return;
+		
 		CacheInfo info;
 
 		info = new CacheInfo();
-		info.timestamp = System.currentTimeMillis();
 		info.image = image;
+		info.softImage = new SoftReference<Image>(image);
+		info.size = getImageSize(image);
+		info.pinned = pinned;
 
 		synchronized (g_imageCache)
 		{
-			ImageCache.g_imageCache.put(uri, info);
+			CacheInfo old = g_imageCache.put(uri, info);
+			if (old != null && old.image != null)
+				g_bytes -= old.size;
+			
+			g_bytes += info.size;
+			trim();
 		}
 	}
 
@@ -96,13 +158,38 @@ public class ImageCache
 	 */
 	public static Image getCachedImage(URI uri)
 	{
-		CacheInfo info = g_imageCache.get(uri);
-
-		if (info == null)
-			return null;
-
-		info.timestamp = System.currentTimeMillis();
-		return info.image;
+		synchronized (g_imageCache)
+		{
+			CacheInfo info = g_imageCache.get(uri);
+	
+			if (info == null)
+			{
+				g_misses++;
+				return null;
+			}
+			
+			if (info.image != null)
+			{
+				g_hits++;
+				return info.image;
+			}
+			
+			// Only softly referenced - get it back if the GC has not reclaimed it
+			Image image = info.softImage.get();
+			if (image == null)
+			{
+				g_imageCache.remove(uri);
+				g_misses++;
+				return null;
+			}
+			
+			info.image = image;
+			g_bytes += info.size;
+			g_hits++;
+			trim();
+			
+			return image;
+		}
 	}
 
 	/**
@@ -131,6 +218,101 @@ public class ImageCache
 
 		return image;
 	}
+	
+	/**
+	 * @return The number of images currently in cache (strongly or softly referenced)
+	 */
+	public static int getCachedImageCount()
+	{
+		synchronized (g_imageCache)
+		{
+			return g_imageCache.size();
+		}
+	}
+	
+	/**
+	 * @return The estimated number of bytes held by strongly referenced images
+	 */
+	public static long getCurrentSize()
+	{
+		synchronized (g_imageCache)
+		{
+			return g_bytes;
+		}
+	}
+	
+	/**
+	 * @return The number of images pushed out of the memory budget since startup
+	 */
+	public static long getEvictionCount()
+	{
+		synchronized (g_imageCache)
+		{
+			return g_evictions;
+		}
+	}
+	
+	/**
+	 * @return The number of successful cache lookups since startup
+	 */
+	public static long getHitCount()
+	{
+		synchronized (g_imageCache)
+		{
+			return g_hits;
+		}
+	}
+	
+	/**
+	 * @return The memory budget for strongly referenced images, in bytes
+	 */
+	public static long getMaximumSize()
+	{
+		synchronized (g_imageCache)
+		{
+			return g_maxBytes;
+		}
+	}
+	
+	/**
+	 * @return The number of failed cache lookups since startup
+	 */
+	public static long getMissCount()
+	{
+		synchronized (g_imageCache)
+		{
+			return g_misses;
+		}
+	}
+	
+	/**
+	 * Set the memory budget for strongly referenced images
+	 * 
+	 * @param maxBytes Number of bytes
+	 */
+	public static void setMaximumSize(long maxBytes)
+	{
+		synchronized (g_imageCache)
+		{
+			g_maxBytes = maxBytes;
+			trim();
+		}
+	}
+	
+	/**
+	 * Remove an image from cache
+	 * 
+	 * @param uri URI uniquely identifying the image
+	 */
+	public static void removeImage(URI uri)
+	{
+		synchronized (g_imageCache)
+		{
+			CacheInfo info = g_imageCache.remove(uri);
+			if (info != null && info.image != null)
+				g_bytes -= info.size;
+		}
+	}
 
 	/**
 	 * Start the daemon that will maintain the image cache
@@ -151,29 +333,65 @@ public class ImageCache
 			}
 		};
 
-		g_timer.scheduleAtFixedRate(task, TIMEOUT_DELAY_MS, TIMEOUT_DELAY_MS);
+		g_timer.scheduleAtFixedRate(task, CLEANUP_DELAY_MS, CLEANUP_DELAY_MS);
 	}
 
 	/**
-	 * Cleanup cache
+	 * Cleanup cache - drops the entries reclaimed by the garbage collector
 	 */
 	private static void cleanup()
 	{
 		synchronized (g_imageCache)
 		{
 			Iterator<CacheInfo> infos = g_imageCache.values().iterator();
-			long deathTime = System.currentTimeMillis() - TIMEOUT_DELAY_MS;
 
 			while (infos.hasNext())
 			{
 				CacheInfo info = infos.next();
 
-				// Remove from list if expired
-				if (info.timestamp <= deathTime)
+				if (info.image == null && info.softImage.get() == null)
 					infos.remove();
 			}
 		}
 	}
+	
+	/**
+	 * Estimate the memory used by an image
+	 * 
+	 * @param image Image
+	 * @return Number of bytes
+	 */
+	private static long getImageSize(Image image)
+	{
+		int bytesPerPixel = 4;
+		if (image instanceof BufferedImage)
+			bytesPerPixel = Math.max(1, (((BufferedImage) image).getColorModel().getPixelSize() + 7) / 8);
+		
+		return (long) Math.max(0, image.getWidth(null)) * Math.max(0, image.getHeight(null)) * bytesPerPixel;
+	}
+	
+	/**
+	 * Push least recently used images out of the memory budget.  Must be called while holding the cache lock.
+	 */
+	private static void trim()
+	{
+		if (g_bytes <= g_maxBytes)
+			return;
+		
+		for (CacheInfo info : g_imageCache.values())
+		{
+			if (g_bytes <= g_maxBytes)
+				break;
+			
+			if (info.pinned || info.image == null)
+				continue;
+			
+			// Keep only a soft reference - the GC will reclaim it if memory is needed
+			info.image = null;
+			g_bytes -= info.size;
+			g_evictions++;
+		}
+	}
 
 	/**
 	 * Load image from file
@@ -239,6 +239,47 @@ public class Images
 		return img;
 	}
 
+	/**
+	 * Create a scaled copy of an image, suitable for large reductions.
+	 *
+	 * The image is first halved repeatedly (mip-map style) until it is less than twice the requested size, then scaled to
+	 * the exact size. This gives much better quality than a single bicubic resampling pass when shrinking a lot, at a
+	 * fraction of the cost.
+	 *
+	 * @param image Image to scale
+	 * @param width Target width
+	 * @param height Target height
+	 * @return New scaled image
+	 */
+	public static BufferedImage getProgressiveScaledInstance(final Image image, final int width, final int height)
+	{
+		Image current = image;
+		int currentWidth = image.getWidth(null);
+		int currentHeight = image.getHeight(null);
+
+		while (currentWidth / 2 >= width && currentHeight / 2 >= height)
+		{
+			currentWidth /= 2;
+			currentHeight /= 2;
+
+			BufferedImage half = createBufferedImage(currentWidth, currentHeight);
+			Graphics2D g = half.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+			g.dispose();
+
+			current = half;
+		}
+
+		BufferedImage img = createBufferedImage(width, height);
+		Graphics2D g = img.createGraphics();
+		g.setRenderingHints(getRenderingHints());
+		g.drawImage(current, 0, 0, width, height, null);
+		g.dispose();
+
+		return img;
+	}
+
 	/**
 	 * ***************************************************************** Returns the Tranparency of the specified Image
 	 * 
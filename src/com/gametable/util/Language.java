@@ -47,6 +47,7 @@ public class Language
     public String MAP_OPEN_CONFIRM;
     public String MAP_OPEN_DONE;
     public String MAP_OPEN_WARN;
+    public String MAP_RECEIVING;
     public String MAP_SAVE;
     public String MAP_SAVE_AS;
     public String OPEN;
@@ -68,6 +69,8 @@ public class Language
     public String MAP_CENTER_PLAYERS;
     public String MAP_CENTER_PLAYERS_WARN;
     public String MAP_EXPORT;
+    public String MAP_EXPORT_DONE;
+    public String MAP_EXPORT_ZOOM;
     public String MAP_GRID_MODE;
     public String MAP_LOCK_ALL;
     public String MAP_LOCK_ALL_DONE;
@@ -285,6 +288,8 @@ public class Language
             MAP_OPEN_DONE = value;
         } else if (name.equals("MAP_OPEN_WARN")){
             MAP_OPEN_WARN = value;
+        } else if (name.equals("MAP_RECEIVING")){
+            MAP_RECEIVING = value;
         } else if (name.equals("MAP_SAVE")){
             MAP_SAVE = value;
         } else if (name.equals("MAP_SAVE_AS")){
@@ -327,6 +332,10 @@ public class Language
             MAP_CENTER_PLAYERS_WARN = value;
         } else if (name.equals("MAP_EXPORT")){
             MAP_EXPORT = value;
+        } else if (name.equals("MAP_EXPORT_DONE")){
+            MAP_EXPORT_DONE = value;
+        } else if (name.equals("MAP_EXPORT_ZOOM")){
+            MAP_EXPORT_ZOOM = value;
         } else if (name.equals("MAP_GRID_MODE")){
             MAP_GRID_MODE = value;
         } else if (name.equals("MAP_LOCK_ALL")){
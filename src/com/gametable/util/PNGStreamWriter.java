@@ -0,0 +1,248 @@
+/*
+ * PNGStreamWriter.java
+ *
+ * Copyright (C) 1999-2011 Open Source Game Table Project
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package com.gametable.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an RGB PNG image one row at a time.
+ *
+ * Unlike ImageIO, the writer never needs the whole image: rows are filtered, compressed and written as they are
+ * received, so images far larger than the available memory can be produced.
+ */
+public class PNGStreamWriter
+{
+	/**
+	 * PNG file signature
+	 */
+	private static final byte[]		SIGNATURE		= { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+	/**
+	 * Maximum size of a single IDAT chunk
+	 */
+	private static final int			CHUNK_SIZE	= 64 * 1024;
+
+	/**
+	 * Row filter type 'Sub' (each byte is stored as the difference with the same byte of the previous pixel)
+	 */
+	private static final byte			FILTER_SUB	= 1;
+
+	/**
+	 * Destination stream
+	 */
+	private final DataOutputStream	m_out;
+
+	/**
+	 * Image width, in pixels
+	 */
+	private final int							m_width;
+
+	/**
+	 * Image height, in pixels
+	 */
+	private final int							m_height;
+
+	/**
+	 * Compressor for the image data
+	 */
+	private final Deflater				m_deflater;
+
+	/**
+	 * Filtered row (filter type followed by RGB bytes)
+	 */
+	private final byte[]					m_row;
+
+	/**
+	 * Compressed data waiting to be written
+	 */
+	private final byte[]					m_chunk			= new byte[CHUNK_SIZE];
+
+	/**
+	 * Number of bytes used in m_chunk
+	 */
+	private int										m_chunkSize	= 0;
+
+	/**
+	 * Number of rows written so far
+	 */
+	private int										m_rows			= 0;
+
+	/**
+	 * Checksum calculator for the chunks
+	 */
+	private final CRC32						m_crc				= new CRC32();
+
+	/**
+	 * Constructor - writes the image header
+	 *
+	 * @param out Destination stream. The stream is not closed by the writer.
+	 * @param width Image width, in pixels
+	 * @param height Image height, in pixels
+	 * @throws IOException
+	 */
+	public PNGStreamWriter(OutputStream out, int width, int height) throws IOException
+	{
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+
+		m_out = new DataOutputStream(out);
+		m_width = width;
+		m_height = height;
+		m_row = new byte[1 + width * 3];
+		m_deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+		m_out.write(SIGNATURE);
+
+		byte[] header = new byte[13];
+		writeInt(header, 0, width);
+		writeInt(header, 4, height);
+		header[8] = 8; // bits per channel
+		header[9] = 2; // color type: RGB
+		header[10] = 0; // compression: deflate
+		header[11] = 0; // filter method: adaptive
+		header[12] = 0; // no interlace
+
+		writeChunk("IHDR", header, header.length);
+	}
+
+	/**
+	 * Write the next row of the image
+	 *
+	 * @param rgb Pixel values (as returned by BufferedImage.getRGB - alpha is ignored)
+	 * @param offset Index of the row's first pixel within rgb
+	 * @throws IOException
+	 */
+	public void writeRow(int[] rgb, int offset) throws IOException
+	{
+		if (m_rows >= m_height)
+			throw new IllegalStateException("All rows have already been written");
+
+		m_row[0] = FILTER_SUB;
+
+		int prevR = 0;
+		int prevG = 0;
+		int prevB = 0;
+
+		int pos = 1;
+		for (int i = 0; i < m_width; i++)
+		{
+			final int pixel = rgb[offset + i];
+			final int r = (pixel >> 16) & 0xFF;
+			final int g = (pixel >> 8) & 0xFF;
+			final int b = pixel & 0xFF;
+
+			m_row[pos++] = (byte) (r - prevR);
+			m_row[pos++] = (byte) (g - prevG);
+			m_row[pos++] = (byte) (b - prevB);
+
+			prevR = r;
+			prevG = g;
+			prevB = b;
+		}
+
+		m_deflater.setInput(m_row);
+		while (!m_deflater.needsInput())
+			deflate();
+
+		m_rows++;
+	}
+
+	/**
+	 * Complete the image.  All rows must have been written.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException
+	{
+		if (m_rows != m_height)
+			throw new IllegalStateException("Only " + m_rows + " of " + m_height + " rows written");
+
+		try
+		{
+			m_deflater.finish();
+			while (!m_deflater.finished())
+				deflate();
+
+			if (m_chunkSize > 0)
+				writeChunk("IDAT", m_chunk, m_chunkSize);
+
+			writeChunk("IEND", m_chunk, 0);
+			m_out.flush();
+		}
+		finally
+		{
+			m_deflater.end();
+		}
+	}
+
+	/**
+	 * Compress pending input, writing IDAT chunks as they fill up
+	 *
+	 * @throws IOException
+	 */
+	private void deflate() throws IOException
+	{
+		m_chunkSize += m_deflater.deflate(m_chunk, m_chunkSize, m_chunk.length - m_chunkSize);
+
+		if (m_chunkSize == m_chunk.length)
+		{
+			writeChunk("IDAT", m_chunk, m_chunkSize);
+			m_chunkSize = 0;
+		}
+	}
+
+	/**
+	 * Write a chunk
+	 *
+	 * @param type Chunk type
+	 * @param data Chunk data
+	 * @param length Length of the data
+	 * @throws IOException
+	 */
+	private void writeChunk(String type, byte[] data, int length) throws IOException
+	{
+		byte[] typeBytes = type.getBytes("US-ASCII");
+
+		m_crc.reset();
+		m_crc.update(typeBytes);
+		m_crc.update(data, 0, length);
+
+		m_out.writeInt(length);
+		m_out.write(typeBytes);
+		m_out.write(data, 0, length);
+		m_out.writeInt((int) m_crc.getValue());
+	}
+
+	/**
+	 * Write a big-endian integer into a byte array
+	 *
+	 * @param buffer Destination array
+	 * @param pos Position within the array
+	 * @param value Value to write
+	 */
+	private static void writeInt(byte[] buffer, int pos, int value)
+	{
+		buffer[pos] = (byte) (value >>> 24);
+		buffer[pos + 1] = (byte) (value >>> 16);
+		buffer[pos + 2] = (byte) (value >>> 8);
+		buffer[pos + 3] = (byte) value;
+	}
+}